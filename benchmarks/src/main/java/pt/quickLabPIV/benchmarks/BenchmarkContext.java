@@ -0,0 +1,122 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.benchmarks;
+
+import java.util.Random;
+
+import org.apache.commons.math3.util.FastMath;
+
+import pt.quickLabPIV.ClippingModeEnum;
+import pt.quickLabPIV.Matrix;
+import pt.quickLabPIV.MatrixFloat;
+import pt.quickLabPIV.PIVContextSingleton;
+import pt.quickLabPIV.PIVInputParameters;
+import pt.quickLabPIV.WarpingModeFactoryEnum;
+import pt.quickLabPIV.iareas.InterAreaDivisionStrategiesFactoryEnum;
+import pt.quickLabPIV.iareas.InterAreaStableStrategiesFactoryEnum;
+import pt.quickLabPIV.iareas.InterAreaVelocityStrategiesFactoryEnum;
+
+/**
+ * Common set-up for the benchmarks, so that all harnesses run against the same PIV parameters and synthetic data.
+ * <br/>
+ * Tile counts are always laid out as a square grid of tiles.
+ * @author lpnm
+ */
+final class BenchmarkContext {
+    static final long SEED = 2017L;
+
+    private BenchmarkContext() {
+    }
+
+    static int getTilesPerSide(int tiles) {
+        int tilesPerSide = (int)FastMath.round(FastMath.sqrt(tiles));
+        if (tilesPerSide * tilesPerSide != tiles) {
+            throw new IllegalArgumentException("Number of tiles must be a perfect square, got: " + tiles);
+        }
+
+        return tilesPerSide;
+    }
+
+    /**
+     * Resets the PIV context and configures the parameters for an image that fits exactly the requested tiles.
+     * @param iaStartSize the interrogation area size at the first adaptive step
+     * @param iaEndSize the interrogation area size at the last adaptive step
+     * @param tilesPerSide the number of tiles per side at the last adaptive step
+     * @return the newly configured PIV parameters
+     */
+    static PIVInputParameters resetParameters(int iaStartSize, int iaEndSize, int tilesPerSide) {
+        PIVContextSingleton singleton = PIVContextSingleton.getSingleton();
+        singleton.resetParametersInstances();
+        PIVInputParameters parameters = singleton.getPIVParameters();
+
+        parameters.setImageHeightPixels(tilesPerSide * iaEndSize);
+        parameters.setImageWidthPixels(tilesPerSide * iaEndSize);
+        parameters.setInterrogationAreaStartIPixels(iaStartSize);
+        parameters.setInterrogationAreaStartJPixels(iaStartSize);
+        parameters.setInterrogationAreaEndIPixels(iaEndSize);
+        parameters.setInterrogationAreaEndJPixels(iaEndSize);
+        parameters.setMarginPixelsITop(0);
+        parameters.setMarginPixelsIBottom(0);
+        parameters.setMarginPixelsJLeft(0);
+        parameters.setMarginPixelsJRight(0);
+        parameters.setWarpingMode(WarpingModeFactoryEnum.NoImageWarping);
+        parameters.setAreaDivisionStrategy(InterAreaDivisionStrategiesFactoryEnum.NoSuperPositionStrategy);
+        parameters.setVelocityInheritanceStrategy(InterAreaVelocityStrategiesFactoryEnum.Direct);
+        parameters.setAreaStableStrategy(InterAreaStableStrategiesFactoryEnum.SimpleStrategy);
+        parameters.setClippingMode(ClippingModeEnum.AllowedOutOfBoundClipping);
+
+        return parameters;
+    }
+
+    /**
+     * Creates a matrix filled with uniformly distributed 8-bit pixel intensities.
+     */
+    static Matrix createRandomMatrix(Random rnd, int height, int width) {
+        float[] values = new float[height * width];
+        for (int index = 0; index < values.length; index++) {
+            values[index] = rnd.nextInt(256);
+        }
+
+        return new MatrixFloat(values, height, width, 255.0f);
+    }
+
+    static float[][] createRandomArray(Random rnd, int height, int width) {
+        float[][] values = new float[height][width];
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
+                values[i][j] = rnd.nextInt(256);
+            }
+        }
+
+        return values;
+    }
+
+    /**
+     * Creates a synthetic cross-correlation matrix with a Gaussian peak at a random sub-pixel location, over a noisy floor.
+     * @param rnd the random generator
+     * @param iaSize the interrogation area size, the cross-correlation matrix has 2*iaSize - 1 elements per side
+     * @return the cross-correlation matrix
+     */
+    static Matrix createCrossCorrelationPeak(Random rnd, int iaSize) {
+        final int size = 2 * iaSize - 1;
+        final float peakI = iaSize - 1 + (rnd.nextFloat() - 0.5f) * iaSize / 2.0f;
+        final float peakJ = iaSize - 1 + (rnd.nextFloat() - 0.5f) * iaSize / 2.0f;
+        final float sigma = 1.0f + rnd.nextFloat();
+
+        float[] values = new float[size * size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                float di = i - peakI;
+                float dj = j - peakJ;
+                values[i * size + j] = 1000.0f * (float)FastMath.exp(-(di * di + dj * dj) / (2.0f * sigma * sigma)) +
+                                       rnd.nextFloat() * 20.0f + 10.0f;
+            }
+        }
+
+        return new MatrixFloat(values, size, size, 1030.0f);
+    }
+}
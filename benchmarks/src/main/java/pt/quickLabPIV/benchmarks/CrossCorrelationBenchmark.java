@@ -0,0 +1,123 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.benchmarks;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import pt.quickLabPIV.Matrix;
+import pt.quickLabPIV.MatrixFloat;
+import pt.quickLabPIV.jobs.xcorr.FastRealFFTXCorr;
+import pt.quickLabPIV.jobs.xcorr.FastRealFFTXCorrEngine;
+import pt.quickLabPIV.jobs.xcorr.SimpleFFT;
+
+/**
+ * Measures the time to cross-correlate all the tiles of a frame with the CPU only FFT implementations.
+ * @author lpnm
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CrossCorrelationBenchmark {
+    @Param({"16", "32", "64", "128"})
+    public int iaSize;
+
+    @Param({"16", "256"})
+    public int tiles;
+
+    private float[][][] arraysA;
+    private float[][][] arraysB;
+    private Matrix[] matricesA;
+    private Matrix[] matricesB;
+
+    private SimpleFFT fft;
+    private float[][] fftRe;
+    private float[][] fftIm;
+
+    private FastRealFFTXCorrEngine engine;
+    private Matrix engineResult;
+
+    @Setup
+    public void setup() {
+        BenchmarkContext.getTilesPerSide(tiles);
+        Random rnd = new Random(BenchmarkContext.SEED);
+        arraysA = new float[tiles][][];
+        arraysB = new float[tiles][][];
+        matricesA = new Matrix[tiles];
+        matricesB = new Matrix[tiles];
+        for (int tile = 0; tile < tiles; tile++) {
+            arraysA[tile] = BenchmarkContext.createRandomArray(rnd, iaSize, iaSize);
+            arraysB[tile] = BenchmarkContext.createRandomArray(rnd, iaSize, iaSize);
+            matricesA[tile] = BenchmarkContext.createRandomMatrix(rnd, iaSize, iaSize);
+            matricesB[tile] = BenchmarkContext.createRandomMatrix(rnd, iaSize, iaSize);
+        }
+
+        //FFT sizes match the zero padded cross-correlation inputs
+        fft = new SimpleFFT(2 * iaSize, 2 * iaSize);
+        fftRe = new float[2 * iaSize][2 * iaSize];
+        fftIm = new float[2 * iaSize][2 * iaSize];
+
+        engine = new FastRealFFTXCorrEngine(iaSize, iaSize);
+        engineResult = new MatrixFloat(2 * iaSize - 1, 2 * iaSize - 1);
+    }
+
+    @Benchmark
+    public void fastRealFFTXCorr(Blackhole bh) {
+        for (int tile = 0; tile < tiles; tile++) {
+            bh.consume(FastRealFFTXCorr.computeXCorr(arraysA[tile], arraysB[tile]));
+        }
+    }
+
+    @Benchmark
+    public void fastRealFFTXCorrMatrix(Blackhole bh) {
+        for (int tile = 0; tile < tiles; tile++) {
+            bh.consume(FastRealFFTXCorr.computeXCorr(matricesA[tile], matricesB[tile]));
+        }
+    }
+
+    @Benchmark
+    public void fastRealFFTXCorrEngine(Blackhole bh) {
+        for (int tile = 0; tile < tiles; tile++) {
+            bh.consume(engine.computeXCorr(matricesA[tile], matricesB[tile], engineResult));
+        }
+    }
+
+    @Benchmark
+    public void simpleFFT2D(Blackhole bh) {
+        for (int tile = 0; tile < tiles; tile++) {
+            //FFT is computed in place, so the zero padded input must be restored for every tile
+            float[][] source = arraysA[tile];
+            for (int i = 0; i < fftRe.length; i++) {
+                Arrays.fill(fftRe[i], 0.0f);
+                Arrays.fill(fftIm[i], 0.0f);
+                if (i < iaSize) {
+                    System.arraycopy(source[i], 0, fftRe[i], 0, iaSize);
+                    System.arraycopy(arraysB[tile][i], 0, fftIm[i], 0, iaSize);
+                }
+            }
+            fft.computeFFT2D(fftRe, fftIm);
+            bh.consume(fftRe);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import pt.quickLabPIV.PIVInputParameters;
+import pt.quickLabPIV.iareas.AdaptiveInterAreaStrategyNoSuperPosition;
+import pt.quickLabPIV.iareas.IInterAreaDivisionStrategy;
+import pt.quickLabPIV.iareas.IterationStepTiles;
+import pt.quickLabPIV.iareas.TilesOrderEnum;
+import pt.quickLabPIV.images.BiLinearImageWarpingModeEnum;
+import pt.quickLabPIV.images.BiLinearImageWarpingStrategy;
+import pt.quickLabPIV.images.IImage;
+import pt.quickLabPIV.images.Image;
+
+/**
+ * Measures the time to warp an image pair and clip all the tiles of the second adaptive step, for each bi-linear
+ * warping mode.
+ * <br/>
+ * The image size is chosen so that the second adaptive step has exactly the requested number of tiles.
+ * @author lpnm
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImageWarpingBenchmark {
+    @Param({"16", "32", "64", "128"})
+    public int iaSize;
+
+    @Param({"64", "256"})
+    public int tiles;
+
+    @Param({"FirstImage", "SecondImage", "BothImages"})
+    public BiLinearImageWarpingModeEnum warpingMode;
+
+    private IImage imageA;
+    private IImage imageB;
+    private IterationStepTiles stepTilesA;
+    private IterationStepTiles stepTilesB;
+    private BiLinearImageWarpingStrategy warpingStrategy;
+
+    @Setup
+    public void setup() {
+        final int tilesPerSide = BenchmarkContext.getTilesPerSide(tiles);
+        //First step uses twice the IA size, so that the warping is performed at the second step
+        PIVInputParameters parameters = BenchmarkContext.resetParameters(2 * iaSize, iaSize, tilesPerSide);
+
+        Random rnd = new Random(BenchmarkContext.SEED);
+        final int imageHeight = parameters.getImageHeightPixels();
+        final int imageWidth = parameters.getImageWidthPixels();
+        imageA = new Image(BenchmarkContext.createRandomMatrix(rnd, imageHeight, imageWidth), imageWidth, imageHeight, "benchmarkA.tif");
+        imageB = new Image(BenchmarkContext.createRandomMatrix(rnd, imageHeight, imageWidth), imageWidth, imageHeight, "benchmarkB.tif");
+
+        IInterAreaDivisionStrategy strategy = new AdaptiveInterAreaStrategyNoSuperPosition();
+        stepTilesA = strategy.createIterationStepTilesParameters(TilesOrderEnum.FirstImage,
+                strategy.createIterationStepTilesParameters(TilesOrderEnum.FirstImage, null));
+        stepTilesB = strategy.createIterationStepTilesParameters(TilesOrderEnum.SecondImage,
+                strategy.createIterationStepTilesParameters(TilesOrderEnum.SecondImage, null));
+        //Smooth displacement field, similar to a vortex, with sub-pixel displacements
+        for (int i = 0; i < tilesPerSide; i++) {
+            for (int j = 0; j < tilesPerSide; j++) {
+                float u = (float)Math.sin(Math.PI * j / tilesPerSide) * iaSize / 8.0f;
+                float v = (float)Math.cos(Math.PI * i / tilesPerSide) * iaSize / 8.0f;
+                stepTilesA.getTile(i, j).replaceDisplacement(u, v);
+                stepTilesB.getTile(i, j).replaceDisplacement(u, v);
+            }
+        }
+
+        warpingStrategy = new BiLinearImageWarpingStrategy(warpingMode);
+    }
+
+    @Benchmark
+    public void warpAndClipImage(Blackhole bh) {
+        warpingStrategy.warpAndClipImage(imageA, imageB, stepTilesA, stepTilesB);
+        bh.consume(stepTilesB.getTile(0, 0).getMatrix());
+    }
+}
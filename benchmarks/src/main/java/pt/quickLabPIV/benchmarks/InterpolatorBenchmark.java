@@ -0,0 +1,147 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import pt.quickLabPIV.PIVInputParameters;
+import pt.quickLabPIV.iareas.AdaptiveInterAreaStrategyNoSuperPosition;
+import pt.quickLabPIV.iareas.IterationStepTiles;
+import pt.quickLabPIV.iareas.TilesOrderEnum;
+import pt.quickLabPIV.interpolators.BiCubicInterpolatorConfiguration;
+import pt.quickLabPIV.interpolators.Centroid2DInterpolatorConfiguration;
+import pt.quickLabPIV.interpolators.CrossCorrelationInterpolatorFactoryEnum;
+import pt.quickLabPIV.interpolators.Gaussian1DHongweiGuoInterpolatorConfiguration;
+import pt.quickLabPIV.interpolators.Gaussian1DInterpolatorConfiguration;
+import pt.quickLabPIV.interpolators.Gaussian2DInterpolatorConfiguration;
+import pt.quickLabPIV.interpolators.Gaussian2DLinearRegressionInterpolatorConfiguration;
+import pt.quickLabPIV.interpolators.Gaussian2DPolynomialInterpolatorConfiguration;
+import pt.quickLabPIV.interpolators.Gaussian2DSubTypeFactoryEnum;
+import pt.quickLabPIV.interpolators.ICrossCorrelationInterpolator;
+import pt.quickLabPIV.maximum.FindMaximumSimple;
+import pt.quickLabPIV.maximum.MaxCrossResult;
+
+/**
+ * Measures the time to refine the cross-correlation peaks of all the tiles of a frame to sub-pixel accuracy, for each
+ * cross-correlation based interpolator.
+ * <br/>
+ * The optical flow interpolators are not covered, since they operate on the image pair rather than on the
+ * cross-correlation peaks.
+ * @author lpnm
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpolatorBenchmark {
+    @Param({"16", "32", "64", "128"})
+    public int iaSize;
+
+    @Param({"16", "256"})
+    public int tiles;
+
+    @Param({"BiCubic", "Gaussian1D", "Gaussian1DHongweiGuo", "Gaussian1DPolynomial", "Centroid2D", "Gaussian2D",
+            "Gaussian2DPolynomial", "Gaussian2DLinearRegression"})
+    public CrossCorrelationInterpolatorFactoryEnum interpolatorType;
+
+    private List<MaxCrossResult> results;
+    private float[] peaksI;
+    private float[] peaksJ;
+    private float[] peaksValue;
+    private ICrossCorrelationInterpolator interpolator;
+
+    private void configureInterpolators(PIVInputParameters parameters) {
+        BiCubicInterpolatorConfiguration biCubicConfig = new BiCubicInterpolatorConfiguration();
+        biCubicConfig.setProperties(100, 5);
+        parameters.setSpecificConfiguration(BiCubicInterpolatorConfiguration.IDENTIFIER, biCubicConfig);
+
+        Gaussian1DInterpolatorConfiguration gaussian1DConfig = new Gaussian1DInterpolatorConfiguration();
+        gaussian1DConfig.setInterpolationPixels(3);
+        parameters.setSpecificConfiguration(Gaussian1DInterpolatorConfiguration.IDENTIFIER, gaussian1DConfig);
+
+        Gaussian1DHongweiGuoInterpolatorConfiguration hongweiGuoConfig = new Gaussian1DHongweiGuoInterpolatorConfiguration();
+        hongweiGuoConfig.setInterpolationPixels(5);
+        hongweiGuoConfig.setInteporlationIterations(10);
+        parameters.setSpecificConfiguration(Gaussian1DHongweiGuoInterpolatorConfiguration.IDENTIFIER, hongweiGuoConfig);
+
+        Centroid2DInterpolatorConfiguration centroidConfig = new Centroid2DInterpolatorConfiguration();
+        centroidConfig.setInterpolationPixels(5);
+        parameters.setSpecificConfiguration(Centroid2DInterpolatorConfiguration.IDENTIFIER, centroidConfig);
+
+        Gaussian2DInterpolatorConfiguration gaussian2DConfig = new Gaussian2DInterpolatorConfiguration();
+        gaussian2DConfig.setProperties(5, 5, Gaussian2DSubTypeFactoryEnum.Assymmetric);
+        parameters.setSpecificConfiguration(Gaussian2DInterpolatorConfiguration.IDENTIFIER, gaussian2DConfig);
+
+        Gaussian2DPolynomialInterpolatorConfiguration polynomialConfig = new Gaussian2DPolynomialInterpolatorConfiguration();
+        polynomialConfig.setInterpolationPixelsForCentroid2D(5);
+        parameters.setSpecificConfiguration(Gaussian2DPolynomialInterpolatorConfiguration.IDENTIFIER, polynomialConfig);
+
+        Gaussian2DLinearRegressionInterpolatorConfiguration linearRegressionConfig = new Gaussian2DLinearRegressionInterpolatorConfiguration();
+        linearRegressionConfig.setInterpolationPixels(5);
+        parameters.setSpecificConfiguration(Gaussian2DLinearRegressionInterpolatorConfiguration.IDENTIFIER, linearRegressionConfig);
+    }
+
+    @Setup
+    public void setup() {
+        final int tilesPerSide = BenchmarkContext.getTilesPerSide(tiles);
+        PIVInputParameters parameters = BenchmarkContext.resetParameters(iaSize, iaSize, tilesPerSide);
+        configureInterpolators(parameters);
+
+        IterationStepTiles stepTilesA = new AdaptiveInterAreaStrategyNoSuperPosition().createIterationStepTilesParameters(TilesOrderEnum.FirstImage, null);
+        IterationStepTiles stepTilesB = new AdaptiveInterAreaStrategyNoSuperPosition().createIterationStepTilesParameters(TilesOrderEnum.SecondImage, null);
+
+        Random rnd = new Random(BenchmarkContext.SEED);
+        FindMaximumSimple finder = new FindMaximumSimple();
+        results = new ArrayList<>(tiles);
+        peaksI = new float[tiles];
+        peaksJ = new float[tiles];
+        peaksValue = new float[tiles];
+        for (int i = 0; i < tilesPerSide; i++) {
+            for (int j = 0; j < tilesPerSide; j++) {
+                MaxCrossResult result = finder.findMaximum(BenchmarkContext.createCrossCorrelationPeak(rnd, iaSize));
+                result.setAssociatedTileA(stepTilesA.getTile(i, j));
+                result.setAssociatedTileB(stepTilesB.getTile(i, j));
+                peaksI[results.size()] = result.getMainPeakI();
+                peaksJ[results.size()] = result.getMainPeakJ();
+                peaksValue[results.size()] = result.getMainPeakValue();
+                results.add(result);
+            }
+        }
+
+        interpolator = CrossCorrelationInterpolatorFactoryEnum.createInterpolator(interpolatorType);
+    }
+
+    @Benchmark
+    public void interpolate(Blackhole bh) {
+        //Interpolators refine the peak location in place, so the integer peak is restored before each run
+        for (int index = 0; index < results.size(); index++) {
+            MaxCrossResult result = results.get(index);
+            result.setMainPeakI(peaksI[index]);
+            result.setMainPeakJ(peaksJ[index]);
+            result.setMainPeakValue(peaksValue[index]);
+        }
+        bh.consume(interpolator.interpolate(results));
+    }
+}
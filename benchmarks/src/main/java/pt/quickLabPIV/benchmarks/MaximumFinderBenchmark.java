@@ -0,0 +1,96 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.benchmarks;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import pt.quickLabPIV.Matrix;
+import pt.quickLabPIV.PIVInputParameters;
+import pt.quickLabPIV.maximum.FindMaximumMultiPeaksConfiguration;
+import pt.quickLabPIV.maximum.IMaximumFinder;
+import pt.quickLabPIV.maximum.MaxCrossResultsBuffer;
+import pt.quickLabPIV.maximum.MaximumFinderFactoryEnum;
+
+/**
+ * Measures the time to locate the cross-correlation peak of all the tiles of a frame, for each CPU maximum finder,
+ * both one tile at a time and batched into flat result buffers.
+ * <br/>
+ * The OpenCL maximum finder is not covered, since it requires a computation device.
+ * @author lpnm
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MaximumFinderBenchmark {
+    @Param({"16", "32", "64", "128"})
+    public int iaSize;
+
+    @Param({"16", "256"})
+    public int tiles;
+
+    @Param({"MaximumFinderSimple", "MaximumFinderFromCenter", "MaximumFinderMultiPeaks"})
+    public MaximumFinderFactoryEnum finderType;
+
+    private Matrix[] crossMatrices;
+    private List<Matrix> crossMatricesList;
+    private MaxCrossResultsBuffer buffer;
+    private IMaximumFinder finder;
+
+    @Setup
+    public void setup() {
+        PIVInputParameters parameters = BenchmarkContext.resetParameters(iaSize, iaSize, BenchmarkContext.getTilesPerSide(tiles));
+        parameters.setSpecificConfiguration(FindMaximumMultiPeaksConfiguration.IDENTIFIER, new FindMaximumMultiPeaksConfiguration(3, 3));
+
+        Random rnd = new Random(BenchmarkContext.SEED);
+        crossMatrices = new Matrix[tiles];
+        for (int tile = 0; tile < tiles; tile++) {
+            crossMatrices[tile] = BenchmarkContext.createCrossCorrelationPeak(rnd, iaSize);
+        }
+
+        crossMatricesList = Arrays.asList(crossMatrices);
+        buffer = new MaxCrossResultsBuffer();
+        finder = MaximumFinderFactoryEnum.create(finderType);
+    }
+
+    @TearDown
+    public void tearDown() {
+        finder.dispose();
+    }
+
+    @Benchmark
+    public void findMaximum(Blackhole bh) {
+        for (int tile = 0; tile < tiles; tile++) {
+            bh.consume(finder.findMaximum(crossMatrices[tile]));
+        }
+    }
+
+    @Benchmark
+    public void findMaximums(Blackhole bh) {
+        finder.findMaximums(crossMatricesList, buffer);
+        bh.consume(buffer.getPeakValue(tiles - 1, 0));
+    }
+}
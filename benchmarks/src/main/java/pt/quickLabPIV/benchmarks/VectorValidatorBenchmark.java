@@ -0,0 +1,99 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import pt.quickLabPIV.iareas.AdaptiveInterAreaStrategyNoSuperPosition;
+import pt.quickLabPIV.iareas.IterationStepTiles;
+import pt.quickLabPIV.iareas.Tile;
+import pt.quickLabPIV.iareas.TilesOrderEnum;
+import pt.quickLabPIV.iareas.validation.NormalizedMedianValidator;
+import pt.quickLabPIV.iareas.validation.NormalizedMedianValidatorConfiguration;
+
+/**
+ * Measures the time to validate all the vectors of a frame with the normalized median validator.
+ * @author lpnm
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VectorValidatorBenchmark {
+    //Outliers fraction in the synthetic displacement field
+    private static final float OUTLIERS_RATIO = 0.05f;
+
+    @Param({"16", "32", "64", "128"})
+    public int iaSize;
+
+    @Param({"256", "4096"})
+    public int tiles;
+
+    private IterationStepTiles stepTiles;
+    private Tile[][][][] neighbors;
+    private NormalizedMedianValidator validator;
+
+    @Setup
+    public void setup() {
+        final int tilesPerSide = BenchmarkContext.getTilesPerSide(tiles);
+        BenchmarkContext.resetParameters(iaSize, iaSize, tilesPerSide);
+
+        stepTiles = new AdaptiveInterAreaStrategyNoSuperPosition().createIterationStepTilesParameters(TilesOrderEnum.FirstImage, null);
+        Random rnd = new Random(BenchmarkContext.SEED);
+        neighbors = new Tile[tilesPerSide][tilesPerSide][3][3];
+        for (int i = 0; i < tilesPerSide; i++) {
+            for (int j = 0; j < tilesPerSide; j++) {
+                float u = 2.0f + i * 0.01f + (float)rnd.nextGaussian() * 0.1f;
+                float v = -1.0f + j * 0.01f + (float)rnd.nextGaussian() * 0.1f;
+                if (rnd.nextFloat() < OUTLIERS_RATIO) {
+                    u += (rnd.nextFloat() - 0.5f) * iaSize / 2.0f;
+                    v += (rnd.nextFloat() - 0.5f) * iaSize / 2.0f;
+                }
+                stepTiles.getTile(i, j).replaceDisplacement(u, v);
+
+                for (int neighborI = 0; neighborI < 3; neighborI++) {
+                    for (int neighborJ = 0; neighborJ < 3; neighborJ++) {
+                        int tileI = i + neighborI - 1;
+                        int tileJ = j + neighborJ - 1;
+                        if (tileI >= 0 && tileI < tilesPerSide && tileJ >= 0 && tileJ < tilesPerSide) {
+                            neighbors[i][j][neighborI][neighborJ] = stepTiles.getTile(tileI, tileJ);
+                        }
+                    }
+                }
+            }
+        }
+
+        validator = new NormalizedMedianValidator(new NormalizedMedianValidatorConfiguration(2.0f, 0.1f));
+    }
+
+    @Benchmark
+    public void validateAll(Blackhole bh) {
+        for (int i = 0; i < stepTiles.getNumberOfTilesInI(); i++) {
+            for (int j = 0; j < stepTiles.getNumberOfTilesInJ(); j++) {
+                Tile tile = stepTiles.getTile(i, j);
+                validator.validateVector(tile, neighbors[i][j], stepTiles);
+                bh.consume(tile.isInvalidDisplacement());
+            }
+        }
+    }
+}
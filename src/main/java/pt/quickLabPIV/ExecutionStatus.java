@@ -6,9 +6,20 @@
  */
 package pt.quickLabPIV;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 public class ExecutionStatus {
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionStatus.class);
     private static final int NUMBER_OF_REPORTS = 3;
     
     private final Object lock = new Object(); 
@@ -19,6 +30,7 @@ public class ExecutionStatus {
     private AtomicInteger processedImages = new AtomicInteger(0);
     private AtomicInteger updatesWithoutReport = new AtomicInteger(0);
     private int updateStep;
+    private final ConcurrentHashMap<Integer, PipelineStageTimers> stageTimersByThreadIdx = new ConcurrentHashMap<>();
     
     public ExecutionStatus() {
         ProgressReport first = new ProgressReport();
@@ -40,6 +52,7 @@ public class ExecutionStatus {
         endTime = null;
         processedImages.set(0);
         updatesWithoutReport.set(0);
+        stageTimersByThreadIdx.clear();
         
         ProgressReport report = getNextFreeReport();
         if (report == null) {
@@ -110,6 +123,85 @@ public class ExecutionStatus {
         }
     }
     
+    /**
+     * Retrieves the per-stage timers of a PIV thread, creating them if needed.
+     * Timers are kept across continued executions, so that multi-volume runs are accounted as a whole, and are only
+     * reset when a new execution is started.
+     * @param threadIdx the PIV thread index
+     * @param adaptiveLevels the number of adaptive levels
+     * @return the timers for the PIV thread
+     */
+    public PipelineStageTimers getOrCreateStageTimers(int threadIdx, int adaptiveLevels) {
+        return stageTimersByThreadIdx.computeIfAbsent(threadIdx, idx -> new PipelineStageTimers(idx, adaptiveLevels));
+    }
+    
+    /**
+     * Aggregates the per-stage timers of all PIV threads.
+     * @return the aggregated timers, or null if no PIV thread has registered timers
+     */
+    public PipelineStageTimers getAggregatedStageTimers() {
+        PipelineStageTimers result = null;
+        for (PipelineStageTimers timers : stageTimersByThreadIdx.values()) {
+            if (result == null) {
+                result = new PipelineStageTimers(-1, timers.getAdaptiveLevels());
+            }
+            result.add(timers);
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Logs the per-stage timers aggregated over all the PIV threads, as a single line summary.
+     */
+    public void logStageTimings() {
+        PipelineStageTimers aggregated = getAggregatedStageTimers();
+        if (aggregated != null) {
+            logger.info("Pipeline stage timings for all threads - {}", aggregated);
+        }
+    }
+    
+    /**
+     * Writes the per-stage timers of each PIV thread, followed by the timers aggregated over all threads.
+     * Failing to write the summary is logged, but does not fail the PIV processing.
+     * @param filename the summary path and filename, in JSON format if ending with .json, or CSV format otherwise
+     */
+    public void exportStageTimings(String filename) {
+        PipelineStageTimers aggregated = getAggregatedStageTimers();
+        if (aggregated == null) {
+            return;
+        }
+        
+        Map<Integer, PipelineStageTimers> sortedTimers = new TreeMap<>(stageTimersByThreadIdx);
+        StringBuilder sb = new StringBuilder(4096);
+        if (filename.toLowerCase().endsWith(".json")) {
+            sb.append("{\"threads\": [");
+            boolean first = true;
+            for (PipelineStageTimers timers : sortedTimers.values()) {
+                if (!first) {
+                    sb.append(",\n");
+                }
+                first = false;
+                timers.appendJson(sb);
+            }
+            sb.append("],\n\"total\": ");
+            aggregated.appendJson(sb);
+            sb.append("}\n");
+        } else {
+            PipelineStageTimers.appendCsvHeader(sb);
+            for (PipelineStageTimers timers : sortedTimers.values()) {
+                timers.appendCsvRows(sb);
+            }
+            aggregated.appendCsvRows(sb);
+        }
+        
+        try {
+            Files.write(Paths.get(filename), sb.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            logger.warn("Failed to write pipeline stage timings to file: {}", filename, e);
+        }
+    }
+    
     private ProgressReport getNextFreeReport() {
         ProgressReport freeReport = null;
         
@@ -149,6 +241,7 @@ public class ExecutionStatus {
         	elapsedTime = (System.currentTimeMillis() - startTime)/1000.0f;
         }
         report.updateStatus(processedImages.get(), elapsedTime);
+        report.setStageTimers(getAggregatedStageTimers());
         
         observer.receiveUpdatedProgressReport(report);
         reinsertFreeReport(report);
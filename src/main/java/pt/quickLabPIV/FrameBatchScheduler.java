@@ -0,0 +1,257 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.apache.commons.math3.util.FastMath;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands out frame batches to the per-thread PIV workers.
+ * <br/>
+ * In dynamic mode all workers pull small contiguous batches from a shared cursor (guided self-scheduling), so that
+ * threads that finish early keep on taking work from the remaining frames, instead of waiting for the slowest
+ * contiguous slice to complete. Device scores are only used as a hint for the batch size of each thread.
+ * <br/>
+ * In static mode each thread receives exactly one batch, as computed by {@link InputFiles#splitIntoThreads()}.
+ * <br/>
+ * Workers reset any state carried across consecutive frames at each batch boundary, so that results do not depend on
+ * which thread processed which batch. Seeding from the previous frame is the exception, since the seeded frames depend
+ * on where the batches start, thus static mode is always used when seeding is enabled.
+ * <br/>
+ * Static slices are never used when velocities are streamed to file, since the frames of the later slices would have to
+ * be held by the streaming exporter until all the preceding slices are written, so that the exporter memory would grow
+ * with the sequence length. When seeding is also enabled, all threads get batches of the same size, so that the batch
+ * boundaries, and thus the seeded frames, don't depend on which thread takes each batch.
+ * <br/>
+ * Each batch keeps its absolute and relative frame offsets, so that the {@link PIVResults} registered for each batch
+ * can be concatenated in frame order, independently of the thread that computed them.
+ */
+public class FrameBatchScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(FrameBatchScheduler.class);
+    private static final int MAX_AUTOMATIC_BATCH_SIZE = 8;
+    private static final int AUTOMATIC_BATCHES_PER_THREAD = 4;
+
+    private final InputFiles inputFiles;
+    private final int numberOfThreads;
+    private final boolean dynamic;
+    private final boolean uniformBatches;
+    private final int[] batchSizeByThread;
+    private final List<InputFiles> staticBatches;
+    private final boolean[] staticBatchTaken;
+    private final ConcurrentSkipListMap<Integer, PIVResults> resultsByRelativeStartFrame = new ConcurrentSkipListMap<>();
+    private int nextFrameIndex = 0;
+    private int activeThreads;
+
+    public FrameBatchScheduler(InputFiles _inputFiles, int _numberOfThreads) {
+        PIVContextSingleton singleton = PIVContextSingleton.getSingleton();
+        PIVRunParameters runParameters = singleton.getPIVRunParameters();
+
+        inputFiles = _inputFiles;
+        numberOfThreads = _numberOfThreads;
+        if (runParameters.getStreamingExporter() != null) {
+            if (!runParameters.isDynamicFrameScheduling() || runParameters.isSeedFromPreviousFrame()) {
+                logger.info("Using frame batches of a fixed size, since velocities are streamed to file");
+            }
+            dynamic = true;
+            uniformBatches = runParameters.isSeedFromPreviousFrame();
+        } else if (runParameters.isDynamicFrameScheduling() && runParameters.isSeedFromPreviousFrame()) {
+            logger.info("Using static frame scheduling, since frames are seeded from the previous frame");
+            dynamic = false;
+            uniformBatches = false;
+        } else {
+            dynamic = runParameters.isDynamicFrameScheduling();
+            uniformBatches = false;
+        }
+        batchSizeByThread = new int[numberOfThreads];
+
+        if (dynamic) {
+            staticBatches = null;
+            staticBatchTaken = null;
+            computeBatchSizes(runParameters);
+        } else {
+            staticBatches = inputFiles.splitIntoThreads();
+            staticBatchTaken = new boolean[numberOfThreads];
+            activeThreads = 0;
+            for (int threadIdx = 0; threadIdx < numberOfThreads; threadIdx++) {
+                batchSizeByThread[threadIdx] = staticBatches.get(threadIdx).size();
+                if (batchSizeByThread[threadIdx] > 0) {
+                    activeThreads++;
+                }
+            }
+        }
+    }
+
+    private void computeBatchSizes(PIVRunParameters runParameters) {
+        float weights[] = new float[numberOfThreads];
+        if (runParameters.isUseOpenCL()) {
+            //Same device weighting as used by the static OpenCL files distribution, but per thread
+            Collection<DeviceRuntimeConfiguration> configs = runParameters.getDeviceConfigurations();
+            for (DeviceRuntimeConfiguration config : configs) {
+                if (config.getCpuThreadAssignments() == null) {
+                    continue;
+                }
+                float weight = config.getScore() == 1.0f ? 1.0f : (config.getScore() - 1.0f) / 100.0f;
+                if (weight <= 0.0f) {
+                    //Unscored devices still get work
+                    weight = 1.0f;
+                }
+                for (int threadIdx : config.getCpuThreadAssignments()) {
+                    if (threadIdx < numberOfThreads) {
+                        weights[threadIdx] = weight;
+                    }
+                }
+            }
+        } else {
+            for (int threadIdx = 0; threadIdx < numberOfThreads; threadIdx++) {
+                weights[threadIdx] = 1.0f;
+            }
+        }
+
+        float totalWeight = 0.0f;
+        activeThreads = 0;
+        for (int threadIdx = 0; threadIdx < numberOfThreads; threadIdx++) {
+            if (uniformBatches && weights[threadIdx] > 0.0f) {
+                weights[threadIdx] = 1.0f;
+            }
+            if (weights[threadIdx] > 0.0f) {
+                totalWeight += weights[threadIdx];
+                activeThreads++;
+            }
+        }
+
+        if (activeThreads == 0) {
+            throw new InvalidPIVParametersException("No threads available for frame scheduling");
+        }
+
+        int baseBatchSize = runParameters.getFrameBatchSize();
+        if (baseBatchSize <= 0) {
+            baseBatchSize = inputFiles.size() / (activeThreads * AUTOMATIC_BATCHES_PER_THREAD);
+            if (baseBatchSize > MAX_AUTOMATIC_BATCH_SIZE) {
+                baseBatchSize = MAX_AUTOMATIC_BATCH_SIZE;
+            }
+            if (baseBatchSize < 1) {
+                baseBatchSize = 1;
+            }
+        }
+
+        float meanWeight = totalWeight / activeThreads;
+        for (int threadIdx = 0; threadIdx < numberOfThreads; threadIdx++) {
+            if (weights[threadIdx] > 0.0f) {
+                batchSizeByThread[threadIdx] = FastMath.max(1, FastMath.round(baseBatchSize * weights[threadIdx] / meanWeight));
+            } else {
+                batchSizeByThread[threadIdx] = 0;
+            }
+        }
+    }
+
+    /**
+     * Checks if a given thread will ever receive frames to process.
+     * @param threadIdx the thread index
+     * @return true, if the thread should be started, false otherwise
+     */
+    public boolean isThreadActive(int threadIdx) {
+        return batchSizeByThread[threadIdx] > 0;
+    }
+
+    public boolean isDynamic() {
+        return dynamic;
+    }
+
+    public int getBatchSizeHint(int threadIdx) {
+        return batchSizeByThread[threadIdx];
+    }
+
+    /**
+     * Retrieves the maximum number of frames, starting at the lowest frame not yet completed, that can be in flight
+     * among all threads, that is, how far ahead of that frame a thread may be computing frames.
+     * In static mode this covers all the frames, while in dynamic mode each thread may hold its current batch and the
+     * next batch claimed by its image prefetcher, which doesn't depend on the number of frames when the batch size is
+     * automatically selected.
+     * @return the maximum number of frames in flight
+     */
+    public int getMaxFramesInFlight() {
+        int maxBatchSize = 0;
+        for (int threadIdx = 0; threadIdx < numberOfThreads; threadIdx++) {
+            maxBatchSize = FastMath.max(maxBatchSize, batchSizeByThread[threadIdx]);
+        }
+
+        return (dynamic ? 2 : 1) * maxBatchSize * activeThreads;
+    }
+
+    /**
+     * Retrieves the next contiguous batch of frames to be processed by the calling thread.
+     * @param threadIdx the thread index
+     * @return the next batch of frames, or null if there are no more frames to process
+     */
+    public synchronized InputFiles nextBatch(int threadIdx) {
+        if (!dynamic) {
+            if (staticBatchTaken[threadIdx] || batchSizeByThread[threadIdx] == 0) {
+                return null;
+            }
+            staticBatchTaken[threadIdx] = true;
+            return staticBatches.get(threadIdx);
+        }
+
+        int remaining = inputFiles.size() - nextFrameIndex;
+        if (remaining <= 0 || batchSizeByThread[threadIdx] == 0) {
+            return null;
+        }
+
+        //Guided self-scheduling: batches shrink near the end of the sequence, so that all threads finish together
+        int fairShare = (remaining + activeThreads - 1) / activeThreads;
+        int batchSize = FastMath.min(batchSizeByThread[threadIdx], fairShare);
+
+        InputFiles batch = inputFiles.subset(nextFrameIndex, nextFrameIndex + batchSize);
+        nextFrameIndex += batchSize;
+
+        return batch;
+    }
+
+    /**
+     * Registers the results container for a batch, must be called by the worker thread before processing the batch.
+     * @param batch the batch as returned by {@link #nextBatch(int)}
+     * @param results the results container for the batch
+     */
+    public void registerBatchResults(InputFiles batch, PIVResults results) {
+        if (resultsByRelativeStartFrame.putIfAbsent(batch.getRelativeStartFrame(), results) != null) {
+            throw new InvalidPIVParametersException("Batch starting at relative frame " + batch.getRelativeStartFrame() + " was already registered");
+        }
+    }
+
+    /**
+     * Concatenates all registered batch results in frame order. Must only be called after all workers have completed.
+     * @return the concatenated results, or null if no results were produced
+     */
+    public PIVResults getOrderedResults() {
+        PIVResults firstResult = null;
+        PIVResults lastResult = null;
+        Iterator<PIVResults> resultsIter = resultsByRelativeStartFrame.values().iterator();
+        while (resultsIter.hasNext()) {
+            PIVResults result = resultsIter.next();
+            if (result.getAllMaps().isEmpty()) {
+                //Batch was not processed, due to a cancellation request
+                continue;
+            }
+
+            if (lastResult != null) {
+                lastResult.concatenate(result);
+            } else {
+                firstResult = result;
+            }
+
+            lastResult = result;
+        }
+
+        return firstResult;
+    }
+}
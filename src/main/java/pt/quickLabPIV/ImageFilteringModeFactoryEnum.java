@@ -7,6 +7,7 @@
 package pt.quickLabPIV;
 
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import pt.quickLabPIV.iareas.Tile;
 import pt.quickLabPIV.images.IImage;
@@ -108,4 +109,62 @@ public enum ImageFilteringModeFactoryEnum {
             throw new UnknownImageFilteringException("Unknown filtering mode: " + mode);
         }
     }
+
+    /**
+     * Creates the filtering job for the first image, enabling the concurrent filtering of each image.
+     * @param inputParameters the PIV input parameters
+     * @param pool the shared pool to use, or null to filter in the calling thread
+     * @param parallelism the maximum number of concurrent tasks
+     * @return the filtering job
+     */
+    public static Job<IImage, IImage> createMainImageAFilterJob(PIVInputParameters inputParameters, ForkJoinPool pool, int parallelism) {
+        return withParallelism(createMainImageAFilterJob(inputParameters), pool, parallelism);
+    }
+
+    /**
+     * Creates the filtering job for the second image, enabling the concurrent filtering of each image.
+     * @param inputParameters the PIV input parameters
+     * @param pool the shared pool to use, or null to filter in the calling thread
+     * @param parallelism the maximum number of concurrent tasks
+     * @return the filtering job
+     */
+    public static Job<IImage, IImage> createMainImageBFilterJob(PIVInputParameters inputParameters, ForkJoinPool pool, int parallelism) {
+        return withParallelism(createMainImageBFilterJob(inputParameters), pool, parallelism);
+    }
+
+    /**
+     * Creates the filtering job for the warped tiles of the first image, enabling the concurrent filtering of the tiles.
+     * @param inputParameters the PIV input parameters
+     * @param pool the shared pool to use, or null to filter in the calling thread
+     * @param parallelism the maximum number of concurrent tasks
+     * @return the filtering job
+     */
+    public static Job<List<Tile>, List<Tile>> createWarpedTilesAFilterJob(PIVInputParameters inputParameters, ForkJoinPool pool, int parallelism) {
+        return withTilesParallelism(createWarpedTilesAFilterJob(inputParameters), pool, parallelism);
+    }
+
+    /**
+     * Creates the filtering job for the warped tiles of the second image, enabling the concurrent filtering of the tiles.
+     * @param inputParameters the PIV input parameters
+     * @param pool the shared pool to use, or null to filter in the calling thread
+     * @param parallelism the maximum number of concurrent tasks
+     * @return the filtering job
+     */
+    public static Job<List<Tile>, List<Tile>> createWarpedTilesBFilterJob(PIVInputParameters inputParameters, ForkJoinPool pool, int parallelism) {
+        return withTilesParallelism(createWarpedTilesBFilterJob(inputParameters), pool, parallelism);
+    }
+
+    private static Job<IImage, IImage> withParallelism(Job<IImage, IImage> job, ForkJoinPool pool, int parallelism) {
+        if (job instanceof JavaImageFilterJob) {
+            ((JavaImageFilterJob)job).setParallelism(pool, parallelism);
+        }
+        return job;
+    }
+
+    private static Job<List<Tile>, List<Tile>> withTilesParallelism(Job<List<Tile>, List<Tile>> job, ForkJoinPool pool, int parallelism) {
+        if (job instanceof JavaTilesFilterJob) {
+            ((JavaTilesFilterJob)job).setParallelism(pool, parallelism);
+        }
+        return job;
+    }
 }
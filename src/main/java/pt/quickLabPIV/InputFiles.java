@@ -212,6 +212,17 @@ public class InputFiles {
         return splittedInputFiles;
 	}
 	
+	/**
+	 * Creates a contiguous sub-sequence of these input files, keeping the absolute and relative frame offsets consistent.
+	 * @param fromIndex the first file pair index (inclusive)
+	 * @param toIndex the last file pair index (exclusive)
+	 * @return the sub-sequence of input files
+	 */
+	public InputFiles subset(int fromIndex, int toIndex) {
+	    return new InputFiles(absoluteStartFrame + fromIndex, relativeStartFrame + fromIndex,
+	            inputFilesA.subList(fromIndex, toIndex), inputFilesB.subList(fromIndex, toIndex));
+	}
+
 	public List<InputFiles> splitIntoThreads() {
 	    PIVContextSingleton singleton = PIVContextSingleton.getSingleton();
 	    PIVRunParameters runParameters = singleton.getPIVRunParameters();
@@ -208,7 +208,8 @@ public class MatrixByte extends Matrix {
 		
 		if (computeMaxValue) {
 		    int maxValue = 0;
-		    for (int i = sourceOffset; i < source.length; i++) {
+		    //Source may be a larger reused buffer, so only the copied values are considered
+		    for (int i = sourceOffset; i < sourceOffset + matrix.length; i++) {
 		        int value = source[i];
 		        if (value < 0) {
 		            value += 256;
@@ -371,6 +372,9 @@ public class MatrixByte extends Matrix {
             result = (MatrixByte)matrix;
             if (result.getHeight() != height || result.getWidth() != width) {
                 result = new MatrixByte(new byte[height * width], height, width);
+            } else {
+                //Reused matrix must have the same max. value as a newly allocated one
+                result.setMaxValue(255.0f);
             }
         }
         
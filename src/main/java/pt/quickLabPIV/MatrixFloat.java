@@ -442,6 +442,9 @@ public class MatrixFloat extends Matrix {
             result = (MatrixFloat)matrix;
             if (result.getHeight() != height || result.getWidth() != width) {
                 result = new MatrixFloat(new float[height * width], height, width, this.getMaxValue());
+            } else {
+                //Reused matrix must have the same max. value as a newly allocated one
+                result.setMaxValue(this.getMaxValue());
             }
         }
        
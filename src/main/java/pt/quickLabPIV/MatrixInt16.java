@@ -246,7 +246,8 @@ public class MatrixInt16 extends Matrix {
 
         if (computeMaxValue) {
             int maxValue = 0;
-            for (int i = sourceOffset; i < source.length; i++) {
+            //Source may be a larger reused buffer, so only the copied values are considered
+            for (int i = sourceOffset; i < sourceOffset + matrix.length; i++) {
                 int value = source[i];
                 if (value < 0) {
                     value += 65536;
@@ -477,6 +478,9 @@ public class MatrixInt16 extends Matrix {
             result = (MatrixInt16)matrix;
             if (result.getHeight() != height || result.getWidth() != width) {
                 result = new MatrixInt16(new short[height * width], height, width);
+            } else {
+                //Reused matrix must have the same max. value as a newly allocated one
+                result.setMaxValue(65535.0f);
             }
         }
         
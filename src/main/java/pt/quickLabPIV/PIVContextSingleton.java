@@ -32,6 +32,16 @@ public class PIVContextSingleton {
         runParameters = new PIVRunParameters();        
     }
 
+    /**
+     * Replaces singleton instance parameters with new parameters instances, for the next PIV run of a long running
+     * process, while keeping the reusable objects that can be shared across runs.
+     */
+    public synchronized void resetParametersInstancesForNextRun() {
+        parameters = new PIVInputParameters();
+        reusableObjects.releaseRunObjects();
+        runParameters = new PIVRunParameters();
+    }
+
 	protected PIVInputParameters parameters;
 	protected PIVReusableObjects reusableObjects;
 	protected PIVRunParameters   runParameters;
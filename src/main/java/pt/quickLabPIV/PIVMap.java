@@ -8,6 +8,7 @@ package pt.quickLabPIV;
 
 import java.util.Iterator;
 
+import pt.quickLabPIV.exporter.IStreamingVelocityExporter;
 import pt.quickLabPIV.iareas.IterationStepTiles;
 import pt.quickLabPIV.iareas.Tile;
 
@@ -35,12 +36,17 @@ public class PIVMap implements Iterable<Velocities> {
     
     private boolean denseExport = false;
     private boolean prepared = false;
+    private boolean detached = false;
     
     private boolean swapUVOrder = false;
     private boolean markInvalidAsNaN = false;
+    private boolean keepValidity = false;
     
     public PIVMap() {
         PIVContextSingleton singleton = PIVContextSingleton.getSingleton();
+        PIVRunParameters runParameters = singleton.getPIVRunParameters();
+        IStreamingVelocityExporter streamingExporter = runParameters.getStreamingExporter();
+        keepValidity = runParameters.isVelocityStatistics() || streamingExporter != null && streamingExporter.isValidityExported();
         Object configurationObject = singleton.getPIVParameters().getSpecificConfiguration(PIVMapOptionalConfiguration.IDENTIFIER);
         if (configurationObject != null) {
             PIVMapOptionalConfiguration optional = (PIVMapOptionalConfiguration)configurationObject;
@@ -99,10 +105,11 @@ public class PIVMap implements Iterable<Velocities> {
         if (iterStepTiles.isDenseTiles()) {
             denseExport = true;
             
-            Velocities velocityMap = new Velocities(currentFrame, iterStepTiles.getDenseHeight(), iterStepTiles.getDenseWidth());
+            Velocities velocityMap = new Velocities(currentFrame, iterStepTiles.getDenseHeight(), iterStepTiles.getDenseWidth(), keepValidity);
             velocityMaps[relFrameNumber] = velocityMap;
             float[][] velocitiesU = velocityMap.getU();
             float[][] velocitiesV = velocityMap.getV();
+            byte[][] validity = velocityMap.getValidity();
 
             float[] uBuffer = iterStepTiles.getUBuffer();
             float[] vBuffer = iterStepTiles.getVBuffer();
@@ -113,18 +120,30 @@ public class PIVMap implements Iterable<Velocities> {
                     float v = vBuffer[idx];
                     velocitiesU[i][j] = swapUVOrder ? u : v;
                     velocitiesV[i][j] = swapUVOrder ? v : u;
+                    if (validity != null && (Float.isNaN(u) || Float.isNaN(v))) {
+                        //Dense vectors have no validation state, other than being masked out or not computed
+                        validity[i][j] = Velocities.INVALID_VECTOR;
+                    }
                 }
             }
         } else {
-            Velocities velocityMap = new Velocities(currentFrame, mapHeight, mapWidth);
+            Velocities velocityMap = new Velocities(currentFrame, mapHeight, mapWidth, keepValidity);
             
             velocityMaps[relFrameNumber] = velocityMap;
             float[][] velocitiesU = velocityMap.getU();
             float[][] velocitiesV = velocityMap.getV();
+            byte[][] validity = velocityMap.getValidity();
         
             for (int indexI = 0; indexI < mapHeight; indexI++) {
                 for (int indexJ = 0; indexJ < mapWidth; indexJ++) {
                     Tile tile = iterStepTiles.getTile(indexI, indexJ);
+                    if (validity != null) {
+                        if (tile.isMaskedDisplacement()) {
+                            validity[indexI][indexJ] = Velocities.MASKED_VECTOR;
+                        } else if (tile.isInvalidDisplacement()) {
+                            validity[indexI][indexJ] = Velocities.INVALID_VECTOR;
+                        }
+                    }
                     if (markInvalidAsNaN && (tile.isInvalidDisplacement() || tile.isMaskedDisplacement())) {
                         velocitiesU[indexI][indexJ] = Float.NaN;
                         velocitiesV[indexI][indexJ] = Float.NaN;
@@ -137,6 +156,39 @@ public class PIVMap implements Iterable<Velocities> {
         }
     }
     
+    /**
+     * Removes the velocity map of a frame from this PIV map, so that it can be released as soon as it is exported,
+     * e.g. by a streaming exporter.
+     * @param currentFrame the relative frame number
+     * @return the velocity map of the frame
+     */
+    public Velocities detachVelocities(int currentFrame) {
+        final int relFrameNumber = currentFrame - relativeFrameOffset;
+        
+        Velocities velocityMap = velocityMaps[relFrameNumber];
+        if (velocityMap == null) {
+            throw new InvalidPIVMapException("No velocity map exists for frame: " + currentFrame);
+        }
+        velocityMaps[relFrameNumber] = null;
+        detached = true;
+        
+        return velocityMap;
+    }
+    
+    /**
+     * Retrieves the velocity map of a frame, which is kept in this PIV map.
+     * @param currentFrame the relative frame number
+     * @return the velocity map of the frame
+     */
+    public Velocities getVelocities(int currentFrame) {
+        Velocities velocityMap = velocityMaps[currentFrame - relativeFrameOffset];
+        if (velocityMap == null) {
+            throw new InvalidPIVMapException("No velocity map exists for frame: " + currentFrame);
+        }
+        
+        return velocityMap;
+    }
+    
     public boolean isConcatCompatible(PIVMap otherMap) {
         //Just check for non-overlap, but allow uncontiguous...     
         if (otherMap.numberOfMaps > 0 && relativeFrameOffset + numberOfMaps > otherMap.relativeFrameOffset) {
@@ -259,6 +311,9 @@ public class PIVMap implements Iterable<Velocities> {
                     result = currentMap.velocityMaps[currentFrameIndex];
                     
                     //FIXME Iterator may point to a null entry.... due to partially processed PIV
+                    if (result == null && currentMap.detached) {
+                        throw new InvalidPIVMapException("Velocity maps were already exported while being computed");
+                    }
                     if (result == null) {
                         throw new InvalidPIVMapException("Not all velocity maps have been filled in");
                     }
@@ -283,7 +338,9 @@ public class PIVMap implements Iterable<Velocities> {
 
     public void clear() {
         for (Velocities velocityMap : velocityMaps) {
-            velocityMap.clear();
+            if (velocityMap != null) {
+                velocityMap.clear();
+            }
         }
         velocityMaps = null;
     }       
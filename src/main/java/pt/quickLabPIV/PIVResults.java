@@ -14,6 +14,7 @@ import java.util.List;
 public class PIVResults {
     private List<PIVMap> maps = new ArrayList<PIVMap>(5);
     private boolean denseMap = false;
+    private VelocityStatistics statistics;
     
     public PIVMap getOrCreateMap(int index) {
         if (maps.size() <= index) {
@@ -26,6 +27,28 @@ public class PIVResults {
         return map;
     }
 
+    /**
+     * Retrieves the temporal statistics of the velocity maps of these results, creating them on first use.
+     * @param height the velocity maps height
+     * @param width the velocity maps width
+     * @return the velocity statistics
+     */
+    public VelocityStatistics getOrCreateStatistics(int height, int width) {
+        if (statistics == null) {
+            statistics = new VelocityStatistics(height, width);
+        }
+        
+        return statistics;
+    }
+    
+    /**
+     * Retrieves the temporal statistics of the velocity maps, which include the statistics of all the concatenated results.
+     * @return the velocity statistics, or null if no statistics were accumulated
+     */
+    public VelocityStatistics getStatistics() {
+        return statistics;
+    }
+
     public List<PIVMap> getAllMaps() {
         return Collections.unmodifiableList(maps);
         
@@ -59,6 +82,16 @@ public class PIVResults {
             localMap.concatenate(otherMap);
         }
 
+        //Concatenated results share the merged statistics, since results are concatenated as a chain
+        if (otherPartialResults.statistics != null) {
+            if (statistics == null) {
+                statistics = otherPartialResults.statistics;
+            } else {
+                statistics.merge(otherPartialResults.statistics);
+            }
+        }
+        otherPartialResults.statistics = statistics;
+
     }
 
     public boolean isDenseMap() {
@@ -10,6 +10,8 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicReference;
 
 import pt.quickLabPIV.exporter.StructMultiFrameFloatVelocityExporter;
+import pt.quickLabPIV.images.ImageMaskCache;
+import pt.quickLabPIV.images.filters.FilteredImagesCache;
 import pt.quickLabPIV.interpolators.CrossCorrelationInterpolatorFactoryEnum;
 import pt.quickLabPIV.interpolators.IBasicCrossCorrelationInterpolator;
 import pt.quickLabPIV.interpolators.ICrossCorrelationInterpolator;
@@ -18,6 +20,8 @@ public class PIVReusableObjects {
 	private AtomicReference<CrossCorrelationInterpolatorFactoryEnum> interpolatorStrategy = new AtomicReference<CrossCorrelationInterpolatorFactoryEnum>(null); 
 	private ConcurrentHashMap<Long, ICrossCorrelationInterpolator> interpolatorByThread = 
 							new ConcurrentHashMap<Long, ICrossCorrelationInterpolator>();
+	private ConcurrentHashMap<String, ImageMaskCache> imageMasks = new ConcurrentHashMap<String, ImageMaskCache>();
+	private ConcurrentHashMap<Long, FilteredImagesCache> filteredImagesByThread = new ConcurrentHashMap<Long, FilteredImagesCache>();
 	/**
 	 * Retrieves a dedicated interpolator per each client Thread, if one is not available yet, it will be created, according to
 	 * specified strategy.
@@ -40,4 +44,48 @@ public class PIVReusableObjects {
 		
 		return interpolator;
 	}
+
+	/**
+	 * Retrieves the image mask shared by all client Threads, decoding the mask file on first use.
+	 * @param maskFilename the mask image filename
+	 * @return the shared image mask
+	 */
+	public ImageMaskCache getOrCreateImageMask(String maskFilename) {
+		return imageMasks.compute(maskFilename, (filename, mask) -> mask == null || mask.isStale() ? new ImageMaskCache(filename) : mask);
+	}
+
+	/**
+	 * Retrieves a dedicated filtered images cache per each client Thread, which is shared by the image filtering jobs and
+	 * the interpolators that run in the same Thread, if one is not available yet, it will be created.
+	 * @return the thread dedicated filtered images cache
+	 */
+	public FilteredImagesCache getOrCreateFilteredImagesCache() {
+		return filteredImagesByThread.computeIfAbsent(Thread.currentThread().getId(), threadId -> new FilteredImagesCache());
+	}
+
+	/**
+	 * Releases the filtered images cache of the calling Thread, which must be called when a PIV worker Thread completes,
+	 * since worker Threads are not reused across volumes, neither across runs.
+	 */
+	public void releaseFilteredImagesCache() {
+		filteredImagesByThread.remove(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Retrieves the number of filtered images caches held for the client Threads.
+	 * @return the number of filtered images caches
+	 */
+	public int getNumberOfFilteredImagesCaches() {
+		return filteredImagesByThread.size();
+	}
+
+	/**
+	 * Releases the objects that are bound to a single PIV run, namely the per-thread interpolators, whose client Threads
+	 * are not reused across runs, and the per-thread filtered images caches, while keeping the decoded image masks for the next runs.
+	 */
+	public void releaseRunObjects() {
+		interpolatorByThread.clear();
+		filteredImagesByThread.clear();
+		interpolatorStrategy.set(null);
+	}
 }
@@ -15,6 +15,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import pt.quickLabPIV.device.ComputationDevice;
+import pt.quickLabPIV.exporter.IStreamingVelocityExporter;
 import pt.quickLabPIV.exporter.StructMultiFrameFloatVelocityExporter;
 import pt.quickLabPIV.iareas.IAdaptiveInterVelocityInheritanceLogger;
 import pt.quickLabPIV.jobs.Job;
@@ -26,8 +27,24 @@ public class PIVRunParameters {
 	private AtomicBoolean  cancelRequested = new AtomicBoolean(false);
 	private Job<?,?> executionJob;
 	private StructMultiFrameFloatVelocityExporter exporter;
+	private IStreamingVelocityExporter streamingExporter;
 	private boolean useOpenCL = false;
 	private int totalCpuThreads;
+	private boolean dynamicFrameScheduling = true;
+	private int frameBatchSize = 0;
+	private int imagePrefetchDepth = 2;
+	private int imageReaderThreads = 2;
+	private int tilesParallelism = 0;
+	private int interpolationParallelism = 0;
+	private String stageTimingsFilename = null;
+	private boolean incrementalReIterations = true;
+	private boolean seedFromPreviousFrame = false;
+	private float seedRejectionFraction = 0.1f;
+	private boolean indexedVelocityStoreExport = false;
+	private boolean velocityStatistics = false;
+	private boolean velocityMapsExport = true;
+	private boolean aggregatedCrossCorrelation = false;
+	private long aggregatedCrossCorrelationTimeoutMillis = 5;
 	private ConcurrentHashMap<Long, Integer> threadIdToIndexMap = new ConcurrentHashMap<>();
 	
 	public void setVelocityInheritanceLogger(IAdaptiveInterVelocityInheritanceLogger velocityLogger) {
@@ -80,6 +97,19 @@ public class PIVRunParameters {
         exporter = _exporter;
     }
     
+    /**
+     * Sets an already opened exporter to which the velocity maps are written as soon as each frame is computed.
+     * When set, the velocity maps are not kept in the {@link PIVResults}.
+     * @param _streamingExporter the streaming exporter, or null to keep all velocity maps in memory
+     */
+    public void setStreamingExporter(IStreamingVelocityExporter _streamingExporter) {
+        streamingExporter = _streamingExporter;
+    }
+    
+    public IStreamingVelocityExporter getStreamingExporter() {
+        return streamingExporter;
+    }
+    
     public void putDeviceConfiguration(DeviceRuntimeConfiguration config) {
         deviceConfigurations.put(config.getDevice().getDeviceId(), config);
     }
@@ -100,6 +130,207 @@ public class PIVRunParameters {
         return totalCpuThreads;
     }
 
+    /**
+     * Selects whether frames are handed out to the PIV threads in small batches from a shared queue (dynamic, the
+     * default), or as a single contiguous slice per thread computed up front (static).
+     * Per-thread state carried across consecutive frames is reset at each batch boundary, so that both modes produce
+     * the same results. Static scheduling is always used when frames are seeded from the previous frame.
+     * @param _dynamicFrameScheduling true for dynamic scheduling, false for static
+     */
+    public void setDynamicFrameScheduling(boolean _dynamicFrameScheduling) {
+        dynamicFrameScheduling = _dynamicFrameScheduling;
+    }
+
+    public boolean isDynamicFrameScheduling() {
+        return dynamicFrameScheduling;
+    }
+
+    /**
+     * Sets the base number of frames per batch for dynamic frame scheduling.
+     * @param _frameBatchSize the number of frames per batch, or 0 for automatic selection
+     */
+    public void setFrameBatchSize(int _frameBatchSize) {
+        frameBatchSize = _frameBatchSize;
+    }
+
+    public int getFrameBatchSize() {
+        return frameBatchSize;
+    }
+
+    /**
+     * Sets the number of image pairs that each PIV thread reads ahead, while the current frame is being processed.
+     * @param _imagePrefetchDepth the number of image pairs to read ahead, or 0 to read images synchronously
+     */
+    public void setImagePrefetchDepth(int _imagePrefetchDepth) {
+        imagePrefetchDepth = _imagePrefetchDepth;
+    }
+
+    public int getImagePrefetchDepth() {
+        return imagePrefetchDepth;
+    }
+
+    /**
+     * Sets the number of threads in the I/O pool, shared by all PIV threads, that reads and decodes images ahead.
+     * @param _imageReaderThreads the number of image reader threads
+     */
+    public void setImageReaderThreads(int _imageReaderThreads) {
+        imageReaderThreads = _imageReaderThreads;
+    }
+
+    public int getImageReaderThreads() {
+        return imageReaderThreads;
+    }
+
+    /**
+     * Sets the number of concurrent tile groups used by each PIV thread, when computing the cross-correlations of a frame
+     * with the Java only cross-correlation.
+     * @param _tilesParallelism the number of concurrent tile groups, 1 to disable, or 0 for automatic selection based on
+     * the number of available cores that are not already used by frame level parallelism, which is the default
+     */
+    public void setTilesParallelism(int _tilesParallelism) {
+        tilesParallelism = _tilesParallelism;
+    }
+
+    public int getTilesParallelism() {
+        return tilesParallelism;
+    }
+
+    /**
+     * Sets the number of concurrent tasks used by each PIV thread, when interpolating the cross-correlation peaks of
+     * an adaptive step, both with the Java only and with the OpenCL cross-correlation. Each task uses its own
+     * interpolator instance. Dense optical flow interpolators without OpenCL also use it, to compute bands of image rows
+     * concurrently.
+     * @param _interpolationParallelism the number of concurrent tasks, 1 to disable, or 0 for automatic selection based on
+     * the number of available cores that are not already used by frame level parallelism, which is the default
+     */
+    public void setInterpolationParallelism(int _interpolationParallelism) {
+        interpolationParallelism = _interpolationParallelism;
+    }
+
+    public int getInterpolationParallelism() {
+        return interpolationParallelism;
+    }
+
+    /**
+     * Sets the file to which the per-stage pipeline timings and counters are written at the end of the PIV processing.
+     * The summary is written in JSON format when the filename ends with .json, or in CSV format otherwise.
+     * @param _stageTimingsFilename the summary path and filename, or null to not write the summary
+     */
+    public void setStageTimingsFilename(String _stageTimingsFilename) {
+        stageTimingsFilename = _stageTimingsFilename;
+    }
+
+    public String getStageTimingsFilename() {
+        return stageTimingsFilename;
+    }
+
+    /**
+     * Enables the incremental re-iteration of unstable tiles, where image warping is only redone for the regions
+     * covered by the tiles that are still being evaluated, instead of the whole image.
+     * @param _incrementalReIterations true to re-warp only the regions of unstable tiles, false to re-warp the whole image
+     */
+    public void setIncrementalReIterations(boolean _incrementalReIterations) {
+        incrementalReIterations = _incrementalReIterations;
+    }
+
+    public boolean isIncrementalReIterations() {
+        return incrementalReIterations;
+    }
+
+    /**
+     * Enables the seeding of the first adaptive step of each frame with the final displacements of the previous frame
+     * processed by the same PIV thread, when both frames are consecutive. Intended for time-resolved sequences, where
+     * the previous frame is a good predictor of the next one.
+     * @param _seedFromPreviousFrame true to seed each frame from the previous frame, false to start from zero displacements
+     */
+    public void setSeedFromPreviousFrame(boolean _seedFromPreviousFrame) {
+        seedFromPreviousFrame = _seedFromPreviousFrame;
+    }
+
+    public boolean isSeedFromPreviousFrame() {
+        return seedFromPreviousFrame;
+    }
+
+    /**
+     * Sets the maximum fraction of tiles whose first cross-correlation disagrees with the seeded displacement by more
+     * than a quarter of the tile size, above which the seed is discarded and the first adaptive step is redone
+     * from zero displacements.
+     * @param _seedRejectionFraction the maximum fraction of rejected tiles, between 0 and 1
+     */
+    public void setSeedRejectionFraction(float _seedRejectionFraction) {
+        seedRejectionFraction = _seedRejectionFraction;
+    }
+
+    public float getSeedRejectionFraction() {
+        return seedRejectionFraction;
+    }
+
+    /**
+     * Selects the velocities export format, when velocities are streamed to file. The indexed velocity store allows
+     * direct access to any frame, along with the validity of each vector, while the MATLAB file must be fully parsed.
+     * @param _indexedVelocityStoreExport true, to export an indexed velocity store, false, to export a MATLAB file
+     */
+    public void setIndexedVelocityStoreExport(boolean _indexedVelocityStoreExport) {
+        indexedVelocityStoreExport = _indexedVelocityStoreExport;
+    }
+
+    public boolean isIndexedVelocityStoreExport() {
+        return indexedVelocityStoreExport;
+    }
+
+    /**
+     * Enables the temporal statistics of the velocity maps, namely the mean, the RMS, the Reynolds stresses and the
+     * number of valid vectors, which are accumulated as each frame is computed.
+     * @param _velocityStatistics true, to accumulate the velocity statistics, false otherwise
+     */
+    public void setVelocityStatistics(boolean _velocityStatistics) {
+        velocityStatistics = _velocityStatistics;
+    }
+
+    public boolean isVelocityStatistics() {
+        return velocityStatistics;
+    }
+
+    /**
+     * Selects whether the velocity maps of each frame are exported, or only their statistics, in which case the velocity
+     * maps are released as soon as they are accumulated.
+     * @param _velocityMapsExport true, to export the velocity maps, false, to only export the velocity statistics
+     */
+    public void setVelocityMapsExport(boolean _velocityMapsExport) {
+        velocityMapsExport = _velocityMapsExport;
+    }
+
+    public boolean isVelocityMapsExport() {
+        return velocityMapsExport;
+    }
+
+    /**
+     * Enables the aggregation of the cross-correlation tiles of all PIV threads sharing a compute device, at each adaptive
+     * step, into a single cross-correlation computation, which then hands each thread its own results.
+     * @param _aggregatedCrossCorrelation true, to aggregate the cross-correlations of the PIV threads, false, for each thread
+     * to compute its own cross-correlations
+     */
+    public void setAggregatedCrossCorrelation(boolean _aggregatedCrossCorrelation) {
+        aggregatedCrossCorrelation = _aggregatedCrossCorrelation;
+    }
+
+    public boolean isAggregatedCrossCorrelation() {
+        return aggregatedCrossCorrelation;
+    }
+
+    /**
+     * Sets the maximum time a PIV thread waits for the other threads to provide their tiles, before the aggregated
+     * cross-correlation is computed with the tiles of the threads that have already provided them.
+     * @param _aggregatedCrossCorrelationTimeoutMillis the maximum wait time in milliseconds
+     */
+    public void setAggregatedCrossCorrelationTimeoutMillis(long _aggregatedCrossCorrelationTimeoutMillis) {
+        aggregatedCrossCorrelationTimeoutMillis = _aggregatedCrossCorrelationTimeoutMillis;
+    }
+
+    public long getAggregatedCrossCorrelationTimeoutMillis() {
+        return aggregatedCrossCorrelationTimeoutMillis;
+    }
+
     public void setDeviceRuntimeConfigurationMap(Map<Long, DeviceRuntimeConfiguration> map) {
         deviceConfigurations = map;
     }
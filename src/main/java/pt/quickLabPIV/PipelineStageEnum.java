@@ -0,0 +1,39 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV;
+
+/**
+ * Stages of the PIV pipeline that are individually timed for each frame.
+ * <br/>
+ * Frame stages are timed once per frame, while the remaining stages are timed for each adaptive level.
+ * @author lpnm
+ */
+public enum PipelineStageEnum {
+	ImageRead(true),
+	ImageFiltering(true),
+	ImageMasking(true),
+	WarpingAndClipping(false),
+	TilesFiltering(false),
+	CrossCorrelation(false),
+	PeakFinding(false),
+	Interpolation(false),
+	VectorMasking(false),
+	Validation(false),
+	OpticalFlow(true),
+	DenseVectorMasking(true),
+	Export(true);
+	
+	private final boolean frameStage;
+	
+	private PipelineStageEnum(boolean _frameStage) {
+		frameStage = _frameStage;
+	}
+	
+	public boolean isFrameStage() {
+		return frameStage;
+	}
+}
@@ -0,0 +1,311 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV;
+
+import java.util.Arrays;
+
+/**
+ * Accumulates the time spent in each stage of the PIV pipeline, together with the tiles, re-iterations and vector
+ * replacement counters, for each adaptive level.
+ * <br/>
+ * Each instance is updated by a single PIV thread, without synchronization, so values read from other threads while
+ * the PIV processing is still running are only approximate.
+ * @author lpnm
+ */
+public final class PipelineStageTimers {
+	private static final PipelineStageEnum[] STAGES = PipelineStageEnum.values();
+
+	private final int threadIndex;
+	private int adaptiveLevels;
+	private long frames;
+	//Last row holds the frame stages
+	private long[][] stageNanos;
+	private long[] tiles;
+	private long[] reIterations;
+	private long[] replacedVectors;
+	private long[] invalidVectors;
+
+	/**
+	 * Creates the timers for a PIV thread.
+	 * @param _threadIndex the PIV thread index, or -1 for timers that aggregate multiple threads
+	 * @param _adaptiveLevels the number of adaptive levels
+	 */
+	public PipelineStageTimers(int _threadIndex, int _adaptiveLevels) {
+		threadIndex = _threadIndex;
+		resize(_adaptiveLevels);
+	}
+
+	private void resize(int _adaptiveLevels) {
+		adaptiveLevels = _adaptiveLevels;
+		stageNanos = new long[adaptiveLevels + 1][STAGES.length];
+		tiles = new long[adaptiveLevels];
+		reIterations = new long[adaptiveLevels];
+		replacedVectors = new long[adaptiveLevels];
+		invalidVectors = new long[adaptiveLevels];
+		frames = 0;
+	}
+
+	/**
+	 * Marks the start of a stage.
+	 * @return the start timestamp, to be passed to {@link #end(PipelineStageEnum, int, long)}
+	 */
+	public long begin() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * Accounts the time elapsed since the stage start.
+	 * @param stage the stage that has ended
+	 * @param level the adaptive level, ignored for frame stages
+	 * @param beginNanos the stage start timestamp
+	 * @return the end timestamp, which can be used as the start timestamp of the next stage
+	 */
+	public long end(PipelineStageEnum stage, int level, long beginNanos) {
+		long endNanos = System.nanoTime();
+		stageNanos[stage.isFrameStage() ? adaptiveLevels : level][stage.ordinal()] += endNanos - beginNanos;
+		return endNanos;
+	}
+
+	/**
+	 * Accounts the time elapsed since the start of a frame stage.
+	 * @param stage the frame stage that has ended
+	 * @param beginNanos the stage start timestamp
+	 * @return the end timestamp, which can be used as the start timestamp of the next stage
+	 */
+	public long end(PipelineStageEnum stage, long beginNanos) {
+		return end(stage, 0, beginNanos);
+	}
+
+	public void addTiles(int level, int count) {
+		tiles[level] += count;
+	}
+
+	public void incrementReIterations(int level) {
+		reIterations[level]++;
+	}
+
+	public void addValidationResults(int level, int replaced, int invalid) {
+		replacedVectors[level] += replaced;
+		invalidVectors[level] += invalid;
+	}
+
+	public void incrementFrames() {
+		frames++;
+	}
+
+	public int getThreadIndex() {
+		return threadIndex;
+	}
+
+	public int getAdaptiveLevels() {
+		return adaptiveLevels;
+	}
+
+	public long getFrames() {
+		return frames;
+	}
+
+	/**
+	 * Retrieves the time spent in a stage.
+	 * @param stage the stage
+	 * @param level the adaptive level, ignored for frame stages
+	 * @return the accumulated time in nanoseconds
+	 */
+	public long getStageNanos(PipelineStageEnum stage, int level) {
+		return stageNanos[stage.isFrameStage() ? adaptiveLevels : level][stage.ordinal()];
+	}
+
+	/**
+	 * Retrieves the time spent in a stage, for all adaptive levels.
+	 * @param stage the stage
+	 * @return the accumulated time in nanoseconds
+	 */
+	public long getStageTotalNanos(PipelineStageEnum stage) {
+		if (stage.isFrameStage()) {
+			return stageNanos[adaptiveLevels][stage.ordinal()];
+		}
+
+		long total = 0;
+		for (int level = 0; level < adaptiveLevels; level++) {
+			total += stageNanos[level][stage.ordinal()];
+		}
+		return total;
+	}
+
+	public long getTiles(int level) {
+		return tiles[level];
+	}
+
+	public long getReIterations(int level) {
+		return reIterations[level];
+	}
+
+	public long getReplacedVectors(int level) {
+		return replacedVectors[level];
+	}
+
+	public long getInvalidVectors(int level) {
+		return invalidVectors[level];
+	}
+
+	/**
+	 * Resets all counters.
+	 */
+	public void clear() {
+		frames = 0;
+		for (long[] levelNanos : stageNanos) {
+			Arrays.fill(levelNanos, 0);
+		}
+		Arrays.fill(tiles, 0);
+		Arrays.fill(reIterations, 0);
+		Arrays.fill(replacedVectors, 0);
+		Arrays.fill(invalidVectors, 0);
+	}
+
+	/**
+	 * Adds the counters of other timers to these timers, resizing these timers if the number of adaptive levels differs.
+	 * @param other the timers to add
+	 */
+	public void add(PipelineStageTimers other) {
+		if (other.adaptiveLevels > adaptiveLevels) {
+			PipelineStageTimers previous = copy();
+			resize(other.adaptiveLevels);
+			add(previous);
+		}
+
+		frames += other.frames;
+		for (int level = 0; level < other.adaptiveLevels; level++) {
+			for (int stage = 0; stage < STAGES.length; stage++) {
+				stageNanos[level][stage] += other.stageNanos[level][stage];
+			}
+			tiles[level] += other.tiles[level];
+			reIterations[level] += other.reIterations[level];
+			replacedVectors[level] += other.replacedVectors[level];
+			invalidVectors[level] += other.invalidVectors[level];
+		}
+		for (int stage = 0; stage < STAGES.length; stage++) {
+			stageNanos[adaptiveLevels][stage] += other.stageNanos[other.adaptiveLevels][stage];
+		}
+	}
+
+	public PipelineStageTimers copy() {
+		PipelineStageTimers result = new PipelineStageTimers(threadIndex, adaptiveLevels);
+		result.add(this);
+		return result;
+	}
+
+	/**
+	 * Appends the CSV header matching the rows produced by {@link #appendCsvRows(StringBuilder)}.
+	 * @param sb the target string builder
+	 */
+	public static void appendCsvHeader(StringBuilder sb) {
+		sb.append("thread,level,frames,tiles,reIterations,replacedVectors,invalidVectors");
+		for (PipelineStageEnum stage : STAGES) {
+			sb.append(',');
+			sb.append(stage.name());
+			sb.append("Nanos");
+		}
+		sb.append('\n');
+	}
+
+	/**
+	 * Appends one CSV row per adaptive level, followed by a row with the frame stages.
+	 * @param sb the target string builder
+	 */
+	public void appendCsvRows(StringBuilder sb) {
+		String threadName = threadIndex < 0 ? "all" : Integer.toString(threadIndex);
+		for (int level = 0; level <= adaptiveLevels; level++) {
+			boolean frameRow = level == adaptiveLevels;
+			sb.append(threadName);
+			sb.append(',');
+			sb.append(frameRow ? "frame" : Integer.toString(level));
+			sb.append(',');
+			sb.append(frameRow ? frames : 0);
+			sb.append(',');
+			sb.append(frameRow ? 0 : tiles[level]);
+			sb.append(',');
+			sb.append(frameRow ? 0 : reIterations[level]);
+			sb.append(',');
+			sb.append(frameRow ? 0 : replacedVectors[level]);
+			sb.append(',');
+			sb.append(frameRow ? 0 : invalidVectors[level]);
+			for (int stage = 0; stage < STAGES.length; stage++) {
+				sb.append(',');
+				sb.append(stageNanos[level][stage]);
+			}
+			sb.append('\n');
+		}
+	}
+
+	/**
+	 * Appends these timers as a JSON object.
+	 * @param sb the target string builder
+	 */
+	public void appendJson(StringBuilder sb) {
+		sb.append("{\"thread\": ");
+		sb.append(threadIndex < 0 ? "\"all\"" : Integer.toString(threadIndex));
+		sb.append(", \"frames\": ");
+		sb.append(frames);
+		sb.append(", \"frameStagesNanos\": ");
+		appendJsonStages(sb, adaptiveLevels, true);
+		sb.append(", \"levels\": [");
+		for (int level = 0; level < adaptiveLevels; level++) {
+			if (level > 0) {
+				sb.append(", ");
+			}
+			sb.append("{\"level\": ");
+			sb.append(level);
+			sb.append(", \"tiles\": ");
+			sb.append(tiles[level]);
+			sb.append(", \"reIterations\": ");
+			sb.append(reIterations[level]);
+			sb.append(", \"replacedVectors\": ");
+			sb.append(replacedVectors[level]);
+			sb.append(", \"invalidVectors\": ");
+			sb.append(invalidVectors[level]);
+			sb.append(", \"stagesNanos\": ");
+			appendJsonStages(sb, level, false);
+			sb.append('}');
+		}
+		sb.append("]}");
+	}
+
+	private void appendJsonStages(StringBuilder sb, int row, boolean frameStages) {
+		sb.append('{');
+		boolean first = true;
+		for (PipelineStageEnum stage : STAGES) {
+			if (stage.isFrameStage() != frameStages) {
+				continue;
+			}
+			if (!first) {
+				sb.append(", ");
+			}
+			first = false;
+			sb.append('"');
+			sb.append(stage.name());
+			sb.append("\": ");
+			sb.append(stageNanos[row][stage.ordinal()]);
+		}
+		sb.append('}');
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(200);
+		sb.append("Frames: ");
+		sb.append(frames);
+		for (PipelineStageEnum stage : STAGES) {
+			sb.append(" - ");
+			sb.append(stage.name());
+			sb.append(": ");
+			sb.append(getStageTotalNanos(stage) / 1000000L);
+			sb.append(" ms");
+		}
+
+		return sb.toString();
+	}
+}
@@ -14,6 +14,7 @@ public class ProgressReport {
     private float elapsedTime;
     private float remainingTime;
     private String outputPath = null;
+    private PipelineStageTimers stageTimers = null;
     private ProgressReport next = null;
     
     private void updateCompleted() {
@@ -73,6 +74,18 @@ public class ProgressReport {
         return outputPath;
     }
 
+    /**
+     * Sets the per-stage pipeline timings, aggregated over all PIV threads.
+     * @param _stageTimers the aggregated timers snapshot, or null if not available
+     */
+    public void setStageTimers(PipelineStageTimers _stageTimers) {
+        stageTimers = _stageTimers;
+    }
+
+    public PipelineStageTimers getStageTimers() {
+        return stageTimers;
+    }
+
     public void setNext(ProgressReport _next) {
         next = _next;
     }
@@ -92,6 +105,7 @@ public class ProgressReport {
 		report.remainingTime = remainingTime;
 		report.timePerImage = timePerImage;
 		report.totalImages = totalImages;
+		report.stageTimers = stageTimers == null ? null : stageTimers.copy();
 		
 		return report;
 	}
@@ -7,15 +7,34 @@
 package pt.quickLabPIV;
 
 public class Velocities {
+    public static final byte VALID_VECTOR = 0;
+    public static final byte INVALID_VECTOR = 1;
+    public static final byte MASKED_VECTOR = 2;
+
 	private int frameNumber;
 	private float u[][];
 	private float v[][];
+	private byte validity[][];
 	
 	public Velocities(int frameNumber, int mapHeight, int mapWidth) {
 		this.frameNumber = frameNumber;
 		u = new float[mapHeight][mapWidth];
 		v = new float[mapHeight][mapWidth];
 	}
+
+	/**
+	 * Creates the velocities of a frame, optionally keeping the validity of each vector.
+	 * @param frameNumber the relative frame number
+	 * @param mapHeight the map height
+	 * @param mapWidth the map width
+	 * @param withValidity true, to keep the validity of each vector, false otherwise
+	 */
+	public Velocities(int frameNumber, int mapHeight, int mapWidth, boolean withValidity) {
+		this(frameNumber, mapHeight, mapWidth);
+		if (withValidity) {
+		    validity = new byte[mapHeight][mapWidth];
+		}
+	}
 	
 	public int getFrameNumber() {
 		return frameNumber;
@@ -29,8 +48,17 @@ public class Velocities {
 		return v;
 	}
 
+	/**
+	 * Retrieves the validity of each vector, as one of {@link #VALID_VECTOR}, {@link #INVALID_VECTOR} or {@link #MASKED_VECTOR}.
+	 * @return the vectors validity, or null if the validity is not kept
+	 */
+	public byte[][] getValidity() {
+	    return validity;
+	}
+
     public void clear() {
         u = null;
         v = null;
+        validity = null;
     }
 }
@@ -0,0 +1,199 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV;
+
+/**
+ * Temporal statistics of the velocity maps, accumulated in place as each frame is computed, with Welford's online
+ * algorithm, so that the velocity maps need not be kept.
+ * <br/>
+ * Each vector location has its own number of valid vectors, since invalid, masked or not computed vectors are not
+ * accumulated. Partial statistics, e.g. from frame batches processed by other threads, are combined with
+ * {@link #merge(VelocityStatistics)}.
+ * <br/>
+ * <b>NOTE:</b> Instances are not thread-safe.
+ * @author lpnm
+ */
+public class VelocityStatistics {
+    private final int height;
+    private final int width;
+    private final int[] validCount;
+    private final double[] meanU;
+    private final double[] meanV;
+    //Sums of squared differences from the mean, and the UV co-moment
+    private final double[] m2U;
+    private final double[] m2V;
+    private final double[] cUV;
+    private int numberOfFrames;
+
+    public VelocityStatistics(int _height, int _width) {
+        height = _height;
+        width = _width;
+        validCount = new int[height * width];
+        meanU = new double[height * width];
+        meanV = new double[height * width];
+        m2U = new double[height * width];
+        m2V = new double[height * width];
+        cUV = new double[height * width];
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Retrieves the number of accumulated frames.
+     * @return the number of frames
+     */
+    public int getNumberOfFrames() {
+        return numberOfFrames;
+    }
+
+    /**
+     * Accumulates the velocities of a frame. When the vectors validity is kept, only valid vectors are accumulated,
+     * otherwise vectors marked as NaN are skipped.
+     * @param velocities the frame velocities
+     */
+    public void accumulate(Velocities velocities) {
+        final float[][] us = velocities.getU();
+        final float[][] vs = velocities.getV();
+        final byte[][] validity = velocities.getValidity();
+        if (us.length != height || us[0].length != width) {
+            throw new InvalidPIVMapException("Velocity map geometry doesn't match the statistics geometry");
+        }
+
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
+                final float u = us[i][j];
+                final float v = vs[i][j];
+                if (Float.isNaN(u) || Float.isNaN(v) || validity != null && validity[i][j] != Velocities.VALID_VECTOR) {
+                    continue;
+                }
+
+                final int idx = i * width + j;
+                final int n = ++validCount[idx];
+                final double deltaU = u - meanU[idx];
+                final double deltaV = v - meanV[idx];
+                meanU[idx] += deltaU / n;
+                meanV[idx] += deltaV / n;
+                m2U[idx] += deltaU * (u - meanU[idx]);
+                m2V[idx] += deltaV * (v - meanV[idx]);
+                cUV[idx] += deltaU * (v - meanV[idx]);
+            }
+        }
+        numberOfFrames++;
+    }
+
+    /**
+     * Merges other partial statistics into these statistics.
+     * @param other the other partial statistics, which are not modified
+     */
+    public void merge(VelocityStatistics other) {
+        if (other.height != height || other.width != width) {
+            throw new PIVConcatException("Statistics to merge have different velocity maps geometries");
+        }
+
+        for (int idx = 0; idx < height * width; idx++) {
+            final int nA = validCount[idx];
+            final int nB = other.validCount[idx];
+            if (nB == 0) {
+                continue;
+            }
+            if (nA == 0) {
+                validCount[idx] = nB;
+                meanU[idx] = other.meanU[idx];
+                meanV[idx] = other.meanV[idx];
+                m2U[idx] = other.m2U[idx];
+                m2V[idx] = other.m2V[idx];
+                cUV[idx] = other.cUV[idx];
+                continue;
+            }
+
+            final double n = (double)nA + nB;
+            final double deltaU = other.meanU[idx] - meanU[idx];
+            final double deltaV = other.meanV[idx] - meanV[idx];
+            final double weight = (double)nA * nB / n;
+            validCount[idx] = nA + nB;
+            meanU[idx] += deltaU * nB / n;
+            meanV[idx] += deltaV * nB / n;
+            m2U[idx] += other.m2U[idx] + deltaU * deltaU * weight;
+            m2V[idx] += other.m2V[idx] + deltaV * deltaV * weight;
+            cUV[idx] += other.cUV[idx] + deltaU * deltaV * weight;
+        }
+        numberOfFrames += other.numberOfFrames;
+    }
+
+    public int getValidCount(int i, int j) {
+        return validCount[i * width + j];
+    }
+
+    public float getMeanU(int i, int j) {
+        return (float)meanU[i * width + j];
+    }
+
+    public float getMeanV(int i, int j) {
+        return (float)meanV[i * width + j];
+    }
+
+    /**
+     * Retrieves the Reynolds normal stress of U, the mean of the squared U fluctuations.
+     * @param i the vector location in I
+     * @param j the vector location in J
+     * @return the U normal stress, or NaN if no valid vectors were accumulated
+     */
+    public float getReynoldsStressUU(int i, int j) {
+        return variance(m2U, i * width + j);
+    }
+
+    /**
+     * Retrieves the Reynolds normal stress of V, the mean of the squared V fluctuations.
+     * @param i the vector location in I
+     * @param j the vector location in J
+     * @return the V normal stress, or NaN if no valid vectors were accumulated
+     */
+    public float getReynoldsStressVV(int i, int j) {
+        return variance(m2V, i * width + j);
+    }
+
+    /**
+     * Retrieves the Reynolds shear stress, the mean of the product of the U and V fluctuations.
+     * @param i the vector location in I
+     * @param j the vector location in J
+     * @return the shear stress, or NaN if no valid vectors were accumulated
+     */
+    public float getReynoldsStressUV(int i, int j) {
+        return variance(cUV, i * width + j);
+    }
+
+    /**
+     * Retrieves the root mean square of the U fluctuations.
+     * @param i the vector location in I
+     * @param j the vector location in J
+     * @return the U RMS, or NaN if no valid vectors were accumulated
+     */
+    public float getRmsU(int i, int j) {
+        return (float)Math.sqrt(getReynoldsStressUU(i, j));
+    }
+
+    /**
+     * Retrieves the root mean square of the V fluctuations.
+     * @param i the vector location in I
+     * @param j the vector location in J
+     * @return the V RMS, or NaN if no valid vectors were accumulated
+     */
+    public float getRmsV(int i, int j) {
+        return (float)Math.sqrt(getReynoldsStressVV(i, j));
+    }
+
+    private float variance(double[] moments, int idx) {
+        final int n = validCount[idx];
+        return n == 0 ? Float.NaN : (float)(moments[idx] / n);
+    }
+}
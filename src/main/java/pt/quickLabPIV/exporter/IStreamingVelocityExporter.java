@@ -0,0 +1,64 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.exporter;
+
+import pt.quickLabPIV.PIVMap;
+import pt.quickLabPIV.Velocities;
+
+/**
+ * Exporter that writes the velocities of each frame as soon as the frame is computed, so that the memory usage doesn't
+ * grow with the number of frames.
+ * <br/>
+ * <b>NOTE:</b> {@link #exportFrame(PIVMap, Velocities)} must be thread-safe, while opening and closing the file need not be.
+ * @author lpnm
+ */
+public interface IStreamingVelocityExporter {
+    /**
+     * Creates the export file.
+     * @param filename the file to create
+     */
+    void openFile(String filename);
+
+    /**
+     * Exports the velocities of a frame, which may be called by multiple PIV threads, with frames out of order.
+     * @param map the PIV map of the batch to which the frame belongs
+     * @param velocities the frame velocities
+     */
+    void exportFrame(PIVMap map, Velocities velocities);
+
+    /**
+     * Aborts the export, waking up all threads that may be blocked exporting frames.
+     */
+    void abort();
+
+    /**
+     * Completes the export with the frames exported so far and closes the file.
+     */
+    void closeFile();
+
+    /**
+     * Retrieves the number of frames that were written to the file, so far.
+     * @return the number of frames written
+     */
+    int getNumberOfExportedFrames();
+
+    /**
+     * Informs the exporter of how far ahead of the next frame to be written the PIV threads may be computing frames,
+     * so that exporters that hold out of order frames do not block threads that cannot be waited on.
+     * @param frames the maximum number of frames in flight
+     */
+    default void setMaxFramesInFlight(int frames) {
+    }
+
+    /**
+     * Checks if the exporter stores the validity of each vector, which must then be kept by the {@link Velocities}.
+     * @return true if vector validity is exported, false otherwise
+     */
+    default boolean isValidityExported() {
+        return false;
+    }
+}
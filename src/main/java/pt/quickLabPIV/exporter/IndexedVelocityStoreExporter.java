@@ -0,0 +1,287 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.exporter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import pt.quickLabPIV.PIVMap;
+import pt.quickLabPIV.Velocities;
+
+/**
+ * Exports the velocity maps to an indexed velocity store, a random access file format, that can be read, while being
+ * written, with {@link IndexedVelocityStoreReader}.
+ * <br/>
+ * All values are little-endian. The file starts with a fixed size header, followed by the frame index and then by the
+ * frame records:
+ * <ul>
+ * <li>Header ({@value #HEADER_BYTES} bytes): signature, version, flags, map height, map width, interrogation area height
+ * and width, absolute frame offset, frame capacity, number of written frames, record size and the first record offset.</li>
+ * <li>Frame index: one 64-bit file offset per frame, up to the frame capacity, which is zero until the frame is written.</li>
+ * <li>Frame records: frame number, followed by the U plane, the V plane, both as row-major floats, and the vector
+ * validity plane, as one byte per vector, padded to 8 bytes.</li>
+ * </ul>
+ * Frame records are appended in completion order, so no frame reordering is needed. Each record is written before its
+ * index entry and the number of written frames is updated last.
+ * <br/>
+ * <b>NOTE:</b> {@link #exportFrame(PIVMap, Velocities)} is thread-safe, while opening and closing the file is not.
+ * @author lpnm
+ */
+public class IndexedVelocityStoreExporter implements IStreamingVelocityExporter {
+    public static final String FILE_EXTENSION = ".qvs";
+
+    static final byte[] SIGNATURE = { 'Q', 'L', 'P', 'I', 'V', 'V', 'S', 0 };
+    static final int VERSION = 1;
+    static final int FLAG_DENSE = 1;
+    static final int HEADER_BYTES = 64;
+    static final int RECORD_HEADER_BYTES = 8;
+
+    static final int VERSION_OFFSET = 8;
+    static final int FLAGS_OFFSET = 12;
+    static final int HEIGHT_OFFSET = 16;
+    static final int WIDTH_OFFSET = 20;
+    static final int IA_HEIGHT_OFFSET = 24;
+    static final int IA_WIDTH_OFFSET = 28;
+    static final int ABSOLUTE_FRAME_OFFSET_OFFSET = 32;
+    static final int FRAME_CAPACITY_OFFSET = 36;
+    static final int NUMBER_OF_FRAMES_OFFSET = 40;
+    static final int RECORD_BYTES_OFFSET = 48;
+    static final int FIRST_RECORD_OFFSET = 56;
+
+    private final int frameCapacity;
+    private FileChannel channel;
+    private ByteBuffer recordBuffer;
+    private final ByteBuffer indexEntry = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer framesCount = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private boolean fileIsOpen;
+    private boolean aborted;
+    private boolean[] exportedFrames;
+    private int numberOfFrames;
+    private int height;
+    private int width;
+    private long recordBytes;
+    private long firstRecordOffset;
+
+    /**
+     * Creates a new indexed velocity store exporter.
+     * @param _frameCapacity the number of frames to export, which sizes the frame index
+     */
+    public IndexedVelocityStoreExporter(int _frameCapacity) {
+        if (_frameCapacity < 1) {
+            throw new ExportFailedException("Velocity store must hold at least one frame");
+        }
+        frameCapacity = _frameCapacity;
+    }
+
+    /**
+     * Creates the velocity store file and writes an empty header and frame index.
+     * @param filename the velocity store file to create
+     */
+    @Override
+    public void openFile(String filename) {
+        if (fileIsOpen) {
+            throw new InvalidStateException("File has already been opened");
+        }
+
+        try {
+            channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                                       StandardOpenOption.READ, StandardOpenOption.WRITE);
+            firstRecordOffset = HEADER_BYTES + (long)frameCapacity * Long.BYTES;
+            ByteBuffer header = createHeader(null);
+            writeFullyAt(header, 0);
+            //Zero filled frame index
+            writeFullyAt(ByteBuffer.allocate(1), firstRecordOffset - 1);
+        } catch (IOException e) {
+            closeQuietly();
+            throw new ExportFailedException("Failed to create velocity store file", e);
+        }
+
+        fileIsOpen = true;
+        aborted = false;
+        numberOfFrames = 0;
+        exportedFrames = new boolean[frameCapacity];
+        recordBuffer = null;
+    }
+
+    private ByteBuffer createHeader(PIVMap map) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(SIGNATURE);
+        header.putInt(VERSION_OFFSET, VERSION);
+        if (map != null) {
+            header.putInt(FLAGS_OFFSET, map.isDenseExport() ? FLAG_DENSE : 0);
+            header.putInt(HEIGHT_OFFSET, height);
+            header.putInt(WIDTH_OFFSET, width);
+            header.putInt(IA_HEIGHT_OFFSET, map.getIAHeight());
+            header.putInt(IA_WIDTH_OFFSET, map.getIAWidth());
+            header.putInt(ABSOLUTE_FRAME_OFFSET_OFFSET, map.getAbsoluteFrameOffset());
+            header.putLong(RECORD_BYTES_OFFSET, recordBytes);
+        }
+        header.putInt(FRAME_CAPACITY_OFFSET, frameCapacity);
+        header.putInt(NUMBER_OF_FRAMES_OFFSET, numberOfFrames);
+        header.putLong(FIRST_RECORD_OFFSET, firstRecordOffset);
+        header.rewind();
+
+        return header;
+    }
+
+    static long computeRecordBytes(int height, int width) {
+        final long vectors = (long)height * width;
+        final long bytes = RECORD_HEADER_BYTES + 2 * vectors * Float.BYTES + vectors;
+        return (bytes + 7L) & ~7L;
+    }
+
+    /**
+     * Exports the velocities of a frame, appending its record and updating the frame index.
+     * @param map the PIV map of the batch to which the frame belongs
+     * @param velocities the frame velocities
+     */
+    @Override
+    public synchronized void exportFrame(PIVMap map, Velocities velocities) {
+        if (!fileIsOpen) {
+            throw new InvalidStateException("File must be opened before exporting frames");
+        }
+
+        if (aborted) {
+            throw new ExportFailedException("Velocities export was aborted");
+        }
+
+        final int frame = velocities.getFrameNumber();
+        if (frame < 0 || frame >= frameCapacity) {
+            throw new ExportFailedException("Frame: " + frame + " is outside of the velocity store capacity of: " + frameCapacity + " frames");
+        }
+
+        if (exportedFrames[frame]) {
+            throw new ExportFailedException("Velocities for frame: " + frame + " were already exported");
+        }
+
+        final float[][] u = velocities.getU();
+        final float[][] v = velocities.getV();
+        if (recordBuffer == null) {
+            height = u.length;
+            width = u[0].length;
+            recordBytes = computeRecordBytes(height, width);
+            if (recordBytes > Integer.MAX_VALUE) {
+                throw new ExportFailedException("Velocity maps are too large for the velocity store");
+            }
+            recordBuffer = ByteBuffer.allocate((int)recordBytes).order(ByteOrder.LITTLE_ENDIAN);
+        } else if (u.length != height || u[0].length != width) {
+            throw new ExportFailedException("Velocity map of frame: " + frame + " has a different size than the previous frames");
+        }
+
+        try {
+            if (numberOfFrames == 0) {
+                writeFullyAt(createHeader(map), 0);
+            }
+
+            fillRecord(frame, u, v, velocities.getValidity());
+            final long recordOffset = firstRecordOffset + numberOfFrames * recordBytes;
+            writeFullyAt(recordBuffer, recordOffset);
+
+            indexEntry.clear();
+            indexEntry.putLong(recordOffset);
+            indexEntry.flip();
+            writeFullyAt(indexEntry, HEADER_BYTES + (long)frame * Long.BYTES);
+
+            numberOfFrames++;
+            exportedFrames[frame] = true;
+            framesCount.clear();
+            framesCount.putInt(numberOfFrames);
+            framesCount.flip();
+            writeFullyAt(framesCount, NUMBER_OF_FRAMES_OFFSET);
+        } catch (IOException e) {
+            aborted = true;
+            throw new ExportFailedException("Failed to export velocities of frame: " + frame, e);
+        }
+    }
+
+    private void fillRecord(int frame, float[][] u, float[][] v, byte[][] validity) {
+        recordBuffer.clear();
+        recordBuffer.putInt(frame);
+        recordBuffer.putInt(0);
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
+                recordBuffer.putFloat(u[i][j]);
+            }
+        }
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
+                recordBuffer.putFloat(v[i][j]);
+            }
+        }
+        if (validity != null) {
+            for (int i = 0; i < height; i++) {
+                recordBuffer.put(validity[i]);
+            }
+        } else {
+            //Validity not kept, so all vectors are reported as valid
+            for (int index = 0; index < height * width; index++) {
+                recordBuffer.put(Velocities.VALID_VECTOR);
+            }
+        }
+        while (recordBuffer.hasRemaining()) {
+            recordBuffer.put((byte)0);
+        }
+        recordBuffer.flip();
+    }
+
+    private void writeFullyAt(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    @Override
+    public synchronized void abort() {
+        aborted = true;
+    }
+
+    @Override
+    public synchronized int getNumberOfExportedFrames() {
+        return numberOfFrames;
+    }
+
+    @Override
+    public boolean isValidityExported() {
+        return true;
+    }
+
+    /**
+     * Closes the velocity store file. Frames that were not exported remain unavailable in the frame index.
+     */
+    @Override
+    public synchronized void closeFile() {
+        if (!fileIsOpen) {
+            throw new InvalidStateException("File is not open");
+        }
+
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            throw new ExportFailedException("Failed to complete velocities export", e);
+        } finally {
+            closeQuietly();
+            fileIsOpen = false;
+            recordBuffer = null;
+            exportedFrames = null;
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            //Nothing else to do
+        }
+        channel = null;
+    }
+}
@@ -0,0 +1,229 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.exporter;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Random access reader of the velocity store files written by {@link IndexedVelocityStoreExporter}.
+ * <br/>
+ * The header and the frame index are memory-mapped once, while the frame records are memory-mapped in windows of
+ * consecutive records, so that any frame can be accessed directly, without copies, regardless of the number of frames.
+ * The header is read through the mapping, thus a store that is still being written can be read, with frames becoming
+ * available as they are exported.
+ * <br/>
+ * <b>NOTE:</b> Instances are not thread-safe.
+ * @author lpnm
+ */
+public class IndexedVelocityStoreReader implements Closeable {
+    private static final long WINDOW_BYTES = 256L * 1024L * 1024L;
+
+    private final FileChannel channel;
+    private final ByteBuffer header;
+    private final Map<Long, MappedByteBuffer> windows = new HashMap<Long, MappedByteBuffer>();
+
+    /**
+     * Opens a velocity store for reading.
+     * @param filePath the velocity store file
+     * @throws IOException if the file cannot be read or is not a velocity store
+     */
+    public IndexedVelocityStoreReader(Path filePath) throws IOException {
+        channel = FileChannel.open(filePath, StandardOpenOption.READ);
+        try {
+            if (channel.size() < IndexedVelocityStoreExporter.HEADER_BYTES) {
+                throw new FileNotFoundException("File is not a velocity store");
+            }
+            ByteBuffer fixedHeader = channel.map(FileChannel.MapMode.READ_ONLY, 0, IndexedVelocityStoreExporter.HEADER_BYTES);
+            for (int index = 0; index < IndexedVelocityStoreExporter.SIGNATURE.length; index++) {
+                if (fixedHeader.get(index) != IndexedVelocityStoreExporter.SIGNATURE[index]) {
+                    throw new FileNotFoundException("Wrong file signature");
+                }
+            }
+            fixedHeader.order(ByteOrder.LITTLE_ENDIAN);
+            int version = fixedHeader.getInt(IndexedVelocityStoreExporter.VERSION_OFFSET);
+            if (version != IndexedVelocityStoreExporter.VERSION) {
+                throw new FileNotFoundException("Unsupported velocity store version: " + version);
+            }
+            long firstRecordOffset = fixedHeader.getLong(IndexedVelocityStoreExporter.FIRST_RECORD_OFFSET);
+            header = channel.map(FileChannel.MapMode.READ_ONLY, 0, firstRecordOffset).order(ByteOrder.LITTLE_ENDIAN);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public boolean isDenseExport() {
+        return (header.getInt(IndexedVelocityStoreExporter.FLAGS_OFFSET) & IndexedVelocityStoreExporter.FLAG_DENSE) != 0;
+    }
+
+    /**
+     * Retrieves the velocity map height, which is only known after the first frame is written.
+     * @return the map height, or 0 if no frame was written yet
+     */
+    public int getMapHeight() {
+        return header.getInt(IndexedVelocityStoreExporter.HEIGHT_OFFSET);
+    }
+
+    /**
+     * Retrieves the velocity map width, which is only known after the first frame is written.
+     * @return the map width, or 0 if no frame was written yet
+     */
+    public int getMapWidth() {
+        return header.getInt(IndexedVelocityStoreExporter.WIDTH_OFFSET);
+    }
+
+    public int getIAHeight() {
+        return header.getInt(IndexedVelocityStoreExporter.IA_HEIGHT_OFFSET);
+    }
+
+    public int getIAWidth() {
+        return header.getInt(IndexedVelocityStoreExporter.IA_WIDTH_OFFSET);
+    }
+
+    public int getAbsoluteFrameOffset() {
+        return header.getInt(IndexedVelocityStoreExporter.ABSOLUTE_FRAME_OFFSET_OFFSET);
+    }
+
+    public int getFrameCapacity() {
+        return header.getInt(IndexedVelocityStoreExporter.FRAME_CAPACITY_OFFSET);
+    }
+
+    /**
+     * Retrieves the number of frames that were written, so far.
+     * @return the number of written frames
+     */
+    public int getNumberOfFrames() {
+        return header.getInt(IndexedVelocityStoreExporter.NUMBER_OF_FRAMES_OFFSET);
+    }
+
+    /**
+     * Checks if the velocities of a frame were written.
+     * @param frame the frame number, relative to the store absolute frame offset
+     * @return true if the frame can be read, false otherwise
+     */
+    public boolean isFrameAvailable(int frame) {
+        checkFrame(frame);
+        return header.getLong(IndexedVelocityStoreExporter.HEADER_BYTES + frame * Long.BYTES) != 0;
+    }
+
+    private void checkFrame(int frame) {
+        if (frame < 0 || frame >= getFrameCapacity()) {
+            throw new ArrayIndexOutOfBoundsException("The requested frame [" + frame + "] is outside of the range of the number of frames [" +
+                                                     getFrameCapacity() + "] of the velocity store.");
+        }
+    }
+
+    /**
+     * Maps the record of a frame.
+     * @param frame the frame number
+     * @return a read-only little-endian buffer with the whole frame record
+     * @throws IOException if the frame is not available or cannot be mapped
+     */
+    private ByteBuffer getRecord(int frame) throws IOException {
+        checkFrame(frame);
+        final long recordOffset = header.getLong(IndexedVelocityStoreExporter.HEADER_BYTES + frame * Long.BYTES);
+        if (recordOffset == 0) {
+            throw new FileNotFoundException("Velocities of frame: " + frame + " are not available");
+        }
+
+        final long recordBytes = header.getLong(IndexedVelocityStoreExporter.RECORD_BYTES_OFFSET);
+        final long firstRecordOffset = header.getLong(IndexedVelocityStoreExporter.FIRST_RECORD_OFFSET);
+        final long recordsPerWindow = Math.max(1L, WINDOW_BYTES / recordBytes);
+        final long slot = (recordOffset - firstRecordOffset) / recordBytes;
+        final long window = slot / recordsPerWindow;
+        final long windowStart = firstRecordOffset + window * recordsPerWindow * recordBytes;
+        final long recordEnd = recordOffset + recordBytes - windowStart;
+
+        MappedByteBuffer windowBuffer = windows.get(window);
+        if (windowBuffer == null || windowBuffer.capacity() < recordEnd) {
+            //Windows of a store that is being written can only span the records written so far
+            long windowBytes = Math.min(recordsPerWindow * recordBytes, channel.size() - windowStart);
+            windowBuffer = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowBytes);
+            windows.put(window, windowBuffer);
+        }
+
+        ByteBuffer record = windowBuffer.duplicate();
+        record.position((int)(recordOffset - windowStart));
+        record.limit((int)recordEnd);
+        return record.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Retrieves the U velocities of a frame, without copying them.
+     * @param frame the frame number
+     * @return the read-only U velocities, in row-major order
+     * @throws IOException if the frame is not available or cannot be mapped
+     */
+    public FloatBuffer getU(int frame) throws IOException {
+        return getPlane(frame, 0);
+    }
+
+    /**
+     * Retrieves the V velocities of a frame, without copying them.
+     * @param frame the frame number
+     * @return the read-only V velocities, in row-major order
+     * @throws IOException if the frame is not available or cannot be mapped
+     */
+    public FloatBuffer getV(int frame) throws IOException {
+        return getPlane(frame, 1);
+    }
+
+    private FloatBuffer getPlane(int frame, int plane) throws IOException {
+        final int vectors = getMapHeight() * getMapWidth();
+        ByteBuffer record = getRecord(frame);
+        record.position(IndexedVelocityStoreExporter.RECORD_HEADER_BYTES + plane * vectors * Float.BYTES);
+        record.limit(record.position() + vectors * Float.BYTES);
+        return record.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+    }
+
+    /**
+     * Retrieves the validity of the vectors of a frame, without copying them.
+     * @param frame the frame number
+     * @return the read-only vectors validity, in row-major order, as defined by {@link pt.quickLabPIV.Velocities#getValidity()}
+     * @throws IOException if the frame is not available or cannot be mapped
+     */
+    public ByteBuffer getValidity(int frame) throws IOException {
+        final int vectors = getMapHeight() * getMapWidth();
+        ByteBuffer record = getRecord(frame);
+        record.position(IndexedVelocityStoreExporter.RECORD_HEADER_BYTES + 2 * vectors * Float.BYTES);
+        record.limit(record.position() + vectors);
+        return record.slice();
+    }
+
+    public float[][] readU(int frame) throws IOException {
+        return toMatrix(getU(frame));
+    }
+
+    public float[][] readV(int frame) throws IOException {
+        return toMatrix(getV(frame));
+    }
+
+    private float[][] toMatrix(FloatBuffer plane) {
+        float[][] result = new float[getMapHeight()][getMapWidth()];
+        for (int i = 0; i < result.length; i++) {
+            plane.get(result[i]);
+        }
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        windows.clear();
+        channel.close();
+    }
+}
@@ -59,29 +59,22 @@ abstract class MatlabLevel5Element {
 	 * Writes Matlab data Element to the output stream.
 	 * @param fos the file stream to write to
 	 */
-	public abstract void writeToOuputStream(FileOutputStream fos);
-	
-	protected void writeShort(FileOutputStream fos, short value) throws IOException {
-		fos.write(value);
-		fos.write(value >>> 8);
+	public void writeToOuputStream(FileOutputStream fos) {
+		MatlabLevel5Writer writer = new MatlabLevel5Writer(fos.getChannel());
+		try {
+			writeTo(writer);
+			writer.flush();
+		} catch (IOException e) {
+			throw new ExportFailedException("Failed to export data to file", e);
+		}
 	}
 	
-	protected void writeUInt32(FileOutputStream fos, long value) throws IOException {
-	    if (value > MAX_UINT32) {
-	        throw new ExportFailedException("Number to large to fit inside a 32-bit unsigned");
-	    }
-		fos.write((int)(value & 0x0ff));
-		fos.write((int)((value >>> 8)  & 0x0ff));
-		fos.write((int)((value >>> 16) & 0x0ff));
-		fos.write((int)((value >>> 24) & 0x0ff));
-	}
-
-   protected void writeInt(FileOutputStream fos, int value) throws IOException {
-        fos.write(value & 0x0ff);
-        fos.write(value >>> 8);
-        fos.write(value >>> 16);
-        fos.write(value >>> 24);
-    }
+	/**
+	 * Writes Matlab data Element, including the chained elements, through the buffered writer.
+	 * @param writer the writer to write to
+	 * @throws IOException if the write fails
+	 */
+	abstract void writeTo(MatlabLevel5Writer writer) throws IOException;
 
 	/**
 	 * Allows element to inform inner elements that a write/export is about to occur, so that they can
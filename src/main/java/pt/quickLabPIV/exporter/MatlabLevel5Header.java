@@ -6,7 +6,6 @@
  */
 package pt.quickLabPIV.exporter;
 
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.util.Arrays;
@@ -70,7 +69,7 @@ public class MatlabLevel5Header extends MatlabLevel5Element {
 	}
 
 	@Override
-	public void writeToOuputStream(FileOutputStream fos) {
+	void writeTo(MatlabLevel5Writer writer) throws IOException {
 		byte[] titleBytes;
 		try {
 			if (title == null || title.length() == 0) {
@@ -94,15 +93,11 @@ public class MatlabLevel5Header extends MatlabLevel5Element {
 		
 		System.arraycopy(titleBytes, 0, descriptiveText, 0, bytesToWrite);
 		
-		try {
-			fos.write(descriptiveText);
-			writeInt(fos, (int)subsysDataOffset >>> 32);
-			writeInt(fos, (int)subsysDataOffset & 0x0ffffffff);
-			writeShort(fos, version);
-			writeShort(fos, endianIndicator);
-		} catch (IOException e) {
-			throw new ExportFailedException("Failed to export data to file", e);
-		}
+		writer.write(descriptiveText);
+		writer.writeInt((int)subsysDataOffset >>> 32);
+		writer.writeInt((int)subsysDataOffset & 0x0ffffffff);
+		writer.writeShort(version);
+		writer.writeShort(endianIndicator);
 	}
 	
 }	
@@ -6,7 +6,6 @@
  */
 package pt.quickLabPIV.exporter;
 
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
@@ -414,69 +413,65 @@ public abstract class MatlabLevel5Matrix extends MatlabLevel5Element {
 	}
 	
 	@Override
-	public void writeToOuputStream(FileOutputStream fos) {
+	void writeTo(MatlabLevel5Writer writer) throws IOException {
 		MatlabLevel5Element parentChainedElement = getChainedElement();
 		
 		getBytesLength();
 		if (parentChainedElement != null) {
-			parentChainedElement.writeToOuputStream(fos);
+			parentChainedElement.writeTo(writer);
 		}
 		
-		//TODO improve performance by using FileChannel and ByteBuffer
-		try {
-			writeInt(fos, dataType);
-			writeUInt32(fos, numberOfBytes);
-			writeInt(fos, arrayFlagsType);
-			writeInt(fos, arrayFlagsSize);
-			writeInt(fos, arrayFlags);
-			writeInt(fos, arrayNzMaxValue);
-			writeInt(fos, dimensionsArrayType);
-			writeInt(fos, dimensionsArraySize);
-			for (int dimension : dimensionsArray) {
-				writeInt(fos, dimension);
-			}
-			if (arrayName != null) {
-				writeInt(fos, arrayNameType);
-				writeInt(fos, arrayNameSize);
-				fos.write(arrayName);
-			}
-			
-			if (arrayNzMaxValue > 0) {
-				for (SparseDimensionIndices indexObj : sparseDimensions) {
-					writeInt(fos, indexObj.sparseIndicesType);
-					writeInt(fos, indexObj.sparseIndicesSize);
-					for (int sparseIndex : indexObj.sparseIndices) {
-						writeInt(fos, sparseIndex);
-					}
+		writer.writeInt(dataType);
+		writer.writeUInt32(numberOfBytes);
+		writer.writeInt(arrayFlagsType);
+		writer.writeInt(arrayFlagsSize);
+		writer.writeInt(arrayFlags);
+		writer.writeInt(arrayNzMaxValue);
+		writer.writeInt(dimensionsArrayType);
+		writer.writeInt(dimensionsArraySize);
+		for (int dimension : dimensionsArray) {
+			writer.writeInt(dimension);
+		}
+		if (arrayName != null) {
+			writer.writeInt(arrayNameType);
+			writer.writeInt(arrayNameSize);
+			writer.write(arrayName);
+		}
+		
+		if (arrayNzMaxValue > 0) {
+			for (SparseDimensionIndices indexObj : sparseDimensions) {
+				writer.writeInt(indexObj.sparseIndicesType);
+				writer.writeInt(indexObj.sparseIndicesSize);
+				for (int sparseIndex : indexObj.sparseIndices) {
+					writer.writeInt(sparseIndex);
 				}
 			}
+		}
+	
+		if (config.matrixClass == MatlabMxTypesEnum.mxSTRUCT_CLASS) {
+			writer.writeInt(fieldNameBytes << 16 | fieldNameType);
+			writer.writeInt(fieldNameSize);
+			writer.writeInt(fieldNamesLengthType);
+			writer.writeInt(fieldNamesLengthSize);
+			writer.write(fieldNames);
+		}
 		
-			if (config.matrixClass == MatlabMxTypesEnum.mxSTRUCT_CLASS) {
-				writeInt(fos, fieldNameBytes << 16 | fieldNameType);
-				writeInt(fos, fieldNameSize);
-				writeInt(fos, fieldNamesLengthType);
-				writeInt(fos, fieldNamesLengthSize);
-				fos.write(fieldNames);
+		if (config.matrixClass != MatlabMxTypesEnum.mxOBJECT_CLASS && 
+			config.matrixClass != MatlabMxTypesEnum.mxSTRUCT_CLASS &&
+			config.matrixClass != MatlabMxTypesEnum.mxCELL_CLASS) {
+			writer.writeInt(realValuesType);
+			writer.writeUInt32(realValuesSize);
+			//Value pages are written directly from the backing arrays
+			for (byte[] realPage : realValues) {
+			    writer.write(realPage);
 			}
-			
-			if (config.matrixClass != MatlabMxTypesEnum.mxOBJECT_CLASS && 
-				config.matrixClass != MatlabMxTypesEnum.mxSTRUCT_CLASS &&
-				config.matrixClass != MatlabMxTypesEnum.mxCELL_CLASS) {
-				writeInt(fos, realValuesType);
-				writeUInt32(fos, realValuesSize);
-				for (byte[] realPage : realValues) {
-				    fos.write(realPage);
-				}
-				if (isComplex()) {
-					writeInt(fos, imaginaryValuesType);
-					writeUInt32(fos, imaginaryValuesSize);
-	                for (byte[] imaginaryPage : imaginaryValues) {
-	                    fos.write(imaginaryPage);
-	                }
-				}
+			if (isComplex()) {
+				writer.writeInt(imaginaryValuesType);
+				writer.writeUInt32(imaginaryValuesSize);
+                for (byte[] imaginaryPage : imaginaryValues) {
+                    writer.write(imaginaryPage);
+                }
 			}
-		} catch (IOException e) {
-			throw new ExportFailedException("Failed to export data to file", e);
 		}
 	}
 
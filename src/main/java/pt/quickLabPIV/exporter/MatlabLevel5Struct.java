@@ -6,7 +6,7 @@
  */
 package pt.quickLabPIV.exporter;
 
-import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -53,7 +53,7 @@ public class MatlabLevel5Struct extends MatlabLevel5Matrix {
 	}
 	
 	@Override
-	public void writeToOuputStream(FileOutputStream fos) {
+	void writeTo(MatlabLevel5Writer writer) throws IOException {
 		for (String fieldName : orderedFieldNames) {
 			if (fieldName.length() > 31) {
 				throw new ExportFailedException("Field name: " + fieldName + " is longer than 31 characters.");
@@ -62,11 +62,11 @@ public class MatlabLevel5Struct extends MatlabLevel5Matrix {
 		}
 		setFieldNames(orderedFieldNames.toArray(new String[orderedFieldNames.size()]));
 				
-		super.writeToOuputStream(fos);
+		super.writeTo(writer);
 		//Ensure elements are written the order they were created
 		for (String fieldName : orderedFieldNames) {
 			MatlabLevel5Element field = fieldsMap.get(fieldName);
-			field.writeToOuputStream(fos);
+			field.writeTo(writer);
 		}
 	}
 	
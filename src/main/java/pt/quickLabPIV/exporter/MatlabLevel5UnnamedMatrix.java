@@ -7,6 +7,8 @@
 package pt.quickLabPIV.exporter;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -73,14 +75,56 @@ public class MatlabLevel5UnnamedMatrix extends MatlabLevel5Matrix {
 		    
 		}
 		
+		private boolean isInCurrentPage(long startIndex, long length) {
+		    return currentOffset >= 0 && startIndex >= currentOffset && startIndex + length <= currentOffset + pageSize;
+		}
+		
 		public void setValueAndIncrementIndex(float value) {
 			int bits = Float.floatToIntBits(value);
+			if (isInCurrentPage(currentIndex, 4)) {
+			    //Fast path, all bytes fall inside the last accessed page
+			    byte[] page = values.get(pageIndex);
+			    int indexInPage = (int)(currentIndex - currentOffset);
+			    page[indexInPage    ] = (byte)bits;
+			    page[indexInPage + 1] = (byte)(bits >> 8);
+			    page[indexInPage + 2] = (byte)(bits >> 16);
+			    page[indexInPage + 3] = (byte)(bits >> 24);
+			    currentIndex += 4;
+			    return;
+			}
 			writeByteAtPageIndex(currentIndex++, (byte)bits);
 			writeByteAtPageIndex(currentIndex++, (byte)(bits >> 8));
 			writeByteAtPageIndex(currentIndex++, (byte)(bits >> 16));
 			writeByteAtPageIndex(currentIndex++, (byte)(bits >> 24));
 		}
 		
+		/**
+		 * Sets consecutive float values, starting at the current index, and advances the index past them.
+		 * Values that fall entirely inside a single storage page are copied in bulk.
+		 * @param floatValues the source array
+		 * @param offset the index of the first value to copy from the source array
+		 * @param length the number of values to copy
+		 */
+		public void setValuesAndIncrementIndex(float[] floatValues, int offset, int length) {
+		    if (length <= 0) {
+		        return;
+		    }
+		    
+		    //Ensure the page containing the first byte is selected
+		    setValueAndIncrementIndex(floatValues[offset]);
+		    if (!isInCurrentPage(currentIndex, 4L * (length - 1))) {
+		        for (int index = offset + 1; index < offset + length; index++) {
+		            setValueAndIncrementIndex(floatValues[index]);
+		        }
+		        return;
+		    }
+
+		    ByteBuffer pageBuffer = ByteBuffer.wrap(values.get(pageIndex)).order(ByteOrder.LITTLE_ENDIAN);
+		    pageBuffer.position((int)(currentIndex - currentOffset));
+		    pageBuffer.asFloatBuffer().put(floatValues, offset + 1, length - 1);
+		    currentIndex += 4L * (length - 1);
+		}
+		
 		private MatlabLevel5ContextSetter(final MatlabLevel5UnnamedMatrix matrix, int frameNumber) {
 			this.matrix = matrix;
 			int[] dimensions = matrix.getConfiguration().dimensions;
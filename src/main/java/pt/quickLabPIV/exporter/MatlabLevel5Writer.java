@@ -0,0 +1,92 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.exporter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Buffered little-endian writer for MATLAB Level 5 data elements.
+ * <br/>
+ * Tags, headers and small arrays are accumulated in a direct buffer, while large data pages are written directly from
+ * their backing arrays, together with the pending buffered data, in a single gathering write. Data is written at the
+ * current channel position.
+ * @author lpnm
+ */
+final class MatlabLevel5Writer {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    //Arrays larger than this are not copied to the buffer
+    private static final int DIRECT_WRITE_THRESHOLD = BUFFER_SIZE / 4;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final ByteBuffer[] gatherBuffers = new ByteBuffer[2];
+
+    MatlabLevel5Writer(FileChannel _channel) {
+        channel = _channel;
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private void ensureAvailable(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    void writeShort(short value) throws IOException {
+        ensureAvailable(2);
+        buffer.putShort(value);
+    }
+
+    void writeInt(int value) throws IOException {
+        ensureAvailable(4);
+        buffer.putInt(value);
+    }
+
+    void writeUInt32(long value) throws IOException {
+        if (value > MatlabLevel5Element.MAX_UINT32) {
+            throw new ExportFailedException("Number to large to fit inside a 32-bit unsigned");
+        }
+        ensureAvailable(4);
+        buffer.putInt((int)value);
+    }
+
+    void write(byte[] values) throws IOException {
+        if (values.length <= DIRECT_WRITE_THRESHOLD) {
+            ensureAvailable(values.length);
+            buffer.put(values);
+            return;
+        }
+
+        buffer.flip();
+        ByteBuffer page = ByteBuffer.wrap(values);
+        gatherBuffers[0] = buffer;
+        gatherBuffers[1] = page;
+        try {
+            while (page.hasRemaining()) {
+                channel.write(gatherBuffers);
+            }
+        } finally {
+            gatherBuffers[1] = null;
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Writes all buffered data to the channel.
+     * @throws IOException if the write fails
+     */
+    void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
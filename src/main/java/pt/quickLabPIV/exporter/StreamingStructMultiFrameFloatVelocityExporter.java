@@ -0,0 +1,409 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.exporter;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Date;
+import java.util.TreeMap;
+
+import pt.quickLabPIV.PIVContextSingleton;
+import pt.quickLabPIV.PIVMap;
+import pt.quickLabPIV.PIVResults;
+import pt.quickLabPIV.PIVRunParameters;
+import pt.quickLabPIV.Velocities;
+
+/**
+ * Exports the velocity maps to a MATLAB Level 5 file as soon as each frame is computed, instead of keeping all the
+ * velocity maps in memory until the PIV run completes, as required by
+ * {@link StructMultiFrameFloatVelocityExporter#exportDataToFile(PIVResults)}. The resulting file has the same layout.
+ * <br/>
+ * Frames are written in frame order. Frames that are completed out of order by the PIV threads are held in a bounded
+ * reorder buffer, while threads that get too far ahead of the next frame to be written are blocked until that frame is
+ * written, thus the memory used by the exporter doesn't depend on the number of frames.
+ * <br/>
+ * U velocities are appended to the MATLAB file, while V velocities are appended to a temporary file, which is copied
+ * to the end of the MATLAB file when the file is closed. Only then the number of frames is known, so the U and V array
+ * headers and the velocities struct size are patched at that time.
+ * <br/>
+ * <b>NOTE:</b> {@link #exportFrame(PIVMap, Velocities)} is thread-safe, while opening and closing the file is not.
+ * @author lpnm
+ */
+public class StreamingStructMultiFrameFloatVelocityExporter implements IStreamingVelocityExporter {
+    public static final int DEFAULT_REORDER_FRAMES = 32;
+
+    //Multi-frame array element with no name and 3 dimensions: tag (8) + flags (16) + dimensions (24) + name (8) + data tag (8)
+    private static final int MULTI_FRAME_ARRAY_HEADER_BYTES = 64;
+    private static final long WAIT_FOR_FRAME_MILLIS = 100;
+
+    private int reorderFrames;
+    private final TreeMap<Integer, Velocities> pendingFrames = new TreeMap<Integer, Velocities>();
+    private int maxPendingFrames;
+    private FileOutputStream fos;
+    private FileChannel channel;
+    private File tempFileV;
+    private RandomAccessFile rafV;
+    private FileChannel channelV;
+    private ByteBuffer frameBuffer;
+    private boolean fileIsOpen;
+    private boolean multiVolume;
+    private boolean aborted;
+
+    private PIVMap firstMap;
+    private boolean velocitiesStructWritten;
+    private int nextFrame;
+    private int vectorsHeight;
+    private int vectorsWidth;
+    private long structStartPosition;
+    private long structNumberOfBytes;
+    private long arrayUStartPosition;
+
+    public StreamingStructMultiFrameFloatVelocityExporter() {
+        this(DEFAULT_REORDER_FRAMES);
+    }
+
+    /**
+     * Creates a new streaming velocities exporter.
+     * @param _reorderFrames the maximum number of frames that can be computed ahead of the next frame to be written,
+     *        which is grown to the maximum number of frames in flight, when it is set
+     */
+    public StreamingStructMultiFrameFloatVelocityExporter(int _reorderFrames) {
+        if (_reorderFrames < 1) {
+            throw new ExportFailedException("Reorder buffer must hold at least one frame");
+        }
+        reorderFrames = _reorderFrames;
+    }
+
+    /**
+     * Grows the reorder buffer to hold all the frames that may be in flight among the frame batches being processed,
+     * otherwise threads computing later batches would wait on each other, serializing the PIV processing.
+     * @param frames the maximum number of frames in flight
+     */
+    @Override
+    public synchronized void setMaxFramesInFlight(int frames) {
+        if (frames > reorderFrames) {
+            reorderFrames = frames;
+        }
+    }
+
+    /**
+     * Creates the MATLAB file and writes the file header and the PIV parameters.
+     * @param filename the MATLAB file to create
+     */
+    @Override
+    public void openFile(String filename) {
+        if (fileIsOpen) {
+            throw new InvalidStateException("File has already been opened");
+        }
+
+        File file = new File(filename);
+        try {
+            fos = new FileOutputStream(file, false);
+            channel = fos.getChannel();
+        } catch (FileNotFoundException e) {
+            throw new ExportFailedException("Failed to create file for writing");
+        }
+
+        try {
+            tempFileV = File.createTempFile(file.getName(), ".v.tmp", file.getAbsoluteFile().getParentFile());
+            rafV = new RandomAccessFile(tempFileV, "rw");
+            channelV = rafV.getChannel();
+        } catch (IOException e) {
+            closeQuietly();
+            throw new ExportFailedException("Failed to create temporary file for V velocities", e);
+        }
+
+        fileIsOpen = true;
+        aborted = false;
+        velocitiesStructWritten = false;
+        firstMap = null;
+        nextFrame = 0;
+        pendingFrames.clear();
+        maxPendingFrames = 0;
+
+        MatlabLevel5Header header = new MatlabLevel5Header();
+        Date d = new Date();
+        header.setTitle("MATLAB 5.0 - QuickLabPIV-ng Velocities exported on: " + d.toString());
+        MatlabLevel5SimpleVariable element = MatlabLevel5SimpleVariable.createNamedVariable(header, "exportDate", d.toString());
+
+        multiVolume = StructMultiFrameFloatVelocityExporter.isMultiVolumeExport();
+        MatlabLevel5Struct parameters = StructMultiFrameFloatVelocityExporter.createParametersStruct(element, multiVolume);
+
+        //Writes the whole chain, header included
+        parameters.writeToOuputStream(fos);
+    }
+
+    /**
+     * Exports the velocities of a frame. Frames are written in frame order, so the calling thread may be blocked
+     * while the frame is too far ahead of the next frame to be written.
+     * @param map the PIV map of the batch to which the frame belongs
+     * @param velocities the frame velocities
+     */
+    @Override
+    public synchronized void exportFrame(PIVMap map, Velocities velocities) {
+        if (!fileIsOpen) {
+            throw new InvalidStateException("File must be opened before exporting frames");
+        }
+
+        final PIVRunParameters runParameters = PIVContextSingleton.getSingleton().getPIVRunParameters();
+        final int frame = velocities.getFrameNumber();
+        while (!aborted && frame >= nextFrame + reorderFrames) {
+            if (runParameters.isCancelRequested()) {
+                return;
+            }
+
+            try {
+                wait(WAIT_FOR_FRAME_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ExportFailedException("Interrupted while waiting for frame: " + nextFrame + " to be exported", e);
+            }
+        }
+
+        if (aborted) {
+            throw new ExportFailedException("Velocities export was aborted");
+        }
+
+        if (frame < nextFrame || pendingFrames.containsKey(frame)) {
+            throw new ExportFailedException("Velocities for frame: " + frame + " were already exported");
+        }
+
+        if (frame == 0) {
+            firstMap = map;
+        }
+        pendingFrames.put(frame, velocities);
+        if (pendingFrames.size() > maxPendingFrames) {
+            maxPendingFrames = pendingFrames.size();
+        }
+
+        try {
+            Velocities nextVelocities;
+            while ((nextVelocities = pendingFrames.remove(nextFrame)) != null) {
+                if (!velocitiesStructWritten) {
+                    writeVelocitiesStruct(firstMap);
+                }
+                writeFrame(nextVelocities);
+                nextFrame++;
+            }
+        } catch (IOException e) {
+            aborted = true;
+            throw new ExportFailedException("Failed to export velocities of frame: " + nextFrame, e);
+        } finally {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Aborts the export, waking up all threads waiting for their frames to be exported.
+     */
+    @Override
+    public synchronized void abort() {
+        aborted = true;
+        pendingFrames.clear();
+        notifyAll();
+    }
+
+    /**
+     * Retrieves the number of frames that were written to the file, so far.
+     * @return the number of frames written
+     */
+    @Override
+    public synchronized int getNumberOfExportedFrames() {
+        return nextFrame;
+    }
+
+    /**
+     * Retrieves the maximum number of frames that were held at the same time in the reorder buffer, since the file was
+     * opened, including the frame being exported.
+     * @return the maximum number of buffered frames
+     */
+    public synchronized int getMaxBufferedFrames() {
+        return maxPendingFrames;
+    }
+
+    /**
+     * Retrieves the maximum number of frames that can be computed ahead of the next frame to be written.
+     * @return the reorder buffer size in frames
+     */
+    public synchronized int getReorderFrames() {
+        return reorderFrames;
+    }
+
+    private void writeVelocitiesStruct(PIVMap map) throws IOException {
+        final String name;
+        if (map.isDenseExport()) {
+            vectorsHeight = map.getImageHeight() - map.getMarginTop() - map.getMarginBottom();
+            vectorsWidth  = map.getImageWidth()  - map.getMarginLeft() - map.getMarginRight();
+            name = "velocities";
+        } else {
+            vectorsHeight = map.getHeight();
+            vectorsWidth = map.getWidth();
+            name = "velocities" + map.getIAHeight() + "x" + map.getIAWidth();
+        }
+
+        //Struct is written with empty U and V arrays, which are then replaced by the streamed arrays
+        int[] dimensionsElements = {vectorsHeight, vectorsWidth, 0};
+        MatlabLevel5Struct velocitiesStruct = StructMultiFrameFloatVelocityExporter.createVelocitiesStruct(null, name, map,
+                map.getAbsoluteFrameOffset(), dimensionsElements, multiVolume);
+
+        structStartPosition = channel.position();
+        velocitiesStruct.writeToOuputStream(fos);
+        structNumberOfBytes = velocitiesStruct.getBytesLength() - 8;
+
+        arrayUStartPosition = channel.position() - 2 * MULTI_FRAME_ARRAY_HEADER_BYTES;
+        channel.truncate(arrayUStartPosition);
+        channel.position(arrayUStartPosition);
+        writeFully(channel, createMultiFrameArrayHeader(0));
+
+        frameBuffer = ByteBuffer.allocate(vectorsHeight * vectorsWidth * 4).order(ByteOrder.LITTLE_ENDIAN);
+        velocitiesStructWritten = true;
+    }
+
+    private ByteBuffer createMultiFrameArrayHeader(int frames) {
+        final long dataBytes = (long)frames * vectorsHeight * vectorsWidth * 4;
+        final long numberOfBytes = MULTI_FRAME_ARRAY_HEADER_BYTES - 8 + dataBytes + computePadding(dataBytes);
+        if (numberOfBytes > MatlabLevel5Element.MAX_UINT32) {
+            throw new ExportFailedException("Velocity maps size does not fit in a 32-bit unsigned sized array");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(MULTI_FRAME_ARRAY_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MatlabMiTypesEnum.miMATRIX.getId());
+        buffer.putInt((int)numberOfBytes);
+        buffer.putInt(MatlabMiTypesEnum.miUINT32.getId());
+        buffer.putInt(8);
+        buffer.putInt(MatlabMxTypesEnum.mxSINGLE_CLASS.getId());
+        buffer.putInt(0);
+        buffer.putInt(MatlabMiTypesEnum.miINT32.getId());
+        buffer.putInt(3 * 4);
+        buffer.putInt(vectorsHeight);
+        buffer.putInt(vectorsWidth);
+        buffer.putInt(frames);
+        buffer.putInt(0); //Padding
+        buffer.putInt(MatlabMiTypesEnum.miINT8.getId());
+        buffer.putInt(0); //Unnamed
+        buffer.putInt(MatlabMiTypesEnum.miSINGLE.getId());
+        buffer.putInt((int)dataBytes);
+        buffer.flip();
+
+        return buffer;
+    }
+
+    private static int computePadding(long bytes) {
+        int padding = (int)(bytes % 8L);
+        return padding == 0 ? 0 : 8 - padding;
+    }
+
+    private static void writeFully(FileChannel targetChannel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            targetChannel.write(buffer);
+        }
+    }
+
+    private static void writeFullyAt(FileChannel targetChannel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += targetChannel.write(buffer, position);
+        }
+    }
+
+    private void writeFrame(Velocities velocities) throws IOException {
+        //MATLAB arrays are stored in column-major order
+        writeVelocities(channel, velocities.getU());
+        writeVelocities(channelV, velocities.getV());
+    }
+
+    private void writeVelocities(FileChannel targetChannel, float[][] values) throws IOException {
+        frameBuffer.clear();
+        for (int j = 0; j < vectorsWidth; j++) {
+            for (int i = 0; i < vectorsHeight; i++) {
+                frameBuffer.putFloat(values[i][j]);
+            }
+        }
+        frameBuffer.flip();
+        writeFully(targetChannel, frameBuffer);
+    }
+
+    /**
+     * Completes the U and V arrays with the frames exported so far and closes the file. Frames after the first missing
+     * frame, if any, are not exported.
+     */
+    @Override
+    public synchronized void closeFile() {
+        if (!fileIsOpen) {
+            throw new InvalidStateException("File is not open");
+        }
+
+        try {
+            if (velocitiesStructWritten) {
+                final long dataBytes = (long)nextFrame * vectorsHeight * vectorsWidth * 4;
+                final ByteBuffer padding = ByteBuffer.allocate(computePadding(dataBytes));
+
+                writeFully(channel, padding);
+                writeFully(channel, createMultiFrameArrayHeader(nextFrame));
+                long transferred = 0;
+                while (transferred < dataBytes) {
+                    transferred += channelV.transferTo(transferred, dataBytes - transferred, channel);
+                }
+                padding.rewind();
+                writeFully(channel, padding);
+
+                writeFullyAt(channel, createMultiFrameArrayHeader(nextFrame), arrayUStartPosition);
+
+                long arrayBytes = MULTI_FRAME_ARRAY_HEADER_BYTES + dataBytes + padding.capacity();
+                long numberOfBytes = structNumberOfBytes + 2 * (arrayBytes - MULTI_FRAME_ARRAY_HEADER_BYTES);
+                if (numberOfBytes > MatlabLevel5Element.MAX_UINT32) {
+                    throw new ExportFailedException("Velocities struct size does not fit in a 32-bit unsigned");
+                }
+                ByteBuffer structSize = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+                structSize.putInt((int)numberOfBytes);
+                structSize.flip();
+                writeFullyAt(channel, structSize, structStartPosition + 4);
+            }
+            fos.flush();
+        } catch (IOException e) {
+            throw new ExportFailedException("Failed to complete velocities export", e);
+        } finally {
+            closeQuietly();
+            fileIsOpen = false;
+            pendingFrames.clear();
+            frameBuffer = null;
+            firstMap = null;
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            if (fos != null) {
+                fos.close();
+            }
+        } catch (IOException e) {
+            //Nothing else to do
+        }
+        fos = null;
+        channel = null;
+
+        try {
+            if (rafV != null) {
+                rafV.close();
+            }
+        } catch (IOException e) {
+            //Nothing else to do
+        }
+        rafV = null;
+        channelV = null;
+
+        if (tempFileV != null) {
+            tempFileV.delete();
+            tempFileV = null;
+        }
+    }
+}
@@ -76,6 +76,35 @@ public class StructMultiFrameFloatVelocityExporter implements IVelocityExporterV
 		
 		this.filename = filename;
 
+		multiVolume = isMultiVolumeExport();
+		MatlabLevel5Struct parameters = createParametersStruct(dataElements.get(dataElements.size()-1), multiVolume);
+		dataElements.add(parameters);
+	}
+
+	/**
+	 * Checks if the velocity maps are to be split across multiple files.
+	 * @return true, if the export spans multiple files, false otherwise
+	 */
+	static boolean isMultiVolumeExport() {
+        PIVContextSingleton singleton = PIVContextSingleton.getSingleton();
+        PIVInputParameters pivParameters = singleton.getPIVParameters();
+        
+        Object configurationObject = pivParameters.getSpecificConfiguration(PIVMapOptionalConfiguration.IDENTIFIER);
+        if (configurationObject != null) {
+            PIVMapOptionalConfiguration optional = (PIVMapOptionalConfiguration)configurationObject;
+            return optional.getMapsPerFile() < pivParameters.getNumberOfVelocityFrames();
+        }
+        
+        return false;
+	}
+	
+	/**
+	 * Creates the MATLAB struct with the PIV parameters, that is exported before the velocity maps.
+	 * @param chainedElement the data element to which the parameters struct is chained to
+	 * @param multiVolume true, if the velocity maps are split across multiple files
+	 * @return the parameters struct
+	 */
+	static MatlabLevel5Struct createParametersStruct(MatlabLevel5Element chainedElement, boolean multiVolume) {
 		PIVContextSingleton singleton = PIVContextSingleton.getSingleton();
 		PIVInputParameters pivParameters = singleton.getPIVParameters();
 		
@@ -87,11 +116,10 @@ public class StructMultiFrameFloatVelocityExporter implements IVelocityExporterV
             PIVMapOptionalConfiguration optional = (PIVMapOptionalConfiguration)configurationObject;
             markInvalidAsNaN = optional.isMarkInvalidAsNaN();
             swapUVOrder = optional.isSwapUVOrder();
-            multiVolume = optional.getMapsPerFile() < pivParameters.getNumberOfVelocityFrames();
         }
 
 		int[] parametersDimensions = {1, 1}; //Struct dimensions 
-		MatlabLevel5Struct parameters = new MatlabLevel5Struct(dataElements.get(dataElements.size()-1), Collections.emptyList(), parametersDimensions, "parameters");
+		MatlabLevel5Struct parameters = new MatlabLevel5Struct(chainedElement, Collections.emptyList(), parametersDimensions, "parameters");
 		
 		parameters.addFieldVariable("imageWidth", pivParameters.getImageWidthPixels());
 		parameters.addFieldVariable("imageHeight", pivParameters.getImageHeightPixels());
@@ -111,7 +139,43 @@ public class StructMultiFrameFloatVelocityExporter implements IVelocityExporterV
             parameters.addFieldVariable("multiVolumeLastVolume", 1);
         }
 		//matrix.addFieldVariable("file", filename);
-		dataElements.add(parameters);
+		
+		return parameters;
+	}
+
+	/**
+	 * Creates the MATLAB struct that holds the velocity maps, with the U and V multi-frame arrays still empty.
+	 * @param chainedElement the data element to which the velocities struct is chained to
+	 * @param name the struct name
+	 * @param map the PIV map with the velocity maps geometry
+	 * @param startOffset the absolute frame offset of the first velocity map
+	 * @param dimensionsElements the dimensions of the U and V multi-frame arrays
+	 * @param multiVolume true, if the velocity maps are split across multiple files
+	 * @return the velocities struct
+	 */
+	static MatlabLevel5Struct createVelocitiesStruct(MatlabLevel5Element chainedElement, String name, PIVMap map, int startOffset,
+	                                                 int[] dimensionsElements, boolean multiVolume) {
+		int[] dimensions = {1, 1};
+		MatlabLevel5Struct matrix = new MatlabLevel5Struct(chainedElement, Collections.emptyList(), dimensions, name);
+		matrix.addFieldVariable("iaHeight", map.getIAHeight());
+		matrix.addFieldVariable("iaWidth", map.getIAWidth());
+		matrix.addFieldVariable("multiVolumeExport", multiVolume ? 1 : 0);
+		if (multiVolume) {
+		    matrix.addFieldVariable("multiVolumeStartOffset", startOffset);
+		}
+		//matrix.addFieldVariable("adaptiveStep", map.getCurrentStep());
+		
+		MatlabLevel5Struct margins = new MatlabLevel5Struct(null, Collections.emptyList(), dimensions, "margins");
+		margins.addFieldVariable("top", map.getMarginTop());
+		margins.addFieldVariable("left", map.getMarginLeft());
+		margins.addFieldVariable("bottom", map.getMarginBottom());
+		margins.addFieldVariable("right", map.getMarginRight());
+		matrix.addFieldStructVariable("margins", margins);
+		
+		matrix.createMultiFrameFieldFloatArrayVariable("u", dimensionsElements);
+		matrix.createMultiFrameFieldFloatArrayVariable("v", dimensionsElements);
+		
+		return matrix;
 	}
 
 	@Override
@@ -193,27 +257,10 @@ public class StructMultiFrameFloatVelocityExporter implements IVelocityExporterV
 			int tileHeight = map.getIAHeight();
 			int tileWidth = map.getIAWidth();
 
-			int[] dimensions = {1, 1};
-			MatlabLevel5Struct matrix = new MatlabLevel5Struct(dataElements.get(dataElements.size()-1), Collections.emptyList(), dimensions, "velocities" + tileHeight + "x" + tileWidth);
-			matrix.addFieldVariable("iaHeight", tileHeight);
-			matrix.addFieldVariable("iaWidth", tileWidth);
-			matrix.addFieldVariable("multiVolumeExport", multiVolume ? 1 : 0);
-			if (multiVolume) {
-			    matrix.addFieldVariable("multiVolumeStartOffset", maps.get(0).getAbsoluteFrameOffset());
-			}
-			//matrix.addFieldVariable("adaptiveStep", map.getCurrentStep());
-			dataElements.add(matrix);
-			
-			MatlabLevel5Struct margins = new MatlabLevel5Struct(null, Collections.emptyList(), dimensions, "margins");
-			margins.addFieldVariable("top", map.getMarginTop());
-			margins.addFieldVariable("left", map.getMarginLeft());
-			margins.addFieldVariable("bottom", map.getMarginBottom());
-			margins.addFieldVariable("right", map.getMarginRight());
-			matrix.addFieldStructVariable("margins", margins);
-			
 			int[] dimensionsElements = {map.getHeight(), map.getWidth(), map.getNumberOfMaps()};
-			matrix.createMultiFrameFieldFloatArrayVariable("u", dimensionsElements);
-			matrix.createMultiFrameFieldFloatArrayVariable("v", dimensionsElements);
+			MatlabLevel5Struct matrix = createVelocitiesStruct(dataElements.get(dataElements.size()-1), "velocities" + tileHeight + "x" + tileWidth,
+			        map, maps.get(0).getAbsoluteFrameOffset(), dimensionsElements, multiVolume);
+			dataElements.add(matrix);
 			
 			outputVelocityMatrixByHeightMap.put(tileHeight, matrix);
 	
@@ -225,14 +272,7 @@ public class StructMultiFrameFloatVelocityExporter implements IVelocityExporterV
 			
 			while (velocityIter.hasNext()) {
 				Velocities velocityMap = velocityIter.next();
-				MatlabLevel5UnnamedMatrix.MatlabLevel5ContextSetter setterU = velocitiesU.createMultiFrameIndexContext(velocityMap.getFrameNumber());
-				MatlabLevel5UnnamedMatrix.MatlabLevel5ContextSetter setterV = velocitiesV.createMultiFrameIndexContext(velocityMap.getFrameNumber());
-				for (int j = 0; j < map.getWidth(); j++) {
-					for (int i = 0; i < map.getHeight(); i++) {			
-						setterU.setValueAndIncrementIndex(velocityMap.getU()[i][j]);
-						setterV.setValueAndIncrementIndex(velocityMap.getV()[i][j]);
-					}
-				}
+				exportVelocities(velocitiesU, velocitiesV, velocityMap, map.getHeight(), map.getWidth());
 			}
 		}
 	}
@@ -241,32 +281,14 @@ public class StructMultiFrameFloatVelocityExporter implements IVelocityExporterV
         List<PIVMap> maps = results.getAllMaps();
         for (PIVMap map : maps) {
             int tileHeight = map.getIAHeight();
-            int tileWidth = map.getIAWidth();
 
-            int[] dimensions = {1, 1};
-            MatlabLevel5Struct matrix = new MatlabLevel5Struct(dataElements.get(dataElements.size()-1), Collections.emptyList(), dimensions, "velocities");
-            matrix.addFieldVariable("iaHeight", tileHeight);
-            matrix.addFieldVariable("iaWidth", tileWidth);
-            matrix.addFieldVariable("multiVolumeExport", multiVolume ? 1 : 0);
-            if (multiVolume) {
-                matrix.addFieldVariable("multiVolumeStartOffset", maps.get(0).getAbsoluteFrameOffset());
-            }
-            //matrix.addFieldVariable("adaptiveStep", map.getCurrentStep());
-            dataElements.add(matrix);
-            
-            MatlabLevel5Struct margins = new MatlabLevel5Struct(null, Collections.emptyList(), dimensions, "margins");
-            margins.addFieldVariable("top", map.getMarginTop());
-            margins.addFieldVariable("left", map.getMarginLeft());
-            margins.addFieldVariable("bottom", map.getMarginBottom());
-            margins.addFieldVariable("right", map.getMarginRight());
-            matrix.addFieldStructVariable("margins", margins);
-            
             final int vectorsHeight = map.getImageHeight() - map.getMarginTop() - map.getMarginBottom();
             final int vectorsWidth  = map.getImageWidth()  - map.getMarginLeft() - map.getMarginRight();
             
             int[] dimensionsElements = {vectorsHeight, vectorsWidth, map.getNumberOfMaps()};
-            matrix.createMultiFrameFieldFloatArrayVariable("u", dimensionsElements);
-            matrix.createMultiFrameFieldFloatArrayVariable("v", dimensionsElements);
+            MatlabLevel5Struct matrix = createVelocitiesStruct(dataElements.get(dataElements.size()-1), "velocities",
+                    map, maps.get(0).getAbsoluteFrameOffset(), dimensionsElements, multiVolume);
+            dataElements.add(matrix);
             
             outputVelocityMatrixByHeightMap.put(tileHeight, matrix);
     
@@ -278,18 +300,30 @@ public class StructMultiFrameFloatVelocityExporter implements IVelocityExporterV
             
             while (velocityIter.hasNext()) {
                 Velocities velocityMap = velocityIter.next();
-                MatlabLevel5UnnamedMatrix.MatlabLevel5ContextSetter setterU = velocitiesU.createMultiFrameIndexContext(velocityMap.getFrameNumber());
-                MatlabLevel5UnnamedMatrix.MatlabLevel5ContextSetter setterV = velocitiesV.createMultiFrameIndexContext(velocityMap.getFrameNumber());
-                for (int j = 0; j < vectorsWidth; j++) {
-                    for (int i = 0; i < vectorsHeight; i++) {         
-                        setterU.setValueAndIncrementIndex(velocityMap.getU()[i][j]);
-                        setterV.setValueAndIncrementIndex(velocityMap.getV()[i][j]);
-                    }
-                }
+                exportVelocities(velocitiesU, velocitiesV, velocityMap, vectorsHeight, vectorsWidth);
             }
         }
     }
 
+   private void exportVelocities(MatlabLevel5UnnamedMatrix velocitiesU, MatlabLevel5UnnamedMatrix velocitiesV, Velocities velocityMap,
+           int height, int width) {
+       MatlabLevel5UnnamedMatrix.MatlabLevel5ContextSetter setterU = velocitiesU.createMultiFrameIndexContext(velocityMap.getFrameNumber());
+       MatlabLevel5UnnamedMatrix.MatlabLevel5ContextSetter setterV = velocitiesV.createMultiFrameIndexContext(velocityMap.getFrameNumber());
+       float[][] us = velocityMap.getU();
+       float[][] vs = velocityMap.getV();
+       //Matlab stores matrices in column-major order, so each column is gathered and then copied in bulk
+       float[] columnU = new float[height];
+       float[] columnV = new float[height];
+       for (int j = 0; j < width; j++) {
+           for (int i = 0; i < height; i++) {
+               columnU[i] = us[i][j];
+               columnV[i] = vs[i][j];
+           }
+           setterU.setValuesAndIncrementIndex(columnU, 0, height);
+           setterV.setValuesAndIncrementIndex(columnV, 0, height);
+       }
+   }
+
 	@Override
 	public boolean isMultiFrameSupported() {
 		return true;
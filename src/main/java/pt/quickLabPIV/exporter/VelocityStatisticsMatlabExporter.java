@@ -0,0 +1,92 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.exporter;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Date;
+
+import pt.quickLabPIV.VelocityStatistics;
+
+/**
+ * Exports the temporal statistics of the velocity maps to a small MATLAB Level 5 file, with the PIV parameters and a
+ * <code>velocityStatistics</code> struct, holding one map per statistic.
+ * @author lpnm
+ */
+public class VelocityStatisticsMatlabExporter {
+    public static final String STRUCT_NAME = "velocityStatistics";
+
+    /**
+     * Computes the statistics filename for a velocities export filename.
+     * @param velocitiesFilename the velocities export filename
+     * @return the statistics filename
+     */
+    public static String computeStatisticsFilename(String velocitiesFilename) {
+        return velocitiesFilename.replaceFirst("(_MV0)?\\.mat$", "") + "_statistics.mat";
+    }
+
+    /**
+     * Exports the velocity statistics.
+     * @param filename the MATLAB file to create
+     * @param statistics the velocity statistics to export
+     */
+    public static void exportToFile(String filename, VelocityStatistics statistics) {
+        MatlabLevel5Header header = new MatlabLevel5Header();
+        Date d = new Date();
+        header.setTitle("MATLAB 5.0 - QuickLabPIV-ng Velocity statistics exported on: " + d.toString());
+        MatlabLevel5SimpleVariable element = MatlabLevel5SimpleVariable.createNamedVariable(header, "exportDate", d.toString());
+        MatlabLevel5Struct parameters = StructMultiFrameFloatVelocityExporter.createParametersStruct(element, false);
+        MatlabLevel5Struct statisticsStruct = createStatisticsStruct(parameters, statistics);
+
+        try (FileOutputStream fos = new FileOutputStream(filename, false)) {
+            //Writes the whole chain, header included
+            statisticsStruct.writeToOuputStream(fos);
+        } catch (FileNotFoundException e) {
+            throw new ExportFailedException("Failed to create file for writing");
+        } catch (IOException e) {
+            throw new ExportFailedException("Failed to close file", e);
+        }
+    }
+
+    private interface IStatisticGetter {
+        float get(int i, int j);
+    }
+
+    static MatlabLevel5Struct createStatisticsStruct(MatlabLevel5Element chainedElement, VelocityStatistics statistics) {
+        int[] dimensions = {1, 1};
+        MatlabLevel5Struct struct = new MatlabLevel5Struct(chainedElement, Collections.emptyList(), dimensions, STRUCT_NAME);
+        struct.addFieldVariable("numberOfFrames", statistics.getNumberOfFrames());
+        addStatisticField(struct, "validVectors", statistics, (i, j) -> statistics.getValidCount(i, j));
+        addStatisticField(struct, "meanU", statistics, statistics::getMeanU);
+        addStatisticField(struct, "meanV", statistics, statistics::getMeanV);
+        addStatisticField(struct, "rmsU", statistics, statistics::getRmsU);
+        addStatisticField(struct, "rmsV", statistics, statistics::getRmsV);
+        addStatisticField(struct, "reynoldsStressUU", statistics, statistics::getReynoldsStressUU);
+        addStatisticField(struct, "reynoldsStressVV", statistics, statistics::getReynoldsStressVV);
+        addStatisticField(struct, "reynoldsStressUV", statistics, statistics::getReynoldsStressUV);
+
+        return struct;
+    }
+
+    private static void addStatisticField(MatlabLevel5Struct struct, String name, VelocityStatistics statistics, IStatisticGetter getter) {
+        final int height = statistics.getHeight();
+        final int width = statistics.getWidth();
+        int[] dimensionsElements = {height, width, 1};
+        struct.createMultiFrameFieldFloatArrayVariable(name, dimensionsElements);
+
+        MatlabLevel5UnnamedMatrix field = (MatlabLevel5UnnamedMatrix)struct.getField(name);
+        MatlabLevel5UnnamedMatrix.MatlabLevel5ContextSetter setter = field.createMultiFrameIndexContext(0);
+        //Matlab stores matrices in column-major order
+        for (int j = 0; j < width; j++) {
+            for (int i = 0; i < height; i++) {
+                setter.setValueAndIncrementIndex(getter.get(i, j));
+            }
+        }
+    }
+}
@@ -0,0 +1,487 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.iareas;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * Interpolates the tiles displacements of an adaptive step into a dense, per pixel, displacement field, stored in flat
+ * row-major U and V planes.
+ * <br/>
+ * The interpolation follows the same bi-cubic spline as the commons-math <code>BicubicSplineInterpolator</code> used by
+ * {@link BiCubicSplineInterpolatorWithBiLinearBackup}, including the clamping to the tiles centers region, but the
+ * polynomial coefficients of each tile cell are computed only once, and each image row is evaluated in a separable
+ * way, by first applying the I powers to the cell polynomials and then the J powers for each pixel, which yields the
+ * same values as the commons-math spline. Grids with less than 3 tiles in I or J, which cannot be spline
+ * interpolated, are bi-linearly interpolated instead.
+ * <br/>
+ * Rows can be evaluated concurrently by a shared pool. Instances are not thread-safe and the planes are reused by the
+ * next call to {@link #interpolate(IterationStepTiles, int, int)}.
+ * @author lpnm
+ */
+public final class DenseDisplacementFieldInterpolator {
+    private static final int MIN_ROWS_PER_TASK = 32;
+    private static final int COEFFS_PER_CELL = 16;
+
+    //Inverse of the bi-cubic interpolation linear system, as in commons-math BicubicSplineInterpolatingFunction
+    private static final double[][] AINV = {
+        { 1,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0 },
+        { 0,0,0,0,1,0,0,0,0,0,0,0,0,0,0,0 },
+        { -3,3,0,0,-2,-1,0,0,0,0,0,0,0,0,0,0 },
+        { 2,-2,0,0,1,1,0,0,0,0,0,0,0,0,0,0 },
+        { 0,0,0,0,0,0,0,0,1,0,0,0,0,0,0,0 },
+        { 0,0,0,0,0,0,0,0,0,0,0,0,1,0,0,0 },
+        { 0,0,0,0,0,0,0,0,-3,3,0,0,-2,-1,0,0 },
+        { 0,0,0,0,0,0,0,0,2,-2,0,0,1,1,0,0 },
+        { -3,0,3,0,0,0,0,0,-2,0,-1,0,0,0,0,0 },
+        { 0,0,0,0,-3,0,3,0,0,0,0,0,-2,0,-1,0 },
+        { 9,-9,-9,9,6,3,-6,-3,6,-6,3,-3,4,2,2,1 },
+        { -6,6,6,-6,-3,-3,3,3,-4,4,-2,2,-2,-2,-1,-1 },
+        { 2,0,-2,0,0,0,0,0,1,0,1,0,0,0,0,0 },
+        { 0,0,0,0,2,0,-2,0,0,0,0,0,1,0,1,0 },
+        { -6,6,6,-6,-4,-2,4,2,-3,3,-3,3,-2,-1,-2,-1 },
+        { 4,-4,-4,4,2,2,-2,-2,2,-2,2,-2,1,1,1,1 }
+    };
+
+    private ForkJoinPool pool;
+    private int parallelism = 1;
+
+    private int width;
+    private int height;
+    private float[] us = new float[0];
+    private float[] vs = new float[0];
+
+    private int cellsI;
+    private int cellsJ;
+    private double[] coeffsU = new double[0];
+    private double[] coeffsV = new double[0];
+    private int[] rowCells = new int[0];
+    private double[] rowOffsets = new double[0];
+    private int[] columnCells = new int[0];
+    private double[] columnOffsets = new double[0];
+    private double[][] rowCoeffsU = new double[1][0];
+    private double[][] rowCoeffsV = new double[1][0];
+
+    /**
+     * Enables the concurrent evaluation of the image rows.
+     * @param _pool the shared pool to use, or null to evaluate all rows in the calling thread
+     * @param _parallelism the maximum number of row groups to evaluate concurrently
+     */
+    public void setParallelism(ForkJoinPool _pool, int _parallelism) {
+        pool = _pool;
+        parallelism = _parallelism < 1 ? 1 : _parallelism;
+        rowCoeffsU = new double[parallelism][0];
+        rowCoeffsV = new double[parallelism][0];
+    }
+
+    /**
+     * Interpolates the displacements of the tiles centers to every pixel of the region starting at the image origin.
+     * Masked tiles are interpolated as having no displacement.
+     * @param stepTiles the tiles of the adaptive step, whose displacements are to be interpolated
+     * @param _width the width of the dense field in pixels
+     * @param _height the height of the dense field in pixels
+     */
+    public void interpolate(IterationStepTiles stepTiles, int _width, int _height) {
+        prepareFromTiles(stepTiles, _width, _height);
+        evaluate();
+    }
+
+    /**
+     * Interpolates the displacements of the tiles centers only at the pixels of the given image regions, leaving the
+     * remaining pixels of the planes unchanged. Each evaluated pixel gets the exact same value as when interpolating
+     * the whole field.
+     * @param stepTiles the tiles of the adaptive step, whose displacements are to be interpolated
+     * @param _width the width of the dense field in pixels
+     * @param _height the height of the dense field in pixels
+     * @param regions the regions to evaluate, stored as consecutive top, left, bottom and right pixel limits, with the
+     * bottom and right limits being exclusive
+     * @param regionsCount the number of regions
+     */
+    public void interpolateRegions(IterationStepTiles stepTiles, int _width, int _height, int[] regions, int regionsCount) {
+        prepareFromTiles(stepTiles, _width, _height);
+        evaluateRegions(regions, regionsCount);
+    }
+
+    private void prepareFromTiles(IterationStepTiles stepTiles, int _width, int _height) {
+        final Tile[][] tiles = stepTiles.getTilesArray();
+        final int knotsI = stepTiles.getNumberOfTilesInI();
+        final int knotsJ = stepTiles.getNumberOfTilesInJ();
+        double ys[] = new double[knotsI];
+        double xs[] = new double[knotsJ];
+        double fu[][] = new double[knotsI][knotsJ];
+        double fv[][] = new double[knotsI][knotsJ];
+        for (int i = 0; i < knotsI; i++) {
+            for (int j = 0; j < knotsJ; j++) {
+                Tile tile = tiles[i][j];
+                if (!tile.isMaskedDisplacement()) {
+                    fu[i][j] = tile.getDisplacementU();
+                    fv[i][j] = tile.getDisplacementV();
+                }
+                if (i == 0) {
+                    xs[j] = tile.getLeftPixel() + stepTiles.getTileWidth() / 2.0f - 0.5f;
+                }
+                if (j == 0) {
+                    ys[i] = tile.getTopPixel() + stepTiles.getTileHeight() / 2.0f - 0.5f;
+                }
+            }
+        }
+
+        prepare(ys, xs, fu, fv, _width, _height);
+    }
+
+    /**
+     * Interpolates the displacements at the grid knots to every pixel of the region starting at the image origin.
+     * Pixels outside of the knots region take the displacement of the nearest point in the knots region border.
+     * @param ys the knots I coordinates in monotonically increasing order
+     * @param xs the knots J coordinates in monotonically increasing order
+     * @param fu the U displacements at the knots, indexed by I and then by J
+     * @param fv the V displacements at the knots, indexed by I and then by J
+     * @param _width the width of the dense field in pixels
+     * @param _height the height of the dense field in pixels
+     */
+    public void interpolate(double[] ys, double[] xs, double[][] fu, double[][] fv, int _width, int _height) {
+        prepare(ys, xs, fu, fv, _width, _height);
+        evaluate();
+    }
+
+    /**
+     * Interpolates the displacements at the grid knots only at the pixels of the given image regions, as done by
+     * {@link #interpolateRegions(IterationStepTiles, int, int, int[], int)}.
+     * @param ys the knots I coordinates in monotonically increasing order
+     * @param xs the knots J coordinates in monotonically increasing order
+     * @param fu the U displacements at the knots, indexed by I and then by J
+     * @param fv the V displacements at the knots, indexed by I and then by J
+     * @param _width the width of the dense field in pixels
+     * @param _height the height of the dense field in pixels
+     * @param regions the regions to evaluate, stored as consecutive top, left, bottom and right pixel limits
+     * @param regionsCount the number of regions
+     */
+    public void interpolateRegions(double[] ys, double[] xs, double[][] fu, double[][] fv, int _width, int _height, 
+                                   int[] regions, int regionsCount) {
+        prepare(ys, xs, fu, fv, _width, _height);
+        evaluateRegions(regions, regionsCount);
+    }
+
+    private void prepare(double[] ys, double[] xs, double[][] fu, double[][] fv, int _width, int _height) {
+        width = _width;
+        height = _height;
+        if (us.length < width * height) {
+            us = new float[width * height];
+            vs = new float[width * height];
+        }
+
+        cellsI = ys.length > 1 ? ys.length - 1 : 1;
+        cellsJ = xs.length > 1 ? xs.length - 1 : 1;
+        if (coeffsU.length < cellsI * cellsJ * COEFFS_PER_CELL) {
+            coeffsU = new double[cellsI * cellsJ * COEFFS_PER_CELL];
+            coeffsV = new double[cellsI * cellsJ * COEFFS_PER_CELL];
+        }
+
+        if (ys.length >= 3 && xs.length >= 3) {
+            computeSplineCoefficients(ys, xs, fu, coeffsU);
+            computeSplineCoefficients(ys, xs, fv, coeffsV);
+        } else {
+            computeBiLinearCoefficients(ys.length, xs.length, fu, coeffsU);
+            computeBiLinearCoefficients(ys.length, xs.length, fv, coeffsV);
+        }
+
+        if (rowCells.length < height) {
+            rowCells = new int[height];
+            rowOffsets = new double[height];
+        }
+        computeCellsLookup(ys, height, rowCells, rowOffsets);
+
+        if (columnCells.length < width) {
+            columnCells = new int[width];
+            columnOffsets = new double[width];
+        }
+        computeCellsLookup(xs, width, columnCells, columnOffsets);
+    }
+
+    private void evaluate() {
+        int tasks = pool == null ? 1 : FastMath.min(parallelism, height / MIN_ROWS_PER_TASK);
+        if (tasks <= 1) {
+            evaluateRows(0, 0, height, 0, width);
+        } else {
+            evaluateRowsInParallel(tasks);
+        }
+    }
+
+    private void evaluateRegions(int[] regions, int regionsCount) {
+        for (int region = 0; region < regionsCount; region++) {
+            final int offset = region * 4;
+            evaluateRows(0, regions[offset], regions[offset + 2], regions[offset + 1], regions[offset + 3]);
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Retrieves the interpolated U displacements.
+     * @return the reused row-major U plane, where pixel (i, j) is at index i * width + j
+     */
+    public float[] getU() {
+        return us;
+    }
+
+    /**
+     * Retrieves the interpolated V displacements.
+     * @return the reused row-major V plane, where pixel (i, j) is at index i * width + j
+     */
+    public float[] getV() {
+        return vs;
+    }
+
+    /**
+     * Computes for each pixel coordinate the index of the cell where it is interpolated and the normalized offset
+     * within the cell, after clamping to the knots region, as done by the commons-math spline function.
+     */
+    private static void computeCellsLookup(double[] knots, int length, int[] cells, double[] offsets) {
+        final float min = (float)knots[0];
+        final float max = (float)knots[knots.length - 1];
+        final int last = knots.length - 1;
+        for (int index = 0; index < length; index++) {
+            float value = index;
+            if (value < min) {
+                value = min;
+            } else if (value > max) {
+                value = max;
+            }
+
+            if (last == 0) {
+                cells[index] = 0;
+                offsets[index] = 0.0;
+                continue;
+            }
+
+            int cell = Arrays.binarySearch(knots, value);
+            if (cell < 0) {
+                cell = -cell - 2;
+            } else if (cell == last) {
+                cell = last - 1;
+            }
+            cells[index] = cell;
+            offsets[index] = (value - knots[cell]) / (knots[cell + 1] - knots[cell]);
+        }
+    }
+
+    /**
+     * Computes the first derivatives at the knots of the natural cubic spline through the given points, as in the
+     * commons-math <code>SplineInterpolator</code>.
+     */
+    private static void computeSplineDerivatives(double[] x, double[] y, double[] derivatives) {
+        final int n = x.length - 1;
+        final double h[] = new double[n];
+        for (int i = 0; i < n; i++) {
+            h[i] = x[i + 1] - x[i];
+        }
+
+        final double mu[] = new double[n];
+        final double z[] = new double[n + 1];
+        for (int i = 1; i < n; i++) {
+            final double g = 2.0 * (x[i + 1] - x[i - 1]) - h[i - 1] * mu[i - 1];
+            mu[i] = h[i] / g;
+            z[i] = (3.0 * (y[i + 1] * h[i - 1] - y[i] * (x[i + 1] - x[i - 1]) + y[i - 1] * h[i]) /
+                    (h[i - 1] * h[i]) - h[i - 1] * z[i - 1]) / g;
+        }
+
+        final double c[] = new double[n + 1];
+        double b = 0.0;
+        double d = 0.0;
+        for (int j = n - 1; j >= 0; j--) {
+            c[j] = z[j] - mu[j] * c[j + 1];
+            b = (y[j + 1] - y[j]) / h[j] - h[j] * (c[j + 1] + 2.0 * c[j]) / 3.0;
+            d = (c[j + 1] - c[j]) / (3.0 * h[j]);
+            derivatives[j] = b;
+            if (j == n - 1) {
+                //Derivative of the last polynomial at the last knot
+                derivatives[n] = h[j] * (h[j] * (3.0 * d) + 2.0 * c[j]) + b;
+            }
+        }
+    }
+
+    private static void computeSplineCoefficients(double[] ys, double[] xs, double[][] f, double[] coeffs) {
+        final int knotsI = ys.length;
+        final int knotsJ = xs.length;
+        final double[][] dFdI = new double[knotsI][knotsJ];
+        final double[][] dFdJ = new double[knotsI][knotsJ];
+        final double[][] d2FdIdJ = new double[knotsI][knotsJ];
+
+        final double[] line = new double[knotsI];
+        final double[] derivatives = new double[knotsI];
+        for (int j = 0; j < knotsJ; j++) {
+            for (int i = 0; i < knotsI; i++) {
+                line[i] = f[i][j];
+            }
+            computeSplineDerivatives(ys, line, derivatives);
+            for (int i = 0; i < knotsI; i++) {
+                dFdI[i][j] = derivatives[i];
+            }
+        }
+
+        for (int i = 0; i < knotsI; i++) {
+            computeSplineDerivatives(xs, f[i], dFdJ[i]);
+        }
+
+        for (int i = 0; i < knotsI; i++) {
+            final int nI = i + 1 < knotsI ? i + 1 : i;
+            final int pI = i - 1 >= 0 ? i - 1 : 0;
+            for (int j = 0; j < knotsJ; j++) {
+                final int nJ = j + 1 < knotsJ ? j + 1 : j;
+                final int pJ = j - 1 >= 0 ? j - 1 : 0;
+                d2FdIdJ[i][j] = (f[nI][nJ] - f[nI][pJ] - f[pI][nJ] + f[pI][pJ]) / ((ys[nI] - ys[pI]) * (xs[nJ] - xs[pJ]));
+            }
+        }
+
+        //NOTE: Derivatives are not scaled by the cell extents, to reproduce the commons-math 3.6.1 spline exactly
+        final double[] beta = new double[COEFFS_PER_CELL];
+        for (int i = 0; i < knotsI - 1; i++) {
+            for (int j = 0; j < knotsJ - 1; j++) {
+                beta[0] = f[i][j];
+                beta[1] = f[i + 1][j];
+                beta[2] = f[i][j + 1];
+                beta[3] = f[i + 1][j + 1];
+                beta[4] = dFdI[i][j];
+                beta[5] = dFdI[i + 1][j];
+                beta[6] = dFdI[i][j + 1];
+                beta[7] = dFdI[i + 1][j + 1];
+                beta[8] = dFdJ[i][j];
+                beta[9] = dFdJ[i + 1][j];
+                beta[10] = dFdJ[i][j + 1];
+                beta[11] = dFdJ[i + 1][j + 1];
+                beta[12] = d2FdIdJ[i][j];
+                beta[13] = d2FdIdJ[i + 1][j];
+                beta[14] = d2FdIdJ[i][j + 1];
+                beta[15] = d2FdIdJ[i + 1][j + 1];
+
+                //Coefficient of offsetI^k * offsetJ^l is at index k * 4 + l
+                final int offset = (i * (knotsJ - 1) + j) * COEFFS_PER_CELL;
+                for (int k = 0; k < COEFFS_PER_CELL; k++) {
+                    double result = 0.0;
+                    for (int m = 0; m < COEFFS_PER_CELL; m++) {
+                        result += AINV[k][m] * beta[m];
+                    }
+                    coeffs[offset + k] = result;
+                }
+            }
+        }
+    }
+
+    /**
+     * Expresses the bi-linear interpolation of each cell with the same polynomial layout of the spline cells.
+     * Grids with a single knot in a given direction are constant along that direction.
+     */
+    private void computeBiLinearCoefficients(int knotsI, int knotsJ, double[][] f, double[] coeffs) {
+        Arrays.fill(coeffs, 0, cellsI * cellsJ * COEFFS_PER_CELL, 0.0);
+        for (int i = 0; i < cellsI; i++) {
+            final int nI = i + 1 < knotsI ? i + 1 : i;
+            for (int j = 0; j < cellsJ; j++) {
+                final int nJ = j + 1 < knotsJ ? j + 1 : j;
+                final int offset = (i * cellsJ + j) * COEFFS_PER_CELL;
+                coeffs[offset] = f[i][j];
+                coeffs[offset + 1] = f[i][nJ] - f[i][j];
+                coeffs[offset + 4] = f[nI][j] - f[i][j];
+                coeffs[offset + 5] = f[nI][nJ] - f[nI][j] - f[i][nJ] + f[i][j];
+            }
+        }
+    }
+
+    private void evaluateRows(int taskIndex, int fromRow, int toRow, int fromColumn, int toColumn) {
+        if (rowCoeffsU[taskIndex].length < cellsJ * COEFFS_PER_CELL) {
+            rowCoeffsU[taskIndex] = new double[cellsJ * COEFFS_PER_CELL];
+            rowCoeffsV[taskIndex] = new double[cellsJ * COEFFS_PER_CELL];
+        }
+        final double[] rowU = rowCoeffsU[taskIndex];
+        final double[] rowV = rowCoeffsV[taskIndex];
+
+        for (int i = fromRow; i < toRow; i++) {
+            final double y = rowOffsets[i];
+            final double y2 = y * y;
+            final double y3 = y2 * y;
+            final int cellsOffset = rowCells[i] * cellsJ * COEFFS_PER_CELL;
+            //Apply the I powers once per row, so that only the J powers remain to be applied for each pixel.
+            //Terms are kept separate and summed in the same order as commons-math, to obtain the exact same values.
+            for (int cell = columnCells[fromColumn]; cell <= columnCells[toColumn - 1]; cell++) {
+                final int offset = cell * COEFFS_PER_CELL;
+                for (int l = 0; l < 4; l++) {
+                    rowU[offset + l] = coeffsU[cellsOffset + offset + l];
+                    rowU[offset + 4 + l] = coeffsU[cellsOffset + offset + 4 + l] * y;
+                    rowU[offset + 8 + l] = coeffsU[cellsOffset + offset + 8 + l] * y2;
+                    rowU[offset + 12 + l] = coeffsU[cellsOffset + offset + 12 + l] * y3;
+                    rowV[offset + l] = coeffsV[cellsOffset + offset + l];
+                    rowV[offset + 4 + l] = coeffsV[cellsOffset + offset + 4 + l] * y;
+                    rowV[offset + 8 + l] = coeffsV[cellsOffset + offset + 8 + l] * y2;
+                    rowV[offset + 12 + l] = coeffsV[cellsOffset + offset + 12 + l] * y3;
+                }
+            }
+
+            final int rowOffset = i * width;
+            for (int j = fromColumn; j < toColumn; j++) {
+                final double x = columnOffsets[j];
+                final double x2 = x * x;
+                final double x3 = x2 * x;
+                final int offset = columnCells[j] * COEFFS_PER_CELL;
+                double u = 0.0;
+                double v = 0.0;
+                for (int k = offset; k < offset + COEFFS_PER_CELL; k += 4) {
+                    u += rowU[k];
+                    u += rowU[k + 1] * x;
+                    u += rowU[k + 2] * x2;
+                    u += rowU[k + 3] * x3;
+                    v += rowV[k];
+                    v += rowV[k + 1] * x;
+                    v += rowV[k + 2] * x2;
+                    v += rowV[k + 3] * x3;
+                }
+                us[rowOffset + j] = (float)u;
+                vs[rowOffset + j] = (float)v;
+            }
+        }
+    }
+
+    private void evaluateRowsInParallel(int tasks) {
+        List<ForkJoinTask<?>> submittedTasks = new ArrayList<ForkJoinTask<?>>(tasks);
+        int rowsPerTask = height / tasks;
+        int remainingRows = height % tasks;
+        int fromRow = 0;
+        for (int taskIndex = 0; taskIndex < tasks; taskIndex++) {
+            final int task = taskIndex;
+            final int taskFromRow = fromRow;
+            final int taskToRow = fromRow + rowsPerTask + (taskIndex < remainingRows ? 1 : 0);
+            submittedTasks.add(pool.submit(() -> evaluateRows(task, taskFromRow, taskToRow, 0, width)));
+            fromRow = taskToRow;
+        }
+
+        //Wait for all tasks to complete, before reporting any failure
+        RuntimeException failure = null;
+        for (ForkJoinTask<?> submittedTask : submittedTasks) {
+            try {
+                submittedTask.join();
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -6,10 +6,24 @@
  */
 package pt.quickLabPIV.iareas;
 
+import pt.quickLabPIV.PIVContextSingleton;
+
 public interface IInterAreaVelocityInheritanceStrategy {
 	/**
 	 * Resets the state for the iteration step tiles for instance re-use purposes where the base PIV Parameters remains unchanged. 
 	 * @param currentStepTiles the iteration step tiles instance to be reset for reuse
 	 */
 	public void reuseIterationStepTilesParameters(IterationStepTiles currentStepTiles);
+
+	/**
+	 * Resets the state for the base iteration step tiles for reuse with a new frame, while seeding the tiles displacements
+	 * from the final displacements of the previous frame, which can have a different tiles geometry.
+	 * The default implementation interpolates the previous frame displacements with a bi-cubic spline.
+	 * @param currentStepTiles the base iteration step tiles instance to be reset for reuse
+	 * @param previousFrameStepTiles the last iteration step tiles of the previous frame, which may be the same instance
+	 */
+	public default void seedIterationStepTilesFromPreviousFrame(IterationStepTiles currentStepTiles, IterationStepTiles previousFrameStepTiles) {
+	    boolean requiresRounding = PIVContextSingleton.getSingleton().getPIVParameters().getWarpingMode().isRequiresRounding();
+	    AdaptiveInterVelocityInheritanceStrategyBiCubicSpline.inheritDisplacements(previousFrameStepTiles, currentStepTiles, requiresRounding);
+	}
 }
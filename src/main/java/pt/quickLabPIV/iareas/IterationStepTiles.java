@@ -56,6 +56,7 @@ public class IterationStepTiles {
 	private final short numberOfTilesInJ;
 	
 	private boolean denseTiles = false;
+	private boolean seededFromPreviousFrame = false;
     private short denseWidth;
     private short denseHeight;
     
@@ -115,7 +116,11 @@ public class IterationStepTiles {
 		}
 	}
 	
-	short getCurrentStepRetries() {
+	/**
+	 * Retrieves the number of times the tiles of the current step were clipped, since they were created or reused.
+	 * @return 1 for the first clipping of the step, or greater for the re-iterations of the unstable tiles
+	 */
+	public short getCurrentStepRetries() {
 		return currentStepRetries;
 	}
 	
@@ -273,11 +278,37 @@ public class IterationStepTiles {
 	 */
 	public void reuseTiles() {
 		currentStepRetries = 0;
+		seededFromPreviousFrame = false;
 		resetDisplacements();
 		velocityInheritanceStrategy.reuseIterationStepTilesParameters(this);
 		denseTiles = false;
 	}
 
+	/**
+	 * Prepares the base iteration step tiles for reuse with a new frame, seeding the displacements from the final
+	 * displacements of the previous frame, instead of starting from zero displacements.
+	 * Actual displacement seeding algorithm is dependent on the current Velocity Inheritance Strategy in use.
+	 * @param previousFrameStepTiles the last iteration step tiles of the previous frame, which may be this same instance
+	 */
+	public void reuseTiles(IterationStepTiles previousFrameStepTiles) {
+		if (currentStep != 0) {
+			throw new IterationStepTilesParametersException("Only the base iteration step can be seeded from the previous frame");
+		}
+		currentStepRetries = 0;
+		velocityInheritanceStrategy.seedIterationStepTilesFromPreviousFrame(this, previousFrameStepTiles);
+		denseTiles = false;
+		seededFromPreviousFrame = true;
+	}
+
+	/**
+	 * Checks if the tiles may have non-zero displacements before their first cross-correlation, either inherited from
+	 * the previous adaptive step, or seeded from the previous frame.
+	 * @return true if displacements may be non-zero, false if all displacements are zero
+	 */
+	public boolean hasInheritedDisplacements() {
+		return currentStep > 0 || seededFromPreviousFrame;
+	}
+
 	/**
 	 * Retrieves the tile that has the same indices as the reference tile. It is intended to be used
 	 * when retrieving the two related image tiles for cross-correlation purposes.   
@@ -303,6 +334,16 @@ public class IterationStepTiles {
 		return result;
 	}
 	
+	/**
+	 * Excludes a tile from the evaluation of the current adaptive step, so that it is neither clipped, nor cross-correlated.
+	 * The tile displacement is kept unchanged, thus it still contributes to the image warping.
+	 * @param tileIndexI the tile index in I
+	 * @param tileIndexJ the tile index in J
+	 */
+	public void skipTileEvaluation(int tileIndexI, int tileIndexJ) {
+		tiles[tileIndexI][tileIndexJ].setStableState(TileStableStateEnum.STABLE);
+	}
+
 	/**
 	 * Increment the number of step retries counter.
 	 */
@@ -6,42 +6,32 @@
  */
 package pt.quickLabPIV.iareas.validation;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
-
 import org.apache.commons.math3.util.FastMath;
 
 import pt.quickLabPIV.PIVContextSingleton;
 import pt.quickLabPIV.iareas.IterationStepTiles;
 import pt.quickLabPIV.iareas.Tile;
 
+/**
+ * Normalized median test over the 8 adjacent vectors.
+ * <br/>
+ * Neighbor displacements are gathered into primitive arrays and sorted by sorting networks, without any per tile
+ * allocation, so that whole rows of tiles can also be validated from flat U/V arrays, through
+ * {@link #validateVectors(float[], float[], boolean[], int, int, int, int, boolean[])}.
+ * @author lpnm
+ */
 public class NormalizedMedianValidator implements IVectorValidator {
+    private static final int MAX_NEIGHBORS = 8;
+    //Batcher's odd-even merge sort network for 8 inputs
+    private static final int[] NETWORK = new int[] {0,1, 2,3, 4,5, 6,7, 0,2, 1,3, 4,6, 5,7, 1,2, 5,6,
+                                                    0,4, 1,5, 2,6, 3,7, 2,4, 3,5, 1,2, 3,4, 5,6};
     private final float threshold;
     private final float epsilon0;
-    private ArrayList<Tile> sortedTiles = new ArrayList<Tile>(8);
-    private float[] rIs = new float[8];
-    private Comparator<Tile> distanceComparator = new Comparator<Tile>() {
-        @Override
-        public int compare(Tile t1, Tile t2) {
-            float u1 = t1.getDisplacementU();
-            float v1 = t1.getDisplacementV();
-            float u2 = t2.getDisplacementU();
-            float v2 = t2.getDisplacementV();
-
-            float norm1 = u1*u1 + v1*v1;
-            float norm2 = u2*u2 + v2*v2;
-            
-            if (norm1 > norm2) {
-                return 1;
-            } else if (norm1 < norm2) {
-                return -1;
-            } else {
-                return 0;
-            }
-        }        
-    };
+    private final float[] neighborsU = new float[MAX_NEIGHBORS];
+    private final float[] neighborsV = new float[MAX_NEIGHBORS];
+    private final float[] norms = new float[MAX_NEIGHBORS];
+    private final int[] order = new int[MAX_NEIGHBORS];
+    private final float[] rIs = new float[MAX_NEIGHBORS];
     
     public NormalizedMedianValidator() {
         PIVContextSingleton singleton = PIVContextSingleton.getSingleton();
@@ -59,12 +49,27 @@ public class NormalizedMedianValidator implements IVectorValidator {
         epsilon0 = configuration.getEpsilon0();        
     }
 
+    private NormalizedMedianValidator(NormalizedMedianValidator other) {
+        threshold = other.threshold;
+        epsilon0 = other.epsilon0;
+    }
+
+    /**
+     * Creates a validator with the same configuration, but with its own working buffers, so that it can validate
+     * vectors concurrently with this one.
+     * @return the new validator
+     */
+    public NormalizedMedianValidator duplicate() {
+        return new NormalizedMedianValidator(this);
+    }
+
     @Override
     public void validateVector(Tile tile, Tile[][] adjacents, IterationStepTiles stepTiles) {
         if (tile.isMaskedDisplacement()) {
             return;
         }
-        sortedTiles.clear();        
+
+        int neighborsCount = 0;
         for (int indexI = 0; indexI < 3; indexI++) {
             for (int indexJ = 0; indexJ < 3; indexJ++) {
                 if (indexI == 1 && indexJ == 1) {
@@ -80,39 +85,113 @@ public class NormalizedMedianValidator implements IVectorValidator {
                     continue;
                 }
 
-                sortedTiles.add(adjacent);
+                neighborsU[neighborsCount] = adjacent.getDisplacementU();
+                neighborsV[neighborsCount] = adjacent.getDisplacementV();
+                neighborsCount++;
+            }
+        }
+
+        tile.setInvalidDisplacement(!isValid(tile.getDisplacementU(), tile.getDisplacementV(), neighborsCount));
+    }
+
+    /**
+     * Validates the vectors of a range of rows of tiles, from flat row-major displacement arrays.
+     * Masked vectors are neither validated, nor used as neighbors.
+     * @param us the tiles displacements in U
+     * @param vs the tiles displacements in V
+     * @param masked the tiles masked state
+     * @param tilesInI the number of tiles in I
+     * @param tilesInJ the number of tiles in J
+     * @param fromI the first row of tiles to validate
+     * @param toI the row of tiles after the last one to validate
+     * @param invalids the validation result of each non masked tile
+     */
+    public void validateVectors(float[] us, float[] vs, boolean[] masked, int tilesInI, int tilesInJ, int fromI, int toI, boolean[] invalids) {
+        for (int i = fromI; i < toI; i++) {
+            for (int j = 0; j < tilesInJ; j++) {
+                final int index = i * tilesInJ + j;
+                if (masked[index]) {
+                    continue;
+                }
+
+                int neighborsCount = 0;
+                for (int neighborI = i - 1; neighborI <= i + 1; neighborI++) {
+                    if (neighborI < 0 || neighborI >= tilesInI) {
+                        continue;
+                    }
+                    for (int neighborJ = j - 1; neighborJ <= j + 1; neighborJ++) {
+                        final int neighborIndex = neighborI * tilesInJ + neighborJ;
+                        if (neighborJ < 0 || neighborJ >= tilesInJ || neighborIndex == index || masked[neighborIndex]) {
+                            continue;
+                        }
+                        neighborsU[neighborsCount] = us[neighborIndex];
+                        neighborsV[neighborsCount] = vs[neighborIndex];
+                        neighborsCount++;
+                    }
+                }
+
+                invalids[index] = !isValid(us[index], vs[index], neighborsCount);
+            }
+        }
+    }
+
+    private boolean isValid(float u, float v, int neighborsCount) {
+        //Neighbors are ordered by their norm, keeping the adjacency order for equal norms, while missing neighbors go last
+        for (int index = 0; index < MAX_NEIGHBORS; index++) {
+            order[index] = index;
+            if (index < neighborsCount) {
+                norms[index] = neighborsU[index]*neighborsU[index] + neighborsV[index]*neighborsV[index];
+            } else {
+                norms[index] = Float.POSITIVE_INFINITY;
+            }
+        }
+        for (int index = 0; index < NETWORK.length; index += 2) {
+            final int a = NETWORK[index];
+            final int b = NETWORK[index + 1];
+            if (norms[a] > norms[b] || (norms[a] == norms[b] && order[a] > order[b])) {
+                float tempNorm = norms[a];
+                norms[a] = norms[b];
+                norms[b] = tempNorm;
+                int tempOrder = order[a];
+                order[a] = order[b];
+                order[b] = tempOrder;
             }
         }
-        Collections.sort(sortedTiles, distanceComparator);
         
         float medianU = 0.0f;
         float medianV = 0.0f;
-        int neighborsCount = sortedTiles.size();
         if (neighborsCount > 0) {
             if (neighborsCount % 2 == 0) {
                 //Even
-                medianU = (sortedTiles.get(neighborsCount/2-1).getDisplacementU() + sortedTiles.get(neighborsCount/2).getDisplacementU())/2.0f;
-                medianV = (sortedTiles.get(neighborsCount/2-1).getDisplacementV() + sortedTiles.get(neighborsCount/2).getDisplacementV())/2.0f;
+                medianU = (neighborsU[order[neighborsCount/2-1]] + neighborsU[order[neighborsCount/2]])/2.0f;
+                medianV = (neighborsV[order[neighborsCount/2-1]] + neighborsV[order[neighborsCount/2]])/2.0f;
             } else {
                 //Odd
-                medianU = sortedTiles.get(neighborsCount/2).getDisplacementU();
-                medianV = sortedTiles.get(neighborsCount/2).getDisplacementV();
+                medianU = neighborsU[order[neighborsCount/2]];
+                medianV = neighborsV[order[neighborsCount/2]];
             }
         }
         
-        for (int indexI = 0; indexI < rIs.length; indexI++) {
-            rIs[indexI] = Float.MAX_VALUE;
+        for (int index = 0; index < MAX_NEIGHBORS; index++) {
+            if (index < neighborsCount) {
+                float dU = medianU - neighborsU[order[index]]; 
+                float dV = medianV - neighborsV[order[index]];
+                rIs[index] = dU*dU + dV*dV;
+            } else {
+                rIs[index] = Float.MAX_VALUE;
+            }
         }
-        
-        int rIndex = 0;
-        for (Tile sortedTile : sortedTiles) {
-            float dU = medianU - sortedTile.getDisplacementU(); 
-            float dV = medianV - sortedTile.getDisplacementV();
-            float rI = dU*dU + dV*dV;
-            rIs[rIndex++] = rI;
+        for (int index = 0; index < NETWORK.length; index += 2) {
+            final int a = NETWORK[index];
+            final int b = NETWORK[index + 1];
+            if (rIs[a] > rIs[b]) {
+                float temp = rIs[a];
+                rIs[a] = rIs[b];
+                rIs[b] = temp;
+            }
         }
-        Arrays.sort(rIs);
         
+        final int rIndex = neighborsCount;
         float rMed;
         if (rIndex - 1 == 0) {
             rMed = 1.0f;
@@ -124,14 +203,10 @@ public class NormalizedMedianValidator implements IVectorValidator {
             }
         }
         
-        float dU = medianU - tile.getDisplacementU();
-        float dV = medianV - tile.getDisplacementV();
+        float dU = medianU - u;
+        float dV = medianV - v;
         
         float distance = (float)FastMath.sqrt(dU*dU + dV*dV)/(rMed + epsilon0);
-        if (distance < threshold) {
-            tile.setInvalidDisplacement(false);
-        } else {
-            tile.setInvalidDisplacement(true);
-        }        
+        return distance < threshold;
     }
 }
@@ -58,7 +58,7 @@ public final class BiLinearImageMicroAndMiniWarpingStrategy implements IImageWar
                 }
                 
                 try {
-                    if (stepTilesB.getCurrentStep() > 0) {                        
+                    if (stepTilesB.hasInheritedDisplacements()) {                        
                         switch (warpingMode) {
                         case SecondImage:
                             Matrix matrixA = imageA.clipImageMatrix(tileA.getTopPixel(), tileA.getLeftPixel(), tileHeight, tileWidth, false, tileA.getMatrix());
@@ -6,6 +6,9 @@
  */
 package pt.quickLabPIV.images;
 
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
 import org.apache.commons.math3.util.FastMath;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,7 +16,8 @@ import org.slf4j.LoggerFactory;
 import pt.quickLabPIV.Matrix;
 import pt.quickLabPIV.PIVContextSingleton;
 import pt.quickLabPIV.PIVInputParameters;
-import pt.quickLabPIV.iareas.BiCubicSplineInterpolatorWithBiLinearBackup;
+import pt.quickLabPIV.PIVRunParameters;
+import pt.quickLabPIV.iareas.DenseDisplacementFieldInterpolator;
 import pt.quickLabPIV.iareas.InvalidStateException;
 import pt.quickLabPIV.iareas.IterationStepTiles;
 import pt.quickLabPIV.iareas.Tile;
@@ -23,15 +27,24 @@ import pt.quickLabPIV.iareas.TilesOrderEnum;
 public final class BiLinearImageWarpingStrategy implements IImageWarpingStrategy {
     private static Logger logger = LoggerFactory.getLogger(BiLinearImageWarpingStrategy.class);
     
-    private float[][][] interpolatedPixelDisplacements = null;
+    private final DenseDisplacementFieldInterpolator displacementField = new DenseDisplacementFieldInterpolator();
+    private short occurrencesMapA[][] = new short[0][0];
+    private short occurrencesMapB[][] = new short[0][0];
     private Matrix imageMatrixA = null;
     private Matrix imageMatrixB = null;
     private BiLinearImageWarpingModeEnum warpingMode;
+    private int[] regions = new int[0];
+    private int regionsCount;
     
     public BiLinearImageWarpingStrategy(BiLinearImageWarpingModeEnum mode) {
         warpingMode = mode;
     }
     
+    @Override
+    public void setParallelism(ForkJoinPool pool, int parallelism) {
+        displacementField.setParallelism(pool, parallelism);
+    }
+    
     //FIXME This is likely to not work properly when margins are set...?? or do Tiles account for the margins?
     
     @Override
@@ -47,9 +60,27 @@ public final class BiLinearImageWarpingStrategy implements IImageWarpingStrategy
             throw new ImageClippingException("Failed to do clipping and warping, because tiles are in wrong tile order from the expected");
         }
         
-        if (stepTilesB.getCurrentStep() > 0) {
-           BiCubicSplineInterpolatorWithBiLinearBackup interpolator = BiCubicSplineInterpolatorWithBiLinearBackup.createTileDisplacementInterpolator(stepTilesB);//.getParentStepTiles()); 
-           interpolatedPixelDisplacements = interpolator.interpolateDisplacements(0, 0, imageWidth, imageHeight, interpolatedPixelDisplacements);
+        //Re-iterations of the unstable tiles only need the image regions covered by the tiles still being evaluated,
+        //since the remaining regions are not clipped again
+        final PIVRunParameters runParameters = PIVContextSingleton.getSingleton().getPIVRunParameters();
+        if (runParameters.isIncrementalReIterations() && stepTilesB.getCurrentStepRetries() > 1 && 
+            collectEvaluatingRegions(stepTilesA, stepTilesB, imageHeight, imageWidth)) {
+            if (stepTilesB.hasInheritedDisplacements()) {
+                displacementField.interpolateRegions(stepTilesB, imageWidth, imageHeight, regions, regionsCount);
+                doBiLinearWarpRegions(imageA, imageB);
+            }
+            //Without inherited displacements the images are not warped and remain as clipped by the first iteration
+        } else {
+            warpImages(imageA, imageB, stepTilesA, stepTilesB, imageHeight, imageWidth);
+        }
+        
+        clipTiles(imageA, imageB, stepTilesA, stepTilesB, tileHeight, tileWidth);
+    }
+    
+    private void warpImages(IImage imageA, IImage imageB, IterationStepTiles stepTilesA, IterationStepTiles stepTilesB, 
+                            int imageHeight, int imageWidth) {
+        if (stepTilesB.hasInheritedDisplacements()) {
+           displacementField.interpolate(stepTilesB, imageWidth, imageHeight);
         }
         
         //Perform warping before anything else
@@ -57,7 +88,7 @@ public final class BiLinearImageWarpingStrategy implements IImageWarpingStrategy
             //TODO Optimize pool by adaptive step           
             //imageMatrixB = new MatrixFloat(imageHeight, imageWidth, imageA.getMaximumValue());
             imageMatrixB = imageB.clipImageMatrix(0, 0, imageHeight, imageWidth, false, imageMatrixB);
-            if (stepTilesB.getCurrentStep() > 0) {
+            if (stepTilesB.hasInheritedDisplacements()) {
                 imageMatrixB.zeroMatrix();
                 //There is no need to perform warping on the first level of iteration for the step tiles, since displacements are all 0
                 doBiLinearWarp(imageA, imageB, warpingMode);
@@ -69,7 +100,7 @@ public final class BiLinearImageWarpingStrategy implements IImageWarpingStrategy
         } else if (warpingMode == BiLinearImageWarpingModeEnum.FirstImage) {
             //imageMatrixA = new MatrixFloat(imageHeight, imageWidth, imageA.getMaximumValue());
             imageMatrixA = imageA.clipImageMatrix(0, 0, imageHeight, imageWidth, false, imageMatrixA);
-            if (stepTilesA.getCurrentStep() > 0) {
+            if (stepTilesB.hasInheritedDisplacements()) {
                 imageMatrixA.zeroMatrix();
                 //There is no need to perform warping on the first level of iteration for the step tiles, since displacements are all 0
                 doBiLinearWarp(imageA, imageB, warpingMode);
@@ -83,7 +114,7 @@ public final class BiLinearImageWarpingStrategy implements IImageWarpingStrategy
             //imageMatrixB = new MatrixFloat(imageHeight, imageWidth, imageA.getMaximumValue());
             imageMatrixA = imageA.clipImageMatrix(0, 0, imageHeight, imageWidth, false, imageMatrixA);
             imageMatrixB = imageB.clipImageMatrix(0, 0, imageHeight, imageWidth, false, imageMatrixB);
-            if (stepTilesA.getCurrentStep() > 0 || stepTilesB.getCurrentStep() > 0) {
+            if (stepTilesB.hasInheritedDisplacements()) {
                 imageMatrixA.zeroMatrix();
                 imageMatrixB.zeroMatrix();
                 //There is no need to perform warping on the first level of iteration for the step tiles, since displacements are all 0
@@ -95,7 +126,68 @@ public final class BiLinearImageWarpingStrategy implements IImageWarpingStrategy
         } else {
             throw new ImageClippingException("Unknown BiLinear image warping mode: " + warpingMode.toString());
         }
+    }
+
+    /**
+     * Collects the image regions of the tiles that are still being evaluated, merging the adjacent tiles of each tiles row
+     * into a single region.
+     * @return true if the regions cover a small enough area for the incremental warping to pay off, false otherwise
+     */
+    private boolean collectEvaluatingRegions(IterationStepTiles stepTilesA, IterationStepTiles stepTilesB, int imageHeight, int imageWidth) {
+        final int tileHeight = stepTilesB.getTileHeight();
+        final int tileWidth = stepTilesB.getTileWidth();
+        final int maxRegions = stepTilesB.getNumberOfTilesInI() * stepTilesB.getNumberOfTilesInJ();
+        if (regions.length < maxRegions * 4) {
+            regions = new int[maxRegions * 4];
+        }
         
+        long area = 0;
+        regionsCount = 0;
+        for (int tileI = 0; tileI < stepTilesB.getNumberOfTilesInI(); tileI++) {
+            boolean merging = false;
+            for (int tileJ = 0; tileJ < stepTilesB.getNumberOfTilesInJ(); tileJ++) {
+                Tile tileA = stepTilesA.getTile(tileI, tileJ);
+                Tile tileB = stepTilesB.getRelatedTile(tileA);
+                if (tileA.getStableState() != TileStableStateEnum.EVALUATING || tileB.getStableState() != TileStableStateEnum.EVALUATING) {
+                    merging = false;
+                    continue;
+                }
+                
+                final int top = FastMath.max(0, tileB.getTopPixel());
+                final int left = FastMath.max(0, tileB.getLeftPixel());
+                final int bottom = FastMath.min(imageHeight, tileB.getTopPixel() + tileHeight);
+                final int right = FastMath.min(imageWidth, tileB.getLeftPixel() + tileWidth);
+                if (top >= bottom || left >= right) {
+                    continue;
+                }
+                
+                if (merging) {
+                    final int offset = (regionsCount - 1) * 4;
+                    area -= (long)(regions[offset + 2] - regions[offset]) * (regions[offset + 3] - regions[offset + 1]);
+                    regions[offset    ] = FastMath.min(regions[offset    ], top);
+                    regions[offset + 1] = FastMath.min(regions[offset + 1], left);
+                    regions[offset + 2] = FastMath.max(regions[offset + 2], bottom);
+                    regions[offset + 3] = FastMath.max(regions[offset + 3], right);
+                    area += (long)(regions[offset + 2] - regions[offset]) * (regions[offset + 3] - regions[offset + 1]);
+                } else {
+                    final int offset = regionsCount * 4;
+                    regions[offset    ] = top;
+                    regions[offset + 1] = left;
+                    regions[offset + 2] = bottom;
+                    regions[offset + 3] = right;
+                    area += (long)(bottom - top) * (right - left);
+                    regionsCount++;
+                    merging = true;
+                }
+            }
+        }
+        
+        //Overlapping regions are warped only once, but their displacements are interpolated once per region
+        return area < (long)imageHeight * imageWidth;
+    }
+    
+    private void clipTiles(IImage imageA, IImage imageB, IterationStepTiles stepTilesA, IterationStepTiles stepTilesB, 
+                           short tileHeight, short tileWidth) {
         for (int tileI = 0; tileI < stepTilesB.getNumberOfTilesInI(); tileI++) {
             for (int tileJ = 0; tileJ < stepTilesB.getNumberOfTilesInJ(); tileJ++) {
                 Tile tileA = stepTilesA.getTile(tileI, tileJ);
@@ -156,13 +248,23 @@ public final class BiLinearImageWarpingStrategy implements IImageWarpingStrategy
         //          v
         //          y
         //
-        short occurrencesMapA[][] = new short[imageA.getHeight()][imageA.getWidth()];
-        short occurrencesMapB[][] = new short[imageA.getHeight()][imageA.getWidth()];
+        if (occurrencesMapA.length != imageA.getHeight() || occurrencesMapA[0].length != imageA.getWidth()) {
+            occurrencesMapA = new short[imageA.getHeight()][imageA.getWidth()];
+            occurrencesMapB = new short[imageA.getHeight()][imageA.getWidth()];
+        } else {
+            for (int i = 0; i < occurrencesMapA.length; i++) {
+                Arrays.fill(occurrencesMapA[i], (short)0);
+                Arrays.fill(occurrencesMapB[i], (short)0);
+            }
+        }
         
+        final float[] us = displacementField.getU();
+        final float[] vs = displacementField.getV();
+        final int fieldWidth = displacementField.getWidth();
         for (short i = 0; i < imageA.getHeight(); i++) {
             for (short j = 0; j < imageA.getWidth(); j++) {      
-                float u = interpolatedPixelDisplacements[i][j][0];
-                float v = interpolatedPixelDisplacements[i][j][1];
+                float u = us[i * fieldWidth + j];
+                float v = vs[i * fieldWidth + j];
                 
                 if (warpingMode == BiLinearImageWarpingModeEnum.BothImages) {
                     u /= 2.0f;
@@ -182,6 +284,54 @@ public final class BiLinearImageWarpingStrategy implements IImageWarpingStrategy
         }        
     }
 
+    /**
+     * Warps only the pixels of the collected regions, as done by {@link #doBiLinearWarp(IImage, IImage, BiLinearImageWarpingModeEnum)},
+     * leaving the remaining pixels of the warped images as they were.
+     */
+    private final void doBiLinearWarpRegions(final IImage imageA, final IImage imageB) {
+        final boolean warpA = warpingMode == BiLinearImageWarpingModeEnum.BothImages || warpingMode == BiLinearImageWarpingModeEnum.FirstImage;
+        final boolean warpB = warpingMode == BiLinearImageWarpingModeEnum.BothImages || warpingMode == BiLinearImageWarpingModeEnum.SecondImage;
+        final short[][] occurrencesMap = warpA ? occurrencesMapA : occurrencesMapB;
+        for (int offset = 0; offset < regionsCount * 4; offset += 4) {
+            for (int i = regions[offset]; i < regions[offset + 2]; i++) {
+                Arrays.fill(occurrencesMapA[i], regions[offset + 1], regions[offset + 3], (short)0);
+                Arrays.fill(occurrencesMapB[i], regions[offset + 1], regions[offset + 3], (short)0);
+            }
+        }
+        
+        final float[] us = displacementField.getU();
+        final float[] vs = displacementField.getV();
+        final int fieldWidth = displacementField.getWidth();
+        for (int offset = 0; offset < regionsCount * 4; offset += 4) {
+            for (short i = (short)regions[offset]; i < regions[offset + 2]; i++) {
+                for (short j = (short)regions[offset + 1]; j < regions[offset + 3]; j++) {
+                    if (occurrencesMap[i][j] != 0) {
+                        //Already warped as part of an overlapping tile
+                        continue;
+                    }
+                    
+                    float u = us[i * fieldWidth + j];
+                    float v = vs[i * fieldWidth + j];
+                    
+                    if (warpingMode == BiLinearImageWarpingModeEnum.BothImages) {
+                        u /= 2.0f;
+                        v /= 2.0f;
+                    }
+                    
+                    if (warpA) {
+                        float finalValue = warpPixelOnImage(imageA, u, v, i, j, TilesOrderEnum.FirstImage, occurrencesMapA);
+                        imageMatrixA.setElement(finalValue, i, j);
+                    }
+                    
+                    if (warpB) {
+                        float finalValue = warpPixelOnImage(imageB, u, v, i, j, TilesOrderEnum.SecondImage, occurrencesMapB);
+                        imageMatrixB.setElement(finalValue, i, j);                    
+                    }
+                }
+            }
+        }
+    }
+
     private final float warpPixelOnImage(final IImage image, final float u, final float v, 
                                         final short i, final short j, final TilesOrderEnum order, short[][] map) {
         float deltaU;
@@ -0,0 +1,438 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.images;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fast path decoder for the grayscale image files typically produced by PIV cameras, namely uncompressed strip based
+ * TIFF and non-interlaced PNG, with 8-bit or 16-bit pixels. The file is read into a per-thread reused buffer and the
+ * pixels are decoded straight into the image buffer, avoiding the BufferedImage creation, its raster copies and the
+ * color space conversions done when reading through ImageIO. Files are not memory mapped, since mappings are only
+ * released when garbage collected, which can exhaust the process mappings, or keep the files locked, when many
+ * files are read.
+ * <br/>
+ * Files in any other format, or whose pixel depth does not match the configured image type, are not decoded and
+ * must be read through ImageIO, which remains the reference decoder.
+ * @author lpnm
+ */
+public final class GrayscaleImageFileDecoder {
+    private static Logger logger = LoggerFactory.getLogger(GrayscaleImageFileDecoder.class);
+
+    private static final short TIFF_MAGIC = 42;
+    private static final int TIFF_TYPE_SHORT = 3;
+    private static final int TIFF_TYPE_LONG = 4;
+    private static final int TIFF_TAG_IMAGE_WIDTH = 256;
+    private static final int TIFF_TAG_IMAGE_LENGTH = 257;
+    private static final int TIFF_TAG_BITS_PER_SAMPLE = 258;
+    private static final int TIFF_TAG_COMPRESSION = 259;
+    private static final int TIFF_TAG_PHOTOMETRIC_INTERPRETATION = 262;
+    private static final int TIFF_TAG_STRIP_OFFSETS = 273;
+    private static final int TIFF_TAG_SAMPLES_PER_PIXEL = 277;
+    private static final int TIFF_TAG_ROWS_PER_STRIP = 278;
+    private static final int TIFF_TAG_TILE_WIDTH = 322;
+    private static final int TIFF_TAG_SAMPLE_FORMAT = 339;
+    private static final int TIFF_COMPRESSION_NONE = 1;
+    private static final int TIFF_PHOTOMETRIC_BLACK_IS_ZERO = 1;
+    private static final int TIFF_SAMPLE_FORMAT_UNSIGNED = 1;
+
+    private static final long PNG_SIGNATURE = 0x89504E470D0A1A0AL;
+    private static final int PNG_CHUNK_IHDR = 0x49484452;
+    private static final int PNG_CHUNK_IDAT = 0x49444154;
+    private static final int PNG_CHUNK_TRNS = 0x74524E53;
+    private static final int PNG_CHUNK_IEND = 0x49454E44;
+    private static final int PNG_COLOR_TYPE_GRAY = 0;
+    //Maximum deflate compression ratio, reached by long runs of repeated bytes
+    private static final long PNG_MAX_DEFLATE_RATIO = 1032L;
+
+    //File contents buffer reused by each image reader thread, grown as needed to hold the largest file read so far
+    private static final ThreadLocal<ByteBuffer> fileBuffers = new ThreadLocal<ByteBuffer>();
+
+    private GrayscaleImageFileDecoder() {
+    }
+
+    /**
+     * Decodes an image file if it is supported by this decoder.
+     * @param file the image file
+     * @param pixelDepth the configured image type
+     * @return the decoded image, or null if the file must be read through ImageIO instead
+     */
+    public static IImage decode(File file, ImageFactoryEnum pixelDepth) {
+        final int expectedBits = pixelDepth == ImageFactoryEnum.Image8Bit ? 8 : 16;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size < 8 || size > Integer.MAX_VALUE) {
+                return null;
+            }
+
+            ByteBuffer buffer = readFile(channel, (int)size);
+            if (buffer == null) {
+                return null;
+            }
+
+            IImage image = null;
+            if (buffer.getLong(0) == PNG_SIGNATURE) {
+                image = decodePng(buffer, expectedBits, pixelDepth, file.getAbsolutePath());
+            } else if ((buffer.get(0) == 'I' && buffer.get(1) == 'I') || (buffer.get(0) == 'M' && buffer.get(1) == 'M')) {
+                image = decodeTiff(buffer, expectedBits, pixelDepth, file.getAbsolutePath());
+            }
+
+            if (image == null && logger.isDebugEnabled()) {
+                logger.debug("Image file is not supported by the direct decoder: {}", file.getAbsolutePath());
+            }
+            return image;
+        } catch (IndexOutOfBoundsException e) {
+            //Inconsistent file structure, let ImageIO handle and report it
+            logger.debug("Inconsistent image file structure: {}", file.getAbsolutePath());
+            return null;
+        } catch (IOException e) {
+            throw new ImageReaderException("Failed to read file: " + file.getAbsolutePath(), e);
+        }
+    }
+
+    private static ByteBuffer readFile(FileChannel channel, int size) throws IOException {
+        ByteBuffer buffer = fileBuffers.get();
+        if (buffer == null || buffer.capacity() < size) {
+            buffer = ByteBuffer.allocate(size);
+            fileBuffers.set(buffer);
+        }
+
+        buffer.clear();
+        buffer.limit(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                //File was truncated while being read
+                return null;
+            }
+        }
+        buffer.flip();
+        //Byte order is left over from the previous file
+        buffer.order(ByteOrder.BIG_ENDIAN);
+
+        return buffer;
+    }
+
+    private static IImage createImage(ImageFactoryEnum pixelDepth, byte[] pixels8, short[] pixels16, int width, int height, String filename) {
+        switch (pixelDepth) {
+        case Image8Bit:
+            return new Image(pixels8, width, height, filename);
+        case Image10Bit:
+            return new ImageInt16(pixels16, ImageBitDepthEnum.BitDepth10, width, height, filename);
+        case Image12Bit:
+            return new ImageInt16(pixels16, ImageBitDepthEnum.BitDepth12, width, height, filename);
+        case Image16Bit:
+            return new ImageInt16(pixels16, ImageBitDepthEnum.BitDepth16, width, height, filename);
+        }
+
+        return null;
+    }
+
+    private static int[] readTiffValues(ByteBuffer buffer, int entryPosition) {
+        final int type = buffer.getShort(entryPosition + 2) & 0xffff;
+        final int count = buffer.getInt(entryPosition + 4);
+        final int valueSize = type == TIFF_TYPE_SHORT ? 2 : (type == TIFF_TYPE_LONG ? 4 : 0);
+        if (valueSize == 0 || count <= 0 || (long)count * valueSize > buffer.limit()) {
+            return null;
+        }
+
+        //Values are stored inline in the entry when they fit in its four value bytes
+        final int valuesPosition = count * valueSize <= 4 ? entryPosition + 8 : buffer.getInt(entryPosition + 8);
+        int[] values = new int[count];
+        for (int index = 0; index < count; index++) {
+            values[index] = valueSize == 2 ? buffer.getShort(valuesPosition + 2 * index) & 0xffff : buffer.getInt(valuesPosition + 4 * index);
+        }
+        return values;
+    }
+
+    private static int readTiffValue(ByteBuffer buffer, int entryPosition) {
+        int[] values = readTiffValues(buffer, entryPosition);
+        return values == null ? -1 : values[0];
+    }
+
+    private static IImage decodeTiff(ByteBuffer buffer, int expectedBits, ImageFactoryEnum pixelDepth, String filename) {
+        final ByteOrder order = buffer.get(0) == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        buffer.order(order);
+        if (buffer.getShort(2) != TIFF_MAGIC) {
+            //BigTIFF or not a TIFF file at all
+            return null;
+        }
+
+        //Only the first image of a multi-page file is decoded, as done by ImageIO.read
+        final int ifdOffset = buffer.getInt(4);
+        final int entries = buffer.getShort(ifdOffset) & 0xffff;
+        int width = -1;
+        int height = -1;
+        int bitsPerSample = 1;
+        int samplesPerPixel = 1;
+        int compression = TIFF_COMPRESSION_NONE;
+        int photometric = -1;
+        int rowsPerStrip = -1;
+        int sampleFormat = TIFF_SAMPLE_FORMAT_UNSIGNED;
+        int[] stripOffsets = null;
+        boolean tiled = false;
+        for (int entry = 0; entry < entries; entry++) {
+            final int position = ifdOffset + 2 + entry * 12;
+            switch (buffer.getShort(position) & 0xffff) {
+            case TIFF_TAG_IMAGE_WIDTH:
+                width = readTiffValue(buffer, position);
+                break;
+            case TIFF_TAG_IMAGE_LENGTH:
+                height = readTiffValue(buffer, position);
+                break;
+            case TIFF_TAG_BITS_PER_SAMPLE:
+                bitsPerSample = readTiffValue(buffer, position);
+                break;
+            case TIFF_TAG_COMPRESSION:
+                compression = readTiffValue(buffer, position);
+                break;
+            case TIFF_TAG_PHOTOMETRIC_INTERPRETATION:
+                photometric = readTiffValue(buffer, position);
+                break;
+            case TIFF_TAG_STRIP_OFFSETS:
+                stripOffsets = readTiffValues(buffer, position);
+                break;
+            case TIFF_TAG_SAMPLES_PER_PIXEL:
+                samplesPerPixel = readTiffValue(buffer, position);
+                break;
+            case TIFF_TAG_ROWS_PER_STRIP:
+                rowsPerStrip = readTiffValue(buffer, position);
+                break;
+            case TIFF_TAG_TILE_WIDTH:
+                tiled = true;
+                break;
+            case TIFF_TAG_SAMPLE_FORMAT:
+                sampleFormat = readTiffValue(buffer, position);
+                break;
+            default:
+                break;
+            }
+        }
+
+        if (width <= 0 || height <= 0 || tiled || stripOffsets == null || compression != TIFF_COMPRESSION_NONE ||
+            photometric != TIFF_PHOTOMETRIC_BLACK_IS_ZERO || samplesPerPixel != 1 || bitsPerSample != expectedBits ||
+            sampleFormat != TIFF_SAMPLE_FORMAT_UNSIGNED) {
+            return null;
+        }
+
+        if (rowsPerStrip <= 0 || rowsPerStrip > height) {
+            //Default, or 2^32-1, means a single strip
+            rowsPerStrip = height;
+        }
+        final int numberOfStrips = (height + rowsPerStrip - 1) / rowsPerStrip;
+        if (stripOffsets.length < numberOfStrips) {
+            return null;
+        }
+
+        final int bytesPerPixel = expectedBits / 8;
+        if ((long)width * height * bytesPerPixel > buffer.limit()) {
+            //Dimensions whose pixels cannot be stored in the file, possibly overflowing the pixel count
+            return null;
+        }
+
+        final byte[] pixels8 = expectedBits == 8 ? new byte[width * height] : null;
+        final short[] pixels16 = expectedBits == 16 ? new short[width * height] : null;
+        for (int strip = 0; strip < numberOfStrips; strip++) {
+            final int firstRow = strip * rowsPerStrip;
+            final int rows = Math.min(rowsPerStrip, height - firstRow);
+            final int offset = stripOffsets[strip];
+            if (offset < 0 || (long)offset + (long)rows * width * bytesPerPixel > buffer.limit()) {
+                return null;
+            }
+
+            //Duplicates do not inherit the byte order
+            ByteBuffer stripBuffer = buffer.duplicate().order(order);
+            stripBuffer.position(offset);
+            if (pixels8 != null) {
+                stripBuffer.get(pixels8, firstRow * width, rows * width);
+            } else {
+                stripBuffer.asShortBuffer().get(pixels16, firstRow * width, rows * width);
+            }
+        }
+
+        return createImage(pixelDepth, pixels8, pixels16, width, height, filename);
+    }
+
+    /**
+     * Sequential reader of the zlib compressed image data, which can be split across multiple IDAT chunks.
+     */
+    private static final class PngDataReader {
+        private final ByteBuffer buffer;
+        private final List<int[]> dataChunks;
+        private final Inflater inflater = new Inflater();
+        private byte[] chunkData = new byte[0];
+        private int nextChunk = 0;
+
+        private PngDataReader(ByteBuffer _buffer, List<int[]> _dataChunks) {
+            buffer = _buffer;
+            dataChunks = _dataChunks;
+        }
+
+        private boolean readFully(byte[] destination) throws DataFormatException {
+            int offset = 0;
+            while (offset < destination.length) {
+                final int inflated = inflater.inflate(destination, offset, destination.length - offset);
+                offset += inflated;
+                if (inflated == 0) {
+                    if (inflater.finished() || inflater.needsDictionary() || !inflater.needsInput() || nextChunk >= dataChunks.size()) {
+                        return false;
+                    }
+
+                    final int[] chunk = dataChunks.get(nextChunk++);
+                    if (chunkData.length < chunk[1]) {
+                        chunkData = new byte[chunk[1]];
+                    }
+                    ByteBuffer chunkBuffer = buffer.duplicate();
+                    chunkBuffer.position(chunk[0]);
+                    chunkBuffer.get(chunkData, 0, chunk[1]);
+                    inflater.setInput(chunkData, 0, chunk[1]);
+                }
+            }
+            return true;
+        }
+
+        private void end() {
+            inflater.end();
+        }
+    }
+
+    private static IImage decodePng(ByteBuffer buffer, int expectedBits, ImageFactoryEnum pixelDepth, String filename) {
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if (buffer.getInt(8) != 13 || buffer.getInt(12) != PNG_CHUNK_IHDR) {
+            return null;
+        }
+
+        final int width = buffer.getInt(16);
+        final int height = buffer.getInt(20);
+        final int bitDepth = buffer.get(24) & 0xff;
+        final int colorType = buffer.get(25) & 0xff;
+        final int compressionMethod = buffer.get(26) & 0xff;
+        final int filterMethod = buffer.get(27) & 0xff;
+        final int interlaceMethod = buffer.get(28) & 0xff;
+        if (width <= 0 || height <= 0 || colorType != PNG_COLOR_TYPE_GRAY || bitDepth != expectedBits ||
+            compressionMethod != 0 || filterMethod != 0 || interlaceMethod != 0) {
+            return null;
+        }
+
+        List<int[]> dataChunks = new ArrayList<int[]>();
+        long dataBytes = 0;
+        int position = 33;
+        while (position + 8 <= buffer.limit()) {
+            final int length = buffer.getInt(position);
+            final int type = buffer.getInt(position + 4);
+            if (length < 0 || (long)position + 12 + length > buffer.limit()) {
+                return null;
+            }
+            if (type == PNG_CHUNK_IDAT) {
+                dataChunks.add(new int[] { position + 8, length });
+                dataBytes += length;
+            } else if (type == PNG_CHUNK_TRNS) {
+                //Transparency adds an alpha channel when read through ImageIO
+                return null;
+            } else if (type == PNG_CHUNK_IEND) {
+                break;
+            }
+            position += 12 + length;
+        }
+
+        final int bytesPerPixel = expectedBits / 8;
+        //Each row is preceded by its filter type byte
+        final long rowBytes = (long)width * bytesPerPixel + 1;
+        if ((long)width * height * bytesPerPixel > Integer.MAX_VALUE || rowBytes * height > dataBytes * PNG_MAX_DEFLATE_RATIO) {
+            //Dimensions whose pixels cannot be stored in an array, or be inflated from the image data
+            return null;
+        }
+
+        final byte[] pixels8 = expectedBits == 8 ? new byte[width * height] : null;
+        final short[] pixels16 = expectedBits == 16 ? new short[width * height] : null;
+        byte[] current = new byte[(int)rowBytes];
+        byte[] previous = new byte[(int)rowBytes];
+        PngDataReader reader = new PngDataReader(buffer, dataChunks);
+        try {
+            for (int row = 0; row < height; row++) {
+                if (!reader.readFully(current) || !unfilterPngRow(current, previous, bytesPerPixel)) {
+                    return null;
+                }
+
+                if (pixels8 != null) {
+                    System.arraycopy(current, 1, pixels8, row * width, width);
+                } else {
+                    final int rowOffset = row * width;
+                    for (int j = 0; j < width; j++) {
+                        pixels16[rowOffset + j] = (short)(((current[2 * j + 1] & 0xff) << 8) | (current[2 * j + 2] & 0xff));
+                    }
+                }
+
+                byte[] temp = previous;
+                previous = current;
+                current = temp;
+            }
+        } catch (DataFormatException e) {
+            return null;
+        } finally {
+            reader.end();
+        }
+
+        return createImage(pixelDepth, pixels8, pixels16, width, height, filename);
+    }
+
+    private static boolean unfilterPngRow(byte[] current, byte[] previous, int bytesPerPixel) {
+        final int length = current.length;
+        switch (current[0]) {
+        case 0:
+            break;
+        case 1:
+            for (int index = 1 + bytesPerPixel; index < length; index++) {
+                current[index] += current[index - bytesPerPixel];
+            }
+            break;
+        case 2:
+            for (int index = 1; index < length; index++) {
+                current[index] += previous[index];
+            }
+            break;
+        case 3:
+            for (int index = 1; index < length; index++) {
+                final int left = index > bytesPerPixel ? current[index - bytesPerPixel] & 0xff : 0;
+                current[index] += (left + (previous[index] & 0xff)) >>> 1;
+            }
+            break;
+        case 4:
+            for (int index = 1; index < length; index++) {
+                final int left = index > bytesPerPixel ? current[index - bytesPerPixel] & 0xff : 0;
+                final int up = previous[index] & 0xff;
+                final int upLeft = index > bytesPerPixel ? previous[index - bytesPerPixel] & 0xff : 0;
+                final int estimate = left + up - upLeft;
+                final int distanceLeft = Math.abs(estimate - left);
+                final int distanceUp = Math.abs(estimate - up);
+                final int distanceUpLeft = Math.abs(estimate - upLeft);
+                if (distanceLeft <= distanceUp && distanceLeft <= distanceUpLeft) {
+                    current[index] += left;
+                } else if (distanceUp <= distanceUpLeft) {
+                    current[index] += up;
+                } else {
+                    current[index] += upLeft;
+                }
+            }
+            break;
+        default:
+            return false;
+        }
+        return true;
+    }
+}
@@ -6,6 +6,8 @@
  */
 package pt.quickLabPIV.images;
 
+import java.util.concurrent.ForkJoinPool;
+
 import pt.quickLabPIV.iareas.IterationStepTiles;
 
 public interface IImageWarpingStrategy {
@@ -20,4 +22,14 @@ public interface IImageWarpingStrategy {
      * @param stepTilesB the managing class for all the tiles in a given adaptive step for the second image
      */
     public void warpAndClipImage(final IImage imageA, final IImage imageB, final IterationStepTiles stepTilesA, final IterationStepTiles stepTilesB);
+    
+    /**
+     * Enables the concurrent computation of the warping of a single image pair, for strategies that support it.
+     * Strategies that don't support it, simply ignore the provided pool.
+     * 
+     * @param pool the shared pool to use, or null to warp in the calling thread
+     * @param parallelism the maximum number of concurrent tasks
+     */
+    public default void setParallelism(ForkJoinPool pool, int parallelism) {
+    }
 }
@@ -57,6 +57,21 @@ public final class Image implements IImage {
 		readImageToBuffer(newImage);
 	}
 	
+	/**
+	 * Creates a new Image over an already decoded pixel buffer, which becomes owned by the image.
+	 * @param _internalBuffer the row-major 8-bit pixel buffer
+	 * @param _width the image width
+	 * @param _height the image height
+	 * @param _filename the filename from which the image was loaded
+	 */
+	Image(final byte[] _internalBuffer, int _width, int _height, String _filename) {
+		instanceId = counter.incrementAndGet();
+		filename = _filename;
+		internalBuffer = _internalBuffer;
+		width = _width;
+		height = _height;
+	}
+	
 	/**
 	 * Creates a new Image from an existing Matrix.
 	 * @param imageInMatrix the matrix containing the image
@@ -142,6 +157,15 @@ public final class Image implements IImage {
 		return width;
 	}
 	
+	/**
+	 * Exposes the row-major backing buffer of the image, holding 8-bit unsigned pixel values, for filters that process
+	 * the whole image at once.
+	 * @return the backing buffer, where pixel (y, x) is at index y * width + x
+	 */
+	public byte[] getInternalBuffer() {
+		return internalBuffer;
+	}
+	
 	
 	protected void readImageToBuffer(BufferedImage bi) {
 		Raster r = bi.getData();
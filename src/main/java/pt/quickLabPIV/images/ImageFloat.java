@@ -119,6 +119,14 @@ public class ImageFloat implements IImage {
     public int getWidth() {
         return width;
     }
+    
+    /**
+     * Exposes the row-major backing buffer of the image, for filters that process the whole image at once.
+     * @return the backing buffer, where pixel (y, x) is at index y * width + x
+     */
+    public float[] getInternalBuffer() {
+        return internalBuffer;
+    }
 
     protected void readImageToBuffer(BufferedImage bi) {
         Raster r = bi.getData();
@@ -377,6 +385,7 @@ public class ImageFloat implements IImage {
             if (!partial) {
                 result.copyMatrixFromArray(buffer, 0, true);
             } else {
+                result.zeroMatrix();
                 result.copySubMatrixFromArray(buffer, marginTop, marginLeft, adjustedHeight, adjustedWidth, true);
             }
         }
@@ -569,7 +578,8 @@ public class ImageFloat implements IImage {
 
     @Override
     public ImageFloat normalize(IImage target) {
-        ImageFloat targetFloat = ImageFloat.convertFrom(target);
+        //Normalizes in place, when the target is this image, or into a float target of the same size, avoiding a copy of the target
+        ImageFloat targetFloat = target instanceof ImageFloat ? (ImageFloat)target : ImageFloat.convertFrom(target);
         float maxValue = 0;
         for (int y = 0; y < getHeight(); y++) {
             for (int x = 0; x < getWidth(); x++) {
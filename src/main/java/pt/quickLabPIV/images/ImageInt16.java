@@ -59,6 +59,23 @@ public final class ImageInt16 implements IImage {
 		bitDepth = _bitDepth;
 	}
 	
+	/**
+	 * Creates a new Image over an already decoded pixel buffer, which becomes owned by the image.
+	 * @param _internalBuffer the row-major 16-bit pixel buffer
+	 * @param _bitDepth the image bit depth
+	 * @param _width the image width
+	 * @param _height the image height
+	 * @param _filename the filename from which the image was loaded
+	 */
+	ImageInt16(final short[] _internalBuffer, final ImageBitDepthEnum _bitDepth, int _width, int _height, String _filename) {
+		instanceId = counter.incrementAndGet();
+		filename = _filename;
+		internalBuffer = _internalBuffer;
+		bitDepth = _bitDepth;
+		width = _width;
+		height = _height;
+	}
+	
 	/**
 	 * Creates a new Image from an existing Matrix.
 	 * @param imageInMatrix the matrix containing the image
@@ -132,6 +149,15 @@ public final class ImageInt16 implements IImage {
 		return width;
 	}
 	
+	/**
+	 * Exposes the row-major backing buffer of the image, holding 16-bit unsigned pixel values, for filters that process
+	 * the whole image at once.
+	 * @return the backing buffer, where pixel (y, x) is at index y * width + x
+	 */
+	public short[] getInternalBuffer() {
+		return internalBuffer;
+	}
+	
 	
 	protected void readImageToBuffer(BufferedImage bi) {
 		Raster r = bi.getData();
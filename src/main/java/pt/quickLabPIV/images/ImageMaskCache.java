@@ -0,0 +1,225 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.images;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.imageio.ImageIO;
+
+import pt.quickLabPIV.iareas.IterationStepTiles;
+import pt.quickLabPIV.iareas.Tile;
+
+/**
+ * Immutable image mask, which is decoded only once and shared by all PIV threads and adaptive steps.
+ * <br/>
+ * Masked pixels, those with zero intensity, are packed into a bitset in row-major order, from which the masked tiles of
+ * each interrogation area geometry are precomputed on first use.
+ * @author lpnm
+ */
+public final class ImageMaskCache {
+    /**
+     * A tile is masked when the fraction of its masked pixels is above this value.
+     */
+    public static final float MASKED_TILE_FRACTION = 0.35f;
+
+    private final File maskFile;
+    private final long lastModified;
+    private final Image mask;
+    private final int width;
+    private final int height;
+    private final long[] maskedPixels;
+    private final ConcurrentHashMap<String, MaskedTiles> maskedTilesByGeometry = new ConcurrentHashMap<String, MaskedTiles>();
+
+    /**
+     * The masked tiles of one interrogation area geometry, indexed by the tile indices.
+     */
+    public static final class MaskedTiles {
+        private final int tilesInJ;
+        private final long[] tiles;
+        private final int count;
+
+        private MaskedTiles(int _tilesInJ, long[] _tiles, int _count) {
+            tilesInJ = _tilesInJ;
+            tiles = _tiles;
+            count = _count;
+        }
+
+        public boolean isMasked(int tileIndexI, int tileIndexJ) {
+            final int index = tileIndexI * tilesInJ + tileIndexJ;
+            return (tiles[index >>> 6] & (1L << index)) != 0;
+        }
+
+        /**
+         * Retrieves the number of masked tiles.
+         * @return the number of masked tiles
+         */
+        public int getCount() {
+            return count;
+        }
+    }
+
+    /**
+     * Decodes the mask image file.
+     * @param maskFilename the mask image filename
+     */
+    public ImageMaskCache(String maskFilename) {
+        File f = new File(maskFilename);
+        if (!f.exists() || f.isDirectory()) {
+            throw new ImageNotFoundException("Cannot find image mask file");
+        }
+
+        if (!f.canRead()) {
+            throw new ImageReaderException("Insuficient permissions to read mask file");
+        }
+
+        maskFile = f;
+        lastModified = f.lastModified();
+        BufferedImage bi;
+        try {
+            bi = ImageIO.read(f);
+        } catch (IOException e) {
+            throw new ImageReaderException("Failed to read mask file: " + f.getAbsolutePath(), e);
+        }
+
+        mask = new Image(bi, f.getAbsolutePath());
+        width = mask.getWidth();
+        height = mask.getHeight();
+
+        final byte[] pixels = mask.getInternalBuffer();
+        maskedPixels = new long[(width * height + 63) / 64];
+        for (int index = 0; index < width * height; index++) {
+            if (pixels[index] == 0) {
+                maskedPixels[index >>> 6] |= 1L << index;
+            }
+        }
+    }
+
+    /**
+     * Checks if the mask file was modified, or removed, after being decoded.
+     * @return true if the mask must be decoded again, false otherwise
+     */
+    public boolean isStale() {
+        return maskFile.lastModified() != lastModified;
+    }
+
+    /**
+     * Retrieves the decoded mask image, which must not be modified.
+     * @return the mask image
+     */
+    public Image getMask() {
+        return mask;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Checks if a pixel is masked.
+     * @param i the pixel location in I
+     * @param j the pixel location in J
+     * @return true if the pixel is masked, false otherwise
+     */
+    public boolean isMasked(int i, int j) {
+        final int index = i * width + j;
+        return (maskedPixels[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Counts the masked pixels in an image region, with the same bounds checking of
+     * {@link IImage#getSpecificIntensityValueCountForRegion(int, int, int, int, int)}.
+     * @param top the region top pixel
+     * @param left the region left pixel
+     * @param regionHeight the region height
+     * @param regionWidth the region width
+     * @return the number of masked pixels
+     */
+    public int countMaskedPixels(int top, int left, int regionHeight, int regionWidth) {
+        if (regionHeight * regionWidth > width * height) {
+            throw new HistogramException("Region cannot be greater than the image itself");
+        }
+        if (top < 0 || top + regionHeight > height) {
+            throw new HistogramException("Access outside image area, pixels I: " + top + " to " + (top + regionHeight - 1) + " of " + height + " pixels.");
+        }
+        if (left < 0 || left + regionWidth > width) {
+            throw new HistogramException("Access outside image area, pixels J: " + left + " to " + (left + regionWidth - 1) + " of " + width + " pixels.");
+        }
+
+        int count = 0;
+        for (int i = top; i < top + regionHeight; i++) {
+            count += countBits(i * width + left, i * width + left + regionWidth);
+        }
+        return count;
+    }
+
+    private int countBits(int fromIndex, int toIndex) {
+        if (fromIndex >= toIndex) {
+            return 0;
+        }
+
+        final int fromWord = fromIndex >>> 6;
+        final int toWord = (toIndex - 1) >>> 6;
+        final long firstMask = -1L << fromIndex;
+        final long lastMask = -1L >>> -toIndex;
+        if (fromWord == toWord) {
+            return Long.bitCount(maskedPixels[fromWord] & firstMask & lastMask);
+        }
+
+        int count = Long.bitCount(maskedPixels[fromWord] & firstMask);
+        for (int word = fromWord + 1; word < toWord; word++) {
+            count += Long.bitCount(maskedPixels[word]);
+        }
+        count += Long.bitCount(maskedPixels[toWord] & lastMask);
+        return count;
+    }
+
+    /**
+     * Retrieves the masked tiles for the tiles geometry of an adaptive step, computing them on first use.
+     * @param stepTiles the adaptive step tiles
+     * @return the masked tiles
+     */
+    public MaskedTiles getMaskedTiles(IterationStepTiles stepTiles) {
+        final int tilesInI = stepTiles.getNumberOfTilesInI();
+        final int tilesInJ = stepTiles.getNumberOfTilesInJ();
+        final Tile first = stepTiles.getTile(0, 0);
+        final Tile last = stepTiles.getTile(tilesInI - 1, tilesInJ - 1);
+        final String geometry = stepTiles.getTileHeight() + "x" + stepTiles.getTileWidth() + ":" + tilesInI + "x" + tilesInJ + ":" +
+                                first.getTopPixel() + "," + first.getLeftPixel() + ":" + last.getTopPixel() + "," + last.getLeftPixel();
+
+        return maskedTilesByGeometry.computeIfAbsent(geometry, key -> createMaskedTiles(stepTiles));
+    }
+
+    private MaskedTiles createMaskedTiles(IterationStepTiles stepTiles) {
+        final int tilesInI = stepTiles.getNumberOfTilesInI();
+        final int tilesInJ = stepTiles.getNumberOfTilesInJ();
+        final int tileHeight = stepTiles.getTileHeight();
+        final int tileWidth = stepTiles.getTileWidth();
+
+        long[] tiles = new long[(tilesInI * tilesInJ + 63) / 64];
+        int count = 0;
+        for (int i = 0; i < tilesInI; i++) {
+            for (int j = 0; j < tilesInJ; j++) {
+                Tile tile = stepTiles.getTile(i, j);
+                int maskedCount = countMaskedPixels(tile.getTopPixel(), tile.getLeftPixel(), tileHeight, tileWidth);
+                if ((float)maskedCount/(float)(tileHeight * tileWidth) > MASKED_TILE_FRACTION) {
+                    final int index = i * tilesInJ + j;
+                    tiles[index >>> 6] |= 1L << index;
+                    count++;
+                }
+            }
+        }
+
+        return new MaskedTiles(tilesInJ, tiles, count);
+    }
+}
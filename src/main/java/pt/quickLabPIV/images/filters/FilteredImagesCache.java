@@ -0,0 +1,245 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.images.filters;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import pt.quickLabPIV.images.IImage;
+import pt.quickLabPIV.images.ImageFloat;
+
+/**
+ * Cache of the Gaussian filtered, and optionally normalized, versions of the images of the frame being processed,
+ * which is shared by the main image filtering job and by the optical flow interpolators of a PIV thread, so that each
+ * filtered version is computed and stored only once per image, instead of once per consumer.
+ * <br/>
+ * Entries are keyed by the source image instance, the filter sigma and kernel size, and the normalization. Source images
+ * are compared by identity, since the images of each frame are decoded into new instances, except for image A when it is
+ * reused from image B of the previous frame, in which case its filtered versions are also reused. Only the filtered
+ * versions of the most recently used source images are kept, thus bounding the memory used by the cache.
+ * <br/>
+ * The filtered images of evicted, or cleared, entries are recycled as the targets of the next images to be filtered,
+ * so that no new images are allocated per frame, when the image size does not change.
+ * <br/>
+ * Cached images are shared and must not be modified by the consumers, neither retained after the images of the
+ * following frame are requested.
+ * @author lpnm
+ */
+public final class FilteredImagesCache {
+    /**
+     * Default number of source images whose filtered versions are kept, which corresponds to the images A and B of a frame.
+     */
+    public static final int DEFAULT_MAX_SOURCE_IMAGES = 2;
+
+    private final int maxSourceImages;
+    //Source images entries, from the least recently used to the most recently used
+    private final List<SourceImageEntry> sourceImages;
+    //Filtered images of evicted entries, available to be reused as filter or normalization targets
+    private final List<ImageFloat> freeImages = new ArrayList<ImageFloat>();
+    private final Map<FilterKey, GaussianFilter2D> filters = new HashMap<FilterKey, GaussianFilter2D>();
+    private ForkJoinPool pool;
+    private int parallelism = 1;
+    private long filterPasses;
+
+    private static final class FilterKey {
+        private final float sigma;
+        private final int kernelPx;
+
+        private FilterKey(float _sigma, int _kernelPx) {
+            sigma = _sigma;
+            kernelPx = _kernelPx;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Float.floatToIntBits(sigma) + kernelPx;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof FilterKey)) {
+                return false;
+            }
+            FilterKey other = (FilterKey)obj;
+            return Float.floatToIntBits(sigma) == Float.floatToIntBits(other.sigma) && kernelPx == other.kernelPx;
+        }
+    }
+
+    private static final class SourceImageEntry {
+        private final IImage source;
+        private final Map<FilterKey, IImage> filteredImages = new HashMap<FilterKey, IImage>();
+        private final Map<FilterKey, ImageFloat> normalizedImages = new HashMap<FilterKey, ImageFloat>();
+
+        private SourceImageEntry(IImage _source) {
+            source = _source;
+        }
+    }
+
+    public FilteredImagesCache() {
+        this(DEFAULT_MAX_SOURCE_IMAGES);
+    }
+
+    /**
+     * Creates a filtered images cache.
+     * @param _maxSourceImages the number of most recently used source images whose filtered versions are kept
+     */
+    public FilteredImagesCache(int _maxSourceImages) {
+        if (_maxSourceImages < 1) {
+            throw new ImageFilterException("Filtered images cache must keep at least one source image");
+        }
+        maxSourceImages = _maxSourceImages;
+        sourceImages = new ArrayList<SourceImageEntry>(maxSourceImages + 1);
+    }
+
+    /**
+     * Enables the concurrent filtering of each image.
+     * @param _pool the shared pool to use, or null to filter in the calling thread
+     * @param _parallelism the maximum number of concurrent tasks
+     */
+    public synchronized void setParallelism(ForkJoinPool _pool, int _parallelism) {
+        pool = _pool;
+        parallelism = _parallelism;
+        for (GaussianFilter2D filter : filters.values()) {
+            filter.setParallelism(pool, parallelism);
+        }
+    }
+
+    private SourceImageEntry getOrCreateEntry(IImage source) {
+        SourceImageEntry entry = null;
+        for (int index = sourceImages.size() - 1; index >= 0; index--) {
+            if (sourceImages.get(index).source == source) {
+                entry = sourceImages.remove(index);
+                break;
+            }
+        }
+
+        if (entry == null) {
+            entry = new SourceImageEntry(source);
+            if (sourceImages.size() == maxSourceImages) {
+                recycle(sourceImages.remove(0));
+            }
+        }
+        sourceImages.add(entry);
+
+        return entry;
+    }
+
+    private void recycle(SourceImageEntry entry) {
+        for (IImage filtered : entry.filteredImages.values()) {
+            //Source image itself is stored when no filtering is done, and it is not owned by the cache
+            if (filtered != entry.source && filtered instanceof ImageFloat) {
+                freeImages.add((ImageFloat)filtered);
+            }
+        }
+        freeImages.addAll(entry.normalizedImages.values());
+    }
+
+    private ImageFloat obtainImage(IImage source) {
+        while (!freeImages.isEmpty()) {
+            ImageFloat image = freeImages.remove(freeImages.size() - 1);
+            if (image.getHeight() == source.getHeight() && image.getWidth() == source.getWidth()) {
+                return image;
+            }
+            //Images of a different size are no longer needed
+        }
+
+        return ImageFloat.sizeFrom(source);
+    }
+
+    private GaussianFilter2D getOrCreateFilter(FilterKey key) {
+        GaussianFilter2D filter = filters.get(key);
+        if (filter == null) {
+            filter = new GaussianFilter2D(key.sigma, key.kernelPx);
+            filter.setParallelism(pool, parallelism);
+            filters.put(key, filter);
+        }
+
+        return filter;
+    }
+
+    /**
+     * Retrieves the Gaussian filtered version of an image, filtering it only if it is not cached yet.
+     * @param source the image to filter
+     * @param sigma the Gaussian filter sigma
+     * @param kernelPx the Gaussian filter kernel size in pixels
+     * @param normalize true, if the filtered image is to be normalized to its maximum value, false otherwise
+     * @return the shared filtered image, which must not be modified, or the source image itself when sigma is zero and
+     *         no normalization is requested
+     */
+    public synchronized IImage getFilteredImage(IImage source, float sigma, int kernelPx, boolean normalize) {
+        final SourceImageEntry entry = getOrCreateEntry(source);
+        final FilterKey key = new FilterKey(sigma, kernelPx);
+
+        IImage filtered = entry.filteredImages.get(key);
+        if (!normalize && filtered != null) {
+            return filtered;
+        }
+
+        ImageFloat normalized = normalize ? entry.normalizedImages.get(key) : null;
+        if (normalized != null) {
+            return normalized;
+        }
+
+        if (filtered == null) {
+            if (sigma == 0.0f) {
+                //Same as the Gaussian filter, which does not filter at all with a null sigma
+                filtered = source;
+            } else {
+                filtered = getOrCreateFilter(key).applyFilter(source, obtainImage(source));
+                filterPasses++;
+                if (normalize) {
+                    //Only the normalized version is required, so the filtered image can be normalized in place
+                    normalized = filtered.normalize(filtered);
+                    entry.normalizedImages.put(key, normalized);
+                    return normalized;
+                }
+            }
+
+            if (!normalize) {
+                entry.filteredImages.put(key, filtered);
+                return filtered;
+            }
+        }
+
+        normalized = filtered.normalize(obtainImage(source));
+        entry.normalizedImages.put(key, normalized);
+
+        return normalized;
+    }
+
+    /**
+     * Retrieves the number of full image filter passes done by this cache, which allows checking the cache effectiveness.
+     * @return the number of filter passes
+     */
+    public synchronized long getFilterPasses() {
+        return filterPasses;
+    }
+
+    /**
+     * Retrieves the number of filtered images available to be reused as the targets of the next images to be filtered.
+     * @return the number of free images
+     */
+    public synchronized int getFreeImages() {
+        return freeImages.size();
+    }
+
+    /**
+     * Drops all the cached images, keeping their buffers for reuse.
+     */
+    public synchronized void clear() {
+        for (SourceImageEntry entry : sourceImages) {
+            recycle(entry);
+        }
+        sourceImages.clear();
+    }
+}
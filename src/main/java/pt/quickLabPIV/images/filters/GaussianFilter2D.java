@@ -6,6 +6,8 @@
  */
 package pt.quickLabPIV.images.filters;
 
+import java.util.concurrent.ForkJoinPool;
+
 import org.apache.commons.math3.util.FastMath;
 
 import pt.quickLabPIV.Matrix;
@@ -13,12 +15,15 @@ import pt.quickLabPIV.MatrixFloat;
 import pt.quickLabPIV.PIVContextSingleton;
 import pt.quickLabPIV.PIVInputParameters;
 import pt.quickLabPIV.images.IImage;
+import pt.quickLabPIV.images.Image;
 import pt.quickLabPIV.images.ImageFloat;
+import pt.quickLabPIV.images.ImageInt16;
 
 public final class GaussianFilter2D implements IFilter {
     final float sigma;
     final GaussianFilter2DInternal<IImage> imageFilter;
     final GaussianFilter2DInternal<Matrix> matrixFilter;
+    final GaussianFilter2DArrays arraysFilter;
     final GaussianFilter2DInternal.GetWidthFunction<Matrix> gwMatrix;
     final GaussianFilter2DInternal.GetHeightFunction<Matrix> ghMatrix;
     final GaussianFilter2DInternal.ReaderFunction<Matrix> rMatrix;
@@ -51,6 +56,7 @@ public final class GaussianFilter2D implements IFilter {
         //Templated filter helpers
         matrixFilter = new GaussianFilter2DInternal<Matrix>(kernel, convolver);
         imageFilter = new GaussianFilter2DInternal<IImage>(kernel, convolver);
+        arraysFilter = new GaussianFilter2DArrays(kernel);
         //Matrix lambdas
         gwMatrix = (Matrix m) -> m.getWidth();
         ghMatrix = (Matrix m) -> m.getHeight();
@@ -76,6 +82,7 @@ public final class GaussianFilter2D implements IFilter {
         //Templated filter helpers
         matrixFilter = new GaussianFilter2DInternal<Matrix>(kernel, convolver);
         imageFilter = new GaussianFilter2DInternal<IImage>(kernel, convolver);
+        arraysFilter = new GaussianFilter2DArrays(kernel);
         //Matrix lambdas
         gwMatrix = (Matrix m) -> m.getWidth();
         ghMatrix = (Matrix m) -> m.getHeight();
@@ -88,6 +95,11 @@ public final class GaussianFilter2D implements IFilter {
         wImage = (int i, int j, float v, IImage ii) -> ii.writePixel(i, j, v);
     }
     
+    @Override
+    public void setParallelism(ForkJoinPool pool, int parallelism) {
+        arraysFilter.setParallelism(pool, parallelism);
+    }
+    
     @Override
     public Matrix applyFilter(Matrix input, Matrix output) {
         if (sigma < 1e-5f) {
@@ -98,7 +110,11 @@ public final class GaussianFilter2D implements IFilter {
             output = new MatrixFloat(input.getHeight(), input.getWidth());
         }
         
-        matrixFilter.applyFilter(gwMatrix, ghMatrix, rMatrix, wMatrix, input, output);        
+        if (input instanceof MatrixFloat && output instanceof MatrixFloat) {
+            arraysFilter.applyFilter(input.getFloatArray(), output.getFloatArray(), input.getWidth(), input.getHeight());
+        } else {
+            matrixFilter.applyFilter(gwMatrix, ghMatrix, rMatrix, wMatrix, input, output);
+        }
         
         return output;
     }
@@ -122,7 +138,18 @@ public final class GaussianFilter2D implements IFilter {
             output = ImageFloat.sizeFrom(input);
         }
         
-        imageFilter.applyFilter(gwImage, ghImage, rImage, wImage, input, output);
+        //Images whose backing buffers are accessible are filtered directly, any other combination through the pixel accessors
+        final int width = input.getWidth();
+        final int height = input.getHeight();
+        if (output instanceof ImageFloat && input instanceof ImageFloat) {
+            arraysFilter.applyFilter(((ImageFloat)input).getInternalBuffer(), ((ImageFloat)output).getInternalBuffer(), width, height);
+        } else if (output instanceof ImageFloat && input instanceof ImageInt16) {
+            arraysFilter.applyFilter(((ImageInt16)input).getInternalBuffer(), ((ImageFloat)output).getInternalBuffer(), width, height);
+        } else if (output instanceof ImageFloat && input instanceof Image) {
+            arraysFilter.applyFilter(((Image)input).getInternalBuffer(), ((ImageFloat)output).getInternalBuffer(), width, height);
+        } else {
+            imageFilter.applyFilter(gwImage, ghImage, rImage, wImage, input, output);
+        }
         
         return output;
     }
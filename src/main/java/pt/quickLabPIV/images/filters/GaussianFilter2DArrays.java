@@ -0,0 +1,218 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.images.filters;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * Separable 2D filter that operates directly on row-major backing arrays, without per pixel reader and writer calls.
+ * <br/>
+ * The horizontal pass is done row by row, while the vertical pass is done in strips of adjacent columns, so that each
+ * image row is read and written as a contiguous block instead of one pixel per cache line. Rows and strips can be
+ * processed concurrently by a shared pool.
+ * <br/>
+ * The border extension and the summation order are the same of {@link GaussianFilter2DInternal} with the
+ * {@link DirectConvolution}, so that both yield the exact same values.
+ * @author lpnm
+ */
+final class GaussianFilter2DArrays {
+    private static final int STRIP_WIDTH = 64;
+    private static final int MIN_ROWS_PER_TASK = 64;
+
+    private final float[] kernel;
+    private final int halfSize;
+    private ForkJoinPool pool;
+    private int parallelism = 1;
+    private float[][] rowBuffers = new float[1][0];
+    private float[][] stripBuffers = new float[1][0];
+    private float[][] stripOutputs = new float[1][STRIP_WIDTH];
+
+    GaussianFilter2DArrays(float[] _kernel) {
+        kernel = _kernel;
+        halfSize = kernel.length / 2;
+    }
+
+    void setParallelism(ForkJoinPool _pool, int _parallelism) {
+        pool = _pool;
+        parallelism = _parallelism < 1 ? 1 : _parallelism;
+        rowBuffers = new float[parallelism][0];
+        stripBuffers = new float[parallelism][0];
+        stripOutputs = new float[parallelism][STRIP_WIDTH];
+    }
+
+    /**
+     * Filters a float image, or matrix.
+     * @param input the input row-major buffer
+     * @param output the output row-major buffer, which can be the same as the input buffer
+     * @param width the image width
+     * @param height the image height
+     */
+    void applyFilter(float[] input, float[] output, int width, int height) {
+        applyFilter(input, null, null, output, width, height);
+    }
+
+    /**
+     * Filters a 16-bit unsigned image.
+     * @param input the input row-major buffer, holding unsigned values
+     * @param output the output row-major buffer
+     * @param width the image width
+     * @param height the image height
+     */
+    void applyFilter(short[] input, float[] output, int width, int height) {
+        applyFilter(null, input, null, output, width, height);
+    }
+
+    /**
+     * Filters an 8-bit unsigned image.
+     * @param input the input row-major buffer, holding unsigned values
+     * @param output the output row-major buffer
+     * @param width the image width
+     * @param height the image height
+     */
+    void applyFilter(byte[] input, float[] output, int width, int height) {
+        applyFilter(null, null, input, output, width, height);
+    }
+
+    private void applyFilter(float[] floatInput, short[] shortInput, byte[] byteInput, float[] output, int width, int height) {
+        int tasks = pool == null ? 1 : FastMath.min(parallelism, height / MIN_ROWS_PER_TASK);
+        if (tasks <= 1) {
+            filterRows(0, floatInput, shortInput, byteInput, output, width, 0, height);
+        } else {
+            List<ForkJoinTask<?>> submittedTasks = new ArrayList<ForkJoinTask<?>>(tasks);
+            int rowsPerTask = height / tasks;
+            int remainingRows = height % tasks;
+            int fromRow = 0;
+            for (int taskIndex = 0; taskIndex < tasks; taskIndex++) {
+                final int task = taskIndex;
+                final int taskFromRow = fromRow;
+                final int taskToRow = fromRow + rowsPerTask + (taskIndex < remainingRows ? 1 : 0);
+                submittedTasks.add(pool.submit(() -> filterRows(task, floatInput, shortInput, byteInput, output, width, taskFromRow, taskToRow)));
+                fromRow = taskToRow;
+            }
+            joinAll(submittedTasks);
+        }
+
+        final int strips = (width + STRIP_WIDTH - 1) / STRIP_WIDTH;
+        tasks = pool == null ? 1 : FastMath.min(parallelism, strips);
+        if (height < MIN_ROWS_PER_TASK) {
+            tasks = 1;
+        }
+        if (tasks <= 1) {
+            filterStrips(0, output, width, height, 0, strips);
+        } else {
+            List<ForkJoinTask<?>> submittedTasks = new ArrayList<ForkJoinTask<?>>(tasks);
+            int stripsPerTask = strips / tasks;
+            int remainingStrips = strips % tasks;
+            int fromStrip = 0;
+            for (int taskIndex = 0; taskIndex < tasks; taskIndex++) {
+                final int task = taskIndex;
+                final int taskFromStrip = fromStrip;
+                final int taskToStrip = fromStrip + stripsPerTask + (taskIndex < remainingStrips ? 1 : 0);
+                submittedTasks.add(pool.submit(() -> filterStrips(task, output, width, height, taskFromStrip, taskToStrip)));
+                fromStrip = taskToStrip;
+            }
+            joinAll(submittedTasks);
+        }
+    }
+
+    private void joinAll(List<ForkJoinTask<?>> submittedTasks) {
+        //Wait for all tasks to complete, before reporting any failure
+        RuntimeException failure = null;
+        for (ForkJoinTask<?> task : submittedTasks) {
+            try {
+                task.join();
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void filterRows(int taskIndex, float[] floatInput, short[] shortInput, byte[] byteInput, float[] output,
+                            int width, int fromRow, int toRow) {
+        final int bufSize = width + kernel.length - 1;
+        if (rowBuffers[taskIndex].length < bufSize) {
+            rowBuffers[taskIndex] = new float[bufSize];
+        }
+        final float[] buf = rowBuffers[taskIndex];
+
+        for (int i = fromRow; i < toRow; i++) {
+            final int rowOffset = i * width;
+            if (floatInput != null) {
+                System.arraycopy(floatInput, rowOffset, buf, halfSize, width);
+            } else if (shortInput != null) {
+                for (int j = 0; j < width; j++) {
+                    buf[j + halfSize] = shortInput[rowOffset + j] & 0xffff;
+                }
+            } else {
+                for (int j = 0; j < width; j++) {
+                    buf[j + halfSize] = byteInput[rowOffset + j] & 0xff;
+                }
+            }
+            //Same border extension as GaussianFilter2DInternal
+            for (int j = 0; j < halfSize; j++) {
+                buf[halfSize - 1 - j] = buf[halfSize + j];
+                buf[bufSize - 1 - j] = buf[halfSize + width - 1 - j];
+            }
+
+            for (int j = 0; j < width; j++) {
+                float result = 0.0f;
+                for (int k = 0; k < kernel.length; k++) {
+                    result += buf[j + kernel.length - 1 - k] * kernel[k];
+                }
+                output[rowOffset + j] = result;
+            }
+        }
+    }
+
+    private void filterStrips(int taskIndex, float[] output, int width, int height, int fromStrip, int toStrip) {
+        final int bufSize = height + kernel.length - 1;
+        if (stripBuffers[taskIndex].length < bufSize * STRIP_WIDTH) {
+            stripBuffers[taskIndex] = new float[bufSize * STRIP_WIDTH];
+        }
+        final float[] buf = stripBuffers[taskIndex];
+        final float[] result = stripOutputs[taskIndex];
+
+        for (int strip = fromStrip; strip < toStrip; strip++) {
+            final int left = strip * STRIP_WIDTH;
+            final int columns = FastMath.min(STRIP_WIDTH, width - left);
+
+            //Strip rows are stored with a fixed stride, each holding the strip columns of one image row
+            for (int i = 0; i < height; i++) {
+                System.arraycopy(output, i * width + left, buf, (i + halfSize) * STRIP_WIDTH, columns);
+            }
+            for (int i = 0; i < halfSize; i++) {
+                System.arraycopy(buf, (halfSize + i) * STRIP_WIDTH, buf, (halfSize - 1 - i) * STRIP_WIDTH, columns);
+                System.arraycopy(buf, (halfSize + height - 1 - i) * STRIP_WIDTH, buf, (bufSize - 1 - i) * STRIP_WIDTH, columns);
+            }
+
+            for (int i = 0; i < height; i++) {
+                for (int c = 0; c < columns; c++) {
+                    result[c] = 0.0f;
+                }
+                for (int k = 0; k < kernel.length; k++) {
+                    final int offset = (i + kernel.length - 1 - k) * STRIP_WIDTH;
+                    final float weight = kernel[k];
+                    for (int c = 0; c < columns; c++) {
+                        result[c] += buf[offset + c] * weight;
+                    }
+                }
+                System.arraycopy(result, 0, output, i * width + left, columns);
+            }
+        }
+    }
+}
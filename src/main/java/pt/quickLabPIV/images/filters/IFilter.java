@@ -6,6 +6,8 @@
  */
 package pt.quickLabPIV.images.filters;
 
+import java.util.concurrent.ForkJoinPool;
+
 import pt.quickLabPIV.Matrix;
 import pt.quickLabPIV.images.IImage;
 
@@ -36,4 +38,14 @@ public interface IFilter {
      * @return the filtered image
      */
     IImage applyFilter(IImage input, IImage output);
+    
+    /**
+     * Enables the concurrent filtering of a single image, or matrix, for filters that support it.
+     * Filters that don't support it, simply ignore the provided pool.
+     *
+     * @param pool the shared pool to use, or null to filter in the calling thread
+     * @param parallelism the maximum number of concurrent tasks
+     */
+    default void setParallelism(ForkJoinPool pool, int parallelism) {
+    }
 }
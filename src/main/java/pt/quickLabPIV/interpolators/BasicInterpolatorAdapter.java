@@ -6,8 +6,13 @@
  */
 package pt.quickLabPIV.interpolators;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
 
+import org.apache.commons.math3.util.FastMath;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,25 +21,94 @@ import pt.quickLabPIV.maximum.MaxCrossResult;
 
 public class BasicInterpolatorAdapter implements ICrossCorrelationInterpolator {
     private static final Logger logger = LoggerFactory.getLogger(BasicInterpolatorAdapter.class);
+    private static final int MIN_RESULTS_PER_TASK = 32;
     private IBasicCrossCorrelationInterpolator basicInterpolator;
+    private Supplier<IBasicCrossCorrelationInterpolator> interpolatorSupplier;
+    private ForkJoinPool pool;
+    private IBasicCrossCorrelationInterpolator[] taskInterpolators;
 
     public BasicInterpolatorAdapter(IBasicCrossCorrelationInterpolator _interpolator) {
         basicInterpolator = _interpolator;
+        taskInterpolators = new IBasicCrossCorrelationInterpolator[] { basicInterpolator };
     }
-    
+
+    /**
+     * Creates an adapter that is able to interpolate concurrently, since interpolators keep their own working state,
+     * thus each concurrent task requires its own interpolator instance.
+     * @param _interpolatorSupplier the supplier of new interpolator instances
+     */
+    public BasicInterpolatorAdapter(Supplier<IBasicCrossCorrelationInterpolator> _interpolatorSupplier) {
+        this(_interpolatorSupplier.get());
+        interpolatorSupplier = _interpolatorSupplier;
+    }
+
     @Override
-    public List<MaxCrossResult> interpolate(List<MaxCrossResult> results) {
-        for (MaxCrossResult result : results) {
+    public void setParallelism(ForkJoinPool _pool, int parallelism) {
+        if (interpolatorSupplier == null) {
+            //Concurrent interpolation requires additional interpolator instances
+            return;
+        }
+
+        pool = _pool;
+        IBasicCrossCorrelationInterpolator[] oldInterpolators = taskInterpolators;
+        taskInterpolators = new IBasicCrossCorrelationInterpolator[pool == null || parallelism < 1 ? 1 : parallelism];
+        for (int index = 0; index < taskInterpolators.length; index++) {
+            taskInterpolators[index] = index < oldInterpolators.length ? oldInterpolators[index] : interpolatorSupplier.get();
+        }
+    }
+
+    private void interpolate(IBasicCrossCorrelationInterpolator interpolator, List<MaxCrossResult> results, int fromIndex, int toIndex) {
+        for (int index = fromIndex; index < toIndex; index++) {
+            MaxCrossResult result = results.get(index);
             try {
-                basicInterpolator.interpolate(result.getCrossMatrix(), result);
+                interpolator.interpolate(result.getCrossMatrix(), result);
             } catch (InterpolatorFailedException e) {
                 Tile tile = result.getTileA();
                 //Just because the interpolator couldn't interpolate an individual MaxCrossResult is not sufficient to fail the processing
-                //and is expected to happen, since sometimes the correlation peak location is located too near the margins. 
+                //and is expected to happen, since sometimes the correlation peak location is located too near the margins.
                 logger.warn("Faile to interpolate MaxCrossResult for Tile at I:{}, J:{} at step: {}", tile.getTileIndexI(), tile.getTileIndexJ(), tile.getParentIterationStepTiles().getCurrentStep());
             }
         }
-        
+    }
+
+    @Override
+    public List<MaxCrossResult> interpolate(List<MaxCrossResult> results) {
+        final int totalResults = results.size();
+        int tasks = pool == null ? 1 : FastMath.min(taskInterpolators.length, totalResults / MIN_RESULTS_PER_TASK);
+        if (tasks <= 1) {
+            interpolate(basicInterpolator, results, 0, totalResults);
+            return results;
+        }
+
+        //Each task interpolates a contiguous range of results with its own interpolator instance
+        List<ForkJoinTask<?>> submittedTasks = new ArrayList<ForkJoinTask<?>>(tasks);
+        int resultsPerTask = totalResults / tasks;
+        int remainingResults = totalResults % tasks;
+        int fromIndex = 0;
+        for (int taskIndex = 0; taskIndex < tasks; taskIndex++) {
+            final IBasicCrossCorrelationInterpolator interpolator = taskInterpolators[taskIndex];
+            final int taskFromIndex = fromIndex;
+            final int taskToIndex = fromIndex + resultsPerTask + (taskIndex < remainingResults ? 1 : 0);
+            submittedTasks.add(pool.submit(() -> interpolate(interpolator, results, taskFromIndex, taskToIndex)));
+            fromIndex = taskToIndex;
+        }
+
+        //Wait for all tasks to complete, before reporting any failure
+        RuntimeException failure = null;
+        for (ForkJoinTask<?> task : submittedTasks) {
+            try {
+                task.join();
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+
         return results;
     }
 
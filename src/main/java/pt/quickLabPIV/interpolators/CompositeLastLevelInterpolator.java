@@ -7,6 +7,7 @@
 package pt.quickLabPIV.interpolators;
 
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import pt.quickLabPIV.Matrix;
 import pt.quickLabPIV.PIVContextSingleton;
@@ -53,6 +54,17 @@ public class CompositeLastLevelInterpolator implements ICrossCorrelationInterpol
         return results;
     }
     
+    @Override
+    public void setParallelism(ForkJoinPool pool, int parallelism) {
+        if (firstLevelsInterpolator != null) {
+            firstLevelsInterpolator.setParallelism(pool, parallelism);
+        }
+        
+        if (lastLevelInterpolator != null) {
+            lastLevelInterpolator.setParallelism(pool, parallelism);
+        }
+    }
+    
     @Override
     public boolean isImagesRequired() {
         return firstLevelsInterpolator != null &&
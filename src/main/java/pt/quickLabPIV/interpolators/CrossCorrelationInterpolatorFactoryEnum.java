@@ -37,28 +37,28 @@ public enum CrossCorrelationInterpolatorFactoryEnum {
 		    interpolator = null;
 		    break;
 		case BiCubic:
-		    interpolator = new BasicInterpolatorAdapter(new BiCubicInterpolator());
+		    interpolator = new BasicInterpolatorAdapter(() -> new BiCubicInterpolator());
 		    break;
 		case Gaussian1D:
-		    interpolator = new BasicInterpolatorAdapter(new Gaussian1DInterpolator());
+		    interpolator = new BasicInterpolatorAdapter(() -> new Gaussian1DInterpolator());
 		    break;
 		case Gaussian1DHongweiGuo:
-		    interpolator = new BasicInterpolatorAdapter(new Gaussian1DHongweiGuoInterpolator());
+		    interpolator = new BasicInterpolatorAdapter(() -> new Gaussian1DHongweiGuoInterpolator());
             break;		    
 		case Gaussian1DPolynomial:
-		    interpolator = new BasicInterpolatorAdapter(new Gaussian1DPolynomialInterpolator());
+		    interpolator = new BasicInterpolatorAdapter(() -> new Gaussian1DPolynomialInterpolator());
 		    break;
 		case Centroid2D:
-		    interpolator = new BasicInterpolatorAdapter(new Centroid2DInterpolator());
+		    interpolator = new BasicInterpolatorAdapter(() -> new Centroid2DInterpolator());
 		    break;
 		case Gaussian2D:
-		    interpolator = new BasicInterpolatorAdapter(new Gaussian2DInterpolator());
+		    interpolator = new BasicInterpolatorAdapter(() -> new Gaussian2DInterpolator());
 		    break;
 		case Gaussian2DPolynomial:
-		    interpolator = new BasicInterpolatorAdapter(new Gaussian2DPolynomialInterpolator());
+		    interpolator = new BasicInterpolatorAdapter(() -> new Gaussian2DPolynomialInterpolator());
 		    break;
         case Gaussian2DLinearRegression:
-            interpolator = new BasicInterpolatorAdapter(new Gaussian2DLinearRegressionInterpolator());
+            interpolator = new BasicInterpolatorAdapter(() -> new Gaussian2DLinearRegressionInterpolator());
             break;
         case LucasKanade:
             interpolator = new LucasKanadeFloat();
@@ -8,6 +8,7 @@ package pt.quickLabPIV.interpolators;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.commons.math3.util.FastMath;
 import org.slf4j.Logger;
@@ -23,11 +24,11 @@ import pt.quickLabPIV.iareas.BiCubicSplineInterpolatorWithBiLinearBackup;
 import pt.quickLabPIV.iareas.IterationStepTiles;
 import pt.quickLabPIV.iareas.Tile;
 import pt.quickLabPIV.images.IImage;
-import pt.quickLabPIV.images.ImageFloat;
-import pt.quickLabPIV.images.filters.GaussianFilter2D;
-import pt.quickLabPIV.images.filters.IFilter;
+import pt.quickLabPIV.images.filters.FilteredImagesCache;
+import pt.quickLabPIV.jobs.Job;
 import pt.quickLabPIV.jobs.JobResultEnum;
 import pt.quickLabPIV.jobs.interpolators.DenseLiuShenAparapiJob;
+import pt.quickLabPIV.jobs.interpolators.DenseLiuShenJavaJob;
 import pt.quickLabPIV.jobs.interpolators.LiuShenOptions;
 import pt.quickLabPIV.jobs.interpolators.OpticalFlowInterpolatorInput;
 import pt.quickLabPIV.maximum.MaxCrossResult;
@@ -49,18 +50,18 @@ public class DenseLiuShenAparapiJobInterpolator implements IOpticalFlowInterpola
     private int filterWidthPxLS;
     private int vectorsWindowSizeLS;
     
-    private IFilter filterLK;
-    private IFilter filterLS;
     private IImage filteredImgLKA;
     private IImage filteredImgLKB;
-    private ImageFloat filteredImgLSA;
-    private ImageFloat filteredImgLSB;
+    private IImage filteredImgLSA;
+    private IImage filteredImgLSB;
 
     private float usAndVs[][];
     private boolean denseVectors;
     
-    private DenseLiuShenAparapiJob dLSJob;
+    private Job<OpticalFlowInterpolatorInput, OpticalFlowInterpolatorInput> dLSJob;
     private OpticalFlowInterpolatorInput input;
+    private ForkJoinPool pool;
+    private int parallelism = 1;
     
     
     public DenseLiuShenAparapiJobInterpolator() {
@@ -88,15 +89,26 @@ public class DenseLiuShenAparapiJobInterpolator implements IOpticalFlowInterpola
         vectorsWindowSizeLS = configuration.getVectorsWindowSizeLS();
 
         denseVectors = configuration.isDenseVectors();
-        
-        filterLK = new GaussianFilter2D(filterSigmaLK, filterWidthPxLK);
-        filterLS = new GaussianFilter2D(filterSigmaLS, filterWidthPxLS);        
+    }
+    
+    @Override
+    public void setParallelism(ForkJoinPool _pool, int _parallelism) {
+        pool = _pool;
+        parallelism = _parallelism;
+        if (dLSJob instanceof DenseLiuShenJavaJob) {
+            ((DenseLiuShenJavaJob)dLSJob).setParallelism(pool, parallelism);
+        }
     }
     
     private void initdLSJobIfRequired() {
     	if (dLSJob == null) {
     		PIVContextSingleton singleton = PIVContextSingleton.getSingleton();
     		PIVRunParameters runParameters = singleton.getPIVRunParameters();
+    		if (!runParameters.isUseOpenCL()) {
+    		    //Computers without OpenCL devices compute the dense optical flow in the Java CPU, in bands of image rows
+    		    dLSJob = new DenseLiuShenJavaJob().setParallelism(pool, parallelism);
+    		    return;
+    		}
     		ComputationDevice gpuDevice = runParameters.getComputationDeviceForThread();
     		if (gpuDevice == null) {
     			logger.warn("Could not find GPU device for thread. Using default GPU device");
@@ -342,24 +354,17 @@ public class DenseLiuShenAparapiJobInterpolator implements IOpticalFlowInterpola
     
     @Override
     public void updateImageA(IImage img) {
-        if (filteredImgLKA == null || img.getHeight() != filteredImgLKA.getHeight() || img.getWidth() != filteredImgLKA.getWidth()) {
-            filteredImgLKA = ImageFloat.sizeFrom(img);
-        }
-        filteredImgLKA = filterLK.applyFilter(img, filteredImgLKA);
-
-        IImage filteredImgTemp = filterLS.applyFilter(img, filteredImgLSA);
-        filteredImgLSA = filteredImgTemp.normalize(filteredImgLSA);
+        //Filtered images are shared with the other interpolators and filtering jobs of this thread
+        FilteredImagesCache cache = PIVContextSingleton.getSingleton().getPIVReusableObjects().getOrCreateFilteredImagesCache();
+        filteredImgLKA = cache.getFilteredImage(img, filterSigmaLK, filterWidthPxLK, false);
+        filteredImgLSA = cache.getFilteredImage(img, filterSigmaLS, filterWidthPxLS, true);
     }
     
     @Override
     public void updateImageB(IImage img) {
-        if (filteredImgLKB == null || img.getHeight() != filteredImgLKB.getHeight() || img.getWidth() != filteredImgLKB.getWidth()) {
-            filteredImgLKB = ImageFloat.sizeFrom(img);
-        }
-        filteredImgLKB = filterLK.applyFilter(img, filteredImgLKB);
-
-        IImage filteredImgTemp = filterLS.applyFilter(img, filteredImgLSB);
-        filteredImgLSB = filteredImgTemp.normalize(filteredImgLSB);
+        FilteredImagesCache cache = PIVContextSingleton.getSingleton().getPIVReusableObjects().getOrCreateFilteredImagesCache();
+        filteredImgLKB = cache.getFilteredImage(img, filterSigmaLK, filterWidthPxLK, false);
+        filteredImgLSB = cache.getFilteredImage(img, filterSigmaLS, filterWidthPxLS, true);
     }
 
 }
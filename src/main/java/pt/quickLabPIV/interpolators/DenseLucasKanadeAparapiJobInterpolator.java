@@ -8,6 +8,7 @@ package pt.quickLabPIV.interpolators;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.commons.math3.util.FastMath;
 import org.slf4j.Logger;
@@ -23,13 +24,12 @@ import pt.quickLabPIV.iareas.BiCubicSplineInterpolatorWithBiLinearBackup;
 import pt.quickLabPIV.iareas.IterationStepTiles;
 import pt.quickLabPIV.iareas.Tile;
 import pt.quickLabPIV.images.IImage;
-import pt.quickLabPIV.images.ImageFloat;
-import pt.quickLabPIV.images.filters.GaussianFilter2D;
-import pt.quickLabPIV.images.filters.IFilter;
+import pt.quickLabPIV.images.filters.FilteredImagesCache;
 import pt.quickLabPIV.jobs.Job;
 import pt.quickLabPIV.jobs.JobResultEnum;
 import pt.quickLabPIV.jobs.NotImplementedException;
 import pt.quickLabPIV.jobs.interpolators.DenseLucasKanadeAparapiJob;
+import pt.quickLabPIV.jobs.interpolators.DenseLucasKanadeJavaJob;
 import pt.quickLabPIV.jobs.interpolators.LucasKanadeOptions;
 import pt.quickLabPIV.jobs.interpolators.OpticalFlowInterpolatorInput;
 import pt.quickLabPIV.maximum.MaxCrossResult;
@@ -47,12 +47,13 @@ public class DenseLucasKanadeAparapiJobInterpolator implements IOpticalFlowInter
     final float filterSigma;
     final int filterWidthPx;
     
-    private IFilter filter;
     private IImage filteredImgA;
     private IImage filteredImgB;
     private float usAndVs[][];
     private Job<OpticalFlowInterpolatorInput, OpticalFlowInterpolatorInput> dLKJob;
     private OpticalFlowInterpolatorInput input;
+    private ForkJoinPool pool;
+    private int parallelism = 1;
     
     public DenseLucasKanadeAparapiJobInterpolator() {
         PIVContextSingleton singleton = PIVContextSingleton.getSingleton();
@@ -72,8 +73,6 @@ public class DenseLucasKanadeAparapiJobInterpolator implements IOpticalFlowInter
         filterSigma = configuration.getFilterSigma();
         filterWidthPx = configuration.getFilterWidthPx();
         denseVectors = configuration.isDenseExport();
-
-        filter = new GaussianFilter2D(filterSigma, filterWidthPx);
     }
     
     private void zeroUsAndVs() {
@@ -82,10 +81,24 @@ public class DenseLucasKanadeAparapiJobInterpolator implements IOpticalFlowInter
         }
     }
     
+    @Override
+    public void setParallelism(ForkJoinPool _pool, int _parallelism) {
+        pool = _pool;
+        parallelism = _parallelism;
+        if (dLKJob instanceof DenseLucasKanadeJavaJob) {
+            ((DenseLucasKanadeJavaJob)dLKJob).setParallelism(pool, parallelism);
+        }
+    }
+    
     private void initdLKJobIfRequired() {
     	if (dLKJob == null) {
     		PIVContextSingleton singleton = PIVContextSingleton.getSingleton();
     		PIVRunParameters runParameters = singleton.getPIVRunParameters();
+    		if (!runParameters.isUseOpenCL()) {
+    		    //Computers without OpenCL devices compute the dense optical flow in the Java CPU, in bands of image rows
+    		    dLKJob = new DenseLucasKanadeJavaJob().setParallelism(pool, parallelism);
+    		    return;
+    		}
     		ComputationDevice gpuDevice = runParameters.getComputationDeviceForThread();
     		if (gpuDevice == null) {
     			logger.warn("Could not find logger for thread. Using default GPU, if available.");
@@ -341,18 +354,15 @@ public class DenseLucasKanadeAparapiJobInterpolator implements IOpticalFlowInter
     
     @Override
     public void updateImageA(IImage img) {
-        if (filteredImgA == null || img.getHeight() != filteredImgA.getHeight() || img.getWidth() != filteredImgA.getWidth()) {
-            filteredImgA = ImageFloat.sizeFrom(img);
-        }
-        filteredImgA = filter.applyFilter(img, filteredImgA);
+        //Filtered images are shared with the other interpolators and filtering jobs of this thread
+        FilteredImagesCache cache = PIVContextSingleton.getSingleton().getPIVReusableObjects().getOrCreateFilteredImagesCache();
+        filteredImgA = cache.getFilteredImage(img, filterSigma, filterWidthPx, false);
     }
     
     @Override
     public void updateImageB(IImage img) {
-        if (filteredImgB == null || img.getHeight() != filteredImgB.getHeight() || img.getWidth() != filteredImgB.getWidth()) {
-            filteredImgB = ImageFloat.sizeFrom(img);
-        }
-        filteredImgB = filter.applyFilter(img, filteredImgB);
+        FilteredImagesCache cache = PIVContextSingleton.getSingleton().getPIVReusableObjects().getOrCreateFilteredImagesCache();
+        filteredImgB = cache.getFilteredImage(img, filterSigma, filterWidthPx, false);
     }
 
     @Override
@@ -7,6 +7,7 @@
 package pt.quickLabPIV.interpolators;
 import org.apache.commons.math3.analysis.MultivariateMatrixFunction;
 import org.apache.commons.math3.analysis.MultivariateVectorFunction;
+import org.apache.commons.math3.linear.ArrayRealVector;
 import org.apache.commons.math3.linear.RealVector;
 import org.apache.commons.math3.util.FastMath;
 import org.slf4j.Logger;
@@ -40,29 +41,81 @@ public class Gaussian2DAssymmetricFitter implements IGaussian2DFitter {
 		logResults = configuration.isLogResults();
 	}
 	
+	@Override
+	public int getNumberOfParameters() {
+		return 6;
+	}
+	
+	@Override
+	public void computeValues(double[] args, double[] functionValues) {
+		double a = args[0];
+		double meanX = args[1];
+		double meanY = args[2];
+		double sigmaX = args[3];
+		double sigmaY = args[4];
+		double b = args[5];
+		
+		double sigmaXSquared = sigmaX * sigmaX;
+		double sigmaYSquared = sigmaY * sigmaY;
+		double constant = 1.0/(2.0 * FastMath.PI * sigmaX * sigmaY);
+		
+		for (int y = 0; y < numberOfPointsInY; y++) {
+			for (int x = 0; x < numberOfPointsInX; x++) {
+				functionValues[y * numberOfPointsInX + x] = a * constant * 
+						FastMath.exp(-FastMath.pow((startX + x - meanX), 2)/(2.0 * sigmaXSquared)) *
+						FastMath.exp(-FastMath.pow((startY + y - meanY), 2)/(2.0 * sigmaYSquared)) + b;
+			}
+		}
+	}
+	
+	@Override
+	public void computeJacobian(double[] args, double[][] jacobianValues) {
+		double a = args[0];
+		double meanX = args[1];
+		double meanY = args[2];
+		double sigmaX = args[3];
+		double sigmaY = args[4];
+		//double b = args[5];
+		
+		double sigmaXSquared = sigmaX * sigmaX;
+		double sigmaYSquared = sigmaY * sigmaY;
+		double constant = 1.0/(2.0 * FastMath.PI * sigmaX * sigmaY);
+		
+		for (int y = 0; y < numberOfPointsInY; y++) {
+			for (int x = 0; x < numberOfPointsInX; x++) {
+				double expX = FastMath.exp(-FastMath.pow((startX + x - meanX), 2)/(2.0 * sigmaXSquared));
+				double expY = FastMath.exp(-FastMath.pow((startY + y - meanY), 2)/(2.0 * sigmaYSquared));
+						
+				int pointIndex = y * numberOfPointsInX + x;
+				
+				//df(v)/da
+				jacobianValues[pointIndex][0] = constant * expX * expY;
+				
+				//df(v)/dmeanX
+				jacobianValues[pointIndex][1] = a * jacobianValues[pointIndex][0] * (startX + x - meanX) / sigmaXSquared;
+				
+				//df(v)/dmeanY
+				jacobianValues[pointIndex][2] = a * jacobianValues[pointIndex][0] * (startY + y - meanY) / sigmaYSquared;
+				
+				//df(v)/sigmaX
+				jacobianValues[pointIndex][3] = jacobianValues[pointIndex][1] * (startX + x - meanX) / sigmaX - 
+						a * jacobianValues[pointIndex][0] * 1.0/sigmaX;
+				
+				//df(v)/sigmaY
+				jacobianValues[pointIndex][4] = jacobianValues[pointIndex][2] * (startY + y - meanY) / sigmaY - 
+						a * jacobianValues[pointIndex][0] * 1.0/sigmaY;
+				
+				//df(v)/b
+				jacobianValues[pointIndex][5] = 1;
+			}
+		}
+	}
+	
 	public final class Gaussian2DFunction implements MultivariateVectorFunction {
 		@Override
 		public double[] value(double[] args) throws IllegalArgumentException {
-			double a = args[0];
-			double meanX = args[1];
-			double meanY = args[2];
-			double sigmaX = args[3];
-			double sigmaY = args[4];
-			double b = args[5];
-			
 			double[] functionValues = new double[numberOfPointsInX * numberOfPointsInY];
-
-			double sigmaXSquared = sigmaX * sigmaX;
-			double sigmaYSquared = sigmaY * sigmaY;
-			double constant = 1.0/(2.0 * FastMath.PI * sigmaX * sigmaY);
-			
-			for (int y = 0; y < numberOfPointsInY; y++) {
-				for (int x = 0; x < numberOfPointsInX; x++) {
-					functionValues[y * numberOfPointsInX + x] = a * constant * 
-							FastMath.exp(-FastMath.pow((startX + x - meanX), 2)/(2.0 * sigmaXSquared)) *
-							FastMath.exp(-FastMath.pow((startY + y - meanY), 2)/(2.0 * sigmaYSquared)) + b;
-				}
-			}
+			computeValues(args, functionValues);
 			
 			return functionValues;
 		}
@@ -77,47 +130,8 @@ public class Gaussian2DAssymmetricFitter implements IGaussian2DFitter {
 
 		@Override
 		public double[][] value(double[] args) {
-			double a = args[0];
-			double meanX = args[1];
-			double meanY = args[2];
-			double sigmaX = args[3];
-			double sigmaY = args[4];
-			//double b = args[5];
-			
 			double[][] jacobianValues = new double[numberOfPointsInX * numberOfPointsInY][6];
-			
-			double sigmaXSquared = sigmaX * sigmaX;
-			double sigmaYSquared = sigmaY * sigmaY;
-			double constant = 1.0/(2.0 * FastMath.PI * sigmaX * sigmaY);
-			
-			for (int y = 0; y < numberOfPointsInY; y++) {
-				for (int x = 0; x < numberOfPointsInX; x++) {
-					double expX = FastMath.exp(-FastMath.pow((startX + x - meanX), 2)/(2.0 * sigmaXSquared));
-					double expY = FastMath.exp(-FastMath.pow((startY + y - meanY), 2)/(2.0 * sigmaYSquared));
-							
-					int pointIndex = y * numberOfPointsInX + x;
-					
-					//df(v)/da
-					jacobianValues[pointIndex][0] = constant * expX * expY;
-					
-					//df(v)/dmeanX
-					jacobianValues[pointIndex][1] = a * jacobianValues[pointIndex][0] * (startX + x - meanX) / sigmaXSquared;
-					
-					//df(v)/dmeanY
-					jacobianValues[pointIndex][2] = a * jacobianValues[pointIndex][0] * (startY + y - meanY) / sigmaYSquared;
-					
-					//df(v)/sigmaX
-					jacobianValues[pointIndex][3] = jacobianValues[pointIndex][1] * (startX + x - meanX) / sigmaX - 
-							a * jacobianValues[pointIndex][0] * 1.0/sigmaX;
-					
-					//df(v)/sigmaY
-					jacobianValues[pointIndex][4] = jacobianValues[pointIndex][2] * (startY + y - meanY) / sigmaY - 
-							a * jacobianValues[pointIndex][0] * 1.0/sigmaY;
-					
-					//df(v)/b
-					jacobianValues[pointIndex][5] = 1;
-				}
-			}
+			computeJacobian(args, jacobianValues);
 			
 			return jacobianValues;
 		}
@@ -182,26 +196,36 @@ public class Gaussian2DAssymmetricFitter implements IGaussian2DFitter {
 	@Override
 	public double[] getStartVector(double[] targetValues, double maxValue) {
 		double[] startValues = new double[6];
+		getStartVector(targetValues, maxValue, startValues);
 		
+		return startValues;
+	}
+
+	@Override
+	public void getStartVector(double[] targetValues, double maxValue, double[] startValues) {
 		startValues[0] = maxValue;
 		startValues[1] = initialEstimateX;
 		startValues[2] = initialEstimateY;
 		startValues[3] = 1.0; //TODO Replace by unbiased variance estimator
 		startValues[4] = 1.0;
 		startValues[5] = 0.0;
-		
-		return startValues;
 	}
 
 	@Override
 	public RealVector validate(RealVector params) {
-        if (params.getEntry(0) < maxValue / 20.0 ||
-            params.getEntry(1) > startX + numberOfPointsInX/2 + 1 || params.getEntry(1) < startX + numberOfPointsInX/2 - 1 ||
-            params.getEntry(2) > startY + numberOfPointsInY/2 + 1 || params.getEntry(2) < startY + numberOfPointsInY/2 - 1) {
-            params.setEntry(0, maxValue);
-            params.setEntry(1, startX + numberOfPointsInX/2);
-            params.setEntry(2, startY + numberOfPointsInY/2);
-        };
-        return params;
+	    double[] values = params.toArray();
+	    validateParameters(values);
+	    return new ArrayRealVector(values, false);
+	}
+
+	@Override
+	public void validateParameters(double[] params) {
+        if (params[0] < maxValue / 20.0 ||
+            params[1] > startX + numberOfPointsInX/2 + 1 || params[1] < startX + numberOfPointsInX/2 - 1 ||
+            params[2] > startY + numberOfPointsInY/2 + 1 || params[2] < startY + numberOfPointsInY/2 - 1) {
+            params[0] = maxValue;
+            params[1] = startX + numberOfPointsInX/2;
+            params[2] = startY + numberOfPointsInY/2;
+        }
 	}
 }
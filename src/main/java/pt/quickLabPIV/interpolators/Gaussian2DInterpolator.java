@@ -6,13 +6,6 @@
  */
 package pt.quickLabPIV.interpolators;
 
-import org.apache.commons.math3.exception.TooManyIterationsException;
-import org.apache.commons.math3.fitting.leastsquares.EvaluationRmsChecker;
-import org.apache.commons.math3.fitting.leastsquares.GaussNewtonOptimizer;
-import org.apache.commons.math3.fitting.leastsquares.LeastSquaresBuilder;
-import org.apache.commons.math3.fitting.leastsquares.LeastSquaresOptimizer;
-import org.apache.commons.math3.fitting.leastsquares.LeastSquaresProblem;
-import org.apache.commons.math3.fitting.leastsquares.LevenbergMarquardtOptimizer;
 import org.apache.commons.math3.util.FastMath;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,10 +16,25 @@ import pt.quickLabPIV.iareas.InterpolateException;
 import pt.quickLabPIV.maximum.MaxCrossResult;
 
 public class Gaussian2DInterpolator implements IBasicCrossCorrelationInterpolator {
+	private static final int MAX_ITERATIONS = 200000;
+	private static final int MAX_EVALUATIONS = 2000000;
+	private static final double COST_RELATIVE_TOLERANCE = 1.0e-10;
+	private static final double PARAMETER_RELATIVE_TOLERANCE = 1.0e-10;
+	private static final double RMS_RELATIVE_TOLERANCE = 1e-8f;
+	private static final double RMS_ABSOLUTE_TOLERANCE = 1e-12f;
+	
 	private IGaussian2DFitter fitter;
+	private Gaussian2DLevenbergMarquardtSolver solver;
 	private int pixelsX, pixelsY;
 	private boolean logResults;
 	private double[] targetValues;
+	private double[] optimalValues;
+	//Batch of peaks fitted together, grown as needed to hold all the peaks of a cross-correlation result
+	private int[] batchPeakIndices = new int[0];
+	private int[] batchPeakLocations = new int[0];
+	private float[] batchPeakEstimates = new float[0];
+	private double[] batchTargetValues = new double[0];
+	private double[] batchParameters = new double[0];
 	private static Logger logger = LoggerFactory.getLogger(Gaussian2DInterpolator.class);
 
     public static float gaussian2DAssymmetric(float gain, float uX, float sigmaX, float uY, float sigmaY, float x, float y) {
@@ -49,15 +57,24 @@ public class Gaussian2DInterpolator implements IBasicCrossCorrelationInterpolato
 		logResults = configuration.isLogResults();
 		
 		targetValues = new double[pixelsX * pixelsY];
+		optimalValues = new double[fitter.getNumberOfParameters()];
+		solver = new Gaussian2DLevenbergMarquardtSolver(fitter, pixelsX * pixelsY, MAX_ITERATIONS, MAX_EVALUATIONS,
+		        COST_RELATIVE_TOLERANCE, PARAMETER_RELATIVE_TOLERANCE, RMS_RELATIVE_TOLERANCE, RMS_ABSOLUTE_TOLERANCE);
 	}
 	
+	private void ensureBatchCapacity(int peaks) {
+	    if (batchPeakIndices.length >= peaks) {
+	        return;
+	    }
+	    batchPeakIndices = new int[peaks];
+	    batchPeakLocations = new int[peaks * Gaussian2DLevenbergMarquardtSolver.PEAK_LOCATION_VALUES];
+	    batchPeakEstimates = new float[peaks * Gaussian2DLevenbergMarquardtSolver.PEAK_ESTIMATE_VALUES];
+	    batchTargetValues = new double[peaks * targetValues.length];
+	    batchParameters = new double[peaks * optimalValues.length];
+	}
+
 	@Override
 	public MaxCrossResult interpolate(Matrix m, MaxCrossResult result) {
-	    MaxCrossResult temp = new MaxCrossResult();
-        temp.importOtherMax(result);
-        Gaussian1DPolynomialInterpolator interp = new Gaussian1DPolynomialInterpolator();
-        interp.interpolate(m, temp);
-
         float minFloor = result.getMinFloor();
         if (minFloor < -5.15f) {
             throw new InterpolateException("Gaussian 2D cannot handle large negative floor level of: " + minFloor);
@@ -68,6 +85,8 @@ public class Gaussian2DInterpolator implements IBasicCrossCorrelationInterpolato
             addMinFloor = -minFloor + 1e-8f;
         }
         
+        ensureBatchCapacity(result.getTotalPeaks());
+        int batchPeaks = 0;
 	    for (int peakIndex = 0; peakIndex < result.getTotalPeaks(); peakIndex++) {
     		int maxI = (int)result.getNthPeakI(peakIndex);
     		int maxJ = (int)result.getNthPeakJ(peakIndex);
@@ -99,46 +118,46 @@ public class Gaussian2DInterpolator implements IBasicCrossCorrelationInterpolato
     			}
     		}		
     		
-    		//Use 1D Polynomial interpolator as an hint for the initial sub-pixel peak location -> Disabled: This fails 456 tests.
+    		//Use 1D Polynomial interpolator result (temp) as an hint for the initial sub-pixel peak location -> Disabled: This fails 456 tests.
     		//fitter.setPeakPointXY(maxJ, maxI, temp.getNthPeakValue(peakIndex), temp.getNthPeakJ(peakIndex), temp.getNthPeakI(peakIndex));
     		//Instead, use the integer correlation result as an hint for the initial sub-pixel peak location
-    		fitter.setPeakPointXY(maxJ, maxI, result.getNthPeakValue(peakIndex) + addMinFloor, result.getNthPeakJ(peakIndex), result.getNthPeakI(peakIndex));
-    		
-    		LeastSquaresBuilder lsb = new LeastSquaresBuilder();
-    		lsb.model(fitter.getOrCreateFunction(), fitter.getOrCreateJacobianMatrix());
-    		lsb.parameterValidator(fitter);
-    		lsb.target(targetValues);
-    		lsb.start(fitter.getStartVector(targetValues, maxValue));		
-    		lsb.lazyEvaluation(false);
-    		lsb.maxEvaluations(2000000);
-    		lsb.maxIterations(200000);
-    		lsb.checker(new EvaluationRmsChecker(1e-8f, 1e-12f));
-    		LeastSquaresProblem problem = lsb.build();
+    		final int locationOffset = batchPeaks * Gaussian2DLevenbergMarquardtSolver.PEAK_LOCATION_VALUES;
+    		final int estimateOffset = batchPeaks * Gaussian2DLevenbergMarquardtSolver.PEAK_ESTIMATE_VALUES;
+    		batchPeakLocations[locationOffset] = maxJ;
+    		batchPeakLocations[locationOffset + 1] = maxI;
+    		batchPeakEstimates[estimateOffset] = result.getNthPeakValue(peakIndex) + addMinFloor;
+    		batchPeakEstimates[estimateOffset + 1] = result.getNthPeakJ(peakIndex);
+    		batchPeakEstimates[estimateOffset + 2] = result.getNthPeakI(peakIndex);
+    		fitter.setPeakPointXY(maxJ, maxI, batchPeakEstimates[estimateOffset], batchPeakEstimates[estimateOffset + 1], batchPeakEstimates[estimateOffset + 2]);
     		
-    		
-    		/*RealMatrix rm = 
-    		LeastSquaresProblem problem = LeastSquaresFactory.create(fitter.getOrCreateFunction(), fitter.getOrCreateJacobianMatrix(), targetValues,
-    				fitter.getStartVector(targetValues, maxValue), , null, 20000, 2000);*/
-    	
-    		LeastSquaresOptimizer lmo = new LevenbergMarquardtOptimizer().
-                    withCostRelativeTolerance(1.0e-10).
-                    withParameterRelativeTolerance(1.0e-10);			
-    		//LeastSquaresOptimizer lmo = new GaussNewtonOptimizer().withDecomposition(GaussNewtonOptimizer.Decomposition.SVD);
-    		LeastSquaresOptimizer.Optimum lsoo = null;
-    		try {
-    			lsoo = lmo.optimize(problem);
-    		} catch (TooManyIterationsException ex) {
-    			throw new InterpolatorStateException("Cannot interpolate. Exceeded number of iterations: M[dimI: " + 
-    					m.getHeight() + ", dimJ: " + m.getWidth() + "], max. is at: [I: " + maxI + ", J: " + maxJ + "]", ex);
-    		}
-    			
-    		final double[] optimalValues = lsoo.getPoint().toArray();
-    		
-    		if (logResults) {
-    			logger.trace("Peak index: {}, Iteration number: {}, Evaluation number: {}", 
-    			        peakIndex, lsoo.getIterations(), lsoo.getEvaluations());
-    		 }    			
-    		result = fitter.updateMaxResult(peakIndex, result, optimalValues);
+    		fitter.getStartVector(targetValues, maxValue, optimalValues);
+    		System.arraycopy(targetValues, 0, batchTargetValues, batchPeaks * targetValues.length, targetValues.length);
+    		System.arraycopy(optimalValues, 0, batchParameters, batchPeaks * optimalValues.length, optimalValues.length);
+    		batchPeakIndices[batchPeaks++] = peakIndex;
+	    }
+	    
+	    try {
+	        solver.fitPeaks(batchPeaks, batchPeakLocations, batchPeakEstimates, batchTargetValues, batchParameters);
+	    } catch (InterpolatorStateException ex) {
+	        final int locationOffset = solver.getFailedPeak() * Gaussian2DLevenbergMarquardtSolver.PEAK_LOCATION_VALUES;
+	        throw new InterpolatorStateException("Cannot interpolate. " + ex.getMessage() + ": M[dimI: " + 
+	                m.getHeight() + ", dimJ: " + m.getWidth() + "], max. is at: [I: " + batchPeakLocations[locationOffset + 1] + 
+	                ", J: " + batchPeakLocations[locationOffset] + "]", ex);
+	    }
+	    
+	    if (logResults) {
+	        logger.trace("Peaks: {}, Iteration number: {}, Evaluation number: {}", 
+	                batchPeaks, solver.getIterations(), solver.getEvaluations());
+	    }
+	    
+	    for (int batchPeak = 0; batchPeak < batchPeaks; batchPeak++) {
+	        //The fitter validates the result against the estimates of the peak being updated
+	        final int locationOffset = batchPeak * Gaussian2DLevenbergMarquardtSolver.PEAK_LOCATION_VALUES;
+	        final int estimateOffset = batchPeak * Gaussian2DLevenbergMarquardtSolver.PEAK_ESTIMATE_VALUES;
+	        fitter.setPeakPointXY(batchPeakLocations[locationOffset], batchPeakLocations[locationOffset + 1], batchPeakEstimates[estimateOffset],
+	                              batchPeakEstimates[estimateOffset + 1], batchPeakEstimates[estimateOffset + 2]);
+	        System.arraycopy(batchParameters, batchPeak * optimalValues.length, optimalValues, 0, optimalValues.length);
+	        result = fitter.updateMaxResult(batchPeakIndices[batchPeak], result, optimalValues);
 	    }
 		
 		return result;
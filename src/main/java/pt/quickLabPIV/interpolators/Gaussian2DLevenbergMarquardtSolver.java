@@ -0,0 +1,741 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.interpolators;
+
+import java.util.Arrays;
+
+import org.apache.commons.math3.util.FastMath;
+import org.apache.commons.math3.util.Precision;
+
+/**
+ * Levenberg-Marquardt least squares solver specialized for the small, fixed size, Gaussian 2D sub-pixel fitting problems.
+ * <br/>
+ * It follows the MINPACK algorithm, step by step, as implemented by the Apache Commons Math LevenbergMarquardtOptimizer,
+ * combined with an EvaluationRmsChecker, so that the fits match the ones obtained from the general purpose optimizer,
+ * however all the working storage is pre-allocated for the fitter model size and reused by all the fits done by the
+ * same instance, thus no objects are created per fitted peak. The Jacobian is only evaluated at the start of each
+ * iteration, since the trial points of the inner loop only require the model values.
+ * <br/>
+ * <b>Note:</b> Instances are not thread safe, a solver must be created per thread, as done for the fitters.
+ *
+ * @author lpnm
+ */
+public class Gaussian2DLevenbergMarquardtSolver {
+    /**
+     * Number of integer peak location values per peak in the batch fits, namely the peak X and Y.
+     */
+    public static final int PEAK_LOCATION_VALUES = 2;
+    /**
+     * Number of peak estimate values per peak in the batch fits, namely the peak value and the initial X and Y
+     * sub-pixel location estimates.
+     */
+    public static final int PEAK_ESTIMATE_VALUES = 3;
+
+    private static final double TWO_EPS = 2.0 * Precision.EPSILON;
+    private static final double INITIAL_STEP_BOUND_FACTOR = 100.0;
+    private static final double ORTHOGONALITY_TOLERANCE = 1e-10;
+    private static final double QR_RANKING_THRESHOLD = Precision.SAFE_MIN;
+
+    private final IGaussian2DFitter fitter;
+    private final int numberOfPoints;
+    private final int numberOfParameters;
+    private final int solvedCols;
+    private final int maxIterations;
+    private final int maxEvaluations;
+    private final double costRelativeTolerance;
+    private final double parameterRelativeTolerance;
+    private final double rmsRelativeTolerance;
+    private final double rmsAbsoluteTolerance;
+
+    private final double[] values;
+    private final double[] residuals;
+    private final double[][] jacobian;
+    private final double[][] weightedJacobian;
+    private final int[] permutation;
+    private final double[] diagR;
+    private final double[] jacNorm;
+    private final double[] beta;
+    private final double[] currentPoint;
+    private final double[] oldX;
+    private final double[] diag;
+    private final double[] qtf;
+    private final double[] lmDir;
+    private final double[] work1;
+    private final double[] work2;
+    private final double[] work3;
+    private int rank;
+    private int iterations;
+    private int evaluations;
+    private int failedPeak = -1;
+
+    /**
+     * Creates a new solver for the given fitter model.
+     * @param _fitter the Gaussian 2D model to fit
+     * @param _numberOfPoints the number of fitted points, i.e. the number of target values
+     * @param _maxIterations the maximum number of iterations per fit
+     * @param _maxEvaluations the maximum number of model evaluations per fit
+     * @param _costRelativeTolerance the relative tolerance for the sum of squares reduction
+     * @param _parameterRelativeTolerance the relative tolerance between two consecutive parameters estimates
+     * @param _rmsRelativeTolerance the relative tolerance between the RMS of two consecutive iterations
+     * @param _rmsAbsoluteTolerance the absolute tolerance between the RMS of two consecutive iterations
+     */
+    public Gaussian2DLevenbergMarquardtSolver(IGaussian2DFitter _fitter, int _numberOfPoints, int _maxIterations, int _maxEvaluations,
+            double _costRelativeTolerance, double _parameterRelativeTolerance, double _rmsRelativeTolerance, double _rmsAbsoluteTolerance) {
+        fitter = _fitter;
+        numberOfPoints = _numberOfPoints;
+        numberOfParameters = _fitter.getNumberOfParameters();
+        solvedCols = FastMath.min(numberOfPoints, numberOfParameters);
+        maxIterations = _maxIterations;
+        maxEvaluations = _maxEvaluations;
+        costRelativeTolerance = _costRelativeTolerance;
+        parameterRelativeTolerance = _parameterRelativeTolerance;
+        rmsRelativeTolerance = _rmsRelativeTolerance;
+        rmsAbsoluteTolerance = _rmsAbsoluteTolerance;
+
+        values = new double[numberOfPoints];
+        residuals = new double[numberOfPoints];
+        jacobian = new double[numberOfPoints][numberOfParameters];
+        weightedJacobian = new double[numberOfPoints][numberOfParameters];
+        permutation = new int[numberOfParameters];
+        diagR = new double[numberOfParameters];
+        jacNorm = new double[numberOfParameters];
+        beta = new double[numberOfParameters];
+        currentPoint = new double[numberOfParameters];
+        oldX = new double[numberOfParameters];
+        diag = new double[numberOfParameters];
+        qtf = new double[numberOfPoints];
+        lmDir = new double[numberOfParameters];
+        work1 = new double[numberOfParameters];
+        work2 = new double[numberOfParameters];
+        work3 = new double[numberOfParameters];
+    }
+
+    /**
+     * Retrieves the number of iterations performed by the last fit, or by all the peaks of the last batch fit.
+     * @return the number of iterations
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Retrieves the number of model evaluations performed by the last fit, or by all the peaks of the last batch fit.
+     * @return the number of evaluations
+     */
+    public int getEvaluations() {
+        return evaluations;
+    }
+
+    /**
+     * Retrieves the batch index of the peak that failed to fit in the last batch fit.
+     * @return the failed peak index, or -1 if all the peaks were fitted
+     */
+    public int getFailedPeak() {
+        return failedPeak;
+    }
+
+    /**
+     * Fits the model to a batch of peaks, whose target values and parameters are stored one after the other in the
+     * batch arrays. The fitter is set up for each peak, from its location and estimates, before fitting it, so that
+     * each peak is fitted exactly as by a single peak fit.
+     * @param numberOfPeaks the number of peaks to fit
+     * @param peakLocations the integer peak locations, with {@link #PEAK_LOCATION_VALUES} per peak
+     * @param peakEstimates the peak values and initial sub-pixel location estimates, with {@link #PEAK_ESTIMATE_VALUES} per peak
+     * @param targetValues the target values of all the peaks, with the number of fitted points per peak
+     * @param parameters the start parameters vectors of all the peaks, which are replaced by the optimal parameters
+     * @return the total number of iterations performed
+     * @throws InterpolatorStateException if a peak fit fails, whose batch index is then available from {@link #getFailedPeak()}
+     */
+    public int fitPeaks(int numberOfPeaks, int[] peakLocations, float[] peakEstimates, double[] targetValues, double[] parameters) {
+        int totalIterations = 0;
+        int totalEvaluations = 0;
+        failedPeak = -1;
+        for (int peak = 0; peak < numberOfPeaks; peak++) {
+            final int locationOffset = peak * PEAK_LOCATION_VALUES;
+            final int estimateOffset = peak * PEAK_ESTIMATE_VALUES;
+            fitter.setPeakPointXY(peakLocations[locationOffset], peakLocations[locationOffset + 1], peakEstimates[estimateOffset],
+                                  peakEstimates[estimateOffset + 1], peakEstimates[estimateOffset + 2]);
+            try {
+                fit(targetValues, peak * numberOfPoints, parameters, peak * numberOfParameters);
+            } catch (InterpolatorStateException ex) {
+                failedPeak = peak;
+                throw ex;
+            } finally {
+                totalIterations += iterations;
+                totalEvaluations += evaluations;
+            }
+        }
+        iterations = totalIterations;
+        evaluations = totalEvaluations;
+
+        return totalIterations;
+    }
+
+    /**
+     * Fits the model to a single peak. The fitter must have been set up for the peak, as for the
+     * general purpose optimizer, since the fitter parameter validation is applied at each evaluation.
+     * @param targetValues the target values to fit, for all the points
+     * @param parameters the start parameters vector, which is replaced by the optimal parameters
+     * @return the number of iterations performed
+     * @throws InterpolatorStateException if the fit fails to converge within the allowed iterations or evaluations,
+     * or when the tolerances cannot be met
+     */
+    public int fit(double[] targetValues, double[] parameters) {
+        return fit(targetValues, 0, parameters, 0);
+    }
+
+    /**
+     * Fits the model to a single peak, whose target values and parameters are located at a given offset of
+     * batch arrays, so that many peaks can be fitted from a single set of arrays.
+     * The fitter must have been set up for the peak, as for the general purpose optimizer, since the fitter parameter
+     * validation is applied at each evaluation.
+     * @param targetValues the target values array
+     * @param targetOffset the index of the first target value of the peak
+     * @param parameters the parameters array, containing the start parameters vector, which is replaced by the optimal parameters
+     * @param parametersOffset the index of the first parameter of the peak
+     * @return the number of iterations performed
+     * @throws InterpolatorStateException if the fit fails to converge within the allowed iterations or evaluations,
+     * or when the tolerances cannot be met
+     */
+    public int fit(double[] targetValues, int targetOffset, double[] parameters, int parametersOffset) {
+        iterations = 0;
+        evaluations = 0;
+
+        System.arraycopy(parameters, parametersOffset, currentPoint, 0, numberOfParameters);
+
+        double lmPar = 0;
+        double delta = 0;
+        double xNorm = 0;
+        double currentCost = evaluate(targetValues, targetOffset);
+        double currentRms = computeRms(currentCost);
+
+        boolean firstIteration = true;
+        while (true) {
+            if (++iterations > maxIterations) {
+                throw new InterpolatorStateException("Exceeded number of iterations: " + maxIterations);
+            }
+
+            final double previousRms = currentRms;
+
+            fitter.computeJacobian(currentPoint, jacobian);
+            qrDecomposition();
+
+            System.arraycopy(residuals, 0, qtf, 0, numberOfPoints);
+            qTy(qtf);
+
+            //Q is no longer needed, so let the weighted jacobian contain the R matrix with its diagonal elements
+            for (int k = 0; k < solvedCols; ++k) {
+                int pk = permutation[k];
+                weightedJacobian[k][pk] = diagR[pk];
+            }
+
+            if (firstIteration) {
+                //Scale the point according to the norms of the columns of the initial jacobian
+                xNorm = 0;
+                for (int k = 0; k < numberOfParameters; ++k) {
+                    double dk = jacNorm[k];
+                    if (dk == 0) {
+                        dk = 1.0;
+                    }
+                    double xk = dk * currentPoint[k];
+                    xNorm += xk * xk;
+                    diag[k] = dk;
+                }
+                xNorm = FastMath.sqrt(xNorm);
+
+                delta = (xNorm == 0) ? INITIAL_STEP_BOUND_FACTOR : (INITIAL_STEP_BOUND_FACTOR * xNorm);
+            }
+
+            //Check orthogonality between the residuals vector and the jacobian columns
+            double maxCosine = 0;
+            if (currentCost != 0) {
+                for (int j = 0; j < solvedCols; ++j) {
+                    int pj = permutation[j];
+                    double s = jacNorm[pj];
+                    if (s != 0) {
+                        double sum = 0;
+                        for (int i = 0; i <= j; ++i) {
+                            sum += weightedJacobian[i][pj] * qtf[i];
+                        }
+                        maxCosine = FastMath.max(maxCosine, FastMath.abs(sum) / (s * currentCost));
+                    }
+                }
+            }
+            if (maxCosine <= ORTHOGONALITY_TOLERANCE) {
+                return finish(parameters, parametersOffset);
+            }
+
+            for (int j = 0; j < numberOfParameters; ++j) {
+                diag[j] = FastMath.max(diag[j], jacNorm[j]);
+            }
+
+            for (double ratio = 0; ratio < 1.0e-4;) {
+                for (int j = 0; j < solvedCols; ++j) {
+                    int pj = permutation[j];
+                    oldX[pj] = currentPoint[pj];
+                }
+                final double previousCost = currentCost;
+
+                lmPar = determineLMParameter(delta, lmPar);
+
+                //Compute the new point and the norm of the evolution direction
+                double lmNorm = 0;
+                for (int j = 0; j < solvedCols; ++j) {
+                    int pj = permutation[j];
+                    lmDir[pj] = -lmDir[pj];
+                    currentPoint[pj] = oldX[pj] + lmDir[pj];
+                    double s = diag[pj] * lmDir[pj];
+                    lmNorm += s * s;
+                }
+                lmNorm = FastMath.sqrt(lmNorm);
+                if (firstIteration) {
+                    delta = FastMath.min(delta, lmNorm);
+                }
+
+                currentCost = evaluate(targetValues, targetOffset);
+
+                //Compute the scaled actual reduction
+                double actRed = -1.0;
+                if (0.1 * currentCost < previousCost) {
+                    double r = currentCost / previousCost;
+                    actRed = 1.0 - r * r;
+                }
+
+                //Compute the scaled predicted reduction and the scaled directional derivative
+                for (int j = 0; j < solvedCols; ++j) {
+                    int pj = permutation[j];
+                    double dirJ = lmDir[pj];
+                    work1[j] = 0;
+                    for (int i = 0; i <= j; ++i) {
+                        work1[i] += weightedJacobian[i][pj] * dirJ;
+                    }
+                }
+                double coeff1 = 0;
+                for (int j = 0; j < solvedCols; ++j) {
+                    coeff1 += work1[j] * work1[j];
+                }
+                double pc2 = previousCost * previousCost;
+                coeff1 /= pc2;
+                double coeff2 = lmPar * lmNorm * lmNorm / pc2;
+                double preRed = coeff1 + 2 * coeff2;
+                double dirDer = -(coeff1 + coeff2);
+
+                ratio = (preRed == 0) ? 0 : (actRed / preRed);
+
+                //Update the step bound
+                if (ratio <= 0.25) {
+                    double tmp = (actRed < 0) ? (0.5 * dirDer / (dirDer + 0.5 * actRed)) : 0.5;
+                    if ((0.1 * currentCost >= previousCost) || (tmp < 0.1)) {
+                        tmp = 0.1;
+                    }
+                    delta = tmp * FastMath.min(delta, 10.0 * lmNorm);
+                    lmPar /= tmp;
+                } else if ((lmPar == 0) || (ratio >= 0.75)) {
+                    delta = 2 * lmNorm;
+                    lmPar *= 0.5;
+                }
+
+                if (ratio >= 1.0e-4) {
+                    //Successful iteration
+                    firstIteration = false;
+                    xNorm = 0;
+                    for (int k = 0; k < numberOfParameters; ++k) {
+                        double xK = diag[k] * currentPoint[k];
+                        xNorm += xK * xK;
+                    }
+                    xNorm = FastMath.sqrt(xNorm);
+
+                    currentRms = computeRms(currentCost);
+                    if (Precision.equals(previousRms, currentRms, rmsAbsoluteTolerance) ||
+                        Precision.equalsWithRelativeTolerance(previousRms, currentRms, rmsRelativeTolerance)) {
+                        return finish(parameters, parametersOffset);
+                    }
+                } else {
+                    //Failed iteration, reset to the previous point, the residuals are only required again after a successful iteration
+                    currentCost = previousCost;
+                    for (int j = 0; j < solvedCols; ++j) {
+                        int pj = permutation[j];
+                        currentPoint[pj] = oldX[pj];
+                    }
+                }
+
+                if ((FastMath.abs(actRed) <= costRelativeTolerance && preRed <= costRelativeTolerance && ratio <= 2.0) ||
+                    delta <= parameterRelativeTolerance * xNorm) {
+                    return finish(parameters, parametersOffset);
+                }
+
+                if (FastMath.abs(actRed) <= TWO_EPS && preRed <= TWO_EPS && ratio <= 2.0) {
+                    throw new InterpolatorStateException("Cost relative tolerance is too small: " + costRelativeTolerance);
+                } else if (delta <= TWO_EPS * xNorm) {
+                    throw new InterpolatorStateException("Parameters relative tolerance is too small: " + parameterRelativeTolerance);
+                } else if (maxCosine <= TWO_EPS) {
+                    throw new InterpolatorStateException("Orthogonality tolerance is too small: " + ORTHOGONALITY_TOLERANCE);
+                }
+            }
+        }
+    }
+
+    private int finish(double[] parameters, int parametersOffset) {
+        System.arraycopy(currentPoint, 0, parameters, parametersOffset, numberOfParameters);
+        return iterations;
+    }
+
+    private double computeRms(double cost) {
+        return FastMath.sqrt(cost * cost / numberOfPoints);
+    }
+
+    /**
+     * Validates the current point, as done by the general purpose optimizer before each evaluation, evaluates the model
+     * at the validated point and computes the residuals.
+     * @return the cost, i.e. the norm of the residuals vector
+     */
+    private double evaluate(double[] targetValues, int targetOffset) {
+        if (++evaluations > maxEvaluations) {
+            throw new InterpolatorStateException("Exceeded number of evaluations: " + maxEvaluations);
+        }
+
+        fitter.validateParameters(currentPoint);
+        fitter.computeValues(currentPoint, values);
+
+        double sum = 0;
+        for (int i = 0; i < numberOfPoints; i++) {
+            double residual = targetValues[targetOffset + i] - values[i];
+            residuals[i] = residual;
+            sum += residual * residual;
+        }
+
+        return FastMath.sqrt(sum);
+    }
+
+    /**
+     * QR decomposition of the weighted jacobian, i.e. the jacobian multiplied by -1, with column pivoting,
+     * by Householder transforms.
+     */
+    private void qrDecomposition() {
+        for (int i = 0; i < numberOfPoints; i++) {
+            for (int k = 0; k < numberOfParameters; k++) {
+                weightedJacobian[i][k] = -jacobian[i][k];
+            }
+        }
+
+        Arrays.fill(diagR, 0.0);
+        Arrays.fill(beta, 0.0);
+        for (int k = 0; k < numberOfParameters; ++k) {
+            permutation[k] = k;
+            double norm2 = 0;
+            for (int i = 0; i < numberOfPoints; ++i) {
+                double akk = weightedJacobian[i][k];
+                norm2 += akk * akk;
+            }
+            jacNorm[k] = FastMath.sqrt(norm2);
+        }
+
+        rank = solvedCols;
+        for (int k = 0; k < numberOfParameters; ++k) {
+            //Select the column with the greatest norm on active components
+            int nextColumn = -1;
+            double ak2 = Double.NEGATIVE_INFINITY;
+            for (int i = k; i < numberOfParameters; ++i) {
+                double norm2 = 0;
+                for (int j = k; j < numberOfPoints; ++j) {
+                    double aki = weightedJacobian[j][permutation[i]];
+                    norm2 += aki * aki;
+                }
+                if (Double.isInfinite(norm2) || Double.isNaN(norm2)) {
+                    throw new InterpolatorStateException("Unable to perform QR decomposition on the jacobian");
+                }
+                if (norm2 > ak2) {
+                    nextColumn = i;
+                    ak2 = norm2;
+                }
+            }
+            if (ak2 <= QR_RANKING_THRESHOLD) {
+                rank = k;
+                return;
+            }
+            int pk = permutation[nextColumn];
+            permutation[nextColumn] = permutation[k];
+            permutation[k] = pk;
+
+            //Choose alpha such that Hk.u = alpha ek
+            double akk = weightedJacobian[k][pk];
+            double alpha = (akk > 0) ? -FastMath.sqrt(ak2) : FastMath.sqrt(ak2);
+            double betak = 1.0 / (ak2 - akk * alpha);
+            beta[pk] = betak;
+
+            diagR[pk] = alpha;
+            weightedJacobian[k][pk] -= alpha;
+
+            //Transform the remaining columns
+            for (int dk = numberOfParameters - 1 - k; dk > 0; --dk) {
+                double gamma = 0;
+                for (int j = k; j < numberOfPoints; ++j) {
+                    gamma += weightedJacobian[j][pk] * weightedJacobian[j][permutation[k + dk]];
+                }
+                gamma *= betak;
+                for (int j = k; j < numberOfPoints; ++j) {
+                    weightedJacobian[j][permutation[k + dk]] -= gamma * weightedJacobian[j][pk];
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the product Qt.y, where Q is the orthogonal matrix from the QR decomposition.
+     * @param y the vector to multiply, which is replaced by the result
+     */
+    private void qTy(double[] y) {
+        for (int k = 0; k < numberOfParameters; ++k) {
+            int pk = permutation[k];
+            double gamma = 0;
+            for (int i = k; i < numberOfPoints; ++i) {
+                gamma += weightedJacobian[i][pk] * y[i];
+            }
+            gamma *= beta[pk];
+            for (int i = k; i < numberOfPoints; ++i) {
+                y[i] -= gamma * weightedJacobian[i][pk];
+            }
+        }
+    }
+
+    /**
+     * Determines the Levenberg-Marquardt parameter and the corresponding direction, stored in lmDir.
+     * @param delta the upper bound on the euclidean norm of diag * lmDir
+     * @param lmPar the previous Levenberg-Marquardt parameter
+     * @return the new Levenberg-Marquardt parameter
+     */
+    private double determineLMParameter(double delta, double lmPar) {
+        final int nC = numberOfParameters;
+
+        //Compute the Gauss-Newton direction, if the jacobian is rank-deficient, obtain a least squares solution
+        for (int j = 0; j < rank; ++j) {
+            lmDir[permutation[j]] = qtf[j];
+        }
+        for (int j = rank; j < nC; ++j) {
+            lmDir[permutation[j]] = 0;
+        }
+        for (int k = rank - 1; k >= 0; --k) {
+            int pk = permutation[k];
+            double ypk = lmDir[pk] / diagR[pk];
+            for (int i = 0; i < k; ++i) {
+                lmDir[permutation[i]] -= ypk * weightedJacobian[i][pk];
+            }
+            lmDir[pk] = ypk;
+        }
+
+        //Evaluate the function at the origin, and test for acceptance of the Gauss-Newton direction
+        double dxNorm = 0;
+        for (int j = 0; j < solvedCols; ++j) {
+            int pj = permutation[j];
+            double s = diag[pj] * lmDir[pj];
+            work1[pj] = s;
+            dxNorm += s * s;
+        }
+        dxNorm = FastMath.sqrt(dxNorm);
+        double fp = dxNorm - delta;
+        if (fp <= 0.1 * delta) {
+            return 0;
+        }
+
+        //If the jacobian is not rank deficient, the Newton step provides a lower bound, parl, for the zero of the function,
+        //otherwise set this bound to zero
+        double sum2;
+        double parl = 0;
+        if (rank == solvedCols) {
+            for (int j = 0; j < solvedCols; ++j) {
+                int pj = permutation[j];
+                work1[pj] *= diag[pj] / dxNorm;
+            }
+            sum2 = 0;
+            for (int j = 0; j < solvedCols; ++j) {
+                int pj = permutation[j];
+                double sum = 0;
+                for (int i = 0; i < j; ++i) {
+                    sum += weightedJacobian[i][pj] * work1[permutation[i]];
+                }
+                double s = (work1[pj] - sum) / diagR[pj];
+                work1[pj] = s;
+                sum2 += s * s;
+            }
+            parl = fp / (delta * sum2);
+        }
+
+        //Calculate an upper bound, paru, for the zero of the function
+        sum2 = 0;
+        for (int j = 0; j < solvedCols; ++j) {
+            int pj = permutation[j];
+            double sum = 0;
+            for (int i = 0; i <= j; ++i) {
+                sum += weightedJacobian[i][pj] * qtf[i];
+            }
+            sum /= diag[pj];
+            sum2 += sum * sum;
+        }
+        double gNorm = FastMath.sqrt(sum2);
+        double paru = gNorm / delta;
+        if (paru == 0) {
+            paru = Precision.SAFE_MIN / FastMath.min(delta, 0.1);
+        }
+
+        //If the input lmPar lies outside of the interval (parl, paru), set lmPar to the closer endpoint
+        lmPar = FastMath.min(paru, FastMath.max(lmPar, parl));
+        if (lmPar == 0) {
+            lmPar = gNorm / dxNorm;
+        }
+
+        for (int countdown = 10; countdown >= 0; --countdown) {
+            //Evaluate the function at the current value of lmPar
+            if (lmPar == 0) {
+                lmPar = FastMath.max(Precision.SAFE_MIN, 0.001 * paru);
+            }
+            double sPar = FastMath.sqrt(lmPar);
+            for (int j = 0; j < solvedCols; ++j) {
+                int pj = permutation[j];
+                work1[pj] = sPar * diag[pj];
+            }
+            determineLMDirection(work1, work2, work3);
+
+            dxNorm = 0;
+            for (int j = 0; j < solvedCols; ++j) {
+                int pj = permutation[j];
+                double s = diag[pj] * lmDir[pj];
+                work3[pj] = s;
+                dxNorm += s * s;
+            }
+            dxNorm = FastMath.sqrt(dxNorm);
+            double previousFP = fp;
+            fp = dxNorm - delta;
+
+            //If the function is small enough, accept the current value of lmPar, also test for the exceptional cases
+            //where parl is zero
+            if (FastMath.abs(fp) <= 0.1 * delta || (parl == 0 && fp <= previousFP && previousFP < 0)) {
+                return lmPar;
+            }
+
+            //Compute the Newton correction
+            for (int j = 0; j < solvedCols; ++j) {
+                int pj = permutation[j];
+                work1[pj] = work3[pj] * diag[pj] / dxNorm;
+            }
+            for (int j = 0; j < solvedCols; ++j) {
+                int pj = permutation[j];
+                work1[pj] /= work2[j];
+                double tmp = work1[pj];
+                for (int i = j + 1; i < solvedCols; ++i) {
+                    work1[permutation[i]] -= weightedJacobian[i][pj] * tmp;
+                }
+            }
+            sum2 = 0;
+            for (int j = 0; j < solvedCols; ++j) {
+                double s = work1[permutation[j]];
+                sum2 += s * s;
+            }
+            double correction = fp / (delta * sum2);
+
+            //Depending on the sign of the function, update parl or paru
+            if (fp > 0) {
+                parl = FastMath.max(parl, lmPar);
+            } else if (fp < 0) {
+                paru = FastMath.min(paru, lmPar);
+            }
+
+            lmPar = FastMath.max(parl, lmPar + correction);
+        }
+
+        return lmPar;
+    }
+
+    /**
+     * Solves the least squares problem of the R matrix augmented by the diagonal matrix, by Givens rotations,
+     * storing the solution in lmDir.
+     * @param diagonal the diagonal matrix elements
+     * @param lmDiag the diagonal elements of the resulting upper triangular matrix
+     * @param work the working vector
+     */
+    private void determineLMDirection(double[] diagonal, double[] lmDiag, double[] work) {
+        //Copy R and Qty to preserve the input and save the diagonal elements of R in lmDir
+        for (int j = 0; j < solvedCols; ++j) {
+            int pj = permutation[j];
+            for (int i = j + 1; i < solvedCols; ++i) {
+                weightedJacobian[i][pj] = weightedJacobian[j][permutation[i]];
+            }
+            lmDir[j] = diagR[pj];
+            work[j] = qtf[j];
+        }
+
+        //Eliminate the diagonal matrix using Givens rotations
+        for (int j = 0; j < solvedCols; ++j) {
+            int pj = permutation[j];
+            double dpj = diagonal[pj];
+            if (dpj != 0) {
+                Arrays.fill(lmDiag, j + 1, lmDiag.length, 0);
+            }
+            lmDiag[j] = dpj;
+
+            double qtbpj = 0;
+            for (int k = j; k < solvedCols; ++k) {
+                int pk = permutation[k];
+
+                if (lmDiag[k] != 0) {
+                    final double sin;
+                    final double cos;
+                    double rkk = weightedJacobian[k][pk];
+                    if (FastMath.abs(rkk) < FastMath.abs(lmDiag[k])) {
+                        final double cotan = rkk / lmDiag[k];
+                        sin = 1.0 / FastMath.sqrt(1.0 + cotan * cotan);
+                        cos = sin * cotan;
+                    } else {
+                        final double tan = lmDiag[k] / rkk;
+                        cos = 1.0 / FastMath.sqrt(1.0 + tan * tan);
+                        sin = cos * tan;
+                    }
+
+                    weightedJacobian[k][pk] = cos * rkk + sin * lmDiag[k];
+                    final double temp = cos * work[k] + sin * qtbpj;
+                    qtbpj = -sin * work[k] + cos * qtbpj;
+                    work[k] = temp;
+
+                    for (int i = k + 1; i < solvedCols; ++i) {
+                        double rik = weightedJacobian[i][pk];
+                        final double temp2 = cos * rik + sin * lmDiag[i];
+                        lmDiag[i] = -sin * rik + cos * lmDiag[i];
+                        weightedJacobian[i][pk] = temp2;
+                    }
+                }
+            }
+
+            //Store the diagonal element of s and restore the corresponding diagonal element of R
+            lmDiag[j] = weightedJacobian[j][permutation[j]];
+            weightedJacobian[j][permutation[j]] = lmDir[j];
+        }
+
+        //Solve the triangular system, if the system is singular, then obtain a least squares solution
+        int nSing = solvedCols;
+        for (int j = 0; j < solvedCols; ++j) {
+            if ((lmDiag[j] == 0) && (nSing == solvedCols)) {
+                nSing = j;
+            }
+            if (nSing < solvedCols) {
+                work[j] = 0;
+            }
+        }
+        if (nSing > 0) {
+            for (int j = nSing - 1; j >= 0; --j) {
+                int pj = permutation[j];
+                double sum = 0;
+                for (int i = j + 1; i < nSing; ++i) {
+                    sum += weightedJacobian[i][pj] * work[i];
+                }
+                work[j] = (work[j] - sum) / lmDiag[j];
+            }
+        }
+
+        for (int j = 0; j < lmDir.length; ++j) {
+            lmDir[permutation[j]] = work[j];
+        }
+    }
+}
@@ -7,6 +7,7 @@
 package pt.quickLabPIV.interpolators;
 import org.apache.commons.math3.analysis.MultivariateMatrixFunction;
 import org.apache.commons.math3.analysis.MultivariateVectorFunction;
+import org.apache.commons.math3.linear.ArrayRealVector;
 import org.apache.commons.math3.linear.RealVector;
 import org.apache.commons.math3.util.FastMath;
 import org.slf4j.Logger;
@@ -40,35 +41,100 @@ public class Gaussian2DRotatedAssymmetricFitter implements IGaussian2DFitter {
 		logResults = configuration.isLogResults();
 	}
 	
+	@Override
+	public int getNumberOfParameters() {
+		return 7;
+	}
+	
+	@Override
+	public void computeValues(double[] args, double[] functionValues) {
+		double a = args[0];
+		double meanX = args[1];
+		double meanY = args[2];
+		double sigmaX = args[3];
+		double sigmaY = args[4];
+		double theta = args[5];
+		double b = args[6];
+		
+		double sigmaXSquared = sigmaX * sigmaX;
+		double sigmaYSquared = sigmaY * sigmaY;
+		double constant = 1.0/(2.0 * FastMath.PI * sigmaX * sigmaY);
+		double cosTheta = FastMath.cos(theta);
+		double sinTheta = FastMath.sin(theta);
+		
+		for (int y = 0; y < numberOfPointsInY; y++) {
+			for (int x = 0; x < numberOfPointsInX; x++) {
+				double thetaX = cosTheta*(startX + x - meanX) - sinTheta*(startY + y - meanY);
+				double thetaY = sinTheta*(startX + x - meanX) + cosTheta*(startY + y - meanY);
+				
+				functionValues[y * numberOfPointsInX + x] = a * constant * 
+						FastMath.exp(-FastMath.pow(thetaX, 2)/(2.0 * sigmaXSquared)) *
+						FastMath.exp(-FastMath.pow(thetaY, 2)/(2.0 * sigmaYSquared)) + b;
+			}
+		}
+	}
+	
+	@Override
+	public void computeJacobian(double[] args, double[][] jacobianValues) {
+		double a = args[0];
+		double meanX = args[1];
+		double meanY = args[2];
+		double sigmaX = args[3];
+		double sigmaY = args[4];
+		double theta = args[5];
+		//double b = args[6];
+		
+		double sigmaXSquared = sigmaX * sigmaX;
+		double sigmaYSquared = sigmaY * sigmaY;
+		double constant = 1.0/(2.0 * FastMath.PI * sigmaX * sigmaY);
+		double cosTheta = FastMath.cos(theta);
+		double sinTheta = FastMath.sin(theta);			
+		
+		for (int y = 0; y < numberOfPointsInY; y++) {
+			for (int x = 0; x < numberOfPointsInX; x++) {
+				double thetaX = cosTheta*(startX + x - meanX) - sinTheta*(startY + y - meanY);
+				double thetaY = sinTheta*(startX + x - meanX) + cosTheta*(startY + y - meanY);
+
+				double expX = FastMath.exp(-FastMath.pow(thetaX, 2)/(2.0 * sigmaXSquared));
+				double expY = FastMath.exp(-FastMath.pow(thetaY, 2)/(2.0 * sigmaYSquared));
+						
+				int pointIndex = y * numberOfPointsInX + x;
+				
+				//df(v)/da
+				jacobianValues[pointIndex][0] = constant * expX * expY;
+				
+				double hu = a * jacobianValues[pointIndex][0] * (thetaX) / sigmaXSquared;
+				double mu = a * jacobianValues[pointIndex][0] * (thetaY) / sigmaYSquared;
+				
+				//df(v)/dmeanX
+				jacobianValues[pointIndex][1] = hu * cosTheta + mu * sinTheta;
+				
+				//df(v)/dmeanY
+				jacobianValues[pointIndex][2] = mu * cosTheta - hu * sinTheta;
+				
+				//df(v)/sigmaX
+				jacobianValues[pointIndex][3] = hu * thetaX / sigmaX - 
+						a * jacobianValues[pointIndex][0] * 1.0/sigmaX;
+				
+				//df(v)/sigmaY
+				jacobianValues[pointIndex][4] = mu * (thetaY) / sigmaY - 
+						a * jacobianValues[pointIndex][0] * 1.0/sigmaY;
+				
+				//df(v)/theta
+				jacobianValues[pointIndex][5] = hu * (sinTheta * (startX + x - meanX) + cosTheta * (startY + y - meanY)) -
+						mu * (cosTheta * (startX + x - meanX) - sinTheta* (startY + y - meanY));
+				
+				//df(v)/b
+				jacobianValues[pointIndex][6] = 1;
+			}
+		}
+	}
+	
 	public final class Gaussian2DFunction implements MultivariateVectorFunction {
 		@Override
 		public double[] value(double[] args) throws IllegalArgumentException {
-			double a = args[0];
-			double meanX = args[1];
-			double meanY = args[2];
-			double sigmaX = args[3];
-			double sigmaY = args[4];
-			double theta = args[5];
-			double b = args[6];
-			
 			double[] functionValues = new double[numberOfPointsInX * numberOfPointsInY];
-
-			double sigmaXSquared = sigmaX * sigmaX;
-			double sigmaYSquared = sigmaY * sigmaY;
-			double constant = 1.0/(2.0 * FastMath.PI * sigmaX * sigmaY);
-			double cosTheta = FastMath.cos(theta);
-			double sinTheta = FastMath.sin(theta);
-			
-			for (int y = 0; y < numberOfPointsInY; y++) {
-				for (int x = 0; x < numberOfPointsInX; x++) {
-					double thetaX = cosTheta*(startX + x - meanX) - sinTheta*(startY + y - meanY);
-					double thetaY = sinTheta*(startX + x - meanX) + cosTheta*(startY + y - meanY);
-					
-					functionValues[y * numberOfPointsInX + x] = a * constant * 
-							FastMath.exp(-FastMath.pow(thetaX, 2)/(2.0 * sigmaXSquared)) *
-							FastMath.exp(-FastMath.pow(thetaY, 2)/(2.0 * sigmaYSquared)) + b;
-				}
-			}
+			computeValues(args, functionValues);
 			
 			return functionValues;
 		}
@@ -83,60 +149,8 @@ public class Gaussian2DRotatedAssymmetricFitter implements IGaussian2DFitter {
 
 		@Override
 		public double[][] value(double[] args) {
-			double a = args[0];
-			double meanX = args[1];
-			double meanY = args[2];
-			double sigmaX = args[3];
-			double sigmaY = args[4];
-			double theta = args[5];
-			//double b = args[6];
-			
 			double[][] jacobianValues = new double[numberOfPointsInX * numberOfPointsInY][7];
-			
-			double sigmaXSquared = sigmaX * sigmaX;
-			double sigmaYSquared = sigmaY * sigmaY;
-			double constant = 1.0/(2.0 * FastMath.PI * sigmaX * sigmaY);
-			double cosTheta = FastMath.cos(theta);
-			double sinTheta = FastMath.sin(theta);			
-			
-			for (int y = 0; y < numberOfPointsInY; y++) {
-				for (int x = 0; x < numberOfPointsInX; x++) {
-					double thetaX = cosTheta*(startX + x - meanX) - sinTheta*(startY + y - meanY);
-					double thetaY = sinTheta*(startX + x - meanX) + cosTheta*(startY + y - meanY);
-
-					double expX = FastMath.exp(-FastMath.pow(thetaX, 2)/(2.0 * sigmaXSquared));
-					double expY = FastMath.exp(-FastMath.pow(thetaY, 2)/(2.0 * sigmaYSquared));
-							
-					int pointIndex = y * numberOfPointsInX + x;
-					
-					//df(v)/da
-					jacobianValues[pointIndex][0] = constant * expX * expY;
-					
-					double hu = a * jacobianValues[pointIndex][0] * (thetaX) / sigmaXSquared;
-					double mu = a * jacobianValues[pointIndex][0] * (thetaY) / sigmaYSquared;
-					
-					//df(v)/dmeanX
-					jacobianValues[pointIndex][1] = hu * cosTheta + mu * sinTheta;
-					
-					//df(v)/dmeanY
-					jacobianValues[pointIndex][2] = mu * cosTheta - hu * sinTheta;
-					
-					//df(v)/sigmaX
-					jacobianValues[pointIndex][3] = hu * thetaX / sigmaX - 
-							a * jacobianValues[pointIndex][0] * 1.0/sigmaX;
-					
-					//df(v)/sigmaY
-					jacobianValues[pointIndex][4] = mu * (thetaY) / sigmaY - 
-							a * jacobianValues[pointIndex][0] * 1.0/sigmaY;
-					
-					//df(v)/theta
-					jacobianValues[pointIndex][5] = hu * (sinTheta * (startX + x - meanX) + cosTheta * (startY + y - meanY)) -
-							mu * (cosTheta * (startX + x - meanX) - sinTheta* (startY + y - meanY));
-					
-					//df(v)/b
-					jacobianValues[pointIndex][6] = 1;
-				}
-			}
+			computeJacobian(args, jacobianValues);
 			
 			return jacobianValues;
 		}
@@ -202,7 +216,13 @@ public class Gaussian2DRotatedAssymmetricFitter implements IGaussian2DFitter {
 	@Override
 	public double[] getStartVector(double[] targetValues, double maxValue) {
 		double[] startValues = new double[7];
+		getStartVector(targetValues, maxValue, startValues);
 		
+		return startValues;
+	}
+
+	@Override
+	public void getStartVector(double[] targetValues, double maxValue, double[] startValues) {
 		startValues[0] = maxValue;
 		startValues[1] = initialEstimateX;
 		startValues[2] = initialEstimateY;
@@ -210,18 +230,23 @@ public class Gaussian2DRotatedAssymmetricFitter implements IGaussian2DFitter {
 		startValues[4] = 1.0;
 		startValues[5] = 0.0;
 		startValues[6] = 0.0;
-		
-		return startValues;
 	}
 
 	@Override
 	public RealVector validate(RealVector params) {
-	    if (params.getEntry(0) < maxValue / 20.0 || 
-	        params.getEntry(1) > startX + numberOfPointsInX/2 + 1 || params.getEntry(1) < startX + numberOfPointsInX/2 - 1 ||
-            params.getEntry(2) > startY + numberOfPointsInY/2 + 1 || params.getEntry(2) < startY + numberOfPointsInY/2 - 1) {
-            params.setEntry(0, maxValue);
-            params.setEntry(1, startX + numberOfPointsInX/2);
-            params.setEntry(2, startY + numberOfPointsInY/2);
-        };
-        return params;	}
+	    double[] values = params.toArray();
+	    validateParameters(values);
+	    return new ArrayRealVector(values, false);
+	}
+
+	@Override
+	public void validateParameters(double[] params) {
+	    if (params[0] < maxValue / 20.0 || 
+	        params[1] > startX + numberOfPointsInX/2 + 1 || params[1] < startX + numberOfPointsInX/2 - 1 ||
+            params[2] > startY + numberOfPointsInY/2 + 1 || params[2] < startY + numberOfPointsInY/2 - 1) {
+            params[0] = maxValue;
+            params[1] = startX + numberOfPointsInX/2;
+            params[2] = startY + numberOfPointsInY/2;
+        }
+	}
 }
@@ -40,34 +40,104 @@ public class Gaussian2DRotatedEllipticalFitter implements IGaussian2DFitter {
 		logResults = configuration.isLogResults();
 	}
 	
+	@Override
+	public int getNumberOfParameters() {
+		return 7;
+	}
+	
+	@Override
+	public void computeValues(double[] args, double[] functionValues) {
+		double a = args[0];
+		double meanX = args[1];
+		double meanY = args[2];
+		double sigmaX = args[3];
+		double sigmaY = args[4];
+		double theta = args[5];
+		double b = args[6];
+		
+		double sigmaXSquared = sigmaX * sigmaX;
+		double sigmaYSquared = sigmaY * sigmaY;
+		
+		double a1 = FastMath.pow(FastMath.cos(theta), 2) / (2.0 * sigmaXSquared) + FastMath.pow(FastMath.sin(theta), 2) / (2.0 * sigmaYSquared);
+		double a2 = - FastMath.sin(2.0 * theta) / (4.0 * sigmaXSquared) + FastMath.sin(2.0 * theta) / (4.0 * sigmaYSquared);
+		double a3 = FastMath.pow(FastMath.sin(theta), 2) / (2.0 * sigmaXSquared) + FastMath.pow(FastMath.cos(theta), 2) / (2.0 * sigmaYSquared);
+		
+		for (int y = 0; y < numberOfPointsInY; y++) {
+			for (int x = 0; x < numberOfPointsInX; x++) {
+				functionValues[y * numberOfPointsInX + x] = a *
+						FastMath.exp(-a1*FastMath.pow((startX + x - meanX), 2)) *
+						FastMath.exp(-2.0*a2*(startX + x - meanX)*(startY + y - meanY)) *
+						FastMath.exp(-a3*FastMath.pow((startY + y - meanY), 2)) * + b;
+			}
+		}
+	}
+	
+	@Override
+	public void computeJacobian(double[] args, double[][] jacobianValues) {
+		double a = args[0];
+		double meanX = args[1];
+		double meanY = args[2];
+		double sigmaX = args[3];
+		double sigmaY = args[4];
+		double theta = args[5];
+		//double b = args[6];
+		
+		double sigmaXSquared = sigmaX * sigmaX;
+		double sigmaYSquared = sigmaY * sigmaY;
+
+		double a1 = FastMath.pow(FastMath.cos(theta), 2) / (2.0 * sigmaXSquared) + FastMath.pow(FastMath.sin(theta), 2) / (2.0 * sigmaYSquared);
+		double a2 = - FastMath.sin(2.0 * theta) / (4.0 * sigmaXSquared) + FastMath.sin(2.0 * theta) / (4.0 * sigmaYSquared);
+		double a3 = FastMath.pow(FastMath.sin(theta), 2) / (2.0 * sigmaXSquared) + FastMath.pow(FastMath.cos(theta), 2) / (2.0 * sigmaYSquared);
+		
+		for (int y = 0; y < numberOfPointsInY; y++) {
+			for (int x = 0; x < numberOfPointsInX; x++) {
+				double expX = FastMath.exp(-a1*FastMath.pow((startX + x - meanX), 2));
+				double expXY = FastMath.exp(-2.0*a2*(startX + x - meanX)*(startY + y - meanY));
+				double expY = FastMath.exp(-a3*FastMath.pow((startY + y - meanY), 2));
+						
+				int pointIndex = y * numberOfPointsInX + x;
+				
+				//df(v)/da
+				jacobianValues[pointIndex][0] = expX * expXY * expY;
+				
+				//df(v)/dmeanX
+				jacobianValues[pointIndex][1] = a * jacobianValues[pointIndex][0] * (2.0 * a1 * (startX + x - meanX) + 2.0 * a2 * (startY + y - meanY));
+				
+				//df(v)/dmeanY
+				jacobianValues[pointIndex][2] = a * jacobianValues[pointIndex][0] * (2.0 * a2 * (startX + x - meanX) + 2.0 * a3 * (startY + y - meanY));
+				
+				//df(v)/dsigmaX
+				jacobianValues[pointIndex][3] = a * jacobianValues[pointIndex][0] * (FastMath.pow(FastMath.cos(theta), 2) * FastMath.pow(startX + x - meanX, 2) - 
+						FastMath.sin(2.0 * theta) * (startX + x - meanX) * (startY + y - meanY) + 
+						FastMath.pow(FastMath.sin(theta), 2) * FastMath.pow(startY + y - meanY, 2)) /
+						(sigmaXSquared * sigmaX);
+				
+				//df(v)/dsigmaY
+				jacobianValues[pointIndex][4] = a * jacobianValues[pointIndex][0] * (FastMath.pow(FastMath.sin(theta), 2) * FastMath.pow(startX + x - meanX, 2) + 
+						FastMath.sin(2.0 * theta) * (startX + x - meanX) * (startY + y - meanY) + 
+						FastMath.pow(FastMath.cos(theta), 2) * FastMath.pow(startY + y - meanY, 2)) /
+						(sigmaYSquared * sigmaY);
+				
+				//df(v)/dtheta
+				jacobianValues[pointIndex][5] = a * jacobianValues[pointIndex][0] * -(
+						((- 2.0 * FastMath.cos(theta) * FastMath.sin(theta)) / (2.0 * sigmaXSquared) + 
+						 (2.0 * FastMath.sin(theta) * FastMath.cos(theta)) / (2.0 * sigmaYSquared)) * FastMath.pow(startX + x - meanX, 2) +
+						2.0 * ((- FastMath.cos(2.0 * theta) * 2.0) / (4.0 * sigmaXSquared) + 
+						 (FastMath.cos(2.0 * theta) * 2.0) / (4.0 * sigmaYSquared)) * (startX + x - meanX) * (startY + y - meanY) +
+						((2.0 * FastMath.sin(theta) * FastMath.cos(theta))/(2.0 * sigmaXSquared) -
+						 (2.0 * FastMath.cos(theta) * FastMath.sin(theta))/(2.0 * sigmaYSquared)) * FastMath.pow(startY + y - meanY, 2));
+				
+				//df(v)/db
+				jacobianValues[pointIndex][6] = 1;
+			}
+		}
+	}
+	
 	public final class Gaussian2DFunction implements MultivariateVectorFunction {
 		@Override
 		public double[] value(double[] args) throws IllegalArgumentException {
-			double a = args[0];
-			double meanX = args[1];
-			double meanY = args[2];
-			double sigmaX = args[3];
-			double sigmaY = args[4];
-			double theta = args[5];
-			double b = args[6];
-			
 			double[] functionValues = new double[numberOfPointsInX * numberOfPointsInY];
-			
-			double sigmaXSquared = sigmaX * sigmaX;
-			double sigmaYSquared = sigmaY * sigmaY;
-			
-			double a1 = FastMath.pow(FastMath.cos(theta), 2) / (2.0 * sigmaXSquared) + FastMath.pow(FastMath.sin(theta), 2) / (2.0 * sigmaYSquared);
-			double a2 = - FastMath.sin(2.0 * theta) / (4.0 * sigmaXSquared) + FastMath.sin(2.0 * theta) / (4.0 * sigmaYSquared);
-			double a3 = FastMath.pow(FastMath.sin(theta), 2) / (2.0 * sigmaXSquared) + FastMath.pow(FastMath.cos(theta), 2) / (2.0 * sigmaYSquared);
-			
-			for (int y = 0; y < numberOfPointsInY; y++) {
-				for (int x = 0; x < numberOfPointsInX; x++) {
-					functionValues[y * numberOfPointsInX + x] = a *
-							FastMath.exp(-a1*FastMath.pow((startX + x - meanX), 2)) *
-							FastMath.exp(-2.0*a2*(startX + x - meanX)*(startY + y - meanY)) *
-							FastMath.exp(-a3*FastMath.pow((startY + y - meanY), 2)) * + b;
-				}
-			}
+			computeValues(args, functionValues);
 			
 			return functionValues;
 		}
@@ -82,65 +152,8 @@ public class Gaussian2DRotatedEllipticalFitter implements IGaussian2DFitter {
 
 		@Override
 		public double[][] value(double[] args) {
-			double a = args[0];
-			double meanX = args[1];
-			double meanY = args[2];
-			double sigmaX = args[3];
-			double sigmaY = args[4];
-			double theta = args[5];
-			//double b = args[6];
-			
 			double[][] jacobianValues = new double[numberOfPointsInX * numberOfPointsInY][7];
-			
-			double sigmaXSquared = sigmaX * sigmaX;
-			double sigmaYSquared = sigmaY * sigmaY;
-
-			double a1 = FastMath.pow(FastMath.cos(theta), 2) / (2.0 * sigmaXSquared) + FastMath.pow(FastMath.sin(theta), 2) / (2.0 * sigmaYSquared);
-			double a2 = - FastMath.sin(2.0 * theta) / (4.0 * sigmaXSquared) + FastMath.sin(2.0 * theta) / (4.0 * sigmaYSquared);
-			double a3 = FastMath.pow(FastMath.sin(theta), 2) / (2.0 * sigmaXSquared) + FastMath.pow(FastMath.cos(theta), 2) / (2.0 * sigmaYSquared);
-			
-			for (int y = 0; y < numberOfPointsInY; y++) {
-				for (int x = 0; x < numberOfPointsInX; x++) {
-					double expX = FastMath.exp(-a1*FastMath.pow((startX + x - meanX), 2));
-					double expXY = FastMath.exp(-2.0*a2*(startX + x - meanX)*(startY + y - meanY));
-					double expY = FastMath.exp(-a3*FastMath.pow((startY + y - meanY), 2));
-							
-					int pointIndex = y * numberOfPointsInX + x;
-					
-					//df(v)/da
-					jacobianValues[pointIndex][0] = expX * expXY * expY;
-					
-					//df(v)/dmeanX
-					jacobianValues[pointIndex][1] = a * jacobianValues[pointIndex][0] * (2.0 * a1 * (startX + x - meanX) + 2.0 * a2 * (startY + y - meanY));
-					
-					//df(v)/dmeanY
-					jacobianValues[pointIndex][2] = a * jacobianValues[pointIndex][0] * (2.0 * a2 * (startX + x - meanX) + 2.0 * a3 * (startY + y - meanY));
-					
-					//df(v)/dsigmaX
-					jacobianValues[pointIndex][3] = a * jacobianValues[pointIndex][0] * (FastMath.pow(FastMath.cos(theta), 2) * FastMath.pow(startX + x - meanX, 2) - 
-							FastMath.sin(2.0 * theta) * (startX + x - meanX) * (startY + y - meanY) + 
-							FastMath.pow(FastMath.sin(theta), 2) * FastMath.pow(startY + y - meanY, 2)) /
-							(sigmaXSquared * sigmaX);
-					
-					//df(v)/dsigmaY
-					jacobianValues[pointIndex][4] = a * jacobianValues[pointIndex][0] * (FastMath.pow(FastMath.sin(theta), 2) * FastMath.pow(startX + x - meanX, 2) + 
-							FastMath.sin(2.0 * theta) * (startX + x - meanX) * (startY + y - meanY) + 
-							FastMath.pow(FastMath.cos(theta), 2) * FastMath.pow(startY + y - meanY, 2)) /
-							(sigmaYSquared * sigmaY);
-					
-					//df(v)/dtheta
-					jacobianValues[pointIndex][5] = a * jacobianValues[pointIndex][0] * -(
-							((- 2.0 * FastMath.cos(theta) * FastMath.sin(theta)) / (2.0 * sigmaXSquared) + 
-							 (2.0 * FastMath.sin(theta) * FastMath.cos(theta)) / (2.0 * sigmaYSquared)) * FastMath.pow(startX + x - meanX, 2) +
-							2.0 * ((- FastMath.cos(2.0 * theta) * 2.0) / (4.0 * sigmaXSquared) + 
-							 (FastMath.cos(2.0 * theta) * 2.0) / (4.0 * sigmaYSquared)) * (startX + x - meanX) * (startY + y - meanY) +
-							((2.0 * FastMath.sin(theta) * FastMath.cos(theta))/(2.0 * sigmaXSquared) -
-							 (2.0 * FastMath.cos(theta) * FastMath.sin(theta))/(2.0 * sigmaYSquared)) * FastMath.pow(startY + y - meanY, 2));
-					
-					//df(v)/db
-					jacobianValues[pointIndex][6] = 1;
-				}
-			}
+			computeJacobian(args, jacobianValues);
 			
 			return jacobianValues;
 		}
@@ -208,7 +221,13 @@ public class Gaussian2DRotatedEllipticalFitter implements IGaussian2DFitter {
 	@Override
 	public double[] getStartVector(double[] targetValues, double maxValue) {
 		double[] startValues = new double[7];
+		getStartVector(targetValues, maxValue, startValues);
 		
+		return startValues;
+	}
+
+	@Override
+	public void getStartVector(double[] targetValues, double maxValue, double[] startValues) {
 		startValues[0] = maxValue;
 		startValues[1] = initialEstimateX;
 		startValues[2] = initialEstimateY;
@@ -216,12 +235,15 @@ public class Gaussian2DRotatedEllipticalFitter implements IGaussian2DFitter {
 		startValues[4] = 1.0;
 		startValues[5] = 0.0;
 		startValues[6] = 0.0;
-		
-		return startValues;
 	}
 
 	@Override
 	public RealVector validate(RealVector params) {
 		return params;
 	}
+
+	@Override
+	public void validateParameters(double[] params) {
+		//No parameters validation for this model
+	}
 }
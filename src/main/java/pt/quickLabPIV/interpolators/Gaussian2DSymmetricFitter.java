@@ -8,6 +8,7 @@ package pt.quickLabPIV.interpolators;
 
 import org.apache.commons.math3.analysis.MultivariateMatrixFunction;
 import org.apache.commons.math3.analysis.MultivariateVectorFunction;
+import org.apache.commons.math3.linear.ArrayRealVector;
 import org.apache.commons.math3.linear.RealVector;
 import org.apache.commons.math3.util.FastMath;
 import org.slf4j.Logger;
@@ -41,26 +42,72 @@ public class Gaussian2DSymmetricFitter implements IGaussian2DFitter {
 		logResults = configuration.isLogResults();
 	}
 	
+	@Override
+	public int getNumberOfParameters() {
+		return 5;
+	}
+	
+	@Override
+	public void computeValues(double[] args, double[] functionValues) {
+		double a = args[0];
+		double meanX = args[1];
+		double meanY = args[2];
+		double sigma = args[3];
+		double b = args[4];
+		
+		double sigmaSquared = sigma * sigma;
+		double constant = 1.0/(2.0 * FastMath.PI * sigmaSquared);
+		
+		for (int y = 0; y < numberOfPointsInY; y++) {
+			for (int x = 0; x < numberOfPointsInX; x++) {
+				functionValues[y * numberOfPointsInX + x] = a * constant * 
+						FastMath.exp((-FastMath.pow((startX + x - meanX), 2)- FastMath.pow((startY + y - meanY), 2))/(2.0 * sigmaSquared)) + b;
+			}
+		}
+	}
+	
+	@Override
+	public void computeJacobian(double[] args, double[][] jacobianValues) {
+		double a = args[0];
+		double meanX = args[1];
+		double meanY = args[2];
+		double sigma = args[3];
+		//double b = args[4];
+		
+		double sigmaSquared = sigma * sigma;
+		double constant = 1.0/(2.0 * FastMath.PI * sigmaSquared);
+		
+		for (int y = 0; y < numberOfPointsInY; y++) {
+			for (int x = 0; x < numberOfPointsInX; x++) {
+				double expXY = FastMath.exp((-FastMath.pow((startX + x - meanX), 2)-FastMath.pow((startY + y - meanY), 2))/(2.0 * sigmaSquared));
+						
+				int pointIndex = y * numberOfPointsInX + x;
+				
+				//df(v)/da
+				jacobianValues[pointIndex][0] = constant * expXY;
+				
+				//df(v)/dmeanX
+				jacobianValues[pointIndex][1] = a * jacobianValues[pointIndex][0] * (startX + x - meanX) / sigmaSquared;
+				
+				//df(v)/dmeanY
+				jacobianValues[pointIndex][2] = a * jacobianValues[pointIndex][0] * (startY + y - meanY) / sigmaSquared;
+				
+				//df(v)/sigma
+				jacobianValues[pointIndex][3] = jacobianValues[pointIndex][1] * (startX + x - meanX) / sigma + 
+						jacobianValues[pointIndex][2] * (startY + y - meanY) / sigma - 
+						a * jacobianValues[pointIndex][0] * 2.0/sigma;
+									
+				//df(v)/b
+				jacobianValues[pointIndex][4] = 1;
+			}
+		}
+	}
+	
 	public final class Gaussian2DFunction implements MultivariateVectorFunction {
 		@Override
 		public double[] value(double[] args) throws IllegalArgumentException {
-			double a = args[0];
-			double meanX = args[1];
-			double meanY = args[2];
-			double sigma = args[3];
-			double b = args[4];
-			
 			double[] functionValues = new double[numberOfPointsInX * numberOfPointsInY];
-
-			double sigmaSquared = sigma * sigma;
-			double constant = 1.0/(2.0 * FastMath.PI * sigmaSquared);
-			
-			for (int y = 0; y < numberOfPointsInY; y++) {
-				for (int x = 0; x < numberOfPointsInX; x++) {
-					functionValues[y * numberOfPointsInX + x] = a * constant * 
-							FastMath.exp((-FastMath.pow((startX + x - meanX), 2)- FastMath.pow((startY + y - meanY), 2))/(2.0 * sigmaSquared)) + b;
-				}
-			}
+			computeValues(args, functionValues);
 			
 			return functionValues;
 		}
@@ -75,41 +122,8 @@ public class Gaussian2DSymmetricFitter implements IGaussian2DFitter {
 
 		@Override
 		public double[][] value(double[] args) {
-			double a = args[0];
-			double meanX = args[1];
-			double meanY = args[2];
-			double sigma = args[3];
-			//double b = args[4];
-			
 			double[][] jacobianValues = new double[numberOfPointsInX * numberOfPointsInY][5];
-			
-			double sigmaSquared = sigma * sigma;
-			double constant = 1.0/(2.0 * FastMath.PI * sigmaSquared);
-			
-			for (int y = 0; y < numberOfPointsInY; y++) {
-				for (int x = 0; x < numberOfPointsInX; x++) {
-					double expXY = FastMath.exp((-FastMath.pow((startX + x - meanX), 2)-FastMath.pow((startY + y - meanY), 2))/(2.0 * sigmaSquared));
-							
-					int pointIndex = y * numberOfPointsInX + x;
-					
-					//df(v)/da
-					jacobianValues[pointIndex][0] = constant * expXY;
-					
-					//df(v)/dmeanX
-					jacobianValues[pointIndex][1] = a * jacobianValues[pointIndex][0] * (startX + x - meanX) / sigmaSquared;
-					
-					//df(v)/dmeanY
-					jacobianValues[pointIndex][2] = a * jacobianValues[pointIndex][0] * (startY + y - meanY) / sigmaSquared;
-					
-					//df(v)/sigma
-					jacobianValues[pointIndex][3] = jacobianValues[pointIndex][1] * (startX + x - meanX) / sigma + 
-							jacobianValues[pointIndex][2] * (startY + y - meanY) / sigma - 
-							a * jacobianValues[pointIndex][0] * 2.0/sigma;
-										
-					//df(v)/b
-					jacobianValues[pointIndex][4] = 1;
-				}
-			}
+			computeJacobian(args, jacobianValues);
 			
 			return jacobianValues;
 		}
@@ -171,24 +185,34 @@ public class Gaussian2DSymmetricFitter implements IGaussian2DFitter {
 	@Override
 	public double[] getStartVector(double[] targetValues, double maxValue) {
 		double[] startValues = new double[5];
+		getStartVector(targetValues, maxValue, startValues);
 		
+		return startValues;
+	}
+
+	@Override
+	public void getStartVector(double[] targetValues, double maxValue, double[] startValues) {
 		startValues[0] = maxValue;
         startValues[1] = initialEstimateX;
         startValues[2] = initialEstimateY;
         startValues[3] = 1.0f;
         startValues[4] = 0.0;
-        
-		return startValues;
 	}
 
 	@Override
 	public RealVector validate(RealVector params) {
-	    if (params.getEntry(1) > startX + numberOfPointsInX/2 + 1 || params.getEntry(1) < startX + numberOfPointsInX/2 - 1 ||
-	            params.getEntry(2) > startY + numberOfPointsInY/2 + 1 || params.getEntry(2) < startY + numberOfPointsInY/2 - 1) {
-	        params.setEntry(0, maxValue);
-	        params.setEntry(1, startX + numberOfPointsInX/2);
-	        params.setEntry(2, startY + numberOfPointsInY/2);
-	    };
-		return params;
+	    double[] values = params.toArray();
+	    validateParameters(values);
+	    return new ArrayRealVector(values, false);
+	}
+
+	@Override
+	public void validateParameters(double[] params) {
+	    if (params[1] > startX + numberOfPointsInX/2 + 1 || params[1] < startX + numberOfPointsInX/2 - 1 ||
+	            params[2] > startY + numberOfPointsInY/2 + 1 || params[2] < startY + numberOfPointsInY/2 - 1) {
+	        params[0] = maxValue;
+	        params[1] = startX + numberOfPointsInX/2;
+	        params[2] = startY + numberOfPointsInY/2;
+	    }
 	}
 }
@@ -7,6 +7,7 @@
 package pt.quickLabPIV.interpolators;
 
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import pt.quickLabPIV.images.IImage;
 import pt.quickLabPIV.maximum.MaxCrossResult;
@@ -26,4 +27,15 @@ public interface ICrossCorrelationInterpolator {
         
     }
 
+    /**
+     * Enables the concurrent interpolation of the cross-correlation results, for interpolators that support it.
+     * Interpolators that don't support it, simply ignore the provided pool.
+     *
+     * @param pool the shared pool to use, or null to interpolate in the calling thread
+     * @param parallelism the maximum number of concurrent tasks
+     */
+    public default void setParallelism(ForkJoinPool pool, int parallelism) {
+        
+    }
+
 }
@@ -22,4 +22,38 @@ public interface IGaussian2DFitter extends ParameterValidator {
 	public MaxCrossResult updateMaxResult(int peakIndex, MaxCrossResult result, double[] optimalValues);
 
 	public double[] getStartVector(double[] targetValues, double maxValue);
+
+	/**
+	 * Retrieves the number of parameters of the Gaussian model.
+	 * @return the number of parameters
+	 */
+	public int getNumberOfParameters();
+
+	/**
+	 * Fills the start parameters vector into a pre-allocated array.
+	 * @param targetValues the target values to fit
+	 * @param maxValue the maximum of the target values
+	 * @param startValues the array where to store the start parameters vector
+	 */
+	public void getStartVector(double[] targetValues, double maxValue, double[] startValues);
+
+	/**
+	 * Evaluates the Gaussian model at all fitted points into a pre-allocated array.
+	 * @param args the model parameters
+	 * @param functionValues the array where to store the model values
+	 */
+	public void computeValues(double[] args, double[] functionValues);
+
+	/**
+	 * Evaluates the Gaussian model jacobian at all fitted points into a pre-allocated matrix.
+	 * @param args the model parameters
+	 * @param jacobianValues the matrix where to store the jacobian, with a row per point and a column per parameter
+	 */
+	public void computeJacobian(double[] args, double[][] jacobianValues);
+
+	/**
+	 * Validates the model parameters in place, as done by the ParameterValidator for the general purpose optimizer.
+	 * @param params the model parameters to validate
+	 */
+	public void validateParameters(double[] params);
 }
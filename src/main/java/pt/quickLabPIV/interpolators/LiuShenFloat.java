@@ -22,9 +22,7 @@ import pt.quickLabPIV.iareas.BiCubicSplineInterpolatorWithBiLinearBackup;
 import pt.quickLabPIV.iareas.IterationStepTiles;
 import pt.quickLabPIV.iareas.Tile;
 import pt.quickLabPIV.images.IImage;
-import pt.quickLabPIV.images.ImageFloat;
-import pt.quickLabPIV.images.filters.GaussianFilter2D;
-import pt.quickLabPIV.images.filters.IFilter;
+import pt.quickLabPIV.images.filters.FilteredImagesCache;
 import pt.quickLabPIV.jobs.JobResultEnum;
 import pt.quickLabPIV.jobs.interpolators.DenseLucasKanadeAparapiJob;
 import pt.quickLabPIV.jobs.interpolators.LucasKanadeOptions;
@@ -42,8 +40,6 @@ public class LiuShenFloat implements IOpticalFlowInterpolator {
     private final int filterWidthPx;
     private final float lambda;
     private final int iterations;
-    private final IFilter filterLS;
-    private final IFilter filterLK;
     private ILiuShenOpticalFlowHelper helper;
     private int vectorsWindowSizeI;
     private int vectorsWindowSizeJ;
@@ -108,9 +104,6 @@ public class LiuShenFloat implements IOpticalFlowInterpolator {
         if (vectorsWindowSizeI < 3 || vectorsWindowSizeI % 2 == 0) {
             throw new InterpolatorStateException("Liu-Shen: Invalid vector window side size");
         }
-                
-        filterLS = new GaussianFilter2D(filterSigma, filterWidthPx);
-        filterLK = new GaussianFilter2D(filterSigmaLK, filterWidthPxLK);
 
         IIx = new float[vectorsWindowSizeI * vectorsWindowSizeJ];
         IIy = new float[vectorsWindowSizeI * vectorsWindowSizeJ];
@@ -477,14 +470,10 @@ public class LiuShenFloat implements IOpticalFlowInterpolator {
             dLKJob = new DenseLucasKanadeAparapiJob(gpuDevice);
         }
         
-        if (filteredImgLKA == null) {
-            filteredImgLKA = ImageFloat.sizeFrom(imgA);
-            filteredImgLKA = filterLK.applyFilter(imgA, filteredImgLKA);               
-        }
-
-        if (filteredImgLKB == null) {
-            filteredImgLKB = ImageFloat.sizeFrom(imgB);
-            filteredImgLKB = filterLK.applyFilter(imgB, filteredImgLKB);               
+        if (filteredImgLKA == null || filteredImgLKB == null) {
+            FilteredImagesCache cache = PIVContextSingleton.getSingleton().getPIVReusableObjects().getOrCreateFilteredImagesCache();
+            filteredImgLKA = cache.getFilteredImage(imgA, filterSigmaLK, filterWidthPxLK, false);
+            filteredImgLKB = cache.getFilteredImage(imgB, filterSigmaLK, filterWidthPxLK, false);
         }
 
         
@@ -740,43 +729,32 @@ public class LiuShenFloat implements IOpticalFlowInterpolator {
     
     @Override
     public void updateImageA(IImage img) {
-        if (filteredImgA == null || img.getHeight() != filteredImgA.getHeight() || img.getWidth() != filteredImgA.getWidth()) {
-            filteredImgA = ImageFloat.sizeFrom(img);
-        }
+        //Filtered images are shared with the other interpolators and filtering jobs of this thread
+        FilteredImagesCache cache = PIVContextSingleton.getSingleton().getPIVReusableObjects().getOrCreateFilteredImagesCache();
         imgA = img;
-        filteredImgA = filterLS.applyFilter(img, filteredImgA);
-        filteredImgA = filteredImgA.normalize((ImageFloat)filteredImgA);
+        filteredImgA = cache.getFilteredImage(img, filterSigma, filterWidthPx, true);
         
         if (helper != null) {
             helper.receiveImageA(img);
         }
 
         if (dLKJob != null) {
-            if (filteredImgLKA == null || img.getHeight() != filteredImgLKA.getHeight() || img.getWidth() != filteredImgLKA.getWidth()) {
-                filteredImgLKA = ImageFloat.sizeFrom(img);
-            }
-            filteredImgLKA = filterLK.applyFilter(img, filteredImgLKA);
+            filteredImgLKA = cache.getFilteredImage(img, filterSigmaLK, filterWidthPxLK, false);
         }
     }
     
     @Override
     public void updateImageB(IImage img) {
-        if (filteredImgB == null || img.getHeight() != filteredImgB.getHeight() || img.getWidth() != filteredImgB.getWidth()) {
-            filteredImgB = ImageFloat.sizeFrom(img);
-        }
+        FilteredImagesCache cache = PIVContextSingleton.getSingleton().getPIVReusableObjects().getOrCreateFilteredImagesCache();
         imgB = img;
-        filteredImgB = filterLS.applyFilter(img, filteredImgB);
-        filteredImgB = filteredImgB.normalize((ImageFloat)filteredImgB);
+        filteredImgB = cache.getFilteredImage(img, filterSigma, filterWidthPx, true);
         
         if (helper != null) {
             helper.receiveImageB(img);
         }
         
         if (dLKJob != null) {
-            if (filteredImgLKB == null || img.getHeight() != filteredImgLKB.getHeight() || img.getWidth() != filteredImgLKB.getWidth()) {
-                filteredImgLKB = ImageFloat.sizeFrom(img);
-            }
-            filteredImgLKB = filterLK.applyFilter(img, filteredImgLKB);
+            filteredImgLKB = cache.getFilteredImage(img, filterSigmaLK, filterWidthPxLK, false);
         }
     }
     
@@ -20,9 +20,7 @@ import pt.quickLabPIV.iareas.InterpolateException;
 import pt.quickLabPIV.iareas.IterationStepTiles;
 import pt.quickLabPIV.iareas.Tile;
 import pt.quickLabPIV.images.IImage;
-import pt.quickLabPIV.images.ImageFloat;
-import pt.quickLabPIV.images.filters.GaussianFilter2D;
-import pt.quickLabPIV.images.filters.IFilter;
+import pt.quickLabPIV.images.filters.FilteredImagesCache;
 import pt.quickLabPIV.maximum.MaxCrossResult;
 
 /**
@@ -47,7 +45,6 @@ public final class LucasKanadeFloat implements IOpticalFlowInterpolator, ILiuShe
     private final int windowSize;
     private final float filterSigma;
     private final int filterWidthPx;
-    private final IFilter filter;
     
     private IImage filteredImgA;
     private IImage filteredImgB;
@@ -101,8 +98,6 @@ public final class LucasKanadeFloat implements IOpticalFlowInterpolator, ILiuShe
         //    absoluteDisplacementMode = true;
         //}        
         absoluteDisplacementMode = ignorePIV ? true : false;
-        
-        filter = new GaussianFilter2D(filterSigma, filterWidthPx);
     
         marginLeft = 0;
         int lrmargin = 0;
@@ -131,7 +126,6 @@ public final class LucasKanadeFloat implements IOpticalFlowInterpolator, ILiuShe
         filterSigma = _filterSigma;
         filterWidthPx = _filterWidthPx;
 
-        filter = new GaussianFilter2D(filterSigma, filterWidthPx);
         avgOfFourPixels = false;
         
         marginLeft = _vectorsSideSize/2;
@@ -712,18 +706,15 @@ public final class LucasKanadeFloat implements IOpticalFlowInterpolator, ILiuShe
 
     @Override
     public void updateImageA(IImage img) {
-        if (filteredImgA == null || img.getHeight() != filteredImgA.getHeight() || img.getWidth() != filteredImgA.getWidth()) {
-            filteredImgA = ImageFloat.sizeFrom(img);
-        }
-        filteredImgA = filter.applyFilter(img, filteredImgA);
+        //Filtered images are shared with the other interpolators and filtering jobs of this thread
+        FilteredImagesCache cache = PIVContextSingleton.getSingleton().getPIVReusableObjects().getOrCreateFilteredImagesCache();
+        filteredImgA = cache.getFilteredImage(img, filterSigma, filterWidthPx, false);
     }
 
     @Override
     public void updateImageB(IImage img) {
-        if (filteredImgB == null || img.getHeight() != filteredImgB.getHeight() || img.getWidth() != filteredImgB.getWidth()) {
-            filteredImgB = ImageFloat.sizeFrom(img);
-        }
-        filteredImgB = filter.applyFilter(img, filteredImgB);
+        FilteredImagesCache cache = PIVContextSingleton.getSingleton().getPIVReusableObjects().getOrCreateFilteredImagesCache();
+        filteredImgB = cache.getFilteredImage(img, filterSigma, filterWidthPx, false);
     }
 
     @Override
@@ -6,9 +6,7 @@
  */
 package pt.quickLabPIV.interpolators;
 
-import pt.quickLabPIV.PIVContextSingleton;
 import pt.quickLabPIV.PIVInputParameters;
-import pt.quickLabPIV.PIVRunParameters;
 
 public enum OpticalFlowAfterPIVInterpolatorFactoryEnum {
     None,
@@ -23,27 +21,18 @@ public enum OpticalFlowAfterPIVInterpolatorFactoryEnum {
     }
 
     public static IOpticalFlowInterpolator createInterpolator(OpticalFlowAfterPIVInterpolatorFactoryEnum option, PIVInputParameters parameters) {
-        PIVContextSingleton singleton = PIVContextSingleton.getSingleton();
-        PIVRunParameters runParameters = singleton.getPIVRunParameters();
-
-        boolean useOpenCL = runParameters.isUseOpenCL();
-        
         switch (option) {
         case None:
             return null;
         case LucasKanade:
             return new LucasKanadeFloat();
         case LucasKanadeAparapi:
-            if (!useOpenCL) {
-                throw new InterpolatorStateException("Cannot use Lucas-Kanade Aparapi implemenation as OpenCL acceleration is not allowed");
-            }
+            //Falls back to the Java CPU dense implementation when OpenCL acceleration is not allowed
             return new DenseLucasKanadeAparapiJobInterpolator(); 
         case LiuShen:
             return new LiuShenFloat();
         case LiuShenAparapi:
-            if (!useOpenCL) {
-                throw new InterpolatorStateException("Cannot use Lucas-Kanade combined with Liu-Shen Aparapi implemenation as OpenCL acceleration is not allowed");
-            }
+            //Falls back to the Java CPU dense implementation when OpenCL acceleration is not allowed
             return new DenseLiuShenAparapiJobInterpolator();
 
         default:
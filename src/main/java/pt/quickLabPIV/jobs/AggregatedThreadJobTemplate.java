@@ -6,17 +6,42 @@
  */
 package pt.quickLabPIV.jobs;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 public abstract class AggregatedThreadJobTemplate<A,B> extends Job<A,B> {
 	private final Job<A,B> job;
-	
+
 	private final int participatingThreadCount; //Participating thread count can be set in advance, if a thread has no work to do provides an empty input params, but must
-    //calls methods in the same sequence as if it had work to do. Mixed matrix dimensions are not acceptable, thus may not be a good 
+    //calls methods in the same sequence as if it had work to do. Mixed matrix dimensions are not acceptable, thus may not be a good
     //option for computation with
 	  //stabilization strategies, as it can delay some threads until the last one stabilizes. It is up to the client code to agree when
     //all threads have stabilized. Or don't allow such computation option with stabilization strategies.
 	//
 	//Other option is for a thread to disable its participation in the executions for a given problem size, indicating its desire to participate in all
 	//computing jobs where the thread participates, whether having work or not for them. -- This is a good option for computations with stabilization strategies.
+	//
+	//Due to the adaptive behavior of PIV, threads are not required to call compute the same number of times. Each compute call joins the current
+	//aggregation round, which is executed as soon as all active threads have joined it, or when the timeout expires, with whichever
+	//threads have joined it by then. A thread that will not call compute again must retire, so that the others no longer wait for it.
+	private final long timeoutNanos;
+	private final Object lock = new Object();
+	private int activeThreadCount;
+	private Round openRound;
+	private Round lastRound;
+
+	/**
+	 * A single aggregated execution of the regular job.
+	 */
+	private static final class Round {
+	    private final List<Long> threadJobIds = new ArrayList<Long>();
+	    private boolean closed;
+	    private boolean completed;
+	    private Throwable failure;
+	    private int pendingDisaggregations;
+	}
 
 	@Override
 	protected long getThreadJobId() {
@@ -24,14 +49,14 @@ public abstract class AggregatedThreadJobTemplate<A,B> extends Job<A,B> {
 	}
 
 	/**
-	* Retrieves the number of threads that participate in this 
-	* @return
+	* Retrieves the number of threads that participate in this aggregated job.
+	* @return the number of participating threads
 	*/
 	public int getParticipatingThreadCount() {
 		return participatingThreadCount;
 	}
 
-	
+
 	/**
 	 * Creates a new aggregated thread job template.
 	 * <br/>
@@ -39,70 +64,177 @@ public abstract class AggregatedThreadJobTemplate<A,B> extends Job<A,B> {
 	 * executes the job as if being a single job from a single thread. Actually only a single thread will call analyze(),
 	 * and execute(), however all threads will participate concurrently in gathering their individual results.
 	 * @param regularJob the job that is to be performed in an aggregated manner.
-	 * @param threadCount the total number of threads participating in the aggregated thread job. 
+	 * @param threadCount the total number of threads participating in the aggregated thread job.
+	 * @param timeoutMillis the maximum time a thread waits for the other threads to join its aggregated execution
 	 */
-	public AggregatedThreadJobTemplate(Job<A,B> regularJob, int threadCount) {
+	public AggregatedThreadJobTemplate(Job<A,B> regularJob, int threadCount, long timeoutMillis) {
 		if (regularJob == null) {
 			throw new NullPointerException("RegularJob must not be null");
 		}
-		
+
 		if (regularJob instanceof AggregatedThreadJobTemplate) {
 			throw new IllegalArgumentException("Cannot create aggregated job from Threaded Jobs");
 		}
-		
+
+		if (threadCount < 1) {
+		    throw new IllegalArgumentException("At least one thread must participate in the aggregated job");
+		}
+
 		job = regularJob;
 		participatingThreadCount = threadCount;
+		activeThreadCount = threadCount;
+		timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
 	}
-	
+
+	/**
+	 * Retrieves the regular job that performs the aggregated computation.
+	 * @return the regular job
+	 */
+	protected Job<A,B> getRegularJob() {
+	    return job;
+	}
+
 	/**
 	 * Aggregates input parameters from participating threads into a single input parameter.
 	 * <br/>
-	 * <b>Note1: </b>A single input parameter will be built from calling threads, 
-	 * by the last thread calling analyze method, thus not concurrently.
+	 * <b>Note1: </b>A single input parameter will be built from calling threads,
+	 * by the thread executing the aggregated job, thus not concurrently.
+	 * @param threadJobIds the internal Ids of the threads participating in this execution, in aggregation order
 	 */
-	protected abstract void aggregateInputParameters();
-	
+	protected abstract void aggregateInputParameters(List<Long> threadJobIds);
+
 	/**
 	 * Disaggregates results from the unified computation into individual thread results.
-	 * <br/> 
+	 * <br/>
 	 * <b>Note1: </b>Each individual thread that invoked execute will call this method, so that each thread
 	 * extracts its own portion of the results.
 	 * <br/>
-	 * <b>Note2: </b>It is required that all threads only perform read operations over the 
-	 * intermediate computation results.
+	 * <b>Note2: </b>It is required that all threads only perform read operations over the
+	 * intermediate computation results, which are kept until all participating threads have disaggregated their results.
+	 * @param threadJobIds the internal Ids of the threads participating in this execution, in aggregation order
+	 * @param participantIndex the index of the calling thread in threadJobIds
 	 */
-	protected abstract void disaggregateResults();
-	
+	protected abstract void disaggregateResults(List<Long> threadJobIds, int participantIndex);
+
+	/**
+	 * Indicates that the calling thread will no longer call compute, so that the other threads no longer wait for it.
+	 * The regular job is disposed when the last participating thread retires.
+	 */
+	public void retireThread() {
+	    boolean lastThread;
+	    synchronized (lock) {
+	        activeThreadCount--;
+	        lastThread = activeThreadCount == 0;
+	        lock.notifyAll();
+	    }
+
+	    if (lastThread) {
+	        job.dispose();
+	    }
+	}
+
 	@Override
 	public void analyze() {
 		//Due to the adaptive behavior of PIV it is possible that at a given level not all threads have work to do, plus
 		//amount of tiles to process varies even within same dimensions.
-		//It would be great if XCorr Jobs could adapt to variable input matrix dimensions - and is possible... 
-		
-		//Receives calls from multiple threads
-		
-		//Aggregates the work
-		aggregateInputParameters();
-		
-		//Only does a single analyze for all threads
-		job.analyze();
+		//Input parameters are only aggregated, and the regular job analyzed, once the participating threads are known, in compute.
 	}
 
 	@Override
 	public void compute() {
 		//Receives calls from multiple threads
-		
-		//Only proceeds when all threads have called compute
-		
-		//Only a single thread performs compute
-		job.compute();
-		//Single thread finishes job computation
-		
-		//Single thread notifies all threads of result completed
-		
-		//All threads get their result portions
-		disaggregateResults();
+		final long threadJobId = getThreadJobId();
+		Round round;
+		boolean executor = false;
+		boolean interrupted = false;
+		synchronized (lock) {
+		    if (openRound == null) {
+		        openRound = new Round();
+		    }
+		    round = openRound;
+		    round.threadJobIds.add(threadJobId);
+
+		    //Only proceeds when all threads have called compute, or the timeout expires
+		    final long deadline = System.nanoTime() + timeoutNanos;
+		    while (!round.closed) {
+		        final long remaining = deadline - System.nanoTime();
+		        if (round.threadJobIds.size() >= activeThreadCount || remaining <= 0) {
+		            round.closed = true;
+		            openRound = null;
+		            executor = true;
+		            break;
+		        }
 
+		        try {
+		            TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+		        } catch (InterruptedException e) {
+		            //The wait is bounded, so the thread only has to keep its interrupted state
+		            interrupted = true;
+		        }
+		    }
+
+		    if (executor) {
+		        //The results of the previous execution must be fully disaggregated, before the regular job reuses its buffers
+		        while (lastRound != null && lastRound.pendingDisaggregations > 0) {
+		            try {
+		                lock.wait();
+		            } catch (InterruptedException e) {
+		                interrupted = true;
+		            }
+		        }
+		        round.pendingDisaggregations = round.threadJobIds.size();
+		        lastRound = round;
+		    }
+		}
+
+		if (executor) {
+		    //Only a single thread performs compute
+		    Throwable failure = null;
+		    try {
+		        aggregateInputParameters(Collections.unmodifiableList(round.threadJobIds));
+		        job.analyze();
+		        job.compute();
+		    } catch (RuntimeException | Error e) {
+		        failure = e;
+		    }
+
+		    //Single thread notifies all threads of result completed
+		    synchronized (lock) {
+		        round.failure = failure;
+		        round.completed = true;
+		        lock.notifyAll();
+		    }
+		} else {
+		    synchronized (lock) {
+		        while (!round.completed) {
+		            try {
+		                lock.wait();
+		            } catch (InterruptedException e) {
+		                interrupted = true;
+		            }
+		        }
+		    }
+		}
+
+		try {
+		    if (round.failure != null) {
+		        throw new JobComputeException("Aggregated job computation failed", round.failure);
+		    }
+
+		    //All threads get their result portions
+		    disaggregateResults(Collections.unmodifiableList(round.threadJobIds), round.threadJobIds.indexOf(threadJobId));
+		} finally {
+		    synchronized (lock) {
+		        round.pendingDisaggregations--;
+		        if (round.pendingDisaggregations == 0) {
+		            lock.notifyAll();
+		        }
+		    }
+
+		    if (interrupted) {
+		        Thread.currentThread().interrupt();
+		    }
+		}
 	}
 
 	@Override
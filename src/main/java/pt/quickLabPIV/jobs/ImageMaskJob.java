@@ -6,18 +6,12 @@
  */
 package pt.quickLabPIV.jobs;
 
-import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
-import javax.imageio.ImageIO;
-
+import pt.quickLabPIV.PIVContextSingleton;
 import pt.quickLabPIV.images.IImage;
 import pt.quickLabPIV.images.Image;
-import pt.quickLabPIV.images.ImageNotFoundException;
-import pt.quickLabPIV.images.ImageReaderException;
 
 public class ImageMaskJob extends Job<List<IImage>, List<IImage>> {
     private String maskFilename;
@@ -30,23 +24,8 @@ public class ImageMaskJob extends Job<List<IImage>, List<IImage>> {
     @Override
     public void analyze() {
         if (mask == null) {
-            File f = new File(maskFilename);
-            if (!f.exists() || f.isDirectory()) {
-                throw new ImageNotFoundException("Cannot find image mask file"); 
-            }
-            
-            if (!f.canRead()) {
-                throw new ImageReaderException("Insuficient permissions to read mask file");
-            }
-            
-            BufferedImage bi;
-            try {
-                bi = ImageIO.read(f);
-            } catch (IOException e) {
-                throw new ImageReaderException("Failed to read mask file: " + f.getAbsolutePath(), e);
-            }
-            
-            mask = new Image(bi, f.getAbsolutePath());
+            //The mask is decoded only once and shared by all PIV threads
+            mask = PIVContextSingleton.getSingleton().getPIVReusableObjects().getOrCreateImageMask(maskFilename).getMask();
             List<IImage> masks = new ArrayList<IImage>();
             masks.add(mask);
             setJobResult(JobResultEnum.JOB_RESULT_MASK, masks);
@@ -0,0 +1,249 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.jobs;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import pt.quickLabPIV.FrameBatchScheduler;
+import pt.quickLabPIV.InputFiles;
+import pt.quickLabPIV.images.IImage;
+import pt.quickLabPIV.images.ImageReaderException;
+
+/**
+ * ImagePrefetcher feeds a PIV worker thread with the image pairs of the frames assigned to it by the
+ * {@link FrameBatchScheduler}, reading ahead a bounded number of frames in a shared I/O thread pool, so that image
+ * decoding of the next frames overlaps with the cross-correlation of the current frame.
+ * <br/>
+ * At most <code>depth</code> frames are in flight per worker, which bounds the memory used by decoded images and
+ * provides backpressure, since further frames are only requested as the worker consumes them. Read ahead does not
+ * cross batch boundaries, except for the next batch, which is only claimed from the scheduler when the worker reaches
+ * the last frame of its current batch.
+ * When no I/O thread pool is provided, or the depth is zero, images are read synchronously by the worker thread.
+ * <br/>
+ * For time-resolved sequences, where image B of a frame is image A of the next frame, the image is only read once
+ * and shared by both frames of the same batch, if image reuse is enabled.
+ * @author lpnm
+ */
+public class ImagePrefetcher {
+    private final FrameBatchScheduler scheduler;
+    private final int threadIdx;
+    private final ExecutorService ioService;
+    private final int depth;
+    private final boolean reuseImages;
+    private final ArrayDeque<PrefetchedFrame> pendingFrames;
+
+    private InputFiles currentBatch;
+    private int currentBatchIndex;
+    private boolean exhausted = false;
+    private File lastFileB;
+    private Future<IImage> lastImageB;
+
+    /**
+     * A frame (image pair) scheduled for reading.
+     */
+    public static class PrefetchedFrame {
+        private final InputFiles batch;
+        private final int relativeFrame;
+        private final boolean firstOfBatch;
+        private final boolean imageAReused;
+        private final Future<IImage> imageA;
+        private final Future<IImage> imageB;
+
+        private PrefetchedFrame(InputFiles _batch, int _relativeFrame, boolean _firstOfBatch, boolean _imageAReused,
+                                Future<IImage> _imageA, Future<IImage> _imageB) {
+            batch = _batch;
+            relativeFrame = _relativeFrame;
+            firstOfBatch = _firstOfBatch;
+            imageAReused = _imageAReused;
+            imageA = _imageA;
+            imageB = _imageB;
+        }
+
+        public InputFiles getBatch() {
+            return batch;
+        }
+
+        public int getRelativeFrame() {
+            return relativeFrame;
+        }
+
+        /**
+         * Checks if this frame is the first frame of a new batch.
+         * @return true, if this is the first frame of its batch, false otherwise
+         */
+        public boolean isFirstOfBatch() {
+            return firstOfBatch;
+        }
+
+        /**
+         * Checks if image A of this frame is the same image instance as image B of the previous frame handed out
+         * to the worker.
+         * @return true, if image A was reused from the previous frame, false otherwise
+         */
+        public boolean isImageAReused() {
+            return imageAReused;
+        }
+
+        /**
+         * Retrieves the image pair for this frame, waiting for the read to complete if needed.
+         * @return the list with image A and image B
+         */
+        public List<IImage> getImages() {
+            List<IImage> images = new ArrayList<IImage>(2);
+            images.add(getImage(imageA));
+            images.add(getImage(imageB));
+            return images;
+        }
+
+        private IImage getImage(Future<IImage> image) {
+            if (image instanceof FutureTask && !image.isDone()) {
+                //Reads that were not started yet, either because there is no read ahead, or because the I/O threads
+                //are lagging behind, are performed by the worker thread itself, instead of waiting.
+                //FutureTask ensures that the read is only performed once.
+                ((FutureTask<IImage>)image).run();
+            }
+
+            try {
+                return image.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ImageReaderException("Interrupted while waiting for images of frame: " + relativeFrame, e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException)e.getCause();
+                }
+                throw new ImageReaderException("Failed to read images of frame: " + relativeFrame, e.getCause());
+            } catch (CancellationException e) {
+                throw new ImageReaderException("Image read was cancelled for frame: " + relativeFrame, e);
+            }
+        }
+    }
+
+    public ImagePrefetcher(FrameBatchScheduler _scheduler, int _threadIdx, ExecutorService _ioService, int _depth) {
+        this(_scheduler, _threadIdx, _ioService, _depth, false);
+    }
+
+    /**
+     * Creates a new image prefetcher for a PIV worker thread.
+     * @param _scheduler the frame scheduler from where the worker frames are obtained
+     * @param _threadIdx the worker thread index
+     * @param _ioService the I/O thread pool, or null to read images synchronously
+     * @param _depth the maximum number of frames to read ahead
+     * @param _reuseImages true, if image A may be shared with image B of the previous frame when both refer to the same file
+     */
+    public ImagePrefetcher(FrameBatchScheduler _scheduler, int _threadIdx, ExecutorService _ioService, int _depth, boolean _reuseImages) {
+        scheduler = _scheduler;
+        threadIdx = _threadIdx;
+        reuseImages = _reuseImages;
+        if (_ioService == null || _depth <= 0) {
+            ioService = null;
+            depth = 1;
+        } else {
+            ioService = _ioService;
+            depth = _depth;
+        }
+        pendingFrames = new ArrayDeque<PrefetchedFrame>(depth);
+    }
+
+    /**
+     * Retrieves the next frame to be processed by the worker thread and schedules the read of the following frames,
+     * up to the configured read ahead depth.
+     * @return the next frame, or null if there are no more frames for this thread
+     */
+    public PrefetchedFrame next() {
+        fill();
+        PrefetchedFrame frame = pendingFrames.poll();
+        if (ioService != null) {
+            //Keep the read ahead queue full while the worker processes this frame
+            fill();
+        }
+
+        return frame;
+    }
+
+    private void fill() {
+        while (!exhausted && pendingFrames.size() < depth) {
+            boolean firstOfBatch = false;
+            if (currentBatch == null || currentBatchIndex >= currentBatch.size()) {
+                if (!pendingFrames.isEmpty()) {
+                    //Next batch is only claimed once the worker reaches the last frame of the current batch, so that
+                    //frames are not withheld from other threads that may become idle earlier
+                    break;
+                }
+                currentBatch = scheduler.nextBatch(threadIdx);
+                currentBatchIndex = 0;
+                if (currentBatch == null) {
+                    exhausted = true;
+                    break;
+                }
+                firstOfBatch = true;
+            }
+
+            File fileA = currentBatch.getFilesA().get(currentBatchIndex);
+            File fileB = currentBatch.getFilesB().get(currentBatchIndex);
+            int relativeFrame = currentBatch.getRelativeStartFrame() + currentBatchIndex;
+            currentBatchIndex++;
+
+            Future<IImage> imageA;
+            boolean imageAReused = false;
+            //Images are not shared across batches, since consecutive batches may be processed by different threads
+            if (reuseImages && !firstOfBatch && lastImageB != null && fileA.equals(lastFileB)) {
+                imageA = lastImageB;
+                imageAReused = true;
+            } else {
+                imageA = read(fileA);
+            }
+            Future<IImage> imageB = read(fileB);
+
+            lastFileB = fileB;
+            lastImageB = imageB;
+            pendingFrames.add(new PrefetchedFrame(currentBatch, relativeFrame, firstOfBatch, imageAReused, imageA, imageB));
+        }
+    }
+
+    private Future<IImage> read(File file) {
+        Callable<IImage> reader = new Callable<IImage>() {
+            @Override
+            public IImage call() throws Exception {
+                ImageReaderJob readerJob = new ImageReaderJob();
+                readerJob.setFilenamesToRead(new File[] { file });
+                readerJob.analyze();
+                readerJob.compute();
+                return readerJob.getJobResult(JobResultEnum.JOB_RESULT_IMAGES).get(0);
+            }
+        };
+
+        if (ioService == null) {
+            //Synchronous read is deferred until the frame images are requested by the worker
+            return new FutureTask<IImage>(reader);
+        }
+
+        return ioService.submit(reader);
+    }
+
+    /**
+     * Cancels all outstanding reads, must be called when the worker thread stops consuming frames.
+     */
+    public void cancel() {
+        exhausted = true;
+        for (PrefetchedFrame frame : pendingFrames) {
+            frame.imageA.cancel(true);
+            frame.imageB.cancel(true);
+        }
+        pendingFrames.clear();
+        lastImageB = null;
+    }
+}
@@ -20,6 +20,7 @@ import org.slf4j.LoggerFactory;
 
 import pt.quickLabPIV.PIVContextSingleton;
 import pt.quickLabPIV.PIVInputParameters;
+import pt.quickLabPIV.images.GrayscaleImageFileDecoder;
 import pt.quickLabPIV.images.IImage;
 import pt.quickLabPIV.images.ImageFactoryEnum;
 import pt.quickLabPIV.images.ImageNotFoundException;
@@ -88,6 +89,13 @@ public class ImageReaderJob extends Job<String, List<IImage>> {
 		images.clear();
 		
 		for (File file : files) {
+		    //Uncompressed grayscale camera images are decoded directly, without going through a BufferedImage
+		    IImage img = GrayscaleImageFileDecoder.decode(file, parameters.getPixelDepth());
+		    if (img != null) {
+		        images.add(img);
+		        continue;
+		    }
+		    
 			try {
 				bi = ImageIO.read(file);
 			} catch (IOException e) {
@@ -100,7 +108,7 @@ public class ImageReaderJob extends Job<String, List<IImage>> {
 			    throw new ImageReaderException("Couldn't read image from file: " + file.getAbsolutePath());
 			}
 			
-			IImage img = ImageFactoryEnum.create(parameters, bi, file.getAbsolutePath());
+			img = ImageFactoryEnum.create(parameters, bi, file.getAbsolutePath());
 			images.add(img);
 		}
 		
@@ -6,6 +6,8 @@
  */
 package pt.quickLabPIV.jobs;
 
+import java.util.concurrent.ForkJoinPool;
+
 import pt.quickLabPIV.PIVContextSingleton;
 import pt.quickLabPIV.PIVInputParameters;
 import pt.quickLabPIV.WarpingModeFactoryEnum;
@@ -28,6 +30,17 @@ public class ImageWarpingAndClippingJob extends Job<ImageWarpingInputData, Itera
         warpingStrategy = WarpingModeFactoryEnum.create(parameters);
     }
     
+    /**
+     * Enables the concurrent warping of each image pair, when supported by the selected warping strategy.
+     * @param pool the shared pool to use, or null to warp in the calling thread
+     * @param parallelism the maximum number of concurrent tasks
+     * @return this job instance
+     */
+    public ImageWarpingAndClippingJob setParallelism(ForkJoinPool pool, int parallelism) {
+        warpingStrategy.setParallelism(pool, parallelism);
+        return this;
+    }
+    
     @Override
     public void analyze() {
         ImageWarpingInputData inputData = getInputParameters(JobResultEnum.JOB_RESULT_IMAGES_FOR_WARPING_AND_CLIPPING);
@@ -6,22 +6,33 @@
  */
 package pt.quickLabPIV.jobs;
 
+import java.util.concurrent.ForkJoinPool;
+
 import pt.quickLabPIV.ImageFilteringModeFactoryEnum;
 import pt.quickLabPIV.PIVContextSingleton;
 import pt.quickLabPIV.PIVInputParameters;
 import pt.quickLabPIV.images.IImage;
 import pt.quickLabPIV.images.ImageFloat;
+import pt.quickLabPIV.images.filters.FilteredImagesCache;
+import pt.quickLabPIV.images.filters.GaussianFilter2D;
+import pt.quickLabPIV.images.filters.GaussianFilter2DConfiguration;
 import pt.quickLabPIV.images.filters.IFilter;
 import pt.quickLabPIV.images.filters.ImageFilterFactoryEnum;
 
 /**
  * JavaImageFilterJob implements a Java CPU image filtering, targeting same resolution input images at all times.
+ * <br/>
+ * Gaussian filtered images are retrieved from the filtered images cache of the calling thread, so that they are shared
+ * with the optical flow interpolators, unless the image mask is applied in-place to the filtered images.
  * @author lpnm
  *
  */
 public class JavaImageFilterJob extends Job<IImage, IImage> {
     final IFilter filter;
     final ImageFilteringModeFactoryEnum imageFilteringMode;
+    private final boolean sharedFilteredImages;
+    private float sigma;
+    private int kernelPx;
     private IImage inputImage = null;
     private IImage outputImage = null;
     
@@ -30,6 +41,27 @@ public class JavaImageFilterJob extends Job<IImage, IImage> {
        PIVInputParameters parameters = PIVContextSingleton.getSingleton().getPIVParameters();
        imageFilteringMode = parameters.getImageFilteringMode();
        filter = ImageFilterFactoryEnum.create(parameters);
+       sharedFilteredImages = filter instanceof GaussianFilter2D &&
+                              (parameters.getMaskFilename() == null || parameters.isMaskOnlyAtExport());
+       if (sharedFilteredImages) {
+           GaussianFilter2DConfiguration configuration =
+                   (GaussianFilter2DConfiguration)parameters.getSpecificConfiguration(GaussianFilter2DConfiguration.IDENTIFER);
+           sigma = configuration.getSigma();
+           kernelPx = configuration.getKernelPx();
+       }
+    }
+    
+    /**
+     * Enables the concurrent filtering of each image, when supported by the selected filter.
+     * @param pool the shared pool to use, or null to filter in the calling thread
+     * @param parallelism the maximum number of concurrent tasks
+     * @return this job instance
+     */
+    public JavaImageFilterJob setParallelism(ForkJoinPool pool, int parallelism) {
+        if (filter != null) {
+            filter.setParallelism(pool, parallelism);
+        }
+        return this;
     }
     
     @Override
@@ -42,14 +74,19 @@ public class JavaImageFilterJob extends Job<IImage, IImage> {
             throw new JobAnalyzeException("No filter available for image filtering");
         }
 
-        if (outputImage == null) {
+        if (outputImage == null && !sharedFilteredImages) {
             outputImage = ImageFloat.sizeFrom(inputImage);
         }
     }
 
     @Override
     public void compute() {
-        outputImage = filter.applyFilter(inputImage, outputImage);
+        if (sharedFilteredImages) {
+            FilteredImagesCache cache = PIVContextSingleton.getSingleton().getPIVReusableObjects().getOrCreateFilteredImagesCache();
+            outputImage = cache.getFilteredImage(inputImage, sigma, kernelPx, false);
+        } else {
+            outputImage = filter.applyFilter(inputImage, outputImage);
+        }
         setJobResult(JobResultEnum.JOB_RESULT_FILTERED_IMAGES, outputImage);
     }
 
@@ -6,8 +6,13 @@
  */
 package pt.quickLabPIV.jobs;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.apache.commons.math3.util.FastMath;
 
 import pt.quickLabPIV.ImageFilteringModeFactoryEnum;
 import pt.quickLabPIV.PIVContextSingleton;
@@ -19,13 +24,35 @@ import pt.quickLabPIV.images.filters.ImageFilterFactoryEnum;
 public class JavaTilesFilterJob extends Job<List<Tile>, List<Tile>> {
     final IFilter filter;
     final ImageFilteringModeFactoryEnum imageFilteringMode;
+    private static final int MIN_TILES_PER_TASK = 16;
     private List<Tile> inputTiles = Collections.emptyList();
+    private ForkJoinPool tilesPool;
+    private IFilter[] filters;
 
     public JavaTilesFilterJob() {
         //When implementing GPU accelerated filtered job instances they will also be created from the same PIV input parameters
         PIVInputParameters parameters = PIVContextSingleton.getSingleton().getPIVParameters();
         imageFilteringMode = parameters.getImageFilteringMode();
         filter = ImageFilterFactoryEnum.create(parameters);
+        filters = new IFilter[] { filter };
+    }
+    
+    /**
+     * Enables the concurrent filtering of the tiles. Tiles are split into contiguous groups, each filtered by its own
+     * filter instance in the shared pool.
+     * @param pool the shared pool to use, or null to filter all tiles in the calling thread
+     * @param parallelism the maximum number of tile groups to filter concurrently
+     * @return this job instance
+     */
+    public JavaTilesFilterJob setParallelism(ForkJoinPool pool, int parallelism) {
+        tilesPool = pool;
+        filters = new IFilter[pool == null || parallelism < 1 ? 1 : parallelism];
+        filters[0] = filter;
+        PIVInputParameters parameters = PIVContextSingleton.getSingleton().getPIVParameters();
+        for (int index = 1; index < filters.length; index++) {
+            filters[index] = ImageFilterFactoryEnum.create(parameters);
+        }
+        return this;
     }
     
     @Override
@@ -44,12 +71,52 @@ public class JavaTilesFilterJob extends Job<List<Tile>, List<Tile>> {
 
     @Override
     public void compute() {
-        for (Tile tile : inputTiles) {
-            tile.setMatrix(filter.applyFilter(tile.getMatrix(), tile.getMatrix()));
+        int tasks = tilesPool == null ? 1 : FastMath.min(filters.length, inputTiles.size() / MIN_TILES_PER_TASK);
+        if (tasks <= 1) {
+            filterTiles(filter, 0, inputTiles.size());
+        } else {
+            filterTilesInParallel(tasks);
         }
         setJobResult(JobResultEnum.JOB_RESULT_FILTERED_TILES, inputTiles);
     }
 
+    private void filterTiles(IFilter taskFilter, int fromIndex, int toIndex) {
+        for (int index = fromIndex; index < toIndex; index++) {
+            Tile tile = inputTiles.get(index);
+            tile.setMatrix(taskFilter.applyFilter(tile.getMatrix(), tile.getMatrix()));
+        }
+    }
+    
+    private void filterTilesInParallel(int tasks) {
+        List<ForkJoinTask<?>> submittedTasks = new ArrayList<ForkJoinTask<?>>(tasks);
+        int tilesPerTask = inputTiles.size() / tasks;
+        int remainingTiles = inputTiles.size() % tasks;
+        int fromIndex = 0;
+        for (int taskIndex = 0; taskIndex < tasks; taskIndex++) {
+            final IFilter taskFilter = filters[taskIndex];
+            final int taskFromIndex = fromIndex;
+            final int taskToIndex = fromIndex + tilesPerTask + (taskIndex < remainingTiles ? 1 : 0);
+            submittedTasks.add(tilesPool.submit(() -> filterTiles(taskFilter, taskFromIndex, taskToIndex)));
+            fromIndex = taskToIndex;
+        }
+        
+        //Wait for all tasks to complete, before reporting any failure
+        RuntimeException failure = null;
+        for (ForkJoinTask<?> task : submittedTasks) {
+            try {
+                task.join();
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        
+        if (failure != null) {
+            throw failure;
+        }
+    }
+    
     @Override
     public void dispose() {
         //Nothing to do
@@ -41,6 +41,17 @@ public abstract class Job<InputParams,Result> {
 		return inputMap.getOrDefault(key, null);
 	}
 	
+	/**
+	 * Retrieves the input parameters that were set by another thread, for jobs that aggregate the work of multiple threads.
+	 * @param threadJobId the internal Id of the thread that set the parameters
+	 * @param key the input parameters key
+	 * @return the input parameters, or null if not set
+	 */
+	protected InputParams getInputParameters(long threadJobId, JobResultEnum key) {
+		Map<JobResultEnum,InputParams> inputMap = inputParametersPerThreadJob.getOrDefault(threadJobId, Collections.emptyMap());
+		return inputMap.getOrDefault(key, null);
+	}
+	
 	public Result getJobResult(JobResultEnum resultEnum) {
 		Map<JobResultEnum, Result> resultMap = jobResultsPerThreadJob.getOrDefault(getThreadJobId(), Collections.emptyMap());
 		return resultMap.getOrDefault(resultEnum, null);
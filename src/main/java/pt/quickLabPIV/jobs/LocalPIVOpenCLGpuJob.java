@@ -6,13 +6,12 @@
  */
 package pt.quickLabPIV.jobs;
 
-import java.io.File;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
@@ -23,6 +22,7 @@ import org.slf4j.LoggerFactory;
 import net.openhft.affinity.AffinityStrategies;
 import net.openhft.affinity.AffinityThreadFactory;
 import pt.quickLabPIV.ExecutionStatus;
+import pt.quickLabPIV.FrameBatchScheduler;
 import pt.quickLabPIV.ImageFilteringModeFactoryEnum;
 import pt.quickLabPIV.InputFiles;
 import pt.quickLabPIV.Matrix;
@@ -32,6 +32,10 @@ import pt.quickLabPIV.PIVMap;
 import pt.quickLabPIV.PIVResults;
 import pt.quickLabPIV.PIVReusableObjects;
 import pt.quickLabPIV.PIVRunParameters;
+import pt.quickLabPIV.PipelineStageEnum;
+import pt.quickLabPIV.PipelineStageTimers;
+import pt.quickLabPIV.Velocities;
+import pt.quickLabPIV.exporter.IStreamingVelocityExporter;
 import pt.quickLabPIV.iareas.IterationStepTiles;
 import pt.quickLabPIV.iareas.IterationStepTilesFactory;
 import pt.quickLabPIV.iareas.Tile;
@@ -47,11 +51,17 @@ import pt.quickLabPIV.jobs.validator.VectorValidatorJobParameters;
 import pt.quickLabPIV.jobs.xcorr.XCorrelationResults;
 import pt.quickLabPIV.maximum.IMaximumFinder;
 import pt.quickLabPIV.maximum.MaxCrossResult;
+import pt.quickLabPIV.maximum.MaxCrossResultsBuffer;
 import pt.quickLabPIV.maximum.MaximumFinderFactoryEnum;
 
 public class LocalPIVOpenCLGpuJob extends Job<ManagerParameters, Future<PIVResults>> {
     private Logger logger = LoggerFactory.getLogger(LocalPIVOpenCLGpuJob.class);
-	private InputFiles inputFiles;
+	private FrameBatchScheduler scheduler;
+	private ExecutorService imageReaderService;
+	private ForkJoinPool tilesPool;
+	private int tilesParallelism = 1;
+	private ForkJoinPool interpolationPool;
+	private int interpolationParallelism = 1;
 	private AffinityThreadFactory atf;
 	private ExecutorService service = Executors.newFixedThreadPool(1);//, atf);
 	private ManagerParameters parameters;
@@ -59,10 +69,39 @@ public class LocalPIVOpenCLGpuJob extends Job<ManagerParameters, Future<PIVResul
     private final PIVRunParameters runParameters = PIVContextSingleton.getSingleton().getPIVRunParameters();
     private final ExecutionStatus execStatus = runParameters.getExecutionStatus();
 	
-	public void setInputImages(InputFiles inputFiles) {
-		this.inputFiles = inputFiles;
+	public void setFrameScheduler(FrameBatchScheduler scheduler) {
+		this.scheduler = scheduler;
 	}
 		
+	/**
+	 * Sets the shared I/O thread pool used to read images ahead of the frame being processed.
+	 * @param service the thread pool, or null to read images synchronously
+	 */
+	public void setImageReaderService(ExecutorService service) {
+	    this.imageReaderService = service;
+	}
+	
+	/**
+	 * Sets the shared pool used to process the tiles, and the pixels, of a single frame concurrently.
+	 * @param pool the shared pool, or null to process each frame in a single thread
+	 * @param parallelism the maximum number of concurrent tasks for each frame
+	 */
+	public void setTilesParallelism(ForkJoinPool pool, int parallelism) {
+	    this.tilesPool = pool;
+	    this.tilesParallelism = parallelism;
+	}
+	
+	/**
+	 * Enables the concurrent interpolation of the cross-correlation peaks of each adaptive step, as well as the
+	 * concurrent computation of the dense optical flow in the Java CPU.
+	 * @param pool the shared pool, or null to interpolate in the PIV thread
+	 * @param parallelism the maximum number of concurrent interpolation tasks
+	 */
+	public void setInterpolationParallelism(ForkJoinPool pool, int parallelism) {
+	    this.interpolationPool = pool;
+	    this.interpolationParallelism = parallelism;
+	}
+	
 	public void setParameters(final ManagerParameters parameters) {
 		this.parameters = parameters;
 	}
@@ -71,8 +110,8 @@ public class LocalPIVOpenCLGpuJob extends Job<ManagerParameters, Future<PIVResul
 	public void analyze() {
 		//Check if all images are accessible, can be done serially
 		//Check that GPU is available
-		if (inputFiles.getFilesA().size() != inputFiles.getFilesB().size()) {
-			throw new JobAnalyzeException("Number of files A must match the number of files B");
+		if (scheduler == null) {
+			throw new JobAnalyzeException("No frame scheduler was provided");
 		}
 	}
 
@@ -90,19 +129,18 @@ public class LocalPIVOpenCLGpuJob extends Job<ManagerParameters, Future<PIVResul
 			
 			final int adaptiveLevels = (int)(FastMath.log(2, iaStartPixelsI) - FastMath.log(2, iaEndPixelsI)) + 1;
 
-			final ImageReaderJob imagesReaderJob = new ImageReaderJob();
-			final Job<IImage, IImage> imagesAFilteringJob = ImageFilteringModeFactoryEnum.createMainImageAFilterJob(inputParameters);
-			final Job<IImage, IImage> imagesBFilteringJob = ImageFilteringModeFactoryEnum.createMainImageBFilterJob(inputParameters);			
-			final Job<List<Tile>, List<Tile>> warpedTilesAFilteringJob = ImageFilteringModeFactoryEnum.createWarpedTilesAFilterJob(inputParameters);
-			final Job<List<Tile>, List<Tile>> warpedTilesBFilteringJob = ImageFilteringModeFactoryEnum.createWarpedTilesBFilterJob(inputParameters);
+			Job<IImage, IImage> imagesAFilteringJob = ImageFilteringModeFactoryEnum.createMainImageAFilterJob(inputParameters, tilesPool, tilesParallelism);
+			Job<IImage, IImage> imagesBFilteringJob = ImageFilteringModeFactoryEnum.createMainImageBFilterJob(inputParameters, tilesPool, tilesParallelism);			
+			final Job<List<Tile>, List<Tile>> warpedTilesAFilteringJob = ImageFilteringModeFactoryEnum.createWarpedTilesAFilterJob(inputParameters, tilesPool, tilesParallelism);
+			final Job<List<Tile>, List<Tile>> warpedTilesBFilteringJob = ImageFilteringModeFactoryEnum.createWarpedTilesBFilterJob(inputParameters, tilesPool, tilesParallelism);
 			final ImageMaskJob imageMaskJob = inputParameters.getMaskFilename() != null && !inputParameters.isMaskOnlyAtExport() ? new ImageMaskJob(inputParameters.getMaskFilename()) : null;
 			final VectorMaskJob[] vectorMaskJobs = new VectorMaskJob[adaptiveLevels];
 			final DenseVectorMaskJob denseVectorMaskJob = new DenseVectorMaskJob();
-			final ImageWarpingAndClippingJob warpingAndClippingJob = new ImageWarpingAndClippingJob();
+			final ImageWarpingAndClippingJob warpingAndClippingJob = new ImageWarpingAndClippingJob().setParallelism(tilesPool, tilesParallelism);
 			final ImageWarpingInputData warpingAndClippingInput = new ImageWarpingInputData();
 			final IterationStepTiles[] stepTilesAByLevel = new IterationStepTiles[adaptiveLevels];
 			final IterationStepTiles[] stepTilesBByLevel = new IterationStepTiles[adaptiveLevels];
-			final VectorValidatorJob validatorJob = new VectorValidatorJob();
+			final VectorValidatorJob validatorJob = new VectorValidatorJob().setParallelism(tilesPool, tilesParallelism);
 			final IOpticalFlowInterpolator opticalFlowAfterPIVInterpolator = OpticalFlowAfterPIVInterpolatorFactoryEnum.createInterpolator(inputParameters);
 			
 			public Callable<PIVResults> setParameters(final ManagerParameters parameters) {
@@ -113,40 +151,74 @@ public class LocalPIVOpenCLGpuJob extends Job<ManagerParameters, Future<PIVResul
 			@Override
 			public PIVResults call() throws Exception {
 				runParameters.mapThreadToThreadIndex(managerParameters.getThreadIdx());
+				final PipelineStageTimers timers = execStatus.getOrCreateStageTimers(managerParameters.getThreadIdx(), adaptiveLevels);
 				
-				final File[] filenames = new File[2];
-				Iterator<File> filesAIter = inputFiles.getFilesA().iterator();
-				Iterator<File> filesBIter = inputFiles.getFilesB().iterator();
-												
+				//Time-resolved sequences share image B of a frame as image A of the next frame. Decoded images can be shared,
+				//unless the mask is applied in-place to the unfiltered image B, and the filtered image B can also be reused,
+				//if both images are filtered in the same way.
+				final boolean reuseImages = imageMaskJob == null || !(imagesBFilteringJob instanceof JavaNullImageFilterJob);
+				final boolean reuseFilteredImages = imagesAFilteringJob.getClass() == imagesBFilteringJob.getClass();
+				final ImagePrefetcher prefetcher = new ImagePrefetcher(scheduler, managerParameters.getThreadIdx(), imageReaderService,
+				                                                       runParameters.getImagePrefetchDepth(), reuseImages);
+				InputFiles inputFiles = null;
 				PIVResults partialResults = new PIVResults();
 				VectorValidatorJobParameters validatorParameters = new VectorValidatorJobParameters();
 				
 				int groupTilesSize = 50;
-				int currentRelativeFrame = inputFiles.getRelativeStartFrame();
 				
 				final IMaximumFinder findPeak = MaximumFinderFactoryEnum.create();
+				//Cross-correlation matrices and peaks buffers are reused by all frames, adaptive levels and unstable iterations
+				final List<Matrix> outputCross = new ArrayList<Matrix>();
+				final MaxCrossResultsBuffer peaksBuffer = new MaxCrossResultsBuffer();
 				//final IMaximumFinder checkPeak = MaximumFinderFactoryEnum.create(MaximumFinderFactoryEnum.MaximumFinderSimple);
 
+				//Relative frame of the last frame processed by this thread, used for seeding the next frame
+				int previousRelativeFrame = -1;
+				
 				Job<List<Tile>, XCorrelationResults>[] openCLJobs = managerParameters.getOpenCLJobs();
+				final IStreamingVelocityExporter streamingExporter = runParameters.getStreamingExporter();
+				final boolean velocityStatistics = runParameters.isVelocityStatistics();
+				final boolean velocityMapsExport = runParameters.isVelocityMapsExport();
 				try {
 					PIVReusableObjects reusableObjects = PIVContextSingleton.getSingleton().getPIVReusableObjects();
 					List<IImage> filteredImages = new ArrayList<IImage>(2);
 					ICrossCorrelationInterpolator interpolator = reusableObjects.getOrCreateInterpolator();
+					if (interpolator != null) {
+					    interpolator.setParallelism(interpolationPool, interpolationParallelism);
+					}
+					if (opticalFlowAfterPIVInterpolator != null) {
+					    opticalFlowAfterPIVInterpolator.setParallelism(interpolationPool, interpolationParallelism);
+					}
+					//Filtered images are shared by the main image filtering jobs and the interpolators of this thread
+					reusableObjects.getOrCreateFilteredImagesCache().setParallelism(tilesPool, tilesParallelism);
 	
-					while (filesAIter.hasNext() && filesBIter.hasNext()) {
+					long stageStart = timers.begin();
+					ImagePrefetcher.PrefetchedFrame frame = prefetcher.next();
+					timers.end(PipelineStageEnum.ImageRead, stageStart);
+					while (frame != null) {
 					    if (runParameters.isCancelRequested()) {
 					        return partialResults;
 					    }
-						File filenameA = filesAIter.next();
-						File filenameB = filesBIter.next();
-						
-						filenames[0] = filenameA;
-						filenames[1] = filenameB;
-						
-						imagesReaderJob.setFilenamesToRead(filenames);
-						imagesReaderJob.analyze();
-						imagesReaderJob.compute();
-						List<IImage> images = imagesReaderJob.getJobResult(JobResultEnum.JOB_RESULT_IMAGES);
+					    
+					    if (frame.isFirstOfBatch()) {
+					        //A new batch was started. Frames of each batch are stored in their own results,
+					        //which are then concatenated in frame order by the manager.
+					        inputFiles = frame.getBatch();
+					        partialResults = new PIVResults();
+					        scheduler.registerBatchResults(inputFiles, partialResults);
+					        //State carried across consecutive frames is reset, so that results do not depend on which thread
+					        //processed the previous batch
+					        previousRelativeFrame = -1;
+					        reusableObjects.getOrCreateFilteredImagesCache().clear();
+					    }
+					    int currentRelativeFrame = frame.getRelativeFrame();
+					    //When this thread processes consecutive frames of the same batch, the frame can be seeded
+					    //with the last adaptive step displacements of the previous frame
+					    boolean seedFromPreviousFrame = runParameters.isSeedFromPreviousFrame() && previousRelativeFrame >= 0 &&
+					                                    currentRelativeFrame == previousRelativeFrame + 1;
+					    
+					    //Images of the following frames are read ahead, while this frame is processed
+						List<IImage> images = frame.getImages();
 						
 	                    filteredImages.clear();
 
@@ -160,28 +232,38 @@ public class LocalPIVOpenCLGpuJob extends Job<ManagerParameters, Future<PIVResul
 	                        opticalFlowAfterPIVInterpolator.updateImageB(images.get(1));
 	                    }
 	                    
-						imagesAFilteringJob.setInputParameters(JobResultEnum.JOB_RESULT_IMAGES, images.get(0));
-						imagesAFilteringJob.analyze();
-						imagesAFilteringJob.compute();
+	                    stageStart = timers.begin();
+	                    if (frame.isImageAReused() && reuseFilteredImages) {
+	                        //Image A was filtered as image B of the previous frame, so swap the filter jobs and filter
+	                        //only the new image B, without overwriting the previous filtered image B
+	                        Job<IImage, IImage> tempFilteringJob = imagesAFilteringJob;
+	                        imagesAFilteringJob = imagesBFilteringJob;
+	                        imagesBFilteringJob = tempFilteringJob;
+	                    } else {
+    						imagesAFilteringJob.setInputParameters(JobResultEnum.JOB_RESULT_IMAGES, images.get(0));
+    						imagesAFilteringJob.analyze();
+    						imagesAFilteringJob.compute();
+	                    }
 						filteredImages.add(0, imagesAFilteringJob.getJobResult(JobResultEnum.JOB_RESULT_FILTERED_IMAGES));
 
 						imagesBFilteringJob.setInputParameters(JobResultEnum.JOB_RESULT_IMAGES, images.get(1));
                         imagesBFilteringJob.analyze();
                         imagesBFilteringJob.compute();
                         filteredImages.add(1, imagesBFilteringJob.getJobResult(JobResultEnum.JOB_RESULT_FILTERED_IMAGES));
+                        stageStart = timers.end(PipelineStageEnum.ImageFiltering, stageStart);
                         
 						if (imageMaskJob != null) {
 						    imageMaskJob.setInputParameters(JobResultEnum.JOB_RESULT_IMAGES_TO_MASK, filteredImages);
 						    imageMaskJob.analyze();
 						    imageMaskJob.compute();
 						    filteredImages = imageMaskJob.getJobResult(JobResultEnum.JOB_RESULT_IMAGES);
+						    timers.end(PipelineStageEnum.ImageMasking, stageStart);
 						}
 												
 						IImage imgA = filteredImages.get(0);
 						IImage imgB = filteredImages.get(1);
 						logger.warn("Comparing image: " + images.get(0) + ", with image: " + images.get(1));
 	
-						List<Matrix> outputCross;
 						List<MaxCrossResult> maxResults;
 						
 						int currentAdaptiveLevel = 0;
@@ -210,9 +292,22 @@ public class LocalPIVOpenCLGpuJob extends Job<ManagerParameters, Future<PIVResul
                                 }
                                 warpingAndClippingInput.stepTilesB = stepTilesBByLevel[currentAdaptiveLevel];
                             }
-                            if (currentAdaptiveLevel > 0 || warpingAndClippingInput.stepTilesB != null) {
+                            if (currentAdaptiveLevel == 0 && seedFromPreviousFrame) {
+                                warpingAndClippingInput.stepTilesB.reuseTiles(stepTilesBByLevel[adaptiveLevels - 1]);
+                            } else if (currentAdaptiveLevel > 0 || warpingAndClippingInput.stepTilesB != null) {
                                 //By always running when currentAdaptiveLevel is greater than 0, we ensure that velocity inheritance will always take place
                                 warpingAndClippingInput.stepTilesB.reuseTiles();
+                            }
+                            if (inputParameters.getMaskFilename() != null) {
+                                //Masked tiles are excluded before clipping and cross-correlation, their displacements
+                                //are only replaced by the vector mask job
+                                stageStart = timers.begin();
+                                if (vectorMaskJobs[currentAdaptiveLevel] == null) {
+                                    vectorMaskJobs[currentAdaptiveLevel] = new VectorMaskJob(warpingAndClippingInput.stepTilesA);
+                                }
+                                vectorMaskJobs[currentAdaptiveLevel].analyze();
+                                vectorMaskJobs[currentAdaptiveLevel].skipMaskedTiles(warpingAndClippingInput.stepTilesB);
+                                timers.end(PipelineStageEnum.VectorMasking, currentAdaptiveLevel, stageStart);
                             }
 						    warpingAndClippingJob.setInputParameters(JobResultEnum.JOB_RESULT_IMAGES_FOR_WARPING_AND_CLIPPING, warpingAndClippingInput);
 							
@@ -227,7 +322,9 @@ public class LocalPIVOpenCLGpuJob extends Job<ManagerParameters, Future<PIVResul
 							}
 
                             logger.info("Warping and Clipping compute...");
+                            stageStart = timers.begin();
                             warpingAndClippingJob.compute();
+                            timers.end(PipelineStageEnum.WarpingAndClipping, currentAdaptiveLevel, stageStart);
                             logger.info("Clipping computed...");
                             IterationStepTiles[] stepTiles = warpingAndClippingJob.getJobResult(JobResultEnum.JOB_RESULT_IMAGES_FOR_WARPING_AND_CLIPPING);
 							
@@ -240,23 +337,31 @@ public class LocalPIVOpenCLGpuJob extends Job<ManagerParameters, Future<PIVResul
 								List<Tile> tilesB = stepTilesB.getUnstableVelocityTiles();
 								List<Tile> tilesA = stepTilesA.getRelatedTilesInSameOrder(tilesB);
 							
-								maxResults = new ArrayList<MaxCrossResult>(tilesA.size());
-								outputCross = new ArrayList<Matrix>(tilesA.size());
+								outputCross.clear();
 								groupTilesSize = tilesA.size();
 
 								if (tilesB.isEmpty()) {
 								    //This can happen at the end of first iteration if stabilization is disabled, 
 								    //or at a later iteration, if stabilization is enabled
+								    if (unstableIteration == 0 && vectorMaskJobs[currentAdaptiveLevel] != null) {
+								        //All tiles were masked, so the mask still has to replace their displacements
+								        vectorMaskJobs[currentAdaptiveLevel].setInputParameters(JobResultEnum.JOB_RESULT_CROSS_MAXIMUM, stepTilesB);
+								        vectorMaskJobs[currentAdaptiveLevel].compute();
+								    }
 									unstableTiles = false;
 									currentAdaptiveLevel++;
 									continue;
 								}
+								timers.addTiles(currentAdaptiveLevel, tilesB.size());
 								
 								if (unstableIteration > 0) {
 								    //NOTE: The warping and clipping job does not affect the stabilization state of the tiles, it only affects the clipped 
 								    //image region.
+		                            timers.incrementReIterations(currentAdaptiveLevel);
 		                            logger.info("Warping and Clipping compute...");
+		                            stageStart = timers.begin();
 		                            warpingAndClippingJob.compute();
+		                            timers.end(PipelineStageEnum.WarpingAndClipping, currentAdaptiveLevel, stageStart);
 		                            logger.info("Clipping computed...");
 		                            //NOTE: This is also redundant, because all job compute calls are working with same input tiles instances, as provided in the
 		                            //initialization block outside of the loop, and they are always called from the same thread.
@@ -267,6 +372,7 @@ public class LocalPIVOpenCLGpuJob extends Job<ManagerParameters, Future<PIVResul
 								
 								//If doing warping on the first or second image only, only the corresponding filter needs to be performed here,
 								//while filtering the other non-warped image as a whole at the start (first iteration only)
+								stageStart = timers.begin();
 								warpedTilesAFilteringJob.setInputParameters(JobResultEnum.JOB_RESULT_TILES, tilesA);
 								warpedTilesAFilteringJob.analyze();
 								warpedTilesAFilteringJob.compute();
@@ -276,6 +382,7 @@ public class LocalPIVOpenCLGpuJob extends Job<ManagerParameters, Future<PIVResul
                                 warpedTilesBFilteringJob.analyze();
                                 warpedTilesBFilteringJob.compute();
                                 tilesB = warpedTilesBFilteringJob.getJobResult(JobResultEnum.JOB_RESULT_FILTERED_TILES);
+                                stageStart = timers.end(PipelineStageEnum.TilesFiltering, currentAdaptiveLevel, stageStart);
 								
 								int fromIndex = 0;
 								int toIndex = 0;
@@ -289,7 +396,6 @@ public class LocalPIVOpenCLGpuJob extends Job<ManagerParameters, Future<PIVResul
 									toIndex += groupTilesSize;
 									
 									List<Matrix> outputCrossLocal = null;
-									List<MaxCrossResult> maxCrossResultsLocal = null;
 									try {
 										if (groupTilesSize >= dataLength) {
 											tilesAChunk = tilesA;
@@ -311,7 +417,6 @@ public class LocalPIVOpenCLGpuJob extends Job<ManagerParameters, Future<PIVResul
 										
 										XCorrelationResults results = openClLevelJob.getJobResult(JobResultEnum.JOB_RESULT_CROSS_MATRICES);
 										outputCrossLocal = results.getCrossMatrices();										
-										maxCrossResultsLocal = results.getMaxCrossResults();
 										//xCorrResults.add(results);
 									} finally {
 										if (disposeLocally) {
@@ -320,20 +425,15 @@ public class LocalPIVOpenCLGpuJob extends Job<ManagerParameters, Future<PIVResul
 										}
 									}
 									outputCross.addAll(outputCrossLocal);
-									maxResults.addAll(maxCrossResultsLocal);
 									
 									fromIndex += groupTilesSize;
 								}  while (toIndex < dataLength);
 								
+								timers.end(PipelineStageEnum.CrossCorrelation, currentAdaptiveLevel, stageStart);
 								if (outputCross.size() != dataLength) {
 									throw new JobComputeException("Number of computed cross-correlations doesn't match the expected");
 								}														
 								
-								//Note array list can be reused by adaptive level, even if less tiles are needed due to less unstable tiles
-								maxResults = new ArrayList<MaxCrossResult>(dataLength);
-								Iterator<Tile> tileAIterator = tilesA.iterator();
-								Iterator<Tile> tileBIterator = tilesB.iterator();
-								
 								//Test code only... not relevant for real usage 
 								/*for (int index = 0; index < maxResults.size(); index++) {
 									MaxCrossResult maxResult = maxResults.get(index);
@@ -358,24 +458,29 @@ public class LocalPIVOpenCLGpuJob extends Job<ManagerParameters, Future<PIVResul
 				                    return partialResults;
 				                }
 
-								for (Matrix m : outputCross) {
-									Tile tileA = tileAIterator.next();
-									Tile tileB = tileBIterator.next();
-									MaxCrossResult result = findPeak.findMaximum(m);
-
-									//Associate MaxCrossResults with the corresponding tiles... they are in same order...
-									result.setAssociatedTileA(tileA);
-									result.setAssociatedTileB(tileB);
-																		
-									maxResults.add(result);
-								}
+								stageStart = timers.begin();
+								findPeak.findMaximums(outputCross, peaksBuffer);
+								//Associate the peaks with the corresponding tiles... they are in same order...
+								peaksBuffer.setAssociatedTiles(tilesA, tilesB);
+								maxResults = peaksBuffer.getResults();
+								stageStart = timers.end(PipelineStageEnum.PeakFinding, currentAdaptiveLevel, stageStart);
 								
                                 if (interpolator != null && stepTilesB.getCurrentStep() >= inputParameters.getInterpolatorStartStep()) {
                                    maxResults = interpolator.interpolate(maxResults);
+                                   timers.end(PipelineStageEnum.Interpolation, currentAdaptiveLevel, stageStart);
                                 }
 
 								//findPeak.dispose();
 
+								if (seedFromPreviousFrame && currentAdaptiveLevel == 0 && unstableIteration == 0 &&
+								    computeRejectedSeedFraction(maxResults, stepTilesB) > runParameters.getSeedRejectionFraction()) {
+								    //The previous frame is a poor predictor for this frame, so redo the first adaptive step from zero displacements
+								    logger.info("Discarding displacements seeded from previous frame for frame: {}", currentRelativeFrame);
+								    seedFromPreviousFrame = false;
+								    unstableTiles = false;
+								    continue;
+								}
+
 				                if (runParameters.isCancelRequested()) {
 				                    return partialResults;
 				                }
@@ -383,16 +488,15 @@ public class LocalPIVOpenCLGpuJob extends Job<ManagerParameters, Future<PIVResul
 								//Check bounds... when clipping...
 								stepTilesB.updateDisplacementsFromMaxCrossResults(currentRelativeFrame, maxResults);								
                                 if (inputParameters.getMaskFilename() != null) {
-                                    if (vectorMaskJobs[currentAdaptiveLevel] == null) {
-                                        vectorMaskJobs[currentAdaptiveLevel] = new VectorMaskJob(stepTilesA);
-                                    }
+                                    stageStart = timers.begin();
                                     VectorMaskJob vectorMaskJob = vectorMaskJobs[currentAdaptiveLevel]; 
                                     vectorMaskJob.setInputParameters(JobResultEnum.JOB_RESULT_CROSS_MAXIMUM, stepTilesB);
-                                    vectorMaskJob.analyze();
                                     vectorMaskJob.compute();
+                                    timers.end(PipelineStageEnum.VectorMasking, currentAdaptiveLevel, stageStart);
                                 }
                                 
                                 if (inputParameters.getVectorValidatorStrategy() != VectorValidatorFactoryEnum.None) { 
+    								stageStart = timers.begin();
     								validatorParameters.stepTiles = stepTilesB;
     								validatorParameters.maxResults = maxResults;
     								validatorParameters.currentFrame = currentRelativeFrame;
@@ -400,6 +504,9 @@ public class LocalPIVOpenCLGpuJob extends Job<ManagerParameters, Future<PIVResul
     								validatorJob.analyze();
     								validatorJob.compute();
     								stepTilesB = validatorJob.getJobResult(JobResultEnum.JOB_RESULT_VALIDATED_VECTORS);
+    								timers.end(PipelineStageEnum.Validation, currentAdaptiveLevel, stageStart);
+    								timers.addValidationResults(currentAdaptiveLevel, validatorJob.getLastCorrectedVectors(), 
+    								                            validatorJob.getLastInvalidVectors());
                                 }
                         
                                 //This is redundant, however it may help the compiler to identify target dependencies
@@ -411,15 +518,19 @@ public class LocalPIVOpenCLGpuJob extends Job<ManagerParameters, Future<PIVResul
 						IterationStepTiles stepTilesA = stepTilesAByLevel[adaptiveLevels - 1];
 	                    IterationStepTiles stepTilesB = stepTilesBByLevel[adaptiveLevels - 1];
                         if (opticalFlowAfterPIVInterpolator != null) {
+                            stageStart = timers.begin();
                             opticalFlowAfterPIVInterpolator.interpolate(stepTilesA, stepTilesB);
+                            timers.end(PipelineStageEnum.OpticalFlow, stageStart);
                         }
 
                         //If the last step was a dense optical flow, whether within the adaptive steps or after the last step,
                         //we may need to apply a mask...
+                        stageStart = timers.begin();
                         denseVectorMaskJob.setInputParameters(JobResultEnum.JOB_RESULT_CROSS_MAXIMUM, stepTilesB);
                         denseVectorMaskJob.analyze();
                         denseVectorMaskJob.compute();
                         stepTilesB = denseVectorMaskJob.getJobResult(JobResultEnum.JOB_RESULT_CROSS_MAXIMUM_MASKED);
+                        stageStart = timers.end(PipelineStageEnum.DenseVectorMasking, stageStart);
 						
 						//This will just store the last adaptive step PIV results
 						//Add partial export to PIV results, since IterationStepTiles will be reused for the next image too...
@@ -429,14 +540,45 @@ public class LocalPIVOpenCLGpuJob extends Job<ManagerParameters, Future<PIVResul
 							map.prepare(inputFiles.getAbsoluteStartFrame(), inputFiles.getRelativeStartFrame(), inputFiles.getFilesA().size(), image.getHeight(), image.getWidth(), stepTilesB);
 						}
 						map.importFromIterationStepTiles(currentRelativeFrame, stepTilesB);
+						if (velocityStatistics) {
+						    Velocities velocities = map.getVelocities(currentRelativeFrame);
+						    float[][] us = velocities.getU();
+						    partialResults.getOrCreateStatistics(us.length, us[0].length).accumulate(velocities);
+						}
+						if (streamingExporter != null) {
+						    //Write the velocities now, so that memory usage doesn't grow with the number of frames
+						    streamingExporter.exportFrame(map, map.detachVelocities(currentRelativeFrame));
+						} else if (!velocityMapsExport) {
+						    //Only the statistics are needed
+						    map.detachVelocities(currentRelativeFrame).clear();
+						}
+						
+						timers.end(PipelineStageEnum.Export, stageStart);
+						timers.incrementFrames();
 						
 						//Advance frame
-						currentRelativeFrame++;
+						previousRelativeFrame = currentRelativeFrame;
 						execStatus.incrementProcessedImages();
+						stageStart = timers.begin();
+						frame = prefetcher.next();
+						timers.end(PipelineStageEnum.ImageRead, stageStart);
 					}
+				} catch (RuntimeException | Error e) {
+				    if (streamingExporter != null) {
+				        //Other threads may be waiting for the frames of this thread to be exported
+				        streamingExporter.abort();
+				    }
+				    throw e;
 				} finally {
+				    prefetcher.cancel();
+				    //Full frame filtered images would otherwise be kept after this thread completes
+				    PIVContextSingleton.getSingleton().getPIVReusableObjects().releaseFilteredImagesCache();
 					for (int level = 0; level < adaptiveLevels; level++) {
-						if (openCLJobs[level] != null) {
+						if (openCLJobs[level] instanceof AggregatedThreadJobTemplate) {
+						    //Shared with the other threads, which must no longer wait for this thread
+						    ((AggregatedThreadJobTemplate<?,?>)openCLJobs[level]).retireThread();
+						    openCLJobs[level] = null;
+						} else if (openCLJobs[level] != null) {
 							openCLJobs[level].dispose();
 							openCLJobs[level] = null;
 						}
@@ -452,6 +594,36 @@ public class LocalPIVOpenCLGpuJob extends Job<ManagerParameters, Future<PIVResul
 		setJobResult(JobResultEnum.JOB_RESULT_PIV, future);
 	}
 
+	/**
+	 * Computes the fraction of tiles for which the first cross-correlation of the base adaptive step disagrees with the
+	 * seeded displacement by more than a quarter of the tile size, which is the usual limit for a reliable correlation peak.
+	 * @param maxResults the cross-correlation peaks, before updating the tiles displacements
+	 * @param stepTilesB the seeded tiles
+	 * @return the fraction of rejected tiles
+	 */
+	private static float computeRejectedSeedFraction(List<MaxCrossResult> maxResults, IterationStepTiles stepTilesB) {
+	    if (maxResults.isEmpty()) {
+	        return 0.0f;
+	    }
+	    
+	    final float maxCorrectionU = stepTilesB.getTileHeight() / 4.0f;
+	    final float maxCorrectionV = stepTilesB.getTileWidth() / 4.0f;
+	    int rejected = 0;
+	    for (MaxCrossResult maxResult : maxResults) {
+	        float correctionU = maxResult.getNthDisplacementU(0);
+	        float correctionV = maxResult.getNthDisplacementV(0);
+	        if (maxResult.isAbsoluteNthDisplacement(0)) {
+	            correctionU -= maxResult.tileB.getDisplacementU();
+	            correctionV -= maxResult.tileB.getDisplacementV();
+	        }
+	        if (FastMath.abs(correctionU) > maxCorrectionU || FastMath.abs(correctionV) > maxCorrectionV) {
+	            rejected++;
+	        }
+	    }
+	    
+	    return (float)rejected / maxResults.size();
+	}
+
 	public void dispose() {
 		if (service != null) {
 			service.shutdown();
@@ -6,29 +6,18 @@
  */
 package pt.quickLabPIV.jobs;
 
-import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
-
-import javax.imageio.ImageIO;
-
 import pt.quickLabPIV.PIVContextSingleton;
 import pt.quickLabPIV.PIVInputParameters;
 import pt.quickLabPIV.iareas.IterationStepTiles;
 import pt.quickLabPIV.iareas.Tile;
-import pt.quickLabPIV.images.IImage;
-import pt.quickLabPIV.images.Image;
-import pt.quickLabPIV.images.ImageNotFoundException;
-import pt.quickLabPIV.images.ImageReaderException;
+import pt.quickLabPIV.images.ImageMaskCache;
+import pt.quickLabPIV.images.ImageMaskCache.MaskedTiles;
 
 public class VectorMaskJob extends Job<IterationStepTiles, IterationStepTiles> {
     private boolean shouldMask;
     private String maskFilename;
-    private IImage maskImage;
     private IterationStepTiles stepTiles;
-    private boolean[][] maskMatrix;
+    private MaskedTiles maskedTiles;
     
     public VectorMaskJob(IterationStepTiles _stepTiles) {
         PIVContextSingleton singleton = PIVContextSingleton.getSingleton();
@@ -40,34 +29,27 @@ public class VectorMaskJob extends Job<IterationStepTiles, IterationStepTiles> {
     
     @Override
     public void analyze() {
-        if (maskMatrix == null && shouldMask) {
-            File f = new File(maskFilename);
-            if (!f.exists() || f.isDirectory()) {
-                throw new ImageNotFoundException("Cannot find image mask file"); 
-            }
-            
-            if (!f.canRead()) {
-                throw new ImageReaderException("Insuficient permissions to read mask file");
-            }
-            
-            BufferedImage bi;
-            try {
-                bi = ImageIO.read(f);
-            } catch (IOException e) {
-                throw new ImageReaderException("Failed to read mask file: " + f.getAbsolutePath(), e);
-            }
-            
-            maskImage = new Image(bi, f.getAbsolutePath());
-            
-            maskMatrix = new boolean[stepTiles.getNumberOfTilesInI()][stepTiles.getNumberOfTilesInJ()];
-            for (int i = 0; i < stepTiles.getNumberOfTilesInI(); i++) {
-                for (int j = 0; j < stepTiles.getNumberOfTilesInJ(); j++) {
-                    Tile tile = stepTiles.getTile(i, j);
-                    int count = maskImage.getSpecificIntensityValueCountForRegion(tile.getTopPixel(), tile.getLeftPixel(), 
-                            stepTiles.getTileHeight(), stepTiles.getTileWidth(), 0);
-                    if ((float)count/(float)(stepTiles.getTileHeight() * stepTiles.getTileWidth()) > 0.35f) {
-                        maskMatrix[i][j] = true;
-                    }
+        if (maskedTiles == null && shouldMask) {
+            //The mask is decoded only once and its masked tiles computed only once per tiles geometry, for all PIV threads
+            ImageMaskCache mask = PIVContextSingleton.getSingleton().getPIVReusableObjects().getOrCreateImageMask(maskFilename);
+            maskedTiles = mask.getMaskedTiles(stepTiles);
+        }
+    }
+
+    /**
+     * Excludes the masked tiles from the clipping and cross-correlation of the adaptive step, since their displacements
+     * will be replaced by the mask anyway. Must be called after the tiles are reused and before the clipping.
+     * @param stepTilesB the adaptive step tiles of the second image
+     */
+    public void skipMaskedTiles(IterationStepTiles stepTilesB) {
+        if (!shouldMask || maskedTiles.getCount() == 0) {
+            return;
+        }
+
+        for (int i = 0; i < stepTilesB.getNumberOfTilesInI(); i++) {
+            for (int j = 0; j < stepTilesB.getNumberOfTilesInJ(); j++) {
+                if (maskedTiles.isMasked(i, j)) {
+                    stepTilesB.skipTileEvaluation(i, j);
                 }
             }
         }
@@ -82,7 +64,7 @@ public class VectorMaskJob extends Job<IterationStepTiles, IterationStepTiles> {
         IterationStepTiles stepTiles = getInputParameters(JobResultEnum.JOB_RESULT_CROSS_MAXIMUM);
         for (int i = 0; i < stepTiles.getNumberOfTilesInI(); i++) {
             for (int j = 0; j < stepTiles.getNumberOfTilesInJ(); j++) {
-                if (maskMatrix[i][j]) {
+                if (maskedTiles.isMasked(i, j)) {
                     Tile tile = stepTiles.getTile(i, j);
                     tile.replaceDisplacement(0.0f, 0.0f);
                     tile.setMaskedDisplacement(true);
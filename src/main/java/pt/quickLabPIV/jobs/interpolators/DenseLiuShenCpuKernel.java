@@ -0,0 +1,221 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.jobs.interpolators;
+
+import java.util.Arrays;
+
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * Pure Java implementation of the dense Lucas-Kanade followed by Liu-Shen kernel, with the same semantics of the
+ * OpenCL {@link DenseLiuShenGpuKernel}, for computers without OpenCL devices.
+ * <br/>
+ * The Liu-Shen terms that only depend on the fixed images are computed once per pixel into planes that are reused
+ * by all the Liu-Shen iterations, and by the following computations of images with the same dimensions.
+ * Each iteration refines all the vectors from the vectors of the previous iteration, in bands of rows.
+ * @author lpnm
+ */
+public class DenseLiuShenCpuKernel extends DenseLucasKanadeCpuKernel implements IDenseLiuShenKernel {
+    private static final int FIXED_TERMS = 8;
+    private static final int A01_0 = 0;
+    private static final int A01_1 = 1;
+    private static final int A11 = 2;
+    private static final int IXT = 3;
+    private static final int IYT = 4;
+    private static final int INV_B00 = 5;
+    private static final int INV_B01 = 6;
+    private static final int INV_B11 = 7;
+
+    private static final int topLeftIdx = 0;
+    private static final int topIdx = 1;
+    private static final int topRightIdx = 2;
+    private static final int leftIdx = 3;
+    private static final int centerIdx = 4;
+    private static final int rightIdx = 5;
+    private static final int bottomLeftIdx = 6;
+    private static final int bottomIdx = 7;
+    private static final int bottomRightIdx = 8;
+
+    private final int iterationsLS;
+    private final float lambda;
+    private final float[] fixedTerms;
+    private float[] taskErrors = new float[1];
+
+    private float imageLSA[];
+    private float imageLSB[];
+    private float usNew[];
+    private float vsNew[];
+    private float totalError[];
+
+    public DenseLiuShenCpuKernel(int _windowSize, int _iterationsLK, int _imageHeight, int _imageWidth, int _iterationsLS, float _lambda) {
+        super(_windowSize, _iterationsLK, _imageHeight, _imageWidth);
+        iterationsLS = _iterationsLS;
+        lambda = _lambda;
+        fixedTerms = new float[imageHeight * imageWidth * FIXED_TERMS];
+    }
+
+    @Override
+    public void setKernelArgs(final float _imageLKA[], final float[] _imageLKB, final float _imageLSA[], final float[] _imageLSB,
+                              final float[] _us, final float[] _vs, final float[] _usNew, final float[] _vsNew,
+                              final float[] _totalError, boolean halfPixelOffset) {
+        super.setKernelArgs(_imageLKA, _imageLKB, _us, _vs, halfPixelOffset);
+        imageLSA = _imageLSA;
+        imageLSB = _imageLSB;
+        usNew = _usNew;
+        vsNew = _vsNew;
+        totalError = _totalError;
+    }
+
+    public int getIterationsLS() {
+        return iterationsLS;
+    }
+
+    public float getLambda() {
+        return lambda;
+    }
+
+    private void loadPixels(float[] img, int pixelI, int pixelJ, float[] values) {
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                final int locI = pixelI - 1 + i;
+                final int locJ = pixelJ - 1 + j;
+                float value;
+                if (halfPixelOffset) {
+                    value = 0.0f;
+                    value = readPixel(img, locI    , locJ    ) * (1.0f/4.0f) + value;
+                    value = readPixel(img, locI    , locJ + 1) * (1.0f/4.0f) + value;
+                    value = readPixel(img, locI + 1, locJ    ) * (1.0f/4.0f) + value;
+                    value = readPixel(img, locI + 1, locJ + 1) * (1.0f/4.0f) + value;
+                } else {
+                    value = readPixel(img, locI, locJ);
+                }
+                values[i * 3 + j] = value;
+            }
+        }
+    }
+
+    private void computeFixedTermsRows(int fromRow, int toRow) {
+        final float[] pixelsA = new float[9];
+        final float[] pixelsB = new float[9];
+        for (int pixelI = fromRow; pixelI < toRow; pixelI++) {
+            for (int pixelJ = 0; pixelJ < imageWidth; pixelJ++) {
+                loadPixels(imageLSA, pixelI, pixelJ, pixelsA);
+                loadPixels(imageLSB, pixelI, pixelJ, pixelsB);
+
+                //Number of valid neighbour pixels
+                final float w = (pixelI > 0 ? (pixelJ > 0 ? 1.0f : 0.0f) + 1.0f + (pixelJ + 1 < imageWidth ? 1.0f : 0.0f) : 0.0f) +
+                                (pixelJ > 0 ? 1.0f : 0.0f) + (pixelJ + 1 < imageWidth ? 1.0f : 0.0f) +
+                                (pixelI + 1 < imageHeight ? (pixelJ > 0 ? 1.0f : 0.0f) + 1.0f + (pixelJ + 1 < imageWidth ? 1.0f : 0.0f) : 0.0f);
+
+                final float centerPixelValueA = pixelsA[centerIdx];
+                final int offset = (pixelI * imageWidth + pixelJ) * FIXED_TERMS;
+                fixedTerms[offset + A01_0] = centerPixelValueA * (pixelsA[bottomIdx] - pixelsA[topIdx]) / 2.0f;
+                fixedTerms[offset + A01_1] = centerPixelValueA * (pixelsA[rightIdx] - pixelsA[leftIdx]) / 2.0f;
+                fixedTerms[offset + A11] = centerPixelValueA * centerPixelValueA;
+                fixedTerms[offset + IXT] = centerPixelValueA * ((pixelsB[bottomIdx] - pixelsA[bottomIdx]) - (pixelsB[topIdx] - pixelsA[topIdx])) / 2.0f;
+                fixedTerms[offset + IYT] = centerPixelValueA * ((pixelsB[rightIdx] - pixelsA[rightIdx]) - (pixelsB[leftIdx] - pixelsA[leftIdx])) / 2.0f;
+
+                //Inverted matrix B
+                final float B00 = centerPixelValueA * ((pixelsA[bottomIdx] + pixelsA[topIdx] - 2.0f*centerPixelValueA) - 2.0f * centerPixelValueA) - lambda * w;
+                final float B11 = centerPixelValueA * ((pixelsA[rightIdx] + pixelsA[leftIdx] - 2.0f*centerPixelValueA) - 2.0f * centerPixelValueA) - lambda * w;
+                final float B01 = centerPixelValueA * (pixelsA[topLeftIdx] - pixelsA[topRightIdx] - pixelsA[bottomLeftIdx] + pixelsA[bottomRightIdx]) / 4.0f;
+                final float detB = B00 * B11 - B01 * B01;
+                fixedTerms[offset + INV_B00] = B11 / detB;
+                fixedTerms[offset + INV_B01] = -B01 / detB;
+                fixedTerms[offset + INV_B11] = B00 / detB;
+            }
+        }
+    }
+
+    private void refineVectorsRows(int taskIndex, int fromRow, int toRow) {
+        //Liu-Shen us are the vertical (I) displacements, while the Lucas-Kanade us are the horizontal (J) displacements
+        final float[] lsUs = new float[9];
+        final float[] lsVs = new float[9];
+        float error = 0.0f;
+        for (int pixelI = fromRow; pixelI < toRow; pixelI++) {
+            final float wTop = pixelI > 0 ? 1.0f : 0.0f;
+            final float wBottom = pixelI + 1 < imageHeight ? 1.0f : 0.0f;
+            for (int pixelJ = 0; pixelJ < imageWidth; pixelJ++) {
+                final float wLeft = pixelJ > 0 ? 1.0f : 0.0f;
+                final float wRight = pixelJ + 1 < imageWidth ? 1.0f : 0.0f;
+                for (int i = 0; i < 3; i++) {
+                    for (int j = 0; j < 3; j++) {
+                        lsUs[i * 3 + j] = readPixel(vs, pixelI - 1 + i, pixelJ - 1 + j);
+                        lsVs[i * 3 + j] = readPixel(us, pixelI - 1 + i, pixelJ - 1 + j);
+                    }
+                }
+
+                final int offset = (pixelI * imageWidth + pixelJ) * FIXED_TERMS;
+                final float a010 = fixedTerms[offset + A01_0];
+                final float a011 = fixedTerms[offset + A01_1];
+                final float a11 = fixedTerms[offset + A11];
+
+                final float huComposite = lambda * (lsUs[topLeftIdx]*wTop*wLeft + lsUs[topIdx]*wTop + lsUs[topRightIdx]*wTop*wRight +
+                                                    lsUs[leftIdx]*wLeft + lsUs[rightIdx]*wRight +
+                                                    lsUs[bottomLeftIdx]*wBottom*wLeft + lsUs[bottomIdx]*wBottom + lsUs[bottomRightIdx]*wBottom*wRight) +
+                                          fixedTerms[offset + IXT];
+                final float hvComposite = lambda * (lsVs[topLeftIdx]*wTop*wLeft + lsVs[topIdx]*wTop + lsVs[topRightIdx]*wTop*wRight +
+                                                    lsVs[leftIdx]*wLeft + lsVs[rightIdx]*wRight +
+                                                    lsVs[bottomLeftIdx]*wBottom*wLeft + lsVs[bottomIdx]*wBottom + lsVs[bottomRightIdx]*wBottom*wRight) +
+                                          fixedTerms[offset + IYT];
+
+                final float bu = 2.0f * a010 * ((lsUs[bottomIdx] - lsUs[topIdx]) / 2.0f) +
+                                 (a010 * ((lsVs[rightIdx] - lsVs[leftIdx]) / 2.0f) +
+                                 (a011 * ((lsVs[bottomIdx] - lsVs[topIdx]) / 2.0f) +
+                                 (a11 * (lsUs[topIdx] + lsUs[bottomIdx]) +
+                                 (a11 * ((lsVs[topLeftIdx] - lsVs[topRightIdx] - lsVs[bottomLeftIdx] + lsVs[bottomRightIdx]) / 4.0f) +
+                                 huComposite))));
+                final float bv = 2.0f * a011 * ((lsVs[rightIdx] - lsVs[leftIdx]) / 2.0f) +
+                                 (a010 * ((lsUs[rightIdx] - lsUs[leftIdx]) / 2.0f) +
+                                 (a011 * ((lsUs[bottomIdx] - lsUs[topIdx]) / 2.0f) +
+                                 (a11 * (lsVs[leftIdx] + lsVs[rightIdx]) +
+                                 (a11 * ((lsUs[topLeftIdx] - lsUs[topRightIdx] - lsUs[bottomLeftIdx] + lsUs[bottomRightIdx]) / 4.0f) +
+                                 hvComposite))));
+
+                final float unew = -(fixedTerms[offset + INV_B00] * bu + fixedTerms[offset + INV_B01] * bv);
+                final float vnew = -(fixedTerms[offset + INV_B01] * bu + fixedTerms[offset + INV_B11] * bv);
+                error += (float)FastMath.sqrt((unew - lsUs[centerIdx]) * (unew - lsUs[centerIdx]) + (vnew - lsVs[centerIdx]) * (vnew - lsVs[centerIdx]));
+
+                final int idx = pixelI * imageWidth + pixelJ;
+                usNew[idx] = unew;
+                vsNew[idx] = vnew;
+            }
+        }
+        taskErrors[taskIndex] = error;
+    }
+
+    /**
+     * Computes the dense Lucas-Kanade optical flow, followed by the Liu-Shen refinement iterations, updating the
+     * velocity vectors in place. Iterations stop early when the average vector change is below 1e-8.
+     */
+    @Override
+    public void execute() {
+        super.execute();
+
+        if (taskErrors.length < getParallelism()) {
+            taskErrors = new float[getParallelism()];
+        }
+        computeRows(imageHeight, (taskIndex, fromRow, toRow) -> computeFixedTermsRows(fromRow, toRow));
+
+        final int pixels = imageHeight * imageWidth;
+        totalError[0] = Float.MAX_VALUE;
+        for (int iter = 0; iter < iterationsLS && totalError[0] >= 1e-8f; iter++) {
+            Arrays.fill(taskErrors, 0.0f);
+            computeRows(imageHeight, this::refineVectorsRows);
+
+            float error = 0.0f;
+            for (float taskError : taskErrors) {
+                error += taskError;
+            }
+            totalError[0] = error / (float)pixels;
+
+            //Liu-Shen new us are the vertical (I) displacements
+            System.arraycopy(usNew, 0, vs, 0, pixels);
+            System.arraycopy(vsNew, 0, us, 0, pixels);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.jobs.interpolators;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pt.quickLabPIV.jobs.Job;
+import pt.quickLabPIV.jobs.JobAnalyzeException;
+import pt.quickLabPIV.jobs.JobResultEnum;
+
+/**
+ * DenseLiuShenJavaJob computes the dense Lucas-Kanade optical flow followed by the Liu-Shen refinement in the
+ * Java CPU, with the same inputs and results of the {@link DenseLiuShenAparapiJob}.
+ * @author lpnm
+ *
+ */
+public class DenseLiuShenJavaJob extends Job<OpticalFlowInterpolatorInput, OpticalFlowInterpolatorInput> {
+    private static final Logger logger = LoggerFactory.getLogger(DenseLiuShenJavaJob.class);
+    //
+    private DenseLiuShenCpuKernel kernel;
+    private ForkJoinPool pool;
+    private int parallelism = 1;
+    //
+    private int imageHeight;
+    private int imageWidth;
+    private float imageLKA[];
+    private float imageLKB[];
+    private float imageLSA[];
+    private float imageLSB[];
+    private float us[];
+    private float vs[];
+    private float usNew[];
+    private float vsNew[];
+    private float totalError[] = new float[1];
+    private boolean halfPixelOffset;
+    private int windowSizeLK;
+    private int iterationsLK;
+    private float lambdaLS;
+    private int iterationsLS;
+
+    /**
+     * Enables the concurrent computation of bands of image rows.
+     * @param _pool the shared pool to use, or null to compute in the calling thread
+     * @param _parallelism the maximum number of concurrent tasks
+     * @return this job instance
+     */
+    public DenseLiuShenJavaJob setParallelism(ForkJoinPool _pool, int _parallelism) {
+        pool = _pool;
+        parallelism = _parallelism;
+        if (kernel != null) {
+            kernel.setParallelism(pool, parallelism);
+        }
+        return this;
+    }
+
+    @Override
+    public void analyze() {
+        OpticalFlowInterpolatorInput input = getInputParameters(JobResultEnum.JOB_RESULT_OPTICAL_FLOW);
+        us = input.us;
+        vs = input.vs;
+        imageLKA = input.imageA.exportTo1DFloatArray(imageLKA);
+        imageLKB = input.imageB.exportTo1DFloatArray(imageLKB);
+        imageHeight = input.imageA.getHeight();
+        imageWidth = input.imageA.getWidth();
+        halfPixelOffset = input.halfPixelOffset;
+        LiuShenOptions options = (LiuShenOptions)input.options;
+
+        imageLSA = options.imageLSA.exportTo1DFloatArray(imageLSA);
+        imageLSB = options.imageLSB.exportTo1DFloatArray(imageLSB);
+
+        if (us.length != vs.length) {
+            throw new JobAnalyzeException("dense Liu-Shen Java job: Input velocity vectors are invalid, as they do not have the same dimensions");
+        }
+
+        if (imageLKA.length != imageLKB.length) {
+            throw new JobAnalyzeException("dense Liu-Shen Java job: Input images are invalid, as they do not have the same dimensions");
+        }
+
+        if (imageLKA.length != us.length) {
+            throw new JobAnalyzeException("dense Liu-Shen Java job: Image dimensions do not match vectors dimensions");
+        }
+
+        if (imageLSA.length != imageLKA.length || imageLSB.length != imageLKB.length) {
+            throw new JobAnalyzeException("dense Liu-Shen Java job: Liu-Shen images dimensions do not match Lucas-Kanade images dimensions");
+        }
+
+        if (options.windowSizeLK < 3) {
+            throw new JobAnalyzeException("dense Liu-Shen Java job: Window size too small");
+        }
+
+        if (options.windowSizeLK > 31) {
+            throw new JobAnalyzeException("dense Liu-Shen Java job: Window size too large");
+        }
+
+        if (options.iterationsLK <= 0) {
+            throw new JobAnalyzeException("dense Liu-Shen Java job: Number of iterations for Lucas-Kanade must be greater or equal to 1");
+        }
+
+        if (options.iterationsLS <= 0) {
+            throw new JobAnalyzeException("dense Liu-Shen Java job: Number of iterations for Liu-Shen must be greater or equal to 1");
+        }
+
+        windowSizeLK = options.windowSizeLK;
+        iterationsLK = options.iterationsLK;
+        lambdaLS = options.lambdaLS;
+        iterationsLS = options.iterationsLS;
+
+        if (usNew == null || usNew.length < imageHeight * imageWidth) {
+            usNew = new float[imageHeight * imageWidth];
+        }
+
+        if (vsNew == null || vsNew.length < imageHeight * imageWidth) {
+            vsNew = new float[imageHeight * imageWidth];
+        }
+
+        //Kernel image planes are reused while the geometry and options remain the same
+        if (kernel == null || kernel.getImageHeight() != imageHeight || kernel.getImageWidth() != imageWidth ||
+            kernel.windowSize != windowSizeLK || kernel.iterations != iterationsLK ||
+            kernel.getIterationsLS() != iterationsLS || kernel.getLambda() != lambdaLS) {
+            kernel = new DenseLiuShenCpuKernel(windowSizeLK, iterationsLK, imageHeight, imageWidth, iterationsLS, lambdaLS);
+            kernel.setParallelism(pool, parallelism);
+        }
+    }
+
+    @Override
+    public void compute() {
+        kernel.setKernelArgs(imageLKA, imageLKB, imageLSA, imageLSB, us, vs, usNew, vsNew, totalError, halfPixelOffset);
+        kernel.execute();
+        logger.info("Dense Liu-Shen finished computing on the Java CPU with average error: {}", totalError[0]);
+
+        OpticalFlowInterpolatorInput inputConfig = getInputParameters(JobResultEnum.JOB_RESULT_OPTICAL_FLOW);
+        inputConfig.us = us;
+        inputConfig.vs = vs;
+
+        setJobResult(JobResultEnum.JOB_RESULT_OPTICAL_FLOW, inputConfig);
+    }
+
+    @Override
+    public void dispose() {
+        kernel = null;
+    }
+}
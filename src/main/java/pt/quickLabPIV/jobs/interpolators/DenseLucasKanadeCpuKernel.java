@@ -0,0 +1,305 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.jobs.interpolators;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * Pure Java implementation of the dense Lucas-Kanade kernel, with the same semantics of the OpenCL
+ * {@link DenseLucasKanadeGpuKernel}, for computers without OpenCL devices.
+ * <br/>
+ * Instead of reading the image region of each work-group into local memory, the (optionally half-pixel averaged)
+ * image A, with a margin around it, and its derivatives are computed once into image planes, which are then shared
+ * by all the pixels. The planes are reused by the following computations of images with the same dimensions.
+ * <br/>
+ * The image is processed in bands of rows, which are computed concurrently when a pool is provided.
+ * @author lpnm
+ */
+public class DenseLucasKanadeCpuKernel implements IDenseLucasKanadeKernel {
+    private static final int MIN_ROWS_PER_TASK = 8;
+
+    protected final int windowSize;
+    protected final int iterations;
+    protected final int imageHeight;
+    protected final int imageWidth;
+
+    //Image A plane has an additional pixel around the window margin, for computing the derivatives at the margins
+    private final int marginA;
+    private final int paddedWidthA;
+    private final int marginD;
+    private final int paddedWidthD;
+    private final float[] paddedImageA;
+    private final float[] dIs;
+    private final float[] dJs;
+
+    protected float imageA[];
+    protected float imageB[];
+    protected float us[];
+    protected float vs[];
+    protected boolean halfPixelOffset;
+
+    private ForkJoinPool pool;
+    private int parallelism = 1;
+    //Per task column sums of the structure tensor components
+    private float[][] columnSums;
+
+    @FunctionalInterface
+    protected interface RowsTask {
+        void compute(int taskIndex, int fromRow, int toRow);
+    }
+
+    public DenseLucasKanadeCpuKernel(int _windowSize, int _iterations, int _imageHeight, int _imageWidth) {
+        windowSize = _windowSize;
+        iterations = _iterations;
+        imageHeight = _imageHeight;
+        imageWidth = _imageWidth;
+
+        marginD = windowSize / 2;
+        marginA = marginD + 1;
+        paddedWidthA = imageWidth + 2 * marginA;
+        paddedWidthD = imageWidth + 2 * marginD;
+        paddedImageA = new float[(imageHeight + 2 * marginA) * paddedWidthA];
+        dIs = new float[(imageHeight + 2 * marginD) * paddedWidthD];
+        dJs = new float[(imageHeight + 2 * marginD) * paddedWidthD];
+        columnSums = new float[1][3 * paddedWidthD];
+    }
+
+    /**
+     * Enables the concurrent computation of bands of image rows.
+     * @param _pool the pool where to run the concurrent tasks, or null to compute in the calling thread
+     * @param _parallelism the maximum number of concurrent tasks
+     */
+    public void setParallelism(ForkJoinPool _pool, int _parallelism) {
+        pool = _pool;
+        parallelism = pool == null || _parallelism < 1 ? 1 : _parallelism;
+        if (columnSums.length < parallelism) {
+            float[][] oldColumnSums = columnSums;
+            columnSums = new float[parallelism][];
+            for (int index = 0; index < parallelism; index++) {
+                columnSums[index] = index < oldColumnSums.length ? oldColumnSums[index] : new float[3 * paddedWidthD];
+            }
+        }
+    }
+
+    protected int getParallelism() {
+        return parallelism;
+    }
+
+    public int getImageHeight() {
+        return imageHeight;
+    }
+
+    public int getImageWidth() {
+        return imageWidth;
+    }
+
+    @Override
+    public void setKernelArgs(final float _imageA[], final float[] _imageB, final float[] _us, final float[] _vs, boolean _halfPixelOffset) {
+        imageA = _imageA;
+        imageB = _imageB;
+        us = _us;
+        vs = _vs;
+        halfPixelOffset = _halfPixelOffset;
+    }
+
+    /**
+     * Splits the rows into contiguous bands and computes them concurrently, waiting for all the bands to complete.
+     * @param rows the total number of rows
+     * @param task the computation of a band of rows
+     */
+    protected void computeRows(int rows, RowsTask task) {
+        final int tasks = pool == null ? 1 : FastMath.min(parallelism, rows / MIN_ROWS_PER_TASK);
+        if (tasks <= 1) {
+            task.compute(0, 0, rows);
+            return;
+        }
+
+        List<ForkJoinTask<?>> submittedTasks = new ArrayList<ForkJoinTask<?>>(tasks);
+        final int rowsPerTask = rows / tasks;
+        final int remainingRows = rows % tasks;
+        int fromRow = 0;
+        for (int taskIndex = 0; taskIndex < tasks; taskIndex++) {
+            final int taskFromRow = fromRow;
+            final int taskToRow = fromRow + rowsPerTask + (taskIndex < remainingRows ? 1 : 0);
+            final int index = taskIndex;
+            submittedTasks.add(pool.submit(() -> task.compute(index, taskFromRow, taskToRow)));
+            fromRow = taskToRow;
+        }
+
+        //Wait for all tasks to complete, before reporting any failure
+        RuntimeException failure = null;
+        for (ForkJoinTask<?> submittedTask : submittedTasks) {
+            try {
+                submittedTask.join();
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    protected final float readPixel(float[] image, int i, int j) {
+        int idx = FastMath.min(FastMath.max(i, 0), imageHeight-1) * imageWidth + FastMath.min(FastMath.max(j, 0), imageWidth-1);
+        return image[idx];
+    }
+
+    protected final float readPixelWithWarp(float[] img, float locI, float locJ) {
+        int i = (int) locI;
+        int j = (int) locJ;
+
+        float deltaI = locI - i;
+        float deltaJ = locJ - j;
+
+        int signI = deltaI < 0 ? 1 : 0;
+        i -= signI;
+        deltaI += signI;
+
+        int signJ = deltaJ < 0 ? 1 : 0;
+        j -= signJ;
+        deltaJ += signJ;
+
+        return (1.0f - deltaI) * ((1.0f - deltaJ) * readPixel(img, i  ,j) + deltaJ * readPixel(img, i  ,j+1)) +
+                       deltaI * ((1.0f - deltaJ) * readPixel(img, i+1,j) + deltaJ * readPixel(img, i+1,j+1));
+    }
+
+    private void computeImageARows(int fromRow, int toRow) {
+        for (int row = fromRow; row < toRow; row++) {
+            final int i = row - marginA;
+            final int rowOffset = row * paddedWidthA;
+            for (int col = 0; col < paddedWidthA; col++) {
+                final int j = col - marginA;
+                if (halfPixelOffset) {
+                    paddedImageA[rowOffset + col] = (readPixel(imageA, i, j) + readPixel(imageA, i, j + 1) +
+                                                     readPixel(imageA, i + 1, j) + readPixel(imageA, i + 1, j + 1)) / 4.0f;
+                } else {
+                    paddedImageA[rowOffset + col] = readPixel(imageA, i, j);
+                }
+            }
+        }
+    }
+
+    private void computeDerivativesRows(int fromRow, int toRow) {
+        for (int row = fromRow; row < toRow; row++) {
+            //Derivatives plane has one less pixel of margin than the image A plane
+            final int offsetTop = row * paddedWidthA;
+            final int offsetCenter = offsetTop + paddedWidthA;
+            final int offsetBottom = offsetCenter + paddedWidthA;
+            final int rowOffset = row * paddedWidthD;
+            for (int col = 0; col < paddedWidthD; col++) {
+                final float topLeft = paddedImageA[offsetTop + col];
+                final float top = paddedImageA[offsetTop + col + 1];
+                final float topRight = paddedImageA[offsetTop + col + 2];
+                final float left = paddedImageA[offsetCenter + col];
+                final float right = paddedImageA[offsetCenter + col + 2];
+                final float bottomLeft = paddedImageA[offsetBottom + col];
+                final float bottom = paddedImageA[offsetBottom + col + 1];
+                final float bottomRight = paddedImageA[offsetBottom + col + 2];
+
+                dJs[rowOffset + col] = (topLeft + bottomLeft - topRight - bottomRight) * (3.0f/32.0f) + (left - right) * 10.0f/32.0f;
+                dIs[rowOffset + col] = (topRight + topLeft - bottomRight - bottomLeft) * (3.0f/32.0f) + (top - bottom) * 10.0f/32.0f;
+            }
+        }
+    }
+
+    private void computeLucasKanadeRows(int taskIndex, int fromRow, int toRow) {
+        final float[] sums = columnSums[taskIndex];
+        final int sumsA01Offset = paddedWidthD;
+        final int sumsA11Offset = 2 * paddedWidthD;
+        final float offset = halfPixelOffset ? 0.5f : 0.0f;
+
+        for (int i = fromRow; i < toRow; i++) {
+            //Sum the structure tensor components along the window rows, for every column
+            for (int col = 0; col < paddedWidthD; col++) {
+                float a00 = 0.0f;
+                float a01 = 0.0f;
+                float a11 = 0.0f;
+                for (int windowI = 0; windowI < windowSize; windowI++) {
+                    final int idx = (i + windowI) * paddedWidthD + col;
+                    final float dJ = dJs[idx];
+                    final float dI = dIs[idx];
+                    a00 += dJ * dJ;
+                    a01 += dJ * dI;
+                    a11 += dI * dI;
+                }
+                sums[col] = a00;
+                sums[sumsA01Offset + col] = a01;
+                sums[sumsA11Offset + col] = a11;
+            }
+
+            for (int j = 0; j < imageWidth; j++) {
+                float A00 = 0.0f;
+                float A01 = 0.0f;
+                float A11 = 0.0f;
+                for (int windowJ = 0; windowJ < windowSize; windowJ++) {
+                    A00 += sums[j + windowJ];
+                    A01 += sums[sumsA01Offset + j + windowJ];
+                    A11 += sums[sumsA11Offset + j + windowJ];
+                }
+
+                final float detA = A00 * A11 - A01 * A01;
+                boolean valid = detA >= 1.192092896e-7f;
+                final float invA00 = A11 / detA;
+                final float invA01 = -A01 / detA;
+                final float invA11 = A00 / detA;
+
+                final int pixelIdx = i * imageWidth + j;
+                float locI = i + vs[pixelIdx] + offset;
+                float locJ = j + us[pixelIdx] + offset;
+
+                for (int iter = 0; iter < iterations && valid; iter++) {
+                    if (locI < 0 || locI >= imageHeight + marginD || locJ < 0 || locJ >= imageWidth + marginD) {
+                        break;
+                    }
+
+                    float b0 = 0.0f;
+                    float b1 = 0.0f;
+                    for (int windowI = 0; windowI < windowSize; windowI++) {
+                        final int rowOffsetA = (i + windowI + 1) * paddedWidthA + j + 1;
+                        final int rowOffsetD = (i + windowI) * paddedWidthD + j;
+                        for (int windowJ = 0; windowJ < windowSize; windowJ++) {
+                            float dT = readPixelWithWarp(imageB, locI - marginD + windowI, locJ - marginD + windowJ) -
+                                       paddedImageA[rowOffsetA + windowJ];
+                            b0 += dT * dJs[rowOffsetD + windowJ];
+                            b1 += dT * dIs[rowOffsetD + windowJ];
+                        }
+                    }
+
+                    final float incU = b0 * invA00 + b1 * invA01;
+                    final float incV = b0 * invA01 + b1 * invA11;
+                    if (FastMath.abs(incU) < 1e-3f && FastMath.abs(incV) < 1e-3f) {
+                        valid = false;
+                    } else {
+                        locI += incV;
+                        locJ += incU;
+                    }
+                }
+
+                vs[pixelIdx] = locI - i - offset;
+                us[pixelIdx] = locJ - j - offset;
+            }
+        }
+    }
+
+    /**
+     * Computes the dense Lucas-Kanade optical flow for every pixel, updating the velocity vectors in place.
+     */
+    public void execute() {
+        computeRows(imageHeight + 2 * marginA, (taskIndex, fromRow, toRow) -> computeImageARows(fromRow, toRow));
+        computeRows(imageHeight + 2 * marginD, (taskIndex, fromRow, toRow) -> computeDerivativesRows(fromRow, toRow));
+        computeRows(imageHeight, this::computeLucasKanadeRows);
+    }
+}
@@ -0,0 +1,120 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.jobs.interpolators;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pt.quickLabPIV.jobs.Job;
+import pt.quickLabPIV.jobs.JobAnalyzeException;
+import pt.quickLabPIV.jobs.JobResultEnum;
+
+/**
+ * DenseLucasKanadeJavaJob computes the dense Lucas-Kanade optical flow in the Java CPU, with the same inputs and
+ * results of the {@link DenseLucasKanadeAparapiJob}.
+ * @author lpnm
+ *
+ */
+public class DenseLucasKanadeJavaJob extends Job<OpticalFlowInterpolatorInput, OpticalFlowInterpolatorInput> {
+    private static final Logger logger = LoggerFactory.getLogger(DenseLucasKanadeJavaJob.class);
+    //
+    private DenseLucasKanadeCpuKernel kernel;
+    private ForkJoinPool pool;
+    private int parallelism = 1;
+    //
+    private int imageHeight;
+    private int imageWidth;
+    private float imageA[];
+    private float imageB[];
+    private float us[];
+    private float vs[];
+    private boolean halfPixelOffset;
+    private int windowSize;
+    private int iterations;
+
+    /**
+     * Enables the concurrent computation of bands of image rows.
+     * @param _pool the shared pool to use, or null to compute in the calling thread
+     * @param _parallelism the maximum number of concurrent tasks
+     * @return this job instance
+     */
+    public DenseLucasKanadeJavaJob setParallelism(ForkJoinPool _pool, int _parallelism) {
+        pool = _pool;
+        parallelism = _parallelism;
+        if (kernel != null) {
+            kernel.setParallelism(pool, parallelism);
+        }
+        return this;
+    }
+
+    @Override
+    public void analyze() {
+        OpticalFlowInterpolatorInput input = getInputParameters(JobResultEnum.JOB_RESULT_OPTICAL_FLOW);
+        us = input.us;
+        vs = input.vs;
+        imageA = input.imageA.exportTo1DFloatArray(imageA);
+        imageB = input.imageB.exportTo1DFloatArray(imageB);
+        imageHeight = input.imageA.getHeight();
+        imageWidth = input.imageA.getWidth();
+        halfPixelOffset = input.halfPixelOffset;
+        LucasKanadeOptions options = (LucasKanadeOptions)input.options;
+
+        if (us.length != vs.length) {
+            throw new JobAnalyzeException("dense Lucas-Kanade Java job: Input velocity vectors are invalid, as they do not have the same dimensions");
+        }
+
+        if (imageA.length != imageB.length) {
+            throw new JobAnalyzeException("dense Lucas-Kanade Java job: Input images are invalid, as they do not have the same dimensions");
+        }
+
+        if (imageA.length != us.length) {
+            throw new JobAnalyzeException("dense Lucas-Kanade Java job: Image dimensions do not match vectors dimensions");
+        }
+
+        if (options.windowSize < 3) {
+            throw new JobAnalyzeException("dense Lucas-Kanade Java job: Window size too small");
+        }
+
+        if (options.windowSize > 31) {
+            throw new JobAnalyzeException("dense Lucas-Kanade Java job: Window size too large");
+        }
+
+        if (options.iterations <= 0) {
+            throw new JobAnalyzeException("dense Lucas-Kanade Java job: Number of iterations must greater or equal to 1");
+        }
+
+        windowSize = options.windowSize;
+        iterations = options.iterations;
+
+        //Kernel image planes are reused while the geometry and options remain the same
+        if (kernel == null || kernel.getImageHeight() != imageHeight || kernel.getImageWidth() != imageWidth ||
+            kernel.windowSize != windowSize || kernel.iterations != iterations) {
+            kernel = new DenseLucasKanadeCpuKernel(windowSize, iterations, imageHeight, imageWidth);
+            kernel.setParallelism(pool, parallelism);
+        }
+    }
+
+    @Override
+    public void compute() {
+        kernel.setKernelArgs(imageA, imageB, us, vs, halfPixelOffset);
+        kernel.execute();
+        logger.info("Dense Lucas-Kanade finished computing on the Java CPU");
+
+        OpticalFlowInterpolatorInput inputConfig = getInputParameters(JobResultEnum.JOB_RESULT_OPTICAL_FLOW);
+        inputConfig.us = us;
+        inputConfig.vs = vs;
+
+        setJobResult(JobResultEnum.JOB_RESULT_OPTICAL_FLOW, inputConfig);
+    }
+
+    @Override
+    public void dispose() {
+        kernel = null;
+    }
+}
@@ -8,10 +8,17 @@ package pt.quickLabPIV.jobs.managers;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.math3.util.FastMath;
 
@@ -20,6 +27,7 @@ import com.aparapi.internal.kernel.KernelManager;
 
 import pt.quickLabPIV.DeviceRuntimeConfiguration;
 import pt.quickLabPIV.ExecutionStatus;
+import pt.quickLabPIV.FrameBatchScheduler;
 import pt.quickLabPIV.InputFiles;
 import pt.quickLabPIV.PIVContextSingleton;
 import pt.quickLabPIV.PIVInputParameters;
@@ -32,6 +40,7 @@ import pt.quickLabPIV.jobs.Job;
 import pt.quickLabPIV.jobs.JobComputeException;
 import pt.quickLabPIV.jobs.JobResultEnum;
 import pt.quickLabPIV.jobs.LocalPIVOpenCLGpuJob;
+import pt.quickLabPIV.jobs.xcorr.AggregatedCrossCorrelationJob;
 import pt.quickLabPIV.jobs.xcorr.CrossCorrelationFFTBasicJob;
 import pt.quickLabPIV.jobs.xcorr.CrossCorrelationFFTParBlockStdJob;
 import pt.quickLabPIV.jobs.xcorr.CrossCorrelationFFTParStdJob;
@@ -52,9 +61,14 @@ public class OpenClGpuManager extends Job<ManagerParameters, PIVResults> {
     
 	private InputFiles inputFiles;
 	private int numberOfThreads;
-
+	private FrameBatchScheduler scheduler;
+	private ExecutorService imageReaderService;
+	private ForkJoinPool tilesPool;
+	private int tilesParallelism;
+	private int interpolationParallelism;
 	
 	private List<LocalPIVOpenCLGpuJob> gpuJobs;
+	private List<Integer> gpuJobsThreadIdx;
 	
 	public OpenClGpuManager(InputFiles inputFiles) {
 		this.inputFiles = inputFiles;
@@ -68,17 +82,132 @@ public class OpenClGpuManager extends Job<ManagerParameters, PIVResults> {
 	}
 	
 	public void analyze() {		
-		List<InputFiles> inputFilesPerThread = inputFiles.splitIntoThreads();
+		scheduler = new FrameBatchScheduler(inputFiles, numberOfThreads);
+		
+        PIVRunParameters runParameters = PIVContextSingleton.getSingleton().getPIVRunParameters();
+        if (runParameters.getStreamingExporter() != null) {
+            runParameters.getStreamingExporter().setMaxFramesInFlight(scheduler.getMaxFramesInFlight());
+        }
+		if (runParameters.getImagePrefetchDepth() > 0 && runParameters.getImageReaderThreads() > 0) {
+		    imageReaderService = Executors.newFixedThreadPool(runParameters.getImageReaderThreads(), new ThreadFactory() {
+		        private final AtomicInteger threadCount = new AtomicInteger(0);
+		        
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "PIVImageReader-" + threadCount.getAndIncrement());
+                    t.setDaemon(true);
+                    return t;
+                }
+		    });
+		}
 		
 		gpuJobs = new ArrayList<LocalPIVOpenCLGpuJob>(numberOfThreads);
+		gpuJobsThreadIdx = new ArrayList<Integer>(numberOfThreads);
 		for (int i = 0; i < numberOfThreads; i++) {
-			LocalPIVOpenCLGpuJob localJob = new LocalPIVOpenCLGpuJob();
-			if (inputFilesPerThread.get(i).size() > 0) {
-    			localJob.setInputImages(inputFilesPerThread.get(i));
+			if (scheduler.isThreadActive(i)) {
+			    LocalPIVOpenCLGpuJob localJob = new LocalPIVOpenCLGpuJob();
+    			localJob.setFrameScheduler(scheduler);
+    			localJob.setImageReaderService(imageReaderService);
     			localJob.analyze();
     			gpuJobs.add(localJob);
+    			gpuJobsThreadIdx.add(i);
 			}
 		}
+		
+		tilesParallelism = computeTilesParallelism(runParameters, gpuJobs.size());
+		interpolationParallelism = computeInterpolationParallelism(runParameters, gpuJobs.size());
+		//Aggregated Java cross-correlations are computed by a single thread, while the others wait, so the pool is always required
+		if (tilesParallelism > 1 || interpolationParallelism > 1 ||
+		    (runParameters.isAggregatedCrossCorrelation() && !runParameters.isUseOpenCL() && gpuJobs.size() > 1)) {
+		    tilesPool = new ForkJoinPool(FastMath.min(FastMath.max(tilesParallelism, interpolationParallelism) * gpuJobs.size(), 
+		                                              Runtime.getRuntime().availableProcessors()));
+		}
+	}
+	
+	/**
+	 * Selects between frame level and tile level parallelism for the Java only cross-correlation. When there are less
+	 * frame threads than available cores, e.g. a few frames, or a single frame preview, the remaining cores are used
+	 * to compute the tiles of each frame concurrently.
+	 * @param runParameters the PIV run parameters
+	 * @param frameThreads the number of PIV threads that will process frames
+	 * @return the number of tile groups to process concurrently by each frame thread
+	 */
+	private static int computeTilesParallelism(PIVRunParameters runParameters, int frameThreads) {
+	    if (runParameters.isUseOpenCL() || frameThreads == 0) {
+	        return 1;
+	    }
+	    
+	    int parallelism = runParameters.getTilesParallelism();
+	    if (parallelism <= 0) {
+	        parallelism = Runtime.getRuntime().availableProcessors() / frameThreads;
+	    }
+	    
+	    return parallelism < 1 ? 1 : parallelism;
+	}
+	
+	/**
+	 * Selects the number of concurrent interpolation tasks for each frame thread, which applies both to the Java only and to
+	 * the OpenCL cross-correlation, since the cross-correlation peaks are always interpolated in Java.
+	 * @param runParameters the PIV run parameters
+	 * @param frameThreads the number of PIV threads that will process frames
+	 * @return the number of concurrent interpolation tasks for each frame thread
+	 */
+	private static int computeInterpolationParallelism(PIVRunParameters runParameters, int frameThreads) {
+	    if (frameThreads == 0) {
+	        return 1;
+	    }
+	    
+	    int parallelism = runParameters.getInterpolationParallelism();
+	    if (parallelism <= 0) {
+	        parallelism = Runtime.getRuntime().availableProcessors() / frameThreads;
+	    }
+	    
+	    return parallelism < 1 ? 1 : parallelism;
+	}
+	
+	/**
+	 * Creates the array holding the cross-correlation job of each adaptive level, since generic arrays cannot be created directly.
+	 * @param adaptiveLevels the number of adaptive levels
+	 * @return the empty cross-correlation jobs array
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Job<List<Tile>, XCorrelationResults>[] createCrossCorrelationJobs(int adaptiveLevels) {
+	    return new Job[adaptiveLevels];
+	}
+	
+	/**
+	 * Creates the aggregated cross-correlation jobs for each compute device, one per adaptive level, which are shared by
+	 * all the PIV threads assigned to the device. Java only cross-correlations are all aggregated together.
+	 * @param runParameters the PIV run parameters
+	 * @param devicesByThreadIdx the compute device assigned to each PIV thread, or null for the Java only cross-correlation
+	 * @param adaptiveLevels the number of adaptive levels
+	 * @return the aggregated jobs for each adaptive level, by compute device
+	 */
+	private Map<ComputationDevice, Job<List<Tile>, XCorrelationResults>[]> createAggregatedJobs(PIVRunParameters runParameters, ComputationDevice[] devicesByThreadIdx,
+	        int adaptiveLevels) {
+	    Map<ComputationDevice, Integer> threadsByDevice = new HashMap<ComputationDevice, Integer>();
+	    for (int jobIndex : gpuJobsThreadIdx) {
+	        threadsByDevice.merge(devicesByThreadIdx[jobIndex], 1, Integer::sum);
+	    }
+	    
+	    Map<ComputationDevice, Job<List<Tile>, XCorrelationResults>[]> jobsByDevice = new HashMap<ComputationDevice, Job<List<Tile>, XCorrelationResults>[]>();
+	    for (Map.Entry<ComputationDevice, Integer> entry : threadsByDevice.entrySet()) {
+	        final int threads = entry.getValue();
+	        Job<List<Tile>, XCorrelationResults>[] jobs = createCrossCorrelationJobs(adaptiveLevels);
+	        for (int i = 0; i < adaptiveLevels; i++) {
+	            Job<List<Tile>, XCorrelationResults> regularJob;
+	            if (runParameters.isUseOpenCL()) {
+	                regularJob = new CrossCorrelationRealFFTParStdJob(false, entry.getKey(), null).setEmulationMode(EmulationModeEnum.GPU);
+	            } else {
+	                //The pool cores of the waiting threads are used to compute the aggregated tiles
+	                regularJob = new CrossCorrelationSoftRealFFTJob().setTilesParallelism(tilesPool, tilesParallelism * threads);
+	            }
+	            jobs[i] = new AggregatedCrossCorrelationJob(regularJob, threads, runParameters.getAggregatedCrossCorrelationTimeoutMillis());
+	        }
+	        jobsByDevice.put(entry.getKey(), jobs);
+	    }
+	    
+	    return jobsByDevice;
 	}
 	
 	@SuppressWarnings("unchecked")
@@ -116,18 +245,27 @@ public class OpenClGpuManager extends Job<ManagerParameters, PIVResults> {
 		} else {
 		    execStatus.continueAt(inputFiles.getAbsoluteStartFrame());
 		}
+		Map<ComputationDevice, Job<List<Tile>, XCorrelationResults>[]> aggregatedJobsByDevice = null;
+		if (runParameters.isAggregatedCrossCorrelation()) {
+		    aggregatedJobsByDevice = createAggregatedJobs(runParameters, jobComputationDevicesByThreadIdx, adaptiveLevels);
+		}
+		
 		Iterator<LocalPIVOpenCLGpuJob> jobsIter = gpuJobs.iterator();
-		int jobIndex = 0;
+		Iterator<Integer> jobsThreadIdxIter = gpuJobsThreadIdx.iterator();
 		while (jobsIter.hasNext()) {
 			LocalPIVOpenCLGpuJob job = jobsIter.next();
+			int jobIndex = jobsThreadIdxIter.next();
 			
-			Job<List<Tile>, XCorrelationResults>[] openCLJobs = new Job[adaptiveLevels];
+			Job<List<Tile>, XCorrelationResults>[] openCLJobs = createCrossCorrelationJobs(adaptiveLevels);
 			for (int i = 0; i < adaptiveLevels; i++) {
-			    if (runParameters.isUseOpenCL()) {
+			    if (aggregatedJobsByDevice != null) {
+			        //Tiles of the threads sharing the same device are cross-correlated together
+			        openCLJobs[i] = aggregatedJobsByDevice.get(jobComputationDevicesByThreadIdx[jobIndex])[i];
+			    } else if (runParameters.isUseOpenCL()) {
 			        openCLJobs[i] = new CrossCorrelationRealFFTParStdJob(false, jobComputationDevicesByThreadIdx[jobIndex], null).setEmulationMode(EmulationModeEnum.GPU);
 			    } else {
 			        //Java CPU based Real FFT Cross Correlation
-			        openCLJobs[i] = new CrossCorrelationSoftRealFFTJob();
+			        openCLJobs[i] = new CrossCorrelationSoftRealFFTJob().setTilesParallelism(tilesPool, tilesParallelism);
 			    }
 			    //OpenCL accelerated Cross correlation by definition
 			    //openCLJobs[i] = new CrossCorrelationJob(false, jobComputationDevices[jobIndex], null);
@@ -139,22 +277,22 @@ public class OpenClGpuManager extends Job<ManagerParameters, PIVResults> {
 			    //openCLJobs[i] = new CrossCorrelationFFTBasicJob(false, jobComputationDevices[jobIndex], null);
 			}
 			
-			ManagerParameters parameters = new ManagerParameters(jobIndex, openCLJobs, true);
+			//Aggregated jobs require all tiles to have the same geometry, thus one per adaptive level
+			ManagerParameters parameters = new ManagerParameters(jobIndex, openCLJobs, aggregatedJobsByDevice == null);
 			job.setParameters(parameters);
+			job.setTilesParallelism(tilesPool, tilesParallelism);
+			job.setInterpolationParallelism(tilesPool, interpolationParallelism);
 			job.compute();
 			Future<PIVResults> future = job.getJobResult(JobResultEnum.JOB_RESULT_PIV);
 			jobsFutures.add(future);
-			jobIndex++;
 		}
 
 		try {
     		Iterator<Future<PIVResults>> futuresIter = jobsFutures.iterator();
-    		PIVResults lastResult = null;
     		while (futuresIter.hasNext()) {
     			Future<PIVResults> future = futuresIter.next();
-    			PIVResults result = null;
     			try {
-    				result = future.get();
+    				future.get();
                     if (runParameters.isCancelRequested()) {
                         return;
                     }
@@ -165,22 +303,32 @@ public class OpenClGpuManager extends Job<ManagerParameters, PIVResults> {
     			} catch (ExecutionException e) {
     				throw new JobComputeException(e);
     			}
-    			
-    			if (lastResult != null) {
-    				lastResult.concatenate(result);
-    			} else {
-    				setJobResult(JobResultEnum.JOB_RESULT_PIV, result);
-    			}
-    			
-    			lastResult = result;
     		}
+    		
+    		//Frames may have been computed by any thread, in any order, so results are gathered per batch in frame order
+    		setJobResult(JobResultEnum.JOB_RESULT_PIV, scheduler.getOrderedResults());
     		execStatus.end();
+    		execStatus.logStageTimings();
+    		if (runParameters.getStageTimingsFilename() != null) {
+    		    //Timers accumulate across continued executions, so the summary is rewritten with the totals so far
+    		    execStatus.exportStageTimings(runParameters.getStageTimingsFilename());
+    		}
 		} finally {
     	    jobsIter = gpuJobs.iterator();
     		while (jobsIter.hasNext()) {
     			LocalPIVOpenCLGpuJob job = jobsIter.next();
     			job.dispose();
     		}
+    		
+    		if (imageReaderService != null) {
+    		    imageReaderService.shutdownNow();
+    		    imageReaderService = null;
+    		}
+    		
+    		if (tilesPool != null) {
+    		    tilesPool.shutdown();
+    		    tilesPool = null;
+    		}
 		}
 		
 	}
@@ -10,7 +10,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
+import org.apache.commons.math3.util.FastMath;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -20,6 +23,7 @@ import pt.quickLabPIV.iareas.Tile;
 import pt.quickLabPIV.iareas.replacement.IVectorReplacement;
 import pt.quickLabPIV.iareas.replacement.VectorReplacementFactoryEnum;
 import pt.quickLabPIV.iareas.validation.IVectorValidator;
+import pt.quickLabPIV.iareas.validation.NormalizedMedianValidator;
 import pt.quickLabPIV.iareas.validation.VectorValidatorException;
 import pt.quickLabPIV.iareas.validation.VectorValidatorFactoryEnum;
 import pt.quickLabPIV.jobs.Job;
@@ -35,13 +39,24 @@ interface VisitorInterface {
 
 public class VectorValidatorJob extends Job<VectorValidatorJobParameters,IterationStepTiles> {
     private static final Logger logger = LoggerFactory.getLogger(VectorValidatorJob.class);
+    private static final int MIN_ROWS_PER_TASK = 16;
     
     private IVectorValidator[] validatorStrategies;
     private IVectorReplacement[] replacementStrategies;
     private VectorValidatorJobParameters parameters;
     private VectorValidatorConfiguration configuration;
     private int totalCorrectedVectors = 0;
+    private int lastCorrectedVectors = 0;
+    private int lastInvalidVectors = 0;
     private boolean validationDisabled;
+    private ForkJoinPool pool;
+    private NormalizedMedianValidator[] taskValidators = new NormalizedMedianValidator[0];
+    private MaxCrossResult[][] arrayedCrossResults = new MaxCrossResult[0][0];
+    private boolean[][] visitedMatrix = new boolean[0][0];
+    private float[] tilesU = new float[0];
+    private float[] tilesV = new float[0];
+    private boolean[] tilesMasked = new boolean[0];
+    private boolean[] tilesInvalid = new boolean[0];
     
     public VectorValidatorJob() {
         PIVContextSingleton singleton = PIVContextSingleton.getSingleton();
@@ -53,10 +68,32 @@ public class VectorValidatorJob extends Job<VectorValidatorJobParameters,Iterati
             configuration = (VectorValidatorConfiguration)configurationObject;
             validatorStrategies = VectorValidatorFactoryEnum.createValidator(VectorValidatorFactoryEnum.CombinedValidator);
             replacementStrategies = VectorReplacementFactoryEnum.createReplacer(VectorReplacementFactoryEnum.CombinedReplacement);
+            if (validatorStrategies.length > 0 && validatorStrategies[0] instanceof NormalizedMedianValidator) {
+                taskValidators = new NormalizedMedianValidator[] { (NormalizedMedianValidator)validatorStrategies[0] };
+            }
         } else {
             validationDisabled = true;
         }
     }
+
+    /**
+     * Enables the concurrent validation of the rows of tiles, when the first validator is a normalized median validator.
+     * @param _pool the shared pool to use, or null to validate in the calling thread
+     * @param parallelism the maximum number of concurrent tasks
+     * @return this job
+     */
+    public VectorValidatorJob setParallelism(ForkJoinPool _pool, int parallelism) {
+        pool = _pool;
+        if (taskValidators.length > 0) {
+            NormalizedMedianValidator validator = taskValidators[0];
+            taskValidators = new NormalizedMedianValidator[pool == null || parallelism < 1 ? 1 : parallelism];
+            taskValidators[0] = validator;
+            for (int index = 1; index < taskValidators.length; index++) {
+                taskValidators[index] = validator.duplicate();
+            }
+        }
+        return this;
+    }
     
     @Override
     public void analyze() {
@@ -122,7 +159,14 @@ public class VectorValidatorJob extends Job<VectorValidatorJobParameters,Iterati
         }
         
         int visitedTiles = 0;
-        boolean checkMatrix[][] = new boolean[stepTiles.getNumberOfTilesInI()][stepTiles.getNumberOfTilesInJ()];
+        if (visitedMatrix.length != stepTiles.getNumberOfTilesInI() || visitedMatrix[0].length != stepTiles.getNumberOfTilesInJ()) {
+            visitedMatrix = new boolean[stepTiles.getNumberOfTilesInI()][stepTiles.getNumberOfTilesInJ()];
+        } else {
+            for (boolean[] row : visitedMatrix) {
+                Arrays.fill(row, false);
+            }
+        }
+        final boolean checkMatrix[][] = visitedMatrix;
         
         int moves[] = new int[4]; //Right, Down, Left, Up
         
@@ -239,18 +283,98 @@ public class VectorValidatorJob extends Job<VectorValidatorJobParameters,Iterati
         return neighbors;
     }
     
+    private void initialValidation(IterationStepTiles stepTiles) {
+        final int tilesInI = stepTiles.getNumberOfTilesInI();
+        final int tilesInJ = stepTiles.getNumberOfTilesInJ();
+        final int totalTiles = tilesInI * tilesInJ;
+        if (tilesU.length < totalTiles) {
+            tilesU = new float[totalTiles];
+            tilesV = new float[totalTiles];
+            tilesMasked = new boolean[totalTiles];
+            tilesInvalid = new boolean[totalTiles];
+        }
+        for (int i = 0; i < tilesInI; i++) {
+            for (int j = 0; j < tilesInJ; j++) {
+                Tile tile = stepTiles.getTile(i, j);
+                tilesU[i * tilesInJ + j] = tile.getDisplacementU();
+                tilesV[i * tilesInJ + j] = tile.getDisplacementV();
+                tilesMasked[i * tilesInJ + j] = tile.isMaskedDisplacement();
+            }
+        }
+
+        int tasks = pool == null ? 1 : FastMath.min(taskValidators.length, tilesInI / MIN_ROWS_PER_TASK);
+        if (tasks <= 1) {
+            taskValidators[0].validateVectors(tilesU, tilesV, tilesMasked, tilesInI, tilesInJ, 0, tilesInI, tilesInvalid);
+        } else {
+            List<ForkJoinTask<?>> submittedTasks = new ArrayList<ForkJoinTask<?>>(tasks);
+            int rowsPerTask = tilesInI / tasks;
+            int remainingRows = tilesInI % tasks;
+            int fromRow = 0;
+            for (int taskIndex = 0; taskIndex < tasks; taskIndex++) {
+                final NormalizedMedianValidator validator = taskValidators[taskIndex];
+                final int taskFromRow = fromRow;
+                final int taskToRow = fromRow + rowsPerTask + (taskIndex < remainingRows ? 1 : 0);
+                submittedTasks.add(pool.submit(() -> validator.validateVectors(tilesU, tilesV, tilesMasked, tilesInI, tilesInJ, 
+                                                                               taskFromRow, taskToRow, tilesInvalid)));
+                fromRow = taskToRow;
+            }
+
+            //Wait for all tasks to complete, before reporting any failure
+            RuntimeException failure = null;
+            for (ForkJoinTask<?> task : submittedTasks) {
+                try {
+                    task.join();
+                } catch (RuntimeException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        //Only tiles with cross-correlation results take part in the validation
+        for (int i = 0; i < tilesInI; i++) {
+            for (int j = 0; j < tilesInJ; j++) {
+                if (arrayedCrossResults[i][j] == null) {
+                    continue;
+                }
+                Tile tile = stepTiles.getTile(i, j);
+                if (!tilesMasked[i * tilesInJ + j]) {
+                    tile.setInvalidDisplacement(tilesInvalid[i * tilesInJ + j]);
+                }
+                if (!tile.isInvalidDisplacement()) {
+                    tile.setLockedValidationState(true);
+                }
+            }
+        }
+    }
+
     @Override
     public void compute() {
+        lastCorrectedVectors = 0;
+        lastInvalidVectors = 0;
         if (validationDisabled || validatorStrategies.length == 0) {
             setJobResult(JobResultEnum.JOB_RESULT_VALIDATED_VECTORS, parameters.stepTiles);
             return;
         }
         
+        final int previousTotalCorrectedVectors = totalCorrectedVectors;
+        
         List<MaxCrossResult> tileMaxResults = new ArrayList<MaxCrossResult>(1);
         IterationStepTiles stepTiles = parameters.stepTiles;
         List<MaxCrossResult> maxResults = parameters.maxResults;
         
-        MaxCrossResult[][] arrayedCrossResults = new MaxCrossResult[stepTiles.getNumberOfTilesInI()][stepTiles.getNumberOfTilesInJ()];
+        if (arrayedCrossResults.length != stepTiles.getNumberOfTilesInI() || arrayedCrossResults[0].length != stepTiles.getNumberOfTilesInJ()) {
+            arrayedCrossResults = new MaxCrossResult[stepTiles.getNumberOfTilesInI()][stepTiles.getNumberOfTilesInJ()];
+        } else {
+            for (MaxCrossResult[] row : arrayedCrossResults) {
+                Arrays.fill(row, null);
+            }
+        }
         //Backup original displacement vector with main peak value and previously accumulated displacement,
         //while also initializing the validation state.
         final Tile[][] neighbors = new Tile[3][3];
@@ -280,7 +404,12 @@ public class VectorValidatorJob extends Job<VectorValidatorJobParameters,Iterati
             return r;
         };
         
-        arrayedCrossResults = circularVisitor(maxResults.size(), stepTiles, arrayedCrossResults, initializerVisitor, null);
+        if (taskValidators.length > 0) {
+            //The initial validation only updates the validation state of each tile, thus it doesn't depend on the visiting order
+            initialValidation(stepTiles);
+        } else {
+            arrayedCrossResults = circularVisitor(maxResults.size(), stepTiles, arrayedCrossResults, initializerVisitor, null);
+        }
         //arrayedCrossResults = sweepVisitor(maxResults.size(), stepTiles, arrayedCrossResults, initializerVisitor, null);
 
         VisitorInterface validatorVisitor = (MaxCrossResult r, Object statusObj) -> {
@@ -388,9 +517,20 @@ public class VectorValidatorJob extends Job<VectorValidatorJobParameters,Iterati
         }
         logger.warn("Left validation in {} iterations with {} invalid vectors and {} vector corrections", 
                 currentAttempt, invalids, totalCorrectedVectors);
+        lastCorrectedVectors = totalCorrectedVectors - previousTotalCorrectedVectors;
+        lastInvalidVectors = invalids;
         
+        //Masked tiles are skipped before the cross-correlation, thus they have no MaxResults, but they aren't validated either
+        int maskedTiles = 0;
+        for (int i = 0; i < stepTiles.getNumberOfTilesInI(); i++) {
+            for (int j = 0; j < stepTiles.getNumberOfTilesInJ(); j++) {
+                if (stepTiles.getTile(i, j).isMaskedDisplacement()) {
+                    maskedTiles++;
+                }
+            }
+        }
         final int totalTiles = stepTiles.getNumberOfTilesInI() * stepTiles.getNumberOfTilesInJ();
-        if (maxResults.size() != totalTiles && replacementStrategies[0] != null) {
+        if (maxResults.size() + maskedTiles != totalTiles && replacementStrategies[0] != null) {
             //See above FIXME
             //This may have null implication, but one has to check what is done after the validation Job with
             //invalidated vectors during intermediate processing steps, since currently only the tiles with correspondent
@@ -404,6 +544,22 @@ public class VectorValidatorJob extends Job<VectorValidatorJobParameters,Iterati
         setJobResult(JobResultEnum.JOB_RESULT_VALIDATED_VECTORS, parameters.stepTiles);
     }
 
+    /**
+     * Retrieves the number of vectors that were replaced during the last validation.
+     * @return the number of replaced vectors
+     */
+    public int getLastCorrectedVectors() {
+        return lastCorrectedVectors;
+    }
+    
+    /**
+     * Retrieves the number of vectors that remained invalid after the last validation and were set to zero displacement.
+     * @return the number of invalid vectors
+     */
+    public int getLastInvalidVectors() {
+        return lastInvalidVectors;
+    }
+
     @Override
     public void dispose() {
         //Nothing to do
@@ -0,0 +1,103 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.jobs.xcorr;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import pt.quickLabPIV.Matrix;
+import pt.quickLabPIV.MatrixFloat;
+import pt.quickLabPIV.iareas.Tile;
+import pt.quickLabPIV.jobs.AggregatedThreadJobTemplate;
+import pt.quickLabPIV.jobs.Job;
+import pt.quickLabPIV.jobs.JobComputeException;
+import pt.quickLabPIV.jobs.JobResultEnum;
+import pt.quickLabPIV.maximum.MaxCrossResult;
+
+/**
+ * Cross-correlation job shared by the PIV threads that use the same compute device, which gathers the tiles of all
+ * the participating threads into a single large batch, computed by a single call to the regular cross-correlation job.
+ * Larger batches amortize the per-call overheads of the regular job, namely the analysis and the kernel launches.
+ * <br/>
+ * All tiles must have the same geometry, thus an instance is required per adaptive step.
+ * <br/>
+ * Each thread receives its own cross-correlation matrices, in the same order as its input tiles, which are reused
+ * by the next compute call of the same thread, as done by the regular jobs.
+ * @author lpnm
+ */
+public class AggregatedCrossCorrelationJob extends AggregatedThreadJobTemplate<List<Tile>, XCorrelationResults> {
+    private final List<Tile> aggregatedTilesA = new ArrayList<Tile>();
+    private final List<Tile> aggregatedTilesB = new ArrayList<Tile>();
+    private int[] participantOffsets = new int[0];
+    private final ConcurrentHashMap<Long, List<Matrix>> outputMatricesByThread = new ConcurrentHashMap<Long, List<Matrix>>();
+
+    /**
+     * Creates a new aggregated cross-correlation job.
+     * @param regularJob the cross-correlation job that computes the aggregated tiles
+     * @param threadCount the number of PIV threads sharing this job
+     * @param timeoutMillis the maximum time a thread waits for the other threads to provide their tiles
+     */
+    public AggregatedCrossCorrelationJob(Job<List<Tile>, XCorrelationResults> regularJob, int threadCount, long timeoutMillis) {
+        super(regularJob, threadCount, timeoutMillis);
+    }
+
+    @Override
+    protected void aggregateInputParameters(List<Long> threadJobIds) {
+        aggregatedTilesA.clear();
+        aggregatedTilesB.clear();
+        if (participantOffsets.length < threadJobIds.size() + 1) {
+            participantOffsets = new int[threadJobIds.size() + 1];
+        }
+
+        for (int index = 0; index < threadJobIds.size(); index++) {
+            List<Tile> tilesA = getInputParameters(threadJobIds.get(index), JobResultEnum.JOB_RESULT_CLIPPED_TILES_A);
+            List<Tile> tilesB = getInputParameters(threadJobIds.get(index), JobResultEnum.JOB_RESULT_CLIPPED_TILES_B);
+            if (tilesA == null || tilesB == null || tilesA.size() != tilesB.size()) {
+                throw new JobComputeException("The number of tiles A must be matched with the number of tiles B");
+            }
+
+            participantOffsets[index] = aggregatedTilesA.size();
+            aggregatedTilesA.addAll(tilesA);
+            aggregatedTilesB.addAll(tilesB);
+        }
+        participantOffsets[threadJobIds.size()] = aggregatedTilesA.size();
+
+        Job<List<Tile>, XCorrelationResults> job = getRegularJob();
+        job.setInputParameters(JobResultEnum.JOB_RESULT_CLIPPED_TILES_A, aggregatedTilesA);
+        job.setInputParameters(JobResultEnum.JOB_RESULT_CLIPPED_TILES_B, aggregatedTilesB);
+    }
+
+    @Override
+    protected void disaggregateResults(List<Long> threadJobIds, int participantIndex) {
+        XCorrelationResults results = getRegularJob().getJobResult(JobResultEnum.JOB_RESULT_CROSS_MATRICES);
+        final int fromIndex = participantOffsets[participantIndex];
+        final int toIndex = participantOffsets[participantIndex + 1];
+        final List<Matrix> crossMatrices = results.getCrossMatrices();
+
+        //Matrices of the regular job may be reused by its next computation, so each thread gets its own copy
+        List<Matrix> outputMatrices = outputMatricesByThread.computeIfAbsent(threadJobIds.get(participantIndex), k -> new ArrayList<Matrix>());
+        for (int index = fromIndex; index < toIndex; index++) {
+            Matrix source = crossMatrices.get(index);
+            final int outputIndex = index - fromIndex;
+            if (outputIndex == outputMatrices.size()) {
+                outputMatrices.add(new MatrixFloat(source.getHeight(), source.getWidth()));
+            } else if (outputMatrices.get(outputIndex).getHeight() != source.getHeight() ||
+                       outputMatrices.get(outputIndex).getWidth() != source.getWidth()) {
+                outputMatrices.set(outputIndex, new MatrixFloat(source.getHeight(), source.getWidth()));
+            }
+
+            MatrixFloat destination = (MatrixFloat)outputMatrices.get(outputIndex);
+            source.copyMatrixToArray(destination.getFloatArray(), 0);
+        }
+
+        List<MaxCrossResult> crossResults = Collections.emptyList();
+        setJobResult(JobResultEnum.JOB_RESULT_CROSS_MATRICES, new XCorrelationResults(outputMatrices.subList(0, toIndex - fromIndex), crossResults, null,
+                results.getDimI(), results.getDimJ(), toIndex - fromIndex));
+    }
+}
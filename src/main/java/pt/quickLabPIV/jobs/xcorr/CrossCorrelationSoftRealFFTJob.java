@@ -9,14 +9,21 @@ package pt.quickLabPIV.jobs.xcorr;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.apache.commons.math3.util.FastMath;
 
 import pt.quickLabPIV.Matrix;
+import pt.quickLabPIV.MatrixFloat;
 import pt.quickLabPIV.iareas.Tile;
 import pt.quickLabPIV.jobs.Job;
 import pt.quickLabPIV.jobs.JobResultEnum;
 import pt.quickLabPIV.maximum.MaxCrossResult;
 
 public class CrossCorrelationSoftRealFFTJob extends Job<List<Tile>, XCorrelationResults>  {
+    private static final int MIN_TILES_PER_TASK = 16;
+    
     List<Matrix> inputMatricesF = null;
     List<Matrix> inputMatricesG = null;
     List<Tile> inputTilesF = null;
@@ -24,6 +31,25 @@ public class CrossCorrelationSoftRealFFTJob extends Job<List<Tile>, XCorrelation
     int inputGeometry[];
     int outputGeometry[];
     int numberOfUsedTiles;
+    private FastRealFFTXCorrEngine engines[] = new FastRealFFTXCorrEngine[1];
+    private List<Matrix> outputMatrices = new ArrayList<Matrix>();
+    private ForkJoinPool tilesPool;
+    private int tilesParallelism = 1;
+
+    /**
+     * Enables the parallel computation of the cross-correlation of the tiles of a single frame. Tiles are split into
+     * contiguous groups which are processed by the shared pool, while keeping the output order.
+     * @param pool the shared pool to use, or null to compute all tiles in the calling thread
+     * @param parallelism the maximum number of tile groups to process concurrently
+     * @return this job instance
+     */
+    public CrossCorrelationSoftRealFFTJob setTilesParallelism(ForkJoinPool pool, int parallelism) {
+        tilesPool = pool;
+        tilesParallelism = parallelism < 1 ? 1 : parallelism;
+        engines = new FastRealFFTXCorrEngine[tilesParallelism];
+        
+        return this;
+    }
 
     private void analyzeTilesHelper(List<Tile> tilesF, List<Tile> tilesG) {
         if (tilesF.size() < 1 || tilesG.size() < 1) {
@@ -109,17 +135,75 @@ public class CrossCorrelationSoftRealFFTJob extends Job<List<Tile>, XCorrelation
             }
         }
         
-        List<Matrix> outputMatrices = new ArrayList<Matrix>(numberOfUsedTiles);
-        for (int index = 0; index < numberOfUsedTiles; index++) {
-            Matrix result = FastRealFFTXCorr.computeXCorr(workMatricesF.get(index), workMatricesG.get(index));
-            outputMatrices.add(result);
+        if (numberOfUsedTiles > 0) {
+            Matrix refMatrix = workMatricesF.get(0);
+            if (engines[0] == null || !engines[0].matchesGeometry(refMatrix.getHeight(), refMatrix.getWidth())) {
+                //Engines and output matrices are kept for the next computations, which normally have the same geometry
+                for (int taskIndex = 0; taskIndex < engines.length; taskIndex++) {
+                    engines[taskIndex] = null;
+                }
+                engines[0] = new FastRealFFTXCorrEngine(refMatrix.getHeight(), refMatrix.getWidth());
+                outputMatrices.clear();
+            }
+            
+            //NOTE: Output matrices are reused by the next call to compute, so cross-correlation results must be consumed before that.
+            while (outputMatrices.size() < numberOfUsedTiles) {
+                outputMatrices.add(new MatrixFloat(2 * refMatrix.getHeight() - 1, 2 * refMatrix.getWidth() - 1));
+            }
+            
+            int tasks = tilesPool == null ? 1 : FastMath.min(tilesParallelism, numberOfUsedTiles / MIN_TILES_PER_TASK);
+            if (tasks <= 1) {
+                computeTiles(engines[0], workMatricesF, workMatricesG, 0, numberOfUsedTiles);
+            } else {
+                computeTilesInParallel(tasks, refMatrix, workMatricesF, workMatricesG);
+            }
         }
         
         List<MaxCrossResult> crossResults = Collections.emptyList();
-        XCorrelationResults results = new XCorrelationResults(outputMatrices, crossResults, null, outputGeometry[0], outputGeometry[1], numberOfUsedTiles);
+        XCorrelationResults results = new XCorrelationResults(outputMatrices.subList(0, numberOfUsedTiles), crossResults, null, outputGeometry[0], outputGeometry[1], numberOfUsedTiles);
         setJobResult(JobResultEnum.JOB_RESULT_CROSS_MATRICES, results);
     }
 
+    private void computeTiles(FastRealFFTXCorrEngine engine, List<Matrix> workMatricesF, List<Matrix> workMatricesG, int fromIndex, int toIndex) {
+        for (int index = fromIndex; index < toIndex; index++) {
+            engine.computeXCorr(workMatricesF.get(index), workMatricesG.get(index), outputMatrices.get(index));
+        }
+    }
+    
+    private void computeTilesInParallel(int tasks, Matrix refMatrix, List<Matrix> workMatricesF, List<Matrix> workMatricesG) {
+        List<ForkJoinTask<?>> submittedTasks = new ArrayList<ForkJoinTask<?>>(tasks);
+        int tilesPerTask = numberOfUsedTiles / tasks;
+        int remainingTiles = numberOfUsedTiles % tasks;
+        int fromIndex = 0;
+        for (int taskIndex = 0; taskIndex < tasks; taskIndex++) {
+            if (engines[taskIndex] == null) {
+                engines[taskIndex] = new FastRealFFTXCorrEngine(refMatrix.getHeight(), refMatrix.getWidth());
+            }
+            
+            final FastRealFFTXCorrEngine engine = engines[taskIndex];
+            final int taskFromIndex = fromIndex;
+            final int taskToIndex = fromIndex + tilesPerTask + (taskIndex < remainingTiles ? 1 : 0);
+            submittedTasks.add(tilesPool.submit(() -> computeTiles(engine, workMatricesF, workMatricesG, taskFromIndex, taskToIndex)));
+            fromIndex = taskToIndex;
+        }
+        
+        //Wait for all tasks to complete, before reporting any failure
+        RuntimeException failure = null;
+        for (ForkJoinTask<?> task : submittedTasks) {
+            try {
+                task.join();
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        
+        if (failure != null) {
+            throw failure;
+        }
+    }
+    
     @Override
     public void dispose() {
         //Not required
@@ -0,0 +1,299 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.jobs.xcorr;
+
+import java.util.Arrays;
+
+import org.apache.commons.math3.util.FastMath;
+
+import pt.quickLabPIV.Matrix;
+import pt.quickLabPIV.jobs.JobComputeException;
+
+/**
+ * Reusable, allocation free, version of the {@link FastRealFFTXCorr} cross-correlation for a fixed interrogation area geometry.
+ * <br/>
+ * The FFT input reordering (bit-reversal) and the twiddle factors are precomputed once, while all the work buffers are flat
+ * primitive arrays allocated at construction time. Results match {@link FastRealFFTXCorr#computeXCorr(Matrix, Matrix)}
+ * exactly, since the same float operations are performed in the same order.
+ * <br/>
+ * <b>NOTE:</b> Instances are not thread-safe, each thread must use its own engine instance.
+ * @author lpnm
+ */
+public class FastRealFFTXCorrEngine {
+    private final int inputHeight;
+    private final int inputWidth;
+    private final int dimI;
+    private final int dimJ;
+
+    private final float[] matrixA;
+    private final float[] matrixB;
+    private final float[] tr;
+    private final float[] ti;
+    private final float[] lineR;
+    private final float[] lineI;
+
+    private final int[] reorderI;
+    private final int[] reorderJ;
+    private final float[] fftWrI;
+    private final float[] fftWiI;
+    private final float[] ifftWrI;
+    private final float[] ifftWiI;
+    private final float[] fftWrJ;
+    private final float[] fftWiJ;
+    private final float[] ifftWrJ;
+    private final float[] ifftWiJ;
+
+    /**
+     * Creates a new cross-correlation engine for interrogation areas of the given geometry.
+     * @param _inputHeight the interrogation area height (must be a power of 2)
+     * @param _inputWidth the interrogation area width (must be a power of 2)
+     */
+    public FastRealFFTXCorrEngine(int _inputHeight, int _inputWidth) {
+        if (Integer.bitCount(_inputHeight) != 1 || Integer.bitCount(_inputWidth) != 1) {
+            throw new JobComputeException("Interrogation area dimensions must be a power of 2");
+        }
+
+        inputHeight = _inputHeight;
+        inputWidth = _inputWidth;
+        dimI = 2 * inputHeight;
+        dimJ = 2 * inputWidth;
+
+        matrixA = new float[inputHeight * inputWidth];
+        matrixB = new float[inputHeight * inputWidth];
+        tr = new float[dimI * dimJ];
+        ti = new float[dimI * dimJ];
+        lineR = new float[FastMath.max(dimI, dimJ)];
+        lineI = new float[FastMath.max(dimI, dimJ)];
+
+        reorderI = createReorderTable(dimI);
+        reorderJ = createReorderTable(dimJ);
+
+        //Twiddle tables are indexed directly by k, as used by SimpleFFT computeFFTStep(...) and computeIFFTStep(...)
+        float[] ws = createSineTable(dimI);
+        fftWrI = new float[dimI / 2];
+        fftWiI = new float[dimI / 2];
+        ifftWrI = new float[dimI / 2];
+        ifftWiI = new float[dimI / 2];
+        fillTwiddleTables(ws, dimI, fftWrI, fftWiI, ifftWrI, ifftWiI);
+
+        ws = createSineTable(dimJ);
+        fftWrJ = new float[dimJ / 2];
+        fftWiJ = new float[dimJ / 2];
+        ifftWrJ = new float[dimJ / 2];
+        ifftWiJ = new float[dimJ / 2];
+        fillTwiddleTables(ws, dimJ, fftWrJ, fftWiJ, ifftWrJ, ifftWiJ);
+    }
+
+    private static int[] createReorderTable(int N) {
+        //Obtain the FFT input ordering from the same perfect shuffle used by SimpleFFT, so that both match exactly.
+        float[] indices = new float[N];
+        for (int index = 0; index < N; index++) {
+            indices[index] = index;
+        }
+
+        SimpleFFT fft = new SimpleFFT(N, N);
+        fft.perfectShuffleFFTInput(indices);
+
+        int[] reorder = new int[N];
+        for (int index = 0; index < N; index++) {
+            reorder[index] = (int)indices[index];
+        }
+
+        return reorder;
+    }
+
+    private static float[] createSineTable(int N) {
+        float[] ws = new float[N];
+        for (int n = 0; n < N; n++) {
+            ws[n] = (float)FastMath.sin(2.0f*FastMath.PI*(float)n/(float)N);
+        }
+
+        return ws;
+    }
+
+    private static void fillTwiddleTables(float[] ws, int N, float[] fftWr, float[] fftWi, float[] ifftWr, float[] ifftWi) {
+        for (int k = 0; k < N / 2; k++) {
+            fftWr[k] = ws[k + N/4];
+            fftWi[k] = -ws[k];
+
+            if (N/4 - k >= 0) {
+                ifftWr[k] = ws[N/4 - k];
+            } else {
+                //Compensate negative indices by summing 2Pi (N)
+                ifftWr[k] = ws[N + (N/4 - k)];
+            }
+            ifftWi[k] = ws[k];
+        }
+    }
+
+    public int getInputHeight() {
+        return inputHeight;
+    }
+
+    public int getInputWidth() {
+        return inputWidth;
+    }
+
+    /**
+     * Checks if this engine can handle interrogation areas with the specified geometry.
+     * @param height the interrogation area height
+     * @param width the interrogation area width
+     * @return true, if the geometry matches, false otherwise
+     */
+    public boolean matchesGeometry(int height, int width) {
+        return inputHeight == height && inputWidth == width;
+    }
+
+    /**
+     * Computes the cross-correlation between two interrogation areas, into a caller provided matrix.
+     * @param matA the interrogation area from image A
+     * @param matB the interrogation area from image B
+     * @param result the output matrix with dimensions (2 * height - 1) x (2 * width - 1)
+     * @return the result matrix
+     */
+    public Matrix computeXCorr(Matrix matA, Matrix matB, Matrix result) {
+        if (!matchesGeometry(matA.getHeight(), matA.getWidth()) || !matchesGeometry(matB.getHeight(), matB.getWidth())) {
+            throw new JobComputeException("Interrogation area geometry doesn't match the cross-correlation engine geometry");
+        }
+        if (result.getHeight() != dimI - 1 || result.getWidth() != dimJ - 1) {
+            throw new JobComputeException("Output matrix geometry doesn't match the cross-correlation output geometry");
+        }
+
+        matA.copyMatrixToArray(matrixA, 0);
+        matB.copyMatrixToArray(matrixB, 0);
+        final float maxValue = matA.getMaxValue();
+
+        for (int i = 0; i < inputHeight; i++) {
+            final int rowOffset = i * dimJ;
+            final int mirroredRowOffset = (inputHeight - 1 - i) * inputWidth;
+            for (int j = 0; j < inputWidth; j++) {
+                tr[rowOffset + j] = matrixA[mirroredRowOffset + inputWidth - 1 - j] / maxValue * 16.0f + 1.0f;
+                ti[rowOffset + j] = matrixB[i * inputWidth + j] / maxValue * 16.0f + 1.0f;
+            }
+            Arrays.fill(tr, rowOffset + inputWidth, rowOffset + dimJ, 0.0f);
+            Arrays.fill(ti, rowOffset + inputWidth, rowOffset + dimJ, 0.0f);
+        }
+        Arrays.fill(tr, inputHeight * dimJ, dimI * dimJ, 0.0f);
+        Arrays.fill(ti, inputHeight * dimJ, dimI * dimJ, 0.0f);
+
+        fft2D(fftWrJ, fftWiJ, fftWrI, fftWiI, false);
+        spectralProduct();
+        fft2D(ifftWrJ, ifftWiJ, ifftWrI, ifftWiI, true);
+
+        result.copyMatrixFromLargerArray(tr, 0, dimJ);
+
+        return result;
+    }
+
+    private void fft2D(final float[] wrJ, final float[] wiJ, final float[] wrI, final float[] wiI, final boolean inverse) {
+        //Rows
+        for (int i = 0; i < dimI; i++) {
+            final int offset = i * dimJ;
+            for (int j = 0; j < dimJ; j++) {
+                lineR[j] = tr[offset + reorderJ[j]];
+                lineI[j] = ti[offset + reorderJ[j]];
+            }
+            if (inverse) {
+                divide(dimJ);
+            }
+            butterflies(dimJ, wrJ, wiJ);
+            System.arraycopy(lineR, 0, tr, offset, dimJ);
+            System.arraycopy(lineI, 0, ti, offset, dimJ);
+        }
+
+        //Columns
+        for (int j = 0; j < dimJ; j++) {
+            for (int i = 0; i < dimI; i++) {
+                lineR[i] = tr[reorderI[i] * dimJ + j];
+                lineI[i] = ti[reorderI[i] * dimJ + j];
+            }
+            if (inverse) {
+                divide(dimI);
+            }
+            butterflies(dimI, wrI, wiI);
+            for (int i = 0; i < dimI; i++) {
+                tr[i * dimJ + j] = lineR[i];
+                ti[i * dimJ + j] = lineI[i];
+            }
+        }
+    }
+
+    private void divide(final int N) {
+        final float value = N;
+        for (int index = 0; index < N; index++) {
+            lineR[index] /= value;
+            lineI[index] /= value;
+        }
+    }
+
+    private void butterflies(final int N, final float[] wrTable, final float[] wiTable) {
+        final float[] xr = lineR;
+        final float[] xi = lineI;
+        int step = N;
+        for (int level = 1; level < N; level <<= 1) {
+            final int level2 = level << 1;
+            step >>>= 1;
+            for (int block = 0; block < N; block += level2) {
+                for (int m = 0; m < level; m++) {
+                    final int k = step * m;
+                    final int i = block + m;
+                    final int j = i + level;
+
+                    final float wr = wrTable[k];
+                    final float wi = wiTable[k];
+
+                    final float tempLowerHalfReal = xr[i] + (wr*xr[j]) - (wi*xi[j]);
+                    final float tempLowerHalfImg  = xi[i] + (wr*xi[j]) + (wi*xr[j]);
+                    final float tempUpperHalfReal = xr[i] - (wr*xr[j]) + (wi*xi[j]);
+                    final float tempUpperHalfImg  = xi[i] - (wr*xi[j]) - (wi*xr[j]);
+
+                    xr[i] = tempLowerHalfReal;
+                    xi[i] = tempLowerHalfImg;
+                    xr[j] = tempUpperHalfReal;
+                    xi[j] = tempUpperHalfImg;
+                }
+            }
+        }
+    }
+
+    private void spectralProduct() {
+        //Same as FastRealFFTXCorr commonRealFFTXCorr(...), separating the spectra of the two real signals from the single
+        //complex FFT and computing their product.
+        for (int i = 0; i <= dimI/2; i++) {
+            for (int j = 0; j <= dimJ/2; j++) {
+                int k1 = i;
+                int Nk1 = (dimI - k1) % dimI;
+                final int k2 = j;
+                final int Nk2 = (dimJ - k2) % dimJ;
+
+                multiply(k1 * dimJ + k2, Nk1 * dimJ + Nk2);
+
+                if (k1 != 0 && k2 != 0 && k1 < dimI/2 && k2 < dimJ/2) {
+                    k1 = i + dimI/2;
+                    Nk1 = (dimI - k1) % dimI;
+
+                    multiply(k1 * dimJ + k2, Nk1 * dimJ + Nk2);
+                }
+            }
+        }
+    }
+
+    private void multiply(final int index, final int symmetricIndex) {
+        final float Gr = 0.5f * (ti[index] + ti[symmetricIndex]);
+        final float Gi = -0.5f * (tr[index] - tr[symmetricIndex]);
+
+        final float Fr = 0.5f * (tr[index] + tr[symmetricIndex]);
+        final float Fi = 0.5f * (ti[index] - ti[symmetricIndex]);
+
+        //Complex product
+        //(xr + j xi) * (yr + j yi) = (xr * yr - xi * yi) + j (xr * yi + xi * yr)
+        tr[index] = Fr * Gr - Fi * Gi;
+        ti[index] = Fr * Gi + Fi * Gr;
+        tr[symmetricIndex] = tr[index];
+        ti[symmetricIndex] = -ti[index];
+    }
+}
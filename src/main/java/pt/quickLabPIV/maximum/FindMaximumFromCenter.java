@@ -10,6 +10,7 @@ import java.util.Iterator;
 import java.util.List;
 
 import pt.quickLabPIV.Matrix;
+import pt.quickLabPIV.MatrixFloat;
 import pt.quickLabPIV.iareas.Tile;
 import pt.quickLabPIV.jobs.xcorr.XCorrelationResults;
 
@@ -182,6 +183,60 @@ public class FindMaximumFromCenter implements IMaximumFinder {
 		return finalResult;
 	}
 
+	/**
+	 * Locates the peaks of a group of cross-correlation matrices with a single linear pass over each matrix array.
+	 * When the maximum is unique and positive it is the same peak as found by the search from the center, otherwise
+	 * the search from the center is used to resolve the ties in the same way.
+	 */
+	@Override
+	public void findMaximums(List<Matrix> crossMatrices, MaxCrossResultsBuffer buffer) {
+	    buffer.reset(crossMatrices.size());
+	    for (int index = 0; index < crossMatrices.size(); index++) {
+	        Matrix m = crossMatrices.get(index);
+	        if (!(m instanceof MatrixFloat)) {
+	            buffer.importMaxCrossResult(index, findMaximum(m));
+	            continue;
+	        }
+
+	        final float[] values = m.getFloatArray();
+	        final int dimJ = m.getWidth();
+	        //The search from the center visits neither the first row, nor the first column
+	        final int lastI = (m.getHeight() / 2) * 2;
+	        final int lastJ = (dimJ / 2) * 2;
+	        float maxValue = 0.0f;
+	        int maxCount = 0;
+	        int maxI = 0;
+	        int maxJ = 0;
+	        float minValue = Float.MAX_VALUE;
+	        for (int i = 1; i <= lastI; i++) {
+	            final int rowOffset = i * dimJ;
+	            for (int j = 1; j <= lastJ; j++) {
+	                final float value = values[rowOffset + j];
+	                if (value > maxValue) {
+	                    maxValue = value;
+	                    maxCount = 1;
+	                    maxI = i;
+	                    maxJ = j;
+	                } else if (value == maxValue) {
+	                    maxCount++;
+	                }
+	                if (value < minValue) {
+	                    minValue = value;
+	                }
+	            }
+	        }
+	        
+	        if (maxCount != 1 || maxValue <= 0.0f) {
+	            buffer.importMaxCrossResult(index, findMaximum(m));
+	            continue;
+	        }
+	        
+	        buffer.setCrossMatrix(index, m);
+	        buffer.setPeak(index, 0, maxI, maxJ, maxValue);
+	        buffer.setMinFloor(index, minValue);
+	    }
+	}
+
 	@Override
 	public void dispose() {
 		//Intentionally empty
@@ -10,6 +10,7 @@ import java.util.Iterator;
 import java.util.List;
 
 import pt.quickLabPIV.Matrix;
+import pt.quickLabPIV.MatrixFloat;
 import pt.quickLabPIV.iareas.Tile;
 import pt.quickLabPIV.jobs.xcorr.XCorrelationResults;
 
@@ -47,6 +48,44 @@ public class FindMaximumSimple implements IMaximumFinder {
 		return result;
 	}
 
+	@Override
+	public void findMaximums(List<Matrix> crossMatrices, MaxCrossResultsBuffer buffer) {
+	    buffer.reset(crossMatrices.size());
+	    for (int index = 0; index < crossMatrices.size(); index++) {
+	        Matrix m = crossMatrices.get(index);
+	        if (!(m instanceof MatrixFloat)) {
+	            buffer.importMaxCrossResult(index, findMaximum(m));
+	            continue;
+	        }
+	        
+	        //Same search as findMaximum(), but directly over the matrix array
+	        final float[] values = m.getFloatArray();
+	        final int dimI = m.getHeight();
+	        final int dimJ = m.getWidth();
+	        float maxValue = 0.0f;
+	        int maxIndex = -1;
+	        float minValue = Float.MAX_VALUE;
+	        for (int valueIndex = 0; valueIndex < dimI * dimJ; valueIndex++) {
+	            final float value = values[valueIndex];
+	            if (value > maxValue) {
+	                maxValue = value;
+	                maxIndex = valueIndex;
+	            }
+	            if (value < minValue) {
+	                minValue = value;
+	            }
+	        }
+	        
+	        buffer.setCrossMatrix(index, m);
+	        if (maxIndex < 0) {
+	            buffer.setPeak(index, 0, dimI / 2, dimJ / 2, 0.0f);
+	        } else {
+	            buffer.setPeak(index, 0, maxIndex / dimJ, maxIndex % dimJ, maxValue);
+	        }
+	        buffer.setMinFloor(index, minValue);
+	    }
+	}
+
 	@Override
 	public void dispose() {
 		//Intentionally empty
@@ -16,6 +16,22 @@ import pt.quickLabPIV.jobs.xcorr.XCorrelationResults;
 public interface IMaximumFinder {
 	public MaxCrossResult findMaximum(Matrix m);
 	
+	/**
+	 * Locates the peaks of a group of cross-correlation matrices, storing them in the flat result buffers, instead
+	 * of creating one result per matrix.
+	 * <br/>
+	 * The default implementation relies on {@link #findMaximum(Matrix)} for each matrix, so that finders not supporting
+	 * batched peak finding can still be used.
+	 * @param crossMatrices the cross-correlation matrices
+	 * @param buffer the buffer that will hold the peaks, in the same order as the matrices
+	 */
+	public default void findMaximums(List<Matrix> crossMatrices, MaxCrossResultsBuffer buffer) {
+	    buffer.reset(crossMatrices.size());
+	    for (int index = 0; index < crossMatrices.size(); index++) {
+	        buffer.importMaxCrossResult(index, findMaximum(crossMatrices.get(index)));
+	    }
+	}
+	
 	public void dispose();
 
 	public List<MaxCrossResult> findAllPeaks(List<XCorrelationResults> xCorrResults, Iterator<Tile> tileAIterator,
@@ -61,6 +61,14 @@ final public class MaxCrossResult {
 	    dimCrossJ = _dimCrossJ;
 	}
 	
+	public int getCrossDimI() {
+	    return dimCrossI;
+	}
+	
+	public int getCrossDimJ() {
+	    return dimCrossJ;
+	}
+	
 	/**
 	 * Reserve space for the desired total number of peaks.
 	 * @param peaks the total number of peaks to support (including main peak).
@@ -0,0 +1,234 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.maximum;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import pt.quickLabPIV.Matrix;
+import pt.quickLabPIV.iareas.Tile;
+
+/**
+ * Holds the cross-correlation peaks of a group of tiles in flat primitive arrays, so that maximum finders can locate
+ * the peaks of all tiles of an adaptive step without creating one result object per tile.
+ * <br/>
+ * Peaks are stored in tile major order, with the main peak at peak index 0, followed by the secondary peaks.
+ * Buffers, and the {@link MaxCrossResult} instances returned by {@link #getResults()}, are reused by the next
+ * {@link #reset(int)} call, so results must be consumed before that.
+ * @author lpnm
+ */
+public final class MaxCrossResultsBuffer {
+    private int numberOfTiles;
+    private int peaksCapacity;
+    private float[] peakIs = new float[0];
+    private float[] peakJs = new float[0];
+    private float[] peakValues = new float[0];
+    private int[] foundPeaks = new int[0];
+    private float[] minFloors = new float[0];
+    private Matrix[] crossMatrices = new Matrix[0];
+    private int[] crossDimsI = new int[0];
+    private int[] crossDimsJ = new int[0];
+    private Tile[] tilesA = new Tile[0];
+    private Tile[] tilesB = new Tile[0];
+    private final List<MaxCrossResult> resultsPool = new ArrayList<MaxCrossResult>();
+    private final List<MaxCrossResult> results = new ArrayList<MaxCrossResult>();
+
+    public MaxCrossResultsBuffer() {
+        peaksCapacity = 1;
+    }
+
+    /**
+     * Clears the buffer contents and ensures there is room for the specified number of tiles.
+     * @param tiles the number of tiles whose peaks will be stored
+     */
+    public void reset(int tiles) {
+        if (tiles > crossMatrices.length) {
+            resize(tiles, peaksCapacity);
+        }
+        numberOfTiles = tiles;
+        Arrays.fill(foundPeaks, 0, tiles, 0);
+        Arrays.fill(crossMatrices, 0, tiles, null);
+        Arrays.fill(tilesA, 0, tiles, null);
+        Arrays.fill(tilesB, 0, tiles, null);
+    }
+
+    private void resize(int tilesCapacity, int newPeaksCapacity) {
+        float[] newPeakIs = new float[tilesCapacity * newPeaksCapacity];
+        float[] newPeakJs = new float[tilesCapacity * newPeaksCapacity];
+        float[] newPeakValues = new float[tilesCapacity * newPeaksCapacity];
+        for (int tileIndex = 0; tileIndex < numberOfTiles; tileIndex++) {
+            System.arraycopy(peakIs, tileIndex * peaksCapacity, newPeakIs, tileIndex * newPeaksCapacity, peaksCapacity);
+            System.arraycopy(peakJs, tileIndex * peaksCapacity, newPeakJs, tileIndex * newPeaksCapacity, peaksCapacity);
+            System.arraycopy(peakValues, tileIndex * peaksCapacity, newPeakValues, tileIndex * newPeaksCapacity, peaksCapacity);
+        }
+        peakIs = newPeakIs;
+        peakJs = newPeakJs;
+        peakValues = newPeakValues;
+        peaksCapacity = newPeaksCapacity;
+
+        foundPeaks = Arrays.copyOf(foundPeaks, tilesCapacity);
+        minFloors = Arrays.copyOf(minFloors, tilesCapacity);
+        crossMatrices = Arrays.copyOf(crossMatrices, tilesCapacity);
+        crossDimsI = Arrays.copyOf(crossDimsI, tilesCapacity);
+        crossDimsJ = Arrays.copyOf(crossDimsJ, tilesCapacity);
+        tilesA = Arrays.copyOf(tilesA, tilesCapacity);
+        tilesB = Arrays.copyOf(tilesB, tilesCapacity);
+    }
+
+    /**
+     * Ensures there is room for the specified number of peaks per tile, keeping the already stored peaks.
+     * @param peaks the number of peaks per tile, including the main peak
+     */
+    public void ensurePeaksCapacity(int peaks) {
+        if (peaks > peaksCapacity) {
+            resize(crossMatrices.length, peaks);
+        }
+    }
+
+    public int getNumberOfTiles() {
+        return numberOfTiles;
+    }
+
+    public void setCrossMatrix(int tileIndex, Matrix crossMatrix) {
+        crossMatrices[tileIndex] = crossMatrix;
+        crossDimsI[tileIndex] = crossMatrix.getHeight();
+        crossDimsJ[tileIndex] = crossMatrix.getWidth();
+    }
+
+    public Matrix getCrossMatrix(int tileIndex) {
+        return crossMatrices[tileIndex];
+    }
+
+    /**
+     * Stores the location and value of a peak.
+     * @param tileIndex the tile index
+     * @param peakIndex the peak index, 0 for the main peak, which must be within the reserved peaks capacity
+     * @param i the peak location in I
+     * @param j the peak location in J
+     * @param value the peak value
+     */
+    public void setPeak(int tileIndex, int peakIndex, float i, float j, float value) {
+        final int index = tileIndex * peaksCapacity + peakIndex;
+        peakIs[index] = i;
+        peakJs[index] = j;
+        peakValues[index] = value;
+        if (peakIndex >= foundPeaks[tileIndex]) {
+            foundPeaks[tileIndex] = peakIndex + 1;
+        }
+    }
+
+    public float getPeakI(int tileIndex, int peakIndex) {
+        return peakIs[tileIndex * peaksCapacity + peakIndex];
+    }
+
+    public float getPeakJ(int tileIndex, int peakIndex) {
+        return peakJs[tileIndex * peaksCapacity + peakIndex];
+    }
+
+    public float getPeakValue(int tileIndex, int peakIndex) {
+        return peakValues[tileIndex * peaksCapacity + peakIndex];
+    }
+
+    /**
+     * Retrieves the number of peaks stored for a tile.
+     * @param tileIndex the tile index
+     * @return the number of peaks, including the main peak
+     */
+    public int getFoundPeaks(int tileIndex) {
+        return foundPeaks[tileIndex];
+    }
+
+    public void setMinFloor(int tileIndex, float minFloor) {
+        minFloors[tileIndex] = minFloor;
+    }
+
+    public float getMinFloor(int tileIndex) {
+        return minFloors[tileIndex];
+    }
+
+    /**
+     * Stores the peaks of a result computed by a maximum finder that doesn't support batched peak finding.
+     * @param tileIndex the tile index
+     * @param result the result to import
+     */
+    public void importMaxCrossResult(int tileIndex, MaxCrossResult result) {
+        final int peaks = result.getTotalPeaks();
+        ensurePeaksCapacity(peaks);
+        for (int peakIndex = 0; peakIndex < peaks; peakIndex++) {
+            setPeak(tileIndex, peakIndex, result.getNthPeakI(peakIndex), result.getNthPeakJ(peakIndex), result.getNthPeakValue(peakIndex));
+        }
+        crossMatrices[tileIndex] = result.getCrossMatrix();
+        crossDimsI[tileIndex] = result.getCrossDimI();
+        crossDimsJ[tileIndex] = result.getCrossDimJ();
+        minFloors[tileIndex] = result.getMinFloor();
+    }
+
+    /**
+     * Associates the stored peaks with the tiles from which the cross-correlations were computed, in the same order.
+     * @param _tilesA the tiles from the first image
+     * @param _tilesB the tiles from the second image
+     */
+    public void setAssociatedTiles(List<Tile> _tilesA, List<Tile> _tilesB) {
+        if (_tilesA.size() != numberOfTiles || _tilesB.size() != numberOfTiles) {
+            throw new MaximumFinderException("Number of tiles doesn't match the number of stored peaks");
+        }
+        _tilesA.toArray(tilesA);
+        _tilesB.toArray(tilesB);
+    }
+
+    public Tile getTileA(int tileIndex) {
+        return tilesA[tileIndex];
+    }
+
+    public Tile getTileB(int tileIndex) {
+        return tilesB[tileIndex];
+    }
+
+    /**
+     * Exposes the stored peaks as {@link MaxCrossResult} instances, for the interpolators, validators and tiles
+     * displacement update.
+     * <br/>
+     * Instances are pooled and refilled from the flat buffers, thus no objects are created once the pool has grown to
+     * the largest number of tiles.
+     * @return the reused list of results, in tile order
+     */
+    public List<MaxCrossResult> getResults() {
+        results.clear();
+        for (int tileIndex = 0; tileIndex < numberOfTiles; tileIndex++) {
+            MaxCrossResult result;
+            if (tileIndex < resultsPool.size()) {
+                result = resultsPool.get(tileIndex);
+                result.reset();
+            } else {
+                result = new MaxCrossResult();
+                resultsPool.add(result);
+            }
+
+            //A tile without any peak found, still has a main peak at (0,0) with zero value, as set by the reset
+            final int peaks = foundPeaks[tileIndex];
+            result.setTotalPeaks(peaks < 1 ? 1 : peaks, false);
+            for (int peakIndex = 0; peakIndex < peaks; peakIndex++) {
+                final int index = tileIndex * peaksCapacity + peakIndex;
+                result.setNthPeakI(peakIndex, peakIs[index]);
+                result.setNthPeakJ(peakIndex, peakJs[index]);
+                result.setNthPeakValue(peakIndex, peakValues[index]);
+            }
+            if (crossMatrices[tileIndex] != null) {
+                result.setCrossMatrix(crossMatrices[tileIndex]);
+            } else {
+                result.setCrossDims(crossDimsI[tileIndex], crossDimsJ[tileIndex]);
+            }
+            result.setMinFloor(minFloors[tileIndex]);
+            result.setAssociatedTileA(tilesA[tileIndex]);
+            result.setAssociatedTileB(tilesB[tileIndex]);
+            results.add(result);
+        }
+
+        return results;
+    }
+}
@@ -0,0 +1,163 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import pt.quickLabPIV.exporter.StreamingStructMultiFrameFloatVelocityExporter;
+
+public class FrameBatchSchedulerTests {
+    private PIVRunParameters runParameters;
+
+    @Before
+    public void setup() {
+        PIVContextTestsSingleton.setSingleton();
+        PIVContextSingleton singleton = PIVContextSingleton.getSingleton();
+        singleton.resetParametersInstances();
+        runParameters = singleton.getPIVRunParameters();
+        runParameters.setUseOpenCL(false);
+    }
+
+    private InputFiles createInputFiles(int absoluteStartFrame, int numberOfFrames) {
+        List<File> filesA = new ArrayList<File>(numberOfFrames);
+        List<File> filesB = new ArrayList<File>(numberOfFrames);
+        for (int i = 0; i < numberOfFrames; i++) {
+            filesA.add(new File("image_" + i + "a.tif"));
+            filesB.add(new File("image_" + i + "b.tif"));
+        }
+
+        return new InputFiles(absoluteStartFrame, 0, filesA, filesB);
+    }
+
+    @Test
+    public void dynamicSchedulingCoversAllFramesOncePass() {
+        runParameters.setTotalNumberOfThreads(3);
+        runParameters.setDynamicFrameScheduling(true);
+        InputFiles inputFiles = createInputFiles(100, 50);
+
+        FrameBatchScheduler scheduler = new FrameBatchScheduler(inputFiles, 3);
+        assertTrue("Scheduler should be dynamic", scheduler.isDynamic());
+
+        boolean[] framesSeen = new boolean[inputFiles.size()];
+        int threadIdx = 0;
+        int batches = 0;
+        InputFiles batch;
+        while ((batch = scheduler.nextBatch(threadIdx)) != null) {
+            assertTrue("Batch must not be empty", batch.size() > 0);
+            assertEquals("Absolute frame offset must follow the relative frame offset",
+                    100 + batch.getRelativeStartFrame(), batch.getAbsoluteStartFrame());
+            for (int i = 0; i < batch.size(); i++) {
+                int frame = batch.getRelativeStartFrame() + i;
+                assertFalse("Frame " + frame + " was scheduled twice", framesSeen[frame]);
+                assertEquals("Batch file does not match the frame index", inputFiles.getFilesA().get(frame), batch.getFilesA().get(i));
+                assertEquals("Batch file does not match the frame index", inputFiles.getFilesB().get(frame), batch.getFilesB().get(i));
+                framesSeen[frame] = true;
+            }
+            threadIdx = (threadIdx + 1) % 3;
+            batches++;
+        }
+
+        for (int frame = 0; frame < framesSeen.length; frame++) {
+            assertTrue("Frame " + frame + " was not scheduled", framesSeen[frame]);
+        }
+        assertTrue("Dynamic scheduling should hand out more batches than threads", batches > 3);
+        assertNull("No more batches should be available", scheduler.nextBatch(0));
+    }
+
+    @Test
+    public void dynamicSchedulingRespectsConfiguredBatchSizePass() {
+        runParameters.setTotalNumberOfThreads(2);
+        runParameters.setDynamicFrameScheduling(true);
+        runParameters.setFrameBatchSize(4);
+        InputFiles inputFiles = createInputFiles(0, 40);
+
+        FrameBatchScheduler scheduler = new FrameBatchScheduler(inputFiles, 2);
+        assertEquals("Batch size hint does not match the configured value", 4, scheduler.getBatchSizeHint(0));
+
+        InputFiles batch = scheduler.nextBatch(1);
+        assertEquals("First batch size does not match", 4, batch.size());
+        assertEquals("First batch must start at the first frame", 0, batch.getRelativeStartFrame());
+
+        batch = scheduler.nextBatch(0);
+        assertEquals("Second batch must start after the first batch", 4, batch.getRelativeStartFrame());
+    }
+
+    @Test
+    public void dynamicSchedulingIsTheDefaultPass() {
+        runParameters.setTotalNumberOfThreads(2);
+        FrameBatchScheduler scheduler = new FrameBatchScheduler(createInputFiles(0, 10), 2);
+        assertTrue("Scheduler should be dynamic by default", scheduler.isDynamic());
+    }
+
+    @Test
+    public void seedingFromPreviousFrameForcesStaticSchedulingPass() {
+        runParameters.setTotalNumberOfThreads(2);
+        runParameters.setDynamicFrameScheduling(true);
+        runParameters.setSeedFromPreviousFrame(true);
+        FrameBatchScheduler scheduler = new FrameBatchScheduler(createInputFiles(0, 10), 2);
+        assertFalse("Seeded frames depend on the batch boundaries, so scheduling must be static", scheduler.isDynamic());
+        assertEquals("Each thread must receive a single slice", 5, scheduler.nextBatch(0).size());
+        assertNull("Only one slice per thread is expected", scheduler.nextBatch(0));
+    }
+
+    @Test
+    public void staticSchedulingHandsOneSlicePerThreadPass() {
+        runParameters.setTotalNumberOfThreads(3);
+        runParameters.setDynamicFrameScheduling(false);
+        InputFiles inputFiles = createInputFiles(0, 10);
+
+        FrameBatchScheduler scheduler = new FrameBatchScheduler(inputFiles, 3);
+        assertFalse("Scheduler should be static", scheduler.isDynamic());
+
+        int totalFrames = 0;
+        for (int threadIdx = 0; threadIdx < 3; threadIdx++) {
+            InputFiles batch = scheduler.nextBatch(threadIdx);
+            assertEquals("Slice must be contiguous with the previous slice", totalFrames, batch.getRelativeStartFrame());
+            totalFrames += batch.size();
+            assertNull("Only one slice per thread is expected", scheduler.nextBatch(threadIdx));
+        }
+        assertEquals("All frames must be assigned", 10, totalFrames);
+    }
+
+    private List<Integer> takeBatchStarts(FrameBatchScheduler scheduler, int[] threadsOrder) {
+        List<Integer> batchStarts = new ArrayList<Integer>();
+        InputFiles batch;
+        int index = 0;
+        while ((batch = scheduler.nextBatch(threadsOrder[index++ % threadsOrder.length])) != null) {
+            batchStarts.add(batch.getRelativeStartFrame());
+        }
+
+        return batchStarts;
+    }
+
+    @Test
+    public void streamingWithSeedingUsesUniformBatchesPass() {
+        runParameters.setTotalNumberOfThreads(3);
+        runParameters.setDynamicFrameScheduling(false);
+        runParameters.setSeedFromPreviousFrame(true);
+        runParameters.setStreamingExporter(new StreamingStructMultiFrameFloatVelocityExporter());
+
+        FrameBatchScheduler scheduler = new FrameBatchScheduler(createInputFiles(0, 100), 3);
+        assertTrue("Streamed velocities must be computed in frame batches", scheduler.isDynamic());
+        assertEquals("Batch sizes must be the same for all threads", scheduler.getBatchSizeHint(0), scheduler.getBatchSizeHint(2));
+
+        //Seeded frames depend on the batch boundaries, which must not depend on which thread takes each batch
+        List<Integer> batchStarts = takeBatchStarts(scheduler, new int[] { 0, 1, 2 });
+        assertEquals("Batch boundaries depend on the threads order", batchStarts,
+                takeBatchStarts(new FrameBatchScheduler(createInputFiles(0, 100), 3), new int[] { 2, 2, 1, 0 }));
+    }
+}
@@ -0,0 +1,88 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Test;
+
+public class PipelineStageTimersTests {
+
+    @Test
+    public void levelAndFrameStagesAccountedSeparatelyPass() {
+        PipelineStageTimers timers = new PipelineStageTimers(0, 3);
+        long start = timers.begin();
+        long end = timers.end(PipelineStageEnum.CrossCorrelation, 1, start);
+        timers.end(PipelineStageEnum.ImageRead, end);
+        timers.addTiles(1, 64);
+        timers.incrementReIterations(1);
+        timers.addValidationResults(2, 5, 1);
+        timers.incrementFrames();
+
+        assertEquals("CrossCorrelation time must be accounted at level 1",
+                end - start, timers.getStageNanos(PipelineStageEnum.CrossCorrelation, 1));
+        assertEquals("CrossCorrelation time must not be accounted at level 0",
+                0, timers.getStageNanos(PipelineStageEnum.CrossCorrelation, 0));
+        assertEquals("Total time must match the level 1 time", end - start, timers.getStageTotalNanos(PipelineStageEnum.CrossCorrelation));
+        assertEquals("Frame stages ignore the level", timers.getStageNanos(PipelineStageEnum.ImageRead, 0),
+                timers.getStageNanos(PipelineStageEnum.ImageRead, 2));
+        assertEquals("Tiles mismatch", 64, timers.getTiles(1));
+        assertEquals("Re-iterations mismatch", 1, timers.getReIterations(1));
+        assertEquals("Replaced vectors mismatch", 5, timers.getReplacedVectors(2));
+        assertEquals("Invalid vectors mismatch", 1, timers.getInvalidVectors(2));
+        assertEquals("Frames mismatch", 1, timers.getFrames());
+    }
+
+    @Test
+    public void addWithMoreLevelsResizesPass() {
+        PipelineStageTimers timersA = new PipelineStageTimers(0, 2);
+        timersA.addTiles(1, 10);
+        timersA.incrementFrames();
+        PipelineStageTimers timersB = new PipelineStageTimers(1, 4);
+        timersB.addTiles(1, 5);
+        timersB.addTiles(3, 7);
+        timersB.incrementFrames();
+
+        PipelineStageTimers total = new PipelineStageTimers(-1, 1);
+        total.add(timersA);
+        total.add(timersB);
+
+        assertEquals("Adaptive levels must grow to the largest", 4, total.getAdaptiveLevels());
+        assertEquals("Level 1 tiles mismatch", 15, total.getTiles(1));
+        assertEquals("Level 3 tiles mismatch", 7, total.getTiles(3));
+        assertEquals("Frames mismatch", 2, total.getFrames());
+    }
+
+    @Test
+    public void exportCsvSummaryPass() throws IOException {
+        ExecutionStatus status = new ExecutionStatus();
+        assertNull("No timers should exist before any thread registers", status.getAggregatedStageTimers());
+        status.getOrCreateStageTimers(1, 2).addTiles(0, 4);
+        status.getOrCreateStageTimers(0, 2).addTiles(0, 6);
+
+        File file = File.createTempFile("timings", ".csv");
+        try {
+            status.exportStageTimings(file.getAbsolutePath());
+            List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+            //Header, then 2 levels plus the frame row, for each of the 2 threads and the total
+            assertEquals("Number of lines mismatch", 1 + 3 * 3, lines.size());
+            assertTrue("Header must start with the thread column", lines.get(0).startsWith("thread,level,frames,tiles"));
+            assertTrue("Threads must be sorted", lines.get(1).startsWith("0,0,0,6,"));
+            assertTrue("Total row must aggregate all threads", lines.get(7).startsWith("all,0,0,10,"));
+        } finally {
+            file.delete();
+        }
+    }
+}
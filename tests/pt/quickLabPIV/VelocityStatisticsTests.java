@@ -0,0 +1,147 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import pt.quickLabPIV.iareas.IterationStepTiles;
+import pt.quickLabPIV.iareas.TilesOrderEnum;
+
+public class VelocityStatisticsTests {
+    private static final int HEIGHT = 4;
+    private static final int WIDTH = 7;
+    private static final int FRAMES = 50;
+
+    private Velocities[] frames;
+
+    @Before
+    public void setup() {
+        PIVContextTestsSingleton.setSingleton();
+        Random rnd = new Random(2017L);
+        frames = new Velocities[FRAMES];
+        for (int frame = 0; frame < FRAMES; frame++) {
+            frames[frame] = new Velocities(frame, HEIGHT, WIDTH, true);
+            for (int i = 0; i < HEIGHT; i++) {
+                for (int j = 0; j < WIDTH; j++) {
+                    frames[frame].getU()[i][j] = 12.0f + (float)rnd.nextGaussian() * (1.0f + i);
+                    frames[frame].getV()[i][j] = -3.0f + (float)rnd.nextGaussian() * 0.5f + 0.3f * frames[frame].getU()[i][j];
+                    if (rnd.nextInt(10) == 0) {
+                        frames[frame].getValidity()[i][j] = rnd.nextBoolean() ? Velocities.INVALID_VECTOR : Velocities.MASKED_VECTOR;
+                    }
+                }
+            }
+        }
+        //A location that is never valid
+        for (int frame = 0; frame < FRAMES; frame++) {
+            frames[frame].getU()[0][0] = Float.NaN;
+        }
+    }
+
+    private void assertMatchesTwoPass(VelocityStatistics statistics) {
+        assertEquals("Number of frames mismatch", FRAMES, statistics.getNumberOfFrames());
+        for (int i = 0; i < HEIGHT; i++) {
+            for (int j = 0; j < WIDTH; j++) {
+                int n = 0;
+                double sumU = 0.0;
+                double sumV = 0.0;
+                for (Velocities frame : frames) {
+                    if (!Float.isNaN(frame.getU()[i][j]) && frame.getValidity()[i][j] == Velocities.VALID_VECTOR) {
+                        n++;
+                        sumU += frame.getU()[i][j];
+                        sumV += frame.getV()[i][j];
+                    }
+                }
+                assertEquals("Valid count mismatch at [I: " + i + ", J: " + j + "]", n, statistics.getValidCount(i, j));
+                if (n == 0) {
+                    assertTrue("Mean must be undefined", Float.isNaN(statistics.getReynoldsStressUU(i, j)));
+                    continue;
+                }
+
+                final double meanU = sumU / n;
+                final double meanV = sumV / n;
+                double uu = 0.0;
+                double vv = 0.0;
+                double uv = 0.0;
+                for (Velocities frame : frames) {
+                    if (!Float.isNaN(frame.getU()[i][j]) && frame.getValidity()[i][j] == Velocities.VALID_VECTOR) {
+                        uu += (frame.getU()[i][j] - meanU) * (frame.getU()[i][j] - meanU);
+                        vv += (frame.getV()[i][j] - meanV) * (frame.getV()[i][j] - meanV);
+                        uv += (frame.getU()[i][j] - meanU) * (frame.getV()[i][j] - meanV);
+                    }
+                }
+                assertEquals("Mean U mismatch at [I: " + i + ", J: " + j + "]", meanU, statistics.getMeanU(i, j), 1e-4);
+                assertEquals("Mean V mismatch at [I: " + i + ", J: " + j + "]", meanV, statistics.getMeanV(i, j), 1e-4);
+                assertEquals("UU mismatch at [I: " + i + ", J: " + j + "]", uu / n, statistics.getReynoldsStressUU(i, j), 1e-4);
+                assertEquals("VV mismatch at [I: " + i + ", J: " + j + "]", vv / n, statistics.getReynoldsStressVV(i, j), 1e-4);
+                assertEquals("UV mismatch at [I: " + i + ", J: " + j + "]", uv / n, statistics.getReynoldsStressUV(i, j), 1e-4);
+                assertEquals("RMS U mismatch at [I: " + i + ", J: " + j + "]", Math.sqrt(uu / n), statistics.getRmsU(i, j), 1e-4);
+            }
+        }
+    }
+
+    @Test
+    public void accumulatedStatisticsPass() {
+        VelocityStatistics statistics = new VelocityStatistics(HEIGHT, WIDTH);
+        for (Velocities frame : frames) {
+            statistics.accumulate(frame);
+        }
+        assertMatchesTwoPass(statistics);
+    }
+
+    @Test
+    public void mergedStatisticsPass() {
+        //Uneven batches, including an empty one
+        int[] batchEnds = { 7, 7, 30, FRAMES };
+        VelocityStatistics merged = null;
+        int start = 0;
+        for (int end : batchEnds) {
+            VelocityStatistics batch = new VelocityStatistics(HEIGHT, WIDTH);
+            for (int frame = start; frame < end; frame++) {
+                batch.accumulate(frames[frame]);
+            }
+            if (merged == null) {
+                merged = batch;
+            } else {
+                merged.merge(batch);
+            }
+            start = end;
+        }
+        assertMatchesTwoPass(merged);
+    }
+
+    private PIVResults createBatchResults(int startFrame, int numberOfFrames) {
+        IterationStepTiles stepTiles = new IterationStepTiles(null, null, null, TilesOrderEnum.FirstImage, 0, 1,
+                (short)32, (short)32, (short)HEIGHT, (short)WIDTH, (short)0, (short)0, (short)0, (short)0);
+        PIVResults results = new PIVResults();
+        results.getOrCreateMap(0).prepare(startFrame, startFrame, numberOfFrames, 128, 224, stepTiles);
+        VelocityStatistics statistics = results.getOrCreateStatistics(HEIGHT, WIDTH);
+        for (int frame = startFrame; frame < startFrame + numberOfFrames; frame++) {
+            statistics.accumulate(frames[frame]);
+        }
+        return results;
+    }
+
+    @Test
+    public void concatenatedResultsStatisticsPass() {
+        PIVResults first = createBatchResults(0, 20);
+        PIVResults second = createBatchResults(20, 5);
+        PIVResults third = createBatchResults(25, FRAMES - 25);
+
+        //Results are concatenated as a chain, as done by the frame batch scheduler
+        first.concatenate(second);
+        second.concatenate(third);
+        assertSame("Statistics must be shared by the concatenated results", first.getStatistics(), third.getStatistics());
+        assertMatchesTwoPass(first.getStatistics());
+    }
+}
@@ -0,0 +1,118 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.business.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+
+public class PIVBatchServerTests {
+    private PIVBatchServer server;
+    private PIVBatchClient client;
+
+    @Before
+    public void setup() throws IOException {
+        server = new PIVBatchServer(0);
+        server.start();
+        client = new PIVBatchClient(server.getPort());
+    }
+
+    @After
+    public void tearDown() {
+        client.close();
+        server.stop();
+    }
+
+    @Test
+    public void jobStatusEncodingPass() {
+        PIVBatchJobStatus status = new PIVBatchJobStatus(12345678901L, PIVBatchJobStateEnum.FAILED, 7, 100, 2.5f, "Failure ção", "out.mat");
+        PIVBatchJobStatus decoded = PIVBatchServiceDefinition.CANCEL_JOB_METHOD.parseResponse(
+                PIVBatchServiceDefinition.CANCEL_JOB_METHOD.streamResponse(status));
+        assertEquals("Job id mismatch", status.getJobId(), decoded.getJobId());
+        assertEquals("State mismatch", status.getState(), decoded.getState());
+        assertEquals("Processed images mismatch", status.getProcessedImages(), decoded.getProcessedImages());
+        assertEquals("Total images mismatch", status.getTotalImages(), decoded.getTotalImages());
+        assertEquals("Elapsed time mismatch", status.getElapsedTime(), decoded.getElapsedTime(), 0.0f);
+        assertEquals("Message mismatch", status.getMessage(), decoded.getMessage());
+        assertEquals("Output filename mismatch", status.getOutputFilename(), decoded.getOutputFilename());
+    }
+
+    @Test
+    public void missingProjectFileJobFailsPass() {
+        PIVBatchJobStatus status = client.submitProject("missingProjectFile.xml", 0);
+        assertTrue("Job must have an id", status.getJobId() > 0);
+        assertEquals("Job must be queued", PIVBatchJobStateEnum.QUEUED, status.getState());
+
+        PIVBatchJobStatus finalStatus = client.waitForJob(status.getJobId());
+        assertEquals("Job id mismatch", status.getJobId(), finalStatus.getJobId());
+        assertEquals("Job must fail", PIVBatchJobStateEnum.FAILED, finalStatus.getState());
+        assertTrue("Failure must be described", finalStatus.getMessage().startsWith("Project file not found"));
+
+        //Finished jobs can still be watched and are not affected by cancellation
+        assertEquals("Job must remain failed", PIVBatchJobStateEnum.FAILED, client.waitForJob(status.getJobId()).getState());
+        assertEquals("Job must remain failed", PIVBatchJobStateEnum.FAILED, client.cancelJob(status.getJobId()).getState());
+    }
+
+    @Test
+    public void oldestFinishedJobsForgottenPass() throws IOException {
+        PIVBatchServer limitedServer = new PIVBatchServer(0, 2);
+        limitedServer.start();
+        PIVBatchClient limitedClient = new PIVBatchClient(limitedServer.getPort());
+        try {
+            long[] jobIds = new long[4];
+            for (int index = 0; index < jobIds.length; index++) {
+                jobIds[index] = limitedClient.submitProject("missingProjectFile.xml", 0).getJobId();
+                assertEquals("Job must fail", PIVBatchJobStateEnum.FAILED, limitedClient.waitForJob(jobIds[index]).getState());
+            }
+
+            for (int index = 0; index < 2; index++) {
+                try {
+                    limitedClient.waitForJob(jobIds[index]);
+                    throw new AssertionError("Oldest finished job must be forgotten: " + jobIds[index]);
+                } catch (StatusRuntimeException e) {
+                    assertEquals("Not found expected", Status.Code.NOT_FOUND, e.getStatus().getCode());
+                }
+            }
+            for (int index = 2; index < jobIds.length; index++) {
+                assertEquals("Most recently finished jobs must be kept", PIVBatchJobStateEnum.FAILED, limitedClient.waitForJob(jobIds[index]).getState());
+            }
+        } finally {
+            limitedClient.close();
+            limitedServer.stop();
+        }
+    }
+
+    @Test
+    public void invalidPixelDepthFail() {
+        try {
+            client.submitProject("project.xml", 9);
+        } catch (StatusRuntimeException e) {
+            assertEquals("Invalid argument expected", Status.Code.INVALID_ARGUMENT, e.getStatus().getCode());
+            return;
+        }
+        throw new AssertionError("Submission must fail");
+    }
+
+    @Test
+    public void unknownJobFail() {
+        try {
+            client.cancelJob(1000);
+        } catch (StatusRuntimeException e) {
+            assertEquals("Not found expected", Status.Code.NOT_FOUND, e.getStatus().getCode());
+            return;
+        }
+        throw new AssertionError("Cancellation must fail");
+    }
+}
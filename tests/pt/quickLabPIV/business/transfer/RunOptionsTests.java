@@ -0,0 +1,243 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.business.transfer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Properties;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import pt.quickLabPIV.PIVContextTestsSingleton;
+import pt.quickLabPIV.PIVRunParameters;
+import pt.quickLabPIV.exceptions.InvalidOptionException;
+import pt.quickLabPIV.ui.models.DataExportConfigurationModel;
+import pt.quickLabPIV.ui.models.ExecutionEnvModel;
+import pt.quickLabPIV.ui.models.VelocityExportFormatEnum;
+
+public class RunOptionsTests {
+    private PIVRunParameters runParameters;
+
+    @Before
+    public void setup() {
+        PIVContextTestsSingleton.setSingleton();
+        PIVContextTestsSingleton.getSingleton().resetParametersInstances();
+        runParameters = PIVContextTestsSingleton.getSingleton().getPIVRunParameters();
+    }
+
+    private PIVRunParameters convert(ExecutionEnvModel execEnv, String ... args) {
+        execEnv.accept(new ExecutionEnvConverterVisitor(runParameters));
+        ExecuteLocalPIVWorker.applyRunOptions(runParameters, CommandLineOptionsEnum.parseOptions(args));
+        return runParameters;
+    }
+
+    @Test
+    public void seedFromPreviousFrameFlagParsedPass() {
+        Properties options = CommandLineOptionsEnum.parseOptions(new String[] { "--seedFromPreviousFrame", "--pixelDepth", "16" });
+        assertEquals("Flag must be set", Boolean.TRUE, options.get(CommandLineOptionsEnum.SEED_FROM_PREVIOUS_FRAME.key()));
+        //Flag takes no argument, so the following option must still be parsed
+        assertEquals("Pixel depth mismatch", 16, options.get(CommandLineOptionsEnum.PIXEL_DEPTH.key()));
+
+        options = CommandLineOptionsEnum.parseOptions(new String[] { "--pixelDepth", "8" });
+        assertFalse("Flag must not be set", options.containsKey(CommandLineOptionsEnum.SEED_FROM_PREVIOUS_FRAME.key()));
+    }
+
+    @Test
+    public void seedFromPreviousFrameFromExecutionEnvironmentPass() {
+        ExecutionEnvModel execEnv = new ExecutionEnvModel();
+        execEnv.setEnableOpenCL(false);
+        assertFalse("Seeding must be disabled by default", convert(execEnv).isSeedFromPreviousFrame());
+
+        execEnv.setSeedFromPreviousFrame(true);
+        assertTrue("Seeding must be enabled from the execution environment", convert(execEnv.copy()).isSeedFromPreviousFrame());
+
+        //Run parameters are reused across runs, so a disabled setting must be restored
+        execEnv.setSeedFromPreviousFrame(false);
+        assertFalse("Seeding must be disabled from the execution environment", convert(execEnv).isSeedFromPreviousFrame());
+    }
+
+    @Test
+    public void seedFromPreviousFrameCommandLineOverridePass() {
+        ExecutionEnvModel execEnv = new ExecutionEnvModel();
+        execEnv.setEnableOpenCL(false);
+        assertTrue("Seeding must be enabled from the command line", convert(execEnv, "--seedFromPreviousFrame").isSeedFromPreviousFrame());
+    }
+
+    @Test
+    public void exportFormatOptionParsedPass() {
+        Properties options = CommandLineOptionsEnum.parseOptions(new String[] { "--exportFormat", "indexed", "--seedFromPreviousFrame" });
+        assertEquals("Export format mismatch", VelocityExportFormatEnum.IndexedVelocityStore, options.get(CommandLineOptionsEnum.EXPORT_FORMAT.key()));
+        assertTrue("Following flag must be parsed", options.containsKey(CommandLineOptionsEnum.SEED_FROM_PREVIOUS_FRAME.key()));
+
+        options = CommandLineOptionsEnum.parseOptions(new String[] { "--exportFormat", "matlab" });
+        assertEquals("Export format mismatch", VelocityExportFormatEnum.Matlab, options.get(CommandLineOptionsEnum.EXPORT_FORMAT.key()));
+    }
+
+    @Test
+    public void invalidExportFormatOptionFail() {
+        try {
+            CommandLineOptionsEnum.parseOptions(new String[] { "--exportFormat", "csv" });
+            fail("Unknown export format must be rejected");
+        } catch (InvalidOptionException e) {
+            //Expected
+        }
+    }
+
+    @Test
+    public void exportFormatFromDataExportConfigurationPass() {
+        DataExportConfigurationModel exportModel = new DataExportConfigurationModel();
+        assertEquals("Matlab must be the default export format", VelocityExportFormatEnum.Matlab, exportModel.getExportFormat());
+        ExecuteLocalPIVWorker.applyExportOptions(runParameters, exportModel, new Properties());
+        assertFalse("Indexed store export must be disabled", runParameters.isIndexedVelocityStoreExport());
+
+        exportModel.setExportFormat(VelocityExportFormatEnum.IndexedVelocityStore);
+        DataExportConfigurationModel copy = exportModel.copy();
+        assertFalse("Copy must not differ", exportModel.isChanged(copy));
+        ExecuteLocalPIVWorker.applyExportOptions(runParameters, copy, new Properties());
+        assertTrue("Indexed store export must be enabled", runParameters.isIndexedVelocityStoreExport());
+
+        //Command line overrides the project configuration
+        ExecuteLocalPIVWorker.applyExportOptions(runParameters, copy, CommandLineOptionsEnum.parseOptions(new String[] { "--exportFormat", "matlab" }));
+        assertFalse("Indexed store export must be disabled from the command line", runParameters.isIndexedVelocityStoreExport());
+    }
+
+    @Test
+    public void velocityExportFlagsParsedPass() {
+        Properties options = CommandLineOptionsEnum.parseOptions(new String[] { "--velocityStatistics", "--noVelocityMaps", "--pixelDepth", "8" });
+        assertTrue("Statistics flag must be set", options.containsKey(CommandLineOptionsEnum.VELOCITY_STATISTICS.key()));
+        assertTrue("No maps flag must be set", options.containsKey(CommandLineOptionsEnum.NO_VELOCITY_MAPS.key()));
+        assertEquals("Pixel depth mismatch", 8, options.get(CommandLineOptionsEnum.PIXEL_DEPTH.key()));
+    }
+
+    @Test
+    public void velocityExportFromDataExportConfigurationPass() {
+        DataExportConfigurationModel exportModel = new DataExportConfigurationModel();
+        ExecuteLocalPIVWorker.applyExportOptions(runParameters, exportModel, new Properties());
+        assertTrue("Velocity maps must be exported by default", runParameters.isVelocityMapsExport());
+        assertFalse("Statistics must be disabled by default", runParameters.isVelocityStatistics());
+
+        exportModel.setVelocityStatistics(true);
+        exportModel.setVelocityMapsExport(false);
+        DataExportConfigurationModel copy = exportModel.copy();
+        assertFalse("Copy must not differ", exportModel.isChanged(copy));
+        ExecuteLocalPIVWorker.applyExportOptions(runParameters, copy, new Properties());
+        assertFalse("Velocity maps must not be exported", runParameters.isVelocityMapsExport());
+        assertTrue("Statistics must be enabled", runParameters.isVelocityStatistics());
+
+        //Run parameters are reused across runs, so the defaults must be restored
+        ExecuteLocalPIVWorker.applyExportOptions(runParameters, new DataExportConfigurationModel(), new Properties());
+        assertTrue("Velocity maps must be exported", runParameters.isVelocityMapsExport());
+        assertFalse("Statistics must be disabled", runParameters.isVelocityStatistics());
+    }
+
+    @Test
+    public void velocityExportCommandLineOverridePass() {
+        DataExportConfigurationModel exportModel = new DataExportConfigurationModel();
+        ExecuteLocalPIVWorker.applyExportOptions(runParameters, exportModel, CommandLineOptionsEnum.parseOptions(new String[] { "--velocityStatistics" }));
+        assertTrue("Velocity maps must be exported", runParameters.isVelocityMapsExport());
+        assertTrue("Statistics must be enabled from the command line", runParameters.isVelocityStatistics());
+
+        //Statistics are the only output left when velocity maps are not exported
+        ExecuteLocalPIVWorker.applyExportOptions(runParameters, exportModel, CommandLineOptionsEnum.parseOptions(new String[] { "--noVelocityMaps" }));
+        assertFalse("Velocity maps must not be exported", runParameters.isVelocityMapsExport());
+        assertTrue("Statistics must be enabled when velocity maps are not exported", runParameters.isVelocityStatistics());
+    }
+
+    @Test
+    public void aggregatedCrossCorrelationFromExecutionEnvironmentPass() {
+        ExecutionEnvModel execEnv = new ExecutionEnvModel();
+        execEnv.setEnableOpenCL(false);
+        assertFalse("Aggregation must be disabled by default", convert(execEnv).isAggregatedCrossCorrelation());
+
+        execEnv.setAggregatedCrossCorrelation(true);
+        assertTrue("Aggregation must be enabled from the execution environment", convert(execEnv.copy()).isAggregatedCrossCorrelation());
+
+        execEnv.setAggregatedCrossCorrelation(false);
+        assertFalse("Aggregation must be disabled from the execution environment", convert(execEnv).isAggregatedCrossCorrelation());
+    }
+
+    @Test
+    public void aggregatedCrossCorrelationCommandLineOverridePass() {
+        Properties options = CommandLineOptionsEnum.parseOptions(new String[] { "--aggregatedCrossCorrelation", "--pixelDepth", "16" });
+        assertTrue("Flag must be set", options.containsKey(CommandLineOptionsEnum.AGGREGATED_CROSS_CORRELATION.key()));
+        assertEquals("Pixel depth mismatch", 16, options.get(CommandLineOptionsEnum.PIXEL_DEPTH.key()));
+
+        ExecutionEnvModel execEnv = new ExecutionEnvModel();
+        execEnv.setEnableOpenCL(false);
+        assertTrue("Aggregation must be enabled from the command line", convert(execEnv, "--aggregatedCrossCorrelation").isAggregatedCrossCorrelation());
+    }
+
+    @Test
+    public void frameSchedulingOptionsPass() {
+        ExecutionEnvModel execEnv = new ExecutionEnvModel();
+        execEnv.setEnableOpenCL(false);
+        PIVRunParameters converted = convert(execEnv, "--staticFrameScheduling", "--frameBatchSize", "4");
+        assertFalse("Scheduling must be static from the command line", converted.isDynamicFrameScheduling());
+        assertEquals("Frame batch size mismatch", 4, converted.getFrameBatchSize());
+
+        //Run parameters are reused across runs, so the defaults must be restored
+        converted = convert(execEnv);
+        assertTrue("Scheduling must be dynamic by default", converted.isDynamicFrameScheduling());
+        assertEquals("Frame batch size must be automatic by default", 0, converted.getFrameBatchSize());
+    }
+
+    @Test
+    public void negativeFrameBatchSizeFail() {
+        try {
+            CommandLineOptionsEnum.parseOptions(new String[] { "--frameBatchSize", "-1" });
+            fail("Negative frame batch size must be rejected");
+        } catch (InvalidOptionException e) {
+            //Expected
+        }
+    }
+
+    @Test
+    public void parallelismOptionsPass() {
+        ExecutionEnvModel execEnv = new ExecutionEnvModel();
+        execEnv.setEnableOpenCL(false);
+        PIVRunParameters converted = convert(execEnv);
+        assertEquals("Tiles parallelism must be automatic by default", 0, converted.getTilesParallelism());
+        assertEquals("Interpolation parallelism must be automatic by default", 0, converted.getInterpolationParallelism());
+
+        converted = convert(execEnv, "--tilesParallelism", "1", "--interpolationParallelism", "3");
+        assertEquals("Tiles parallelism mismatch", 1, converted.getTilesParallelism());
+        assertEquals("Interpolation parallelism mismatch", 3, converted.getInterpolationParallelism());
+
+        //Run parameters are reused across runs, so the defaults must be restored
+        converted = convert(execEnv);
+        assertEquals("Tiles parallelism must be restored", 0, converted.getTilesParallelism());
+        assertEquals("Interpolation parallelism must be restored", 0, converted.getInterpolationParallelism());
+    }
+
+    @Test
+    public void missingParallelismArgumentFail() {
+        try {
+            CommandLineOptionsEnum.parseOptions(new String[] { "--interpolationParallelism" });
+            fail("Missing argument must be rejected");
+        } catch (InvalidOptionException e) {
+            //Expected
+        }
+    }
+
+    @Test
+    public void stageTimingsOptionPass() {
+        ExecuteLocalPIVWorker.applyStageTimingsOption(runParameters, "/tmp/results_MV0.mat", new Properties());
+        assertNull("Stage timings file must not be written by default", runParameters.getStageTimingsFilename());
+
+        ExecuteLocalPIVWorker.applyStageTimingsOption(runParameters, "/tmp/results_MV0.mat", CommandLineOptionsEnum.parseOptions(new String[] { "--stageTimings" }));
+        assertEquals("Stage timings filename mismatch", "/tmp/results_timings.csv", runParameters.getStageTimingsFilename());
+
+        //Run parameters are reused across runs, so the timings file must be reset
+        ExecuteLocalPIVWorker.applyStageTimingsOption(runParameters, "/tmp/results_MV0.mat", new Properties());
+        assertNull("Stage timings file must be reset", runParameters.getStageTimingsFilename());
+    }
+}
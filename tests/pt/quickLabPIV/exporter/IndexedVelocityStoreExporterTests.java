@@ -0,0 +1,169 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.exporter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import pt.quickLabPIV.PIVContextSingleton;
+import pt.quickLabPIV.PIVContextTestsSingleton;
+import pt.quickLabPIV.PIVInputParameters;
+import pt.quickLabPIV.PIVMap;
+import pt.quickLabPIV.Velocities;
+import pt.quickLabPIV.iareas.IterationStepTiles;
+import pt.quickLabPIV.iareas.Tile;
+import pt.quickLabPIV.iareas.TilesOrderEnum;
+
+public class IndexedVelocityStoreExporterTests {
+    private static final int FRAMES = 6;
+    private static final int TILES_I = 3;
+    private static final int TILES_J = 5;
+
+    private final File storeFile = new File("indexedVelocities" + IndexedVelocityStoreExporter.FILE_EXTENSION);
+
+    @Before
+    public void setup() {
+        PIVContextTestsSingleton.setSingleton();
+        PIVContextSingleton singleton = PIVContextSingleton.getSingleton();
+        singleton.resetParametersInstances();
+        PIVInputParameters parameters = singleton.getPIVParameters();
+        parameters.setImageHeightPixels(96);
+        parameters.setImageWidthPixels(160);
+        parameters.setInterrogationAreaStartIPixels(32);
+        parameters.setInterrogationAreaEndIPixels(32);
+        parameters.setInterrogationAreaStartJPixels(32);
+        parameters.setInterrogationAreaEndJPixels(32);
+        parameters.setNumberOfVelocityFrames(FRAMES);
+    }
+
+    @After
+    public void tearDown() {
+        PIVContextSingleton.getSingleton().getPIVRunParameters().setStreamingExporter(null);
+        storeFile.delete();
+    }
+
+    private static float expectedU(int frame, int i, int j) {
+        return frame + i * 0.25f;
+    }
+
+    private static float expectedV(int frame, int i, int j) {
+        return -frame - j * 0.5f;
+    }
+
+    private static byte expectedValidity(int frame, int i, int j) {
+        if (i == 1 && j == frame % TILES_J) {
+            return Velocities.MASKED_VECTOR;
+        }
+        return j == 2 ? Velocities.INVALID_VECTOR : Velocities.VALID_VECTOR;
+    }
+
+    private IterationStepTiles createStepTiles(int frame) {
+        IterationStepTiles stepTiles = new IterationStepTiles(null, null, null, TilesOrderEnum.FirstImage, 0, 1,
+                (short)32, (short)32, (short)TILES_I, (short)TILES_J, (short)0, (short)0, (short)0, (short)0);
+        for (int i = 0; i < stepTiles.getNumberOfTilesInI(); i++) {
+            for (int j = 0; j < stepTiles.getNumberOfTilesInJ(); j++) {
+                Tile tile = stepTiles.getTile(i, j);
+                //Exported U velocities are the tile displacements in V, unless the UV order is swapped
+                tile.replaceDisplacement(expectedV(frame, i, j), expectedU(frame, i, j));
+                byte validity = expectedValidity(frame, i, j);
+                tile.setMaskedDisplacement(validity == Velocities.MASKED_VECTOR);
+                tile.setInvalidDisplacement(validity == Velocities.INVALID_VECTOR);
+            }
+        }
+
+        return stepTiles;
+    }
+
+    private PIVMap createMap() {
+        PIVMap map = new PIVMap();
+        map.prepare(0, 0, FRAMES, 96, 160, createStepTiles(0));
+        for (int frame = 0; frame < FRAMES; frame++) {
+            map.importFromIterationStepTiles(frame, createStepTiles(frame));
+        }
+
+        return map;
+    }
+
+    private void assertFrame(IndexedVelocityStoreReader reader, int frame) throws IOException {
+        assertTrue("Frame " + frame + " must be available", reader.isFrameAvailable(frame));
+        FloatBuffer u = reader.getU(frame);
+        FloatBuffer v = reader.getV(frame);
+        ByteBuffer validity = reader.getValidity(frame);
+        float[][] uMatrix = reader.readU(frame);
+        for (int i = 0; i < TILES_I; i++) {
+            for (int j = 0; j < TILES_J; j++) {
+                final int index = i * TILES_J + j;
+                assertEquals("U mismatch at frame " + frame + " [I: " + i + ", J: " + j + "]", expectedU(frame, i, j), u.get(index), 0.0f);
+                assertEquals("V mismatch at frame " + frame + " [I: " + i + ", J: " + j + "]", expectedV(frame, i, j), v.get(index), 0.0f);
+                assertEquals("U matrix mismatch at frame " + frame + " [I: " + i + ", J: " + j + "]", expectedU(frame, i, j), uMatrix[i][j], 0.0f);
+                assertEquals("Validity mismatch at frame " + frame + " [I: " + i + ", J: " + j + "]", expectedValidity(frame, i, j), validity.get(index));
+            }
+        }
+    }
+
+    @Test
+    public void framesReadWhileBeingWrittenPass() throws IOException {
+        IndexedVelocityStoreExporter exporter = new IndexedVelocityStoreExporter(FRAMES);
+        PIVContextSingleton.getSingleton().getPIVRunParameters().setStreamingExporter(exporter);
+        exporter.openFile(storeFile.getPath());
+        PIVMap map = createMap();
+
+        try (IndexedVelocityStoreReader reader = new IndexedVelocityStoreReader(storeFile.toPath())) {
+            assertEquals("Frame capacity mismatch", FRAMES, reader.getFrameCapacity());
+            assertEquals("No frames should be written yet", 0, reader.getNumberOfFrames());
+
+            //Frames are completed out of order
+            int[] order = { 3, 0, 5, 1 };
+            for (int index = 0; index < order.length; index++) {
+                exporter.exportFrame(map, map.detachVelocities(order[index]));
+                assertEquals("Number of written frames mismatch", index + 1, reader.getNumberOfFrames());
+                for (int previous = 0; previous <= index; previous++) {
+                    assertFrame(reader, order[previous]);
+                }
+            }
+            assertFalse("Frame 2 must not be available", reader.isFrameAvailable(2));
+            assertFalse("Frame 4 must not be available", reader.isFrameAvailable(4));
+            assertEquals("Map height mismatch", TILES_I, reader.getMapHeight());
+            assertEquals("Map width mismatch", TILES_J, reader.getMapWidth());
+            assertEquals("IA height mismatch", 32, reader.getIAHeight());
+            assertFalse("Map must not be dense", reader.isDenseExport());
+        } finally {
+            exporter.closeFile();
+        }
+
+        try (IndexedVelocityStoreReader reader = new IndexedVelocityStoreReader(storeFile.toPath())) {
+            assertEquals("Number of written frames mismatch", 4, reader.getNumberOfFrames());
+            assertFrame(reader, 5);
+            assertFrame(reader, 0);
+        }
+    }
+
+    @Test(expected = ExportFailedException.class)
+    public void frameExportedTwiceFail() {
+        IndexedVelocityStoreExporter exporter = new IndexedVelocityStoreExporter(FRAMES);
+        PIVContextSingleton.getSingleton().getPIVRunParameters().setStreamingExporter(exporter);
+        exporter.openFile(storeFile.getPath());
+        try {
+            PIVMap map = createMap();
+            PIVMap otherMap = createMap();
+            exporter.exportFrame(map, map.detachVelocities(1));
+            exporter.exportFrame(otherMap, otherMap.detachVelocities(1));
+        } finally {
+            exporter.closeFile();
+        }
+    }
+}
@@ -0,0 +1,243 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.exporter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import pt.quickLabPIV.FrameBatchScheduler;
+import pt.quickLabPIV.InputFiles;
+import pt.quickLabPIV.PIVContextSingleton;
+import pt.quickLabPIV.PIVContextTestsSingleton;
+import pt.quickLabPIV.PIVInputParameters;
+import pt.quickLabPIV.PIVMap;
+import pt.quickLabPIV.PIVResults;
+import pt.quickLabPIV.PIVRunParameters;
+import pt.quickLabPIV.iareas.IterationStepTiles;
+import pt.quickLabPIV.iareas.TilesOrderEnum;
+
+public class StreamingStructMultiFrameFloatVelocityExporterTests {
+    private static final int FRAMES = 5;
+    private static final int FIRST_BATCH_FRAMES = 3;
+    //The MAT-file header and the export date element depend on the export time
+    private static final int TIME_DEPENDENT_BYTES = 256;
+
+    private final File streamedFile = new File("streamedVelocities.mat");
+    private final File inMemoryFile = new File("inMemoryVelocities.mat");
+
+    @Before
+    public void setup() {
+        PIVContextTestsSingleton.setSingleton();
+        PIVContextSingleton singleton = PIVContextSingleton.getSingleton();
+        singleton.resetParametersInstances();
+        PIVInputParameters parameters = singleton.getPIVParameters();
+        parameters.setImageHeightPixels(96);
+        parameters.setImageWidthPixels(160);
+        parameters.setInterrogationAreaStartIPixels(32);
+        parameters.setInterrogationAreaEndIPixels(32);
+        parameters.setInterrogationAreaStartJPixels(32);
+        parameters.setInterrogationAreaEndJPixels(32);
+        parameters.setNumberOfVelocityFrames(FRAMES);
+    }
+
+    @After
+    public void tearDown() {
+        streamedFile.delete();
+        inMemoryFile.delete();
+    }
+
+    private IterationStepTiles createStepTiles(int frame) {
+        IterationStepTiles stepTiles = new IterationStepTiles(null, null, null, TilesOrderEnum.FirstImage, 0, 1,
+                (short)32, (short)32, (short)3, (short)5, (short)0, (short)0, (short)0, (short)0);
+        for (int i = 0; i < stepTiles.getNumberOfTilesInI(); i++) {
+            for (int j = 0; j < stepTiles.getNumberOfTilesInJ(); j++) {
+                stepTiles.getTile(i, j).replaceDisplacement(frame + i * 0.25f, -frame - j * 0.5f);
+            }
+        }
+
+        return stepTiles;
+    }
+
+    private PIVMap createBatchMap(int startFrame, int frames) {
+        PIVMap map = new PIVMap();
+        map.prepare(startFrame, startFrame, frames, 96, 160, createStepTiles(startFrame));
+        for (int frame = startFrame; frame < startFrame + frames; frame++) {
+            map.importFromIterationStepTiles(frame, createStepTiles(frame));
+        }
+
+        return map;
+    }
+
+    @Test
+    public void streamedFileMatchesInMemoryExportPass() throws IOException {
+        PIVResults firstBatch = new PIVResults();
+        PIVMap firstMap = firstBatch.getOrCreateMap(0);
+        firstMap.prepare(0, 0, FIRST_BATCH_FRAMES, 96, 160, createStepTiles(0));
+        PIVResults secondBatch = new PIVResults();
+        PIVMap secondMap = secondBatch.getOrCreateMap(0);
+        secondMap.prepare(FIRST_BATCH_FRAMES, FIRST_BATCH_FRAMES, FRAMES - FIRST_BATCH_FRAMES, 96, 160, createStepTiles(0));
+        for (int frame = 0; frame < FRAMES; frame++) {
+            PIVMap map = frame < FIRST_BATCH_FRAMES ? firstMap : secondMap;
+            map.importFromIterationStepTiles(frame, createStepTiles(frame));
+        }
+        firstBatch.concatenate(secondBatch);
+
+        StructMultiFrameFloatVelocityExporter inMemoryExporter = new StructMultiFrameFloatVelocityExporter();
+        inMemoryExporter.openFile(inMemoryFile.getPath());
+        inMemoryExporter.exportDataToFile(firstBatch);
+        inMemoryExporter.closeFile();
+
+        //Second batch is completed before the first one
+        PIVMap streamedFirstMap = createBatchMap(0, FIRST_BATCH_FRAMES);
+        PIVMap streamedSecondMap = createBatchMap(FIRST_BATCH_FRAMES, FRAMES - FIRST_BATCH_FRAMES);
+        StreamingStructMultiFrameFloatVelocityExporter streamingExporter = new StreamingStructMultiFrameFloatVelocityExporter(FRAMES);
+        streamingExporter.openFile(streamedFile.getPath());
+        for (int frame = FIRST_BATCH_FRAMES; frame < FRAMES; frame++) {
+            streamingExporter.exportFrame(streamedSecondMap, streamedSecondMap.detachVelocities(frame));
+        }
+        assertEquals("No frames should be written until the first frame is exported", 0, streamingExporter.getNumberOfExportedFrames());
+        for (int frame = 0; frame < FIRST_BATCH_FRAMES; frame++) {
+            streamingExporter.exportFrame(streamedFirstMap, streamedFirstMap.detachVelocities(frame));
+        }
+        assertEquals("All frames should have been written", FRAMES, streamingExporter.getNumberOfExportedFrames());
+        streamingExporter.closeFile();
+
+        assertSameFileContents();
+    }
+
+    private void assertSameFileContents() throws IOException {
+        byte[] expected = Files.readAllBytes(inMemoryFile.toPath());
+        byte[] obtained = Files.readAllBytes(streamedFile.toPath());
+        assertEquals("Streamed file size doesn't match", expected.length, obtained.length);
+        for (int index = TIME_DEPENDENT_BYTES; index < expected.length; index++) {
+            assertEquals("Streamed file content doesn't match at offset: " + index, expected[index], obtained[index]);
+        }
+    }
+
+    private FrameBatchScheduler createScheduler(int frames, int threads) {
+        List<File> files = new ArrayList<File>(frames);
+        for (int frame = 0; frame < frames; frame++) {
+            files.add(new File("frame" + frame));
+        }
+
+        return new FrameBatchScheduler(new InputFiles(0, 0, files, files), threads);
+    }
+
+    @Test
+    public void streamedFramesBoundedWithStaticSchedulingPass() throws Exception {
+        final int frames = 2 * StreamingStructMultiFrameFloatVelocityExporter.DEFAULT_REORDER_FRAMES + 7;
+        final int threads = 3;
+        PIVContextSingleton.getSingleton().getPIVParameters().setNumberOfVelocityFrames(frames);
+        PIVRunParameters runParameters = PIVContextSingleton.getSingleton().getPIVRunParameters();
+        runParameters.setUseOpenCL(false);
+        runParameters.setTotalNumberOfThreads(threads);
+        runParameters.setDynamicFrameScheduling(false);
+
+        PIVResults expectedResults = new PIVResults();
+        PIVMap expectedMap = expectedResults.getOrCreateMap(0);
+        expectedMap.prepare(0, 0, frames, 96, 160, createStepTiles(0));
+        for (int frame = 0; frame < frames; frame++) {
+            expectedMap.importFromIterationStepTiles(frame, createStepTiles(frame));
+        }
+        StructMultiFrameFloatVelocityExporter inMemoryExporter = new StructMultiFrameFloatVelocityExporter();
+        inMemoryExporter.openFile(inMemoryFile.getPath());
+        inMemoryExporter.exportDataToFile(expectedResults);
+        inMemoryExporter.closeFile();
+
+        final StreamingStructMultiFrameFloatVelocityExporter streamingExporter = new StreamingStructMultiFrameFloatVelocityExporter();
+        runParameters.setStreamingExporter(streamingExporter);
+        //Static slices are not used when streaming, so that the frames in flight don't depend on the sequence length
+        final FrameBatchScheduler scheduler = createScheduler(frames, threads);
+        assertTrue("Streamed velocities must be computed in frame batches", scheduler.isDynamic());
+        assertEquals("Frames in flight must not grow with the number of frames", createScheduler(10 * frames, threads).getMaxFramesInFlight(),
+                createScheduler(100 * frames, threads).getMaxFramesInFlight());
+        streamingExporter.setMaxFramesInFlight(scheduler.getMaxFramesInFlight());
+        assertEquals("Reorder buffer must keep its default size", StreamingStructMultiFrameFloatVelocityExporter.DEFAULT_REORDER_FRAMES,
+                streamingExporter.getReorderFrames());
+        streamingExporter.openFile(streamedFile.getPath());
+
+        //First batch is delayed, so that the other threads get ahead of it as far as the reorder buffer allows
+        final CountDownLatch laterBatchesStarted = new CountDownLatch(threads - 1);
+        ExecutorService service = Executors.newFixedThreadPool(threads);
+        boolean completed = false;
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>(threads);
+            for (int threadIdx = 0; threadIdx < threads; threadIdx++) {
+                final int thread = threadIdx;
+                final InputFiles firstBatch = scheduler.nextBatch(thread);
+                results.add(service.submit(() -> {
+                    InputFiles batch = firstBatch;
+                    if (thread == 0) {
+                        if (!laterBatchesStarted.await(30, TimeUnit.SECONDS)) {
+                            return false;
+                        }
+                        Thread.sleep(200);
+                    } else {
+                        laterBatchesStarted.countDown();
+                    }
+                    while (batch != null) {
+                        PIVMap map = createBatchMap(batch.getRelativeStartFrame(), batch.size());
+                        for (int frame = batch.getRelativeStartFrame(); frame < batch.getRelativeStartFrame() + batch.size(); frame++) {
+                            streamingExporter.exportFrame(map, map.detachVelocities(frame));
+                        }
+                        batch = scheduler.nextBatch(thread);
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue("Batches were not processed", result.get());
+            }
+            completed = true;
+        } catch (ExecutionException e) {
+            throw (Exception)e.getCause();
+        } finally {
+            if (!completed) {
+                //Wake up any thread still waiting for its frames to be written
+                streamingExporter.abort();
+            }
+            service.shutdownNow();
+        }
+        assertEquals("All frames should have been written", frames, streamingExporter.getNumberOfExportedFrames());
+        assertTrue("Buffered frames must be bounded by the reorder buffer, but were: " + streamingExporter.getMaxBufferedFrames(),
+                streamingExporter.getMaxBufferedFrames() <= StreamingStructMultiFrameFloatVelocityExporter.DEFAULT_REORDER_FRAMES);
+        assertTrue("Later frames must have been buffered while the first batch was delayed", streamingExporter.getMaxBufferedFrames() > 1);
+        streamingExporter.closeFile();
+
+        assertSameFileContents();
+    }
+
+    @Test(expected = ExportFailedException.class)
+    public void streamedFrameExportedTwiceFail() {
+        PIVMap map = createBatchMap(0, 2);
+        StreamingStructMultiFrameFloatVelocityExporter streamingExporter = new StreamingStructMultiFrameFloatVelocityExporter();
+        streamingExporter.openFile(streamedFile.getPath());
+        try {
+            PIVMap otherMap = createBatchMap(0, 2);
+            streamingExporter.exportFrame(map, map.detachVelocities(0));
+            streamingExporter.exportFrame(otherMap, otherMap.detachVelocities(0));
+        } finally {
+            streamingExporter.closeFile();
+        }
+    }
+}
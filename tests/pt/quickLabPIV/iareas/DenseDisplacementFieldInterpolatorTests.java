@@ -0,0 +1,136 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.iareas;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class DenseDisplacementFieldInterpolatorTests {
+    private static final int WIDTH = 150;
+    private static final int HEIGHT = 130;
+
+    private double[] createKnots(int count, double first, double step) {
+        double[] knots = new double[count];
+        for (int index = 0; index < count; index++) {
+            knots[index] = first + index * step;
+        }
+        return knots;
+    }
+
+    private double[][] createValues(Random rnd, int knotsI, int knotsJ) {
+        double[][] values = new double[knotsI][knotsJ];
+        for (int i = 0; i < knotsI; i++) {
+            for (int j = 0; j < knotsJ; j++) {
+                values[i][j] = rnd.nextDouble() * 8.0 - 4.0;
+            }
+        }
+        return values;
+    }
+
+    private void assertSameAsSplineInterpolator(DenseDisplacementFieldInterpolator field, double[] ys, double[] xs) {
+        Random rnd = new Random(2017L);
+        double[][] us = createValues(rnd, ys.length, xs.length);
+        double[][] vs = createValues(rnd, ys.length, xs.length);
+
+        //Run twice to validate the reuse of the planes
+        for (int run = 0; run < 2; run++) {
+            field.interpolate(ys, xs, us, vs, WIDTH, HEIGHT);
+        }
+
+        BiCubicSplineInterpolatorWithBiLinearBackup interp = BiCubicSplineInterpolatorWithBiLinearBackup.createDisplacementInterpolator(ys, xs, us, vs);
+        float[][][] expected = interp.interpolateDisplacements(0, 0, WIDTH, HEIGHT, (float[][][])null);
+        for (int i = 0; i < HEIGHT; i++) {
+            for (int j = 0; j < WIDTH; j++) {
+                assertEquals("U mismatch at [I: " + i + ", J: " + j + "]", expected[i][j][0], field.getU()[i * WIDTH + j], 0.0f);
+                assertEquals("V mismatch at [I: " + i + ", J: " + j + "]", expected[i][j][1], field.getV()[i * WIDTH + j], 0.0f);
+            }
+        }
+    }
+
+    @Test
+    public void splineFieldMatchesSplineInterpolatorPass() {
+        assertSameAsSplineInterpolator(new DenseDisplacementFieldInterpolator(), createKnots(8, 7.5, 16.0), createKnots(9, 7.5, 16.0));
+    }
+
+    @Test
+    public void splineFieldWithIrregularKnotsMatchesSplineInterpolatorPass() {
+        double[] ys = new double[] {3.0, 10.5, 40.0, 41.0, 90.5, 120.0};
+        double[] xs = new double[] {15.5, 20.0, 47.5, 100.0, 101.5};
+        assertSameAsSplineInterpolator(new DenseDisplacementFieldInterpolator(), ys, xs);
+    }
+
+    @Test
+    public void parallelSplineFieldMatchesSplineInterpolatorPass() {
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            DenseDisplacementFieldInterpolator field = new DenseDisplacementFieldInterpolator();
+            field.setParallelism(pool, 3);
+            assertSameAsSplineInterpolator(field, createKnots(8, 7.5, 16.0), createKnots(9, 7.5, 16.0));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void biLinearFieldWithTwoKnotsPass() {
+        double[] ys = new double[] {10.0, 50.0};
+        double[] xs = new double[] {20.0, 30.0, 60.0, 100.0};
+        double[][] us = new double[][] {{0.0, 1.0, 2.0, 3.0}, {4.0, 5.0, 6.0, 7.0}};
+        double[][] vs = new double[][] {{-1.0, -1.0, -1.0, -1.0}, {1.0, 1.0, 1.0, 1.0}};
+
+        DenseDisplacementFieldInterpolator field = new DenseDisplacementFieldInterpolator();
+        field.interpolate(ys, xs, us, vs, WIDTH, HEIGHT);
+
+        BiLinearInterpolatingFunction funcU = new BiLinearInterpolatingFunction(ys, xs, us);
+        BiLinearInterpolatingFunction funcV = new BiLinearInterpolatingFunction(ys, xs, vs);
+        for (int i = 0; i < HEIGHT; i++) {
+            double y = Math.min(Math.max(i, ys[0]), ys[ys.length - 1]);
+            for (int j = 0; j < WIDTH; j++) {
+                double x = Math.min(Math.max(j, xs[0]), xs[xs.length - 1]);
+                assertEquals("U mismatch at [I: " + i + ", J: " + j + "]", funcU.value(y, x), field.getU()[i * WIDTH + j], 1e-5f);
+                assertEquals("V mismatch at [I: " + i + ", J: " + j + "]", funcV.value(y, x), field.getV()[i * WIDTH + j], 1e-5f);
+            }
+        }
+    }
+
+    @Test
+    public void regionsFieldMatchesWholeFieldPass() {
+        Random rnd = new Random(2017L);
+        double[] ys = createKnots(8, 7.5, 16.0);
+        double[] xs = createKnots(9, 7.5, 16.0);
+        double[][] us = createValues(rnd, ys.length, xs.length);
+        double[][] vs = createValues(rnd, ys.length, xs.length);
+
+        DenseDisplacementFieldInterpolator field = new DenseDisplacementFieldInterpolator();
+        field.interpolate(ys, xs, us, vs, WIDTH, HEIGHT);
+        float[] expectedU = field.getU().clone();
+        float[] expectedV = field.getV().clone();
+
+        //Overlapping regions, including the image borders, with the remaining pixels left untouched
+        int[] regions = new int[] {0, 0, 20, 33, 10, 17, 45, 61, 100, 120, HEIGHT, WIDTH};
+        Arrays.fill(field.getU(), Float.NaN);
+        Arrays.fill(field.getV(), Float.NaN);
+        field.interpolateRegions(ys, xs, us, vs, WIDTH, HEIGHT, regions, regions.length / 4);
+        for (int i = 0; i < HEIGHT; i++) {
+            for (int j = 0; j < WIDTH; j++) {
+                boolean inRegion = false;
+                for (int offset = 0; offset < regions.length; offset += 4) {
+                    inRegion |= i >= regions[offset] && j >= regions[offset + 1] && i < regions[offset + 2] && j < regions[offset + 3];
+                }
+                float expectedUValue = inRegion ? expectedU[i * WIDTH + j] : Float.NaN;
+                float expectedVValue = inRegion ? expectedV[i * WIDTH + j] : Float.NaN;
+                assertEquals("U mismatch at [I: " + i + ", J: " + j + "]", expectedUValue, field.getU()[i * WIDTH + j], 0.0f);
+                assertEquals("V mismatch at [I: " + i + ", J: " + j + "]", expectedVValue, field.getV()[i * WIDTH + j], 0.0f);
+            }
+        }
+    }
+}
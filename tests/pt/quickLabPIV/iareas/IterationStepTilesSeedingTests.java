@@ -0,0 +1,96 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.iareas;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import pt.quickLabPIV.ClippingModeEnum;
+import pt.quickLabPIV.PIVContextTestsSingleton;
+import pt.quickLabPIV.PIVInputParameters;
+import pt.quickLabPIV.WarpingModeFactoryEnum;
+
+public class IterationStepTilesSeedingTests {
+    private static final float U = 3.25f;
+    private static final float V = -1.5f;
+
+    @Before
+    public void setup() {
+        PIVContextTestsSingleton.setSingleton();
+        PIVInputParameters parameters = PIVContextTestsSingleton.getSingleton().getPIVParameters();
+        parameters.setAreaDivisionStrategy(InterAreaDivisionStrategiesFactoryEnum.SuperPositionStrategy);
+        parameters.setAreaStableStrategy(InterAreaStableStrategiesFactoryEnum.SimpleStrategy);
+        parameters.setVelocityInheritanceStrategy(InterAreaVelocityStrategiesFactoryEnum.Area);
+        parameters.setWarpingMode(WarpingModeFactoryEnum.BothImagesBiLinearWarping);
+        parameters.setClippingMode(ClippingModeEnum.AllowedOutOfBoundClipping);
+        parameters.setImageHeightPixels(256);
+        parameters.setImageWidthPixels(320);
+        parameters.setOverlapFactor(0.5f);
+        parameters.setInterrogationAreaStartIPixels(64);
+        parameters.setInterrogationAreaEndIPixels(32);
+        parameters.setInterrogationAreaStartJPixels(64);
+        parameters.setInterrogationAreaEndJPixels(32);
+    }
+
+    private void setDisplacements(IterationStepTiles stepTiles) {
+        for (int i = 0; i < stepTiles.getNumberOfTilesInI(); i++) {
+            for (int j = 0; j < stepTiles.getNumberOfTilesInJ(); j++) {
+                stepTiles.getTile(i, j).accumulateDisplacement(U, V);
+            }
+        }
+    }
+
+    private void assertDisplacements(IterationStepTiles stepTiles, float u, float v) {
+        for (int i = 0; i < stepTiles.getNumberOfTilesInI(); i++) {
+            for (int j = 0; j < stepTiles.getNumberOfTilesInJ(); j++) {
+                Tile tile = stepTiles.getTile(i, j);
+                assertEquals("U mismatch at [I: " + i + ", J: " + j + "]", u, tile.getDisplacementU(), 1e-4f);
+                assertEquals("V mismatch at [I: " + i + ", J: " + j + "]", v, tile.getDisplacementV(), 1e-4f);
+                assertEquals("Tile must be evaluated", TileStableStateEnum.EVALUATING, tile.getStableState());
+            }
+        }
+    }
+
+    @Test
+    public void seedFromLastStepOfPreviousFramePass() {
+        IterationStepTiles baseTiles = IterationStepTilesFactory.create(TilesOrderEnum.SecondImage, PIVContextTestsSingleton.getSingleton().getPIVParameters());
+        IterationStepTiles lastTiles = baseTiles.createTilesForNextIterationStep();
+        lastTiles.reuseTiles();
+        setDisplacements(lastTiles);
+
+        baseTiles.reuseTiles(lastTiles);
+        assertTrue("Seeded tiles have inherited displacements", baseTiles.hasInheritedDisplacements());
+        assertDisplacements(baseTiles, U, V);
+
+        //Reusing without seeding starts again from zero displacements
+        baseTiles.reuseTiles();
+        assertFalse("Tiles are no longer seeded", baseTiles.hasInheritedDisplacements());
+        assertDisplacements(baseTiles, 0.0f, 0.0f);
+    }
+
+    @Test
+    public void seedFromSameInstancePass() {
+        //With a single adaptive step, the base step tiles are also the last step tiles of the previous frame
+        IterationStepTiles baseTiles = IterationStepTilesFactory.create(TilesOrderEnum.SecondImage, PIVContextTestsSingleton.getSingleton().getPIVParameters());
+        baseTiles.reuseTiles();
+        setDisplacements(baseTiles);
+
+        baseTiles.reuseTiles(baseTiles);
+        assertDisplacements(baseTiles, U, V);
+    }
+
+    @Test(expected = IterationStepTilesParametersException.class)
+    public void seedNonBaseStepFail() {
+        IterationStepTiles baseTiles = IterationStepTilesFactory.create(TilesOrderEnum.SecondImage, PIVContextTestsSingleton.getSingleton().getPIVParameters());
+        IterationStepTiles lastTiles = baseTiles.createTilesForNextIterationStep();
+        lastTiles.reuseTiles(baseTiles);
+    }
+}
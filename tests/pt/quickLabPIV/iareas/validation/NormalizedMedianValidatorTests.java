@@ -0,0 +1,144 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.iareas.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.math3.util.FastMath;
+import org.junit.Test;
+
+public class NormalizedMedianValidatorTests {
+    private static final int TILES_I = 23;
+    private static final int TILES_J = 31;
+    private static final float THRESHOLD = 2.0f;
+    private static final float EPSILON0 = 0.1f;
+
+    /**
+     * Reference normalized median test, with the neighbors sorted by a stable sort on their norms. 
+     */
+    private boolean isInvalidReference(float[] us, float[] vs, boolean[] masked, int i, int j) {
+        List<float[]> neighbors = new ArrayList<float[]>();
+        for (int neighborI = i - 1; neighborI <= i + 1; neighborI++) {
+            for (int neighborJ = j - 1; neighborJ <= j + 1; neighborJ++) {
+                if (neighborI < 0 || neighborI >= TILES_I || neighborJ < 0 || neighborJ >= TILES_J || (neighborI == i && neighborJ == j)) {
+                    continue;
+                }
+                int index = neighborI * TILES_J + neighborJ;
+                if (!masked[index]) {
+                    neighbors.add(new float[] {us[index], vs[index]});
+                }
+            }
+        }
+        Collections.sort(neighbors, (a, b) -> Float.compare(a[0]*a[0] + a[1]*a[1], b[0]*b[0] + b[1]*b[1]));
+
+        float medianU = 0.0f;
+        float medianV = 0.0f;
+        int count = neighbors.size();
+        if (count > 0) {
+            if (count % 2 == 0) {
+                medianU = (neighbors.get(count/2-1)[0] + neighbors.get(count/2)[0])/2.0f;
+                medianV = (neighbors.get(count/2-1)[1] + neighbors.get(count/2)[1])/2.0f;
+            } else {
+                medianU = neighbors.get(count/2)[0];
+                medianV = neighbors.get(count/2)[1];
+            }
+        }
+
+        float[] rIs = new float[8];
+        Arrays.fill(rIs, Float.MAX_VALUE);
+        for (int index = 0; index < count; index++) {
+            float dU = medianU - neighbors.get(index)[0];
+            float dV = medianV - neighbors.get(index)[1];
+            rIs[index] = dU*dU + dV*dV;
+        }
+        Arrays.sort(rIs);
+
+        float rMed;
+        if (count - 1 == 0) {
+            rMed = 1.0f;
+        } else if ((count - 1) % 2 == 0) {
+            rMed = (float)FastMath.sqrt((rIs[(count-1)/2] + rIs[(count-1)/2 + 1])/2.0f);
+        } else {
+            rMed = (float)FastMath.sqrt(rIs[(count-1)/2 + 1]);
+        }
+
+        float dU = medianU - us[i * TILES_J + j];
+        float dV = medianV - vs[i * TILES_J + j];
+        float distance = (float)FastMath.sqrt(dU*dU + dV*dV)/(rMed + EPSILON0);
+        return !(distance < THRESHOLD);
+    }
+
+    private void assertSameAsReference(Random rnd, boolean quantized, float maskedFraction) {
+        float[] us = new float[TILES_I * TILES_J];
+        float[] vs = new float[TILES_I * TILES_J];
+        boolean[] masked = new boolean[TILES_I * TILES_J];
+        for (int index = 0; index < us.length; index++) {
+            if (quantized) {
+                //Small integer displacements have many neighbors with equal norms
+                us[index] = rnd.nextInt(5) - 2;
+                vs[index] = rnd.nextInt(5) - 2;
+            } else {
+                us[index] = (float)rnd.nextGaussian() * (rnd.nextInt(10) == 0 ? 6.0f : 1.0f);
+                vs[index] = (float)rnd.nextGaussian() * (rnd.nextInt(10) == 0 ? 6.0f : 1.0f);
+            }
+            masked[index] = rnd.nextFloat() < maskedFraction;
+        }
+
+        NormalizedMedianValidator validator = new NormalizedMedianValidator(new NormalizedMedianValidatorConfiguration(THRESHOLD, EPSILON0));
+        boolean[] invalids = new boolean[TILES_I * TILES_J];
+        //Validate in two row ranges, as done by concurrent tasks
+        validator.validateVectors(us, vs, masked, TILES_I, TILES_J, 0, 10, invalids);
+        validator.duplicate().validateVectors(us, vs, masked, TILES_I, TILES_J, 10, TILES_I, invalids);
+
+        int invalidCount = 0;
+        for (int i = 0; i < TILES_I; i++) {
+            for (int j = 0; j < TILES_J; j++) {
+                if (masked[i * TILES_J + j]) {
+                    assertEquals("Masked tile must not be validated", false, invalids[i * TILES_J + j]);
+                    continue;
+                }
+                boolean expected = isInvalidReference(us, vs, masked, i, j);
+                assertEquals("Validation mismatch at [I: " + i + ", J: " + j + "]", expected, invalids[i * TILES_J + j]);
+                if (expected) {
+                    invalidCount++;
+                }
+            }
+        }
+        assertTrue("Test data must contain invalid vectors", invalidCount > 0);
+    }
+
+    @Test
+    public void randomVectorsMatchReferencePass() {
+        Random rnd = new Random(2017L);
+        for (int run = 0; run < 20; run++) {
+            assertSameAsReference(rnd, false, 0.0f);
+        }
+    }
+
+    @Test
+    public void equalNormsMatchReferencePass() {
+        Random rnd = new Random(2017L);
+        for (int run = 0; run < 20; run++) {
+            assertSameAsReference(rnd, true, 0.0f);
+        }
+    }
+
+    @Test
+    public void maskedVectorsMatchReferencePass() {
+        Random rnd = new Random(2017L);
+        for (int run = 0; run < 20; run++) {
+            assertSameAsReference(rnd, run % 2 == 0, 0.3f);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.images;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import pt.quickLabPIV.ClippingModeEnum;
+import pt.quickLabPIV.Matrix;
+import pt.quickLabPIV.MatrixByte;
+import pt.quickLabPIV.PIVContextTestsSingleton;
+import pt.quickLabPIV.PIVInputParameters;
+import pt.quickLabPIV.PIVRunParameters;
+import pt.quickLabPIV.WarpingModeFactoryEnum;
+import pt.quickLabPIV.iareas.InterAreaDivisionStrategiesFactoryEnum;
+import pt.quickLabPIV.iareas.InterAreaStableStrategiesFactoryEnum;
+import pt.quickLabPIV.iareas.InterAreaVelocityStrategiesFactoryEnum;
+import pt.quickLabPIV.iareas.IterationStepTiles;
+import pt.quickLabPIV.iareas.IterationStepTilesFactory;
+import pt.quickLabPIV.iareas.Tile;
+import pt.quickLabPIV.iareas.TileStableStateEnum;
+import pt.quickLabPIV.iareas.TilesOrderEnum;
+
+public class BiLinearImageWarpingStrategyTests {
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 256;
+
+    private PIVInputParameters parameters;
+    private PIVRunParameters runParameters;
+    private IImage imageA;
+    private IImage imageB;
+
+    @Before
+    public void setup() {
+        PIVContextTestsSingleton.setSingleton();
+        PIVContextTestsSingleton.getSingleton().resetParametersInstances();
+        parameters = PIVContextTestsSingleton.getSingleton().getPIVParameters();
+        parameters.setAreaDivisionStrategy(InterAreaDivisionStrategiesFactoryEnum.SuperPositionStrategy);
+        parameters.setAreaStableStrategy(InterAreaStableStrategiesFactoryEnum.SimpleStrategy);
+        parameters.setVelocityInheritanceStrategy(InterAreaVelocityStrategiesFactoryEnum.Area);
+        parameters.setWarpingMode(WarpingModeFactoryEnum.BothImagesBiLinearWarping);
+        parameters.setClippingMode(ClippingModeEnum.AllowedOutOfBoundClipping);
+        parameters.setImageHeightPixels(HEIGHT);
+        parameters.setImageWidthPixels(WIDTH);
+        parameters.setOverlapFactor(0.5f);
+        parameters.setInterrogationAreaStartIPixels(64);
+        parameters.setInterrogationAreaEndIPixels(32);
+        parameters.setInterrogationAreaStartJPixels(64);
+        parameters.setInterrogationAreaEndJPixels(32);
+        runParameters = PIVContextTestsSingleton.getSingleton().getPIVRunParameters();
+
+        imageA = createImage(2017L, "imageA");
+        imageB = createImage(2018L, "imageB");
+    }
+
+    private IImage createImage(long seed, String name) {
+        Random rnd = new Random(seed);
+        byte[] buffer = new byte[HEIGHT * WIDTH];
+        rnd.nextBytes(buffer);
+        return new Image(new MatrixByte(buffer, HEIGHT, WIDTH, true), WIDTH, HEIGHT, name);
+    }
+
+    /**
+     * Creates the tiles of the second adaptive step, so that images are warped with the inherited displacements.
+     */
+    private IterationStepTiles createSecondStepTiles(TilesOrderEnum order) {
+        IterationStepTiles stepTiles = IterationStepTilesFactory.create(order, parameters).createTilesForNextIterationStep();
+        stepTiles.reuseTiles();
+        return stepTiles;
+    }
+
+    private void setDisplacements(IterationStepTiles stepTiles, long seed) {
+        Random rnd = new Random(seed);
+        for (int i = 0; i < stepTiles.getNumberOfTilesInI(); i++) {
+            for (int j = 0; j < stepTiles.getNumberOfTilesInJ(); j++) {
+                Tile tile = stepTiles.getTile(i, j);
+                if (tile.getStableState() == TileStableStateEnum.EVALUATING) {
+                    tile.replaceDisplacement(rnd.nextFloat() * 6.0f - 3.0f, rnd.nextFloat() * 6.0f - 3.0f);
+                }
+            }
+        }
+    }
+
+    /**
+     * Warps and clips the tiles of a step, first for all tiles, and then re-iterates for the unstable tiles only, whose
+     * displacements were updated by the first iteration.
+     */
+    private IterationStepTiles[] warpAndReIterate(BiLinearImageWarpingModeEnum mode, boolean incremental) {
+        runParameters.setIncrementalReIterations(incremental);
+        BiLinearImageWarpingStrategy strategy = new BiLinearImageWarpingStrategy(mode);
+        IterationStepTiles stepTilesA = createSecondStepTiles(TilesOrderEnum.FirstImage);
+        IterationStepTiles stepTilesB = createSecondStepTiles(TilesOrderEnum.SecondImage);
+        setDisplacements(stepTilesB, 1L);
+
+        stepTilesA.incrementCurrentStepRetries();
+        stepTilesB.incrementCurrentStepRetries();
+        strategy.warpAndClipImage(imageA, imageB, stepTilesA, stepTilesB);
+
+        //Only a few tiles, in separate regions, remain unstable
+        for (int i = 0; i < stepTilesB.getNumberOfTilesInI(); i++) {
+            for (int j = 0; j < stepTilesB.getNumberOfTilesInJ(); j++) {
+                if (!((i == 1 && (j == 1 || j == 2)) || (i == stepTilesB.getNumberOfTilesInI() - 1 && j == 0) || (i == 3 && j == 5))) {
+                    stepTilesA.skipTileEvaluation(i, j);
+                    stepTilesB.skipTileEvaluation(i, j);
+                }
+            }
+        }
+        setDisplacements(stepTilesB, 2L);
+
+        stepTilesA.incrementCurrentStepRetries();
+        stepTilesB.incrementCurrentStepRetries();
+        strategy.warpAndClipImage(imageA, imageB, stepTilesA, stepTilesB);
+
+        return new IterationStepTiles[] { stepTilesA, stepTilesB };
+    }
+
+    private void assertSameTileMatrices(BiLinearImageWarpingModeEnum mode, IterationStepTiles expected, IterationStepTiles obtained) {
+        int evaluatingTiles = 0;
+        for (int i = 0; i < expected.getNumberOfTilesInI(); i++) {
+            for (int j = 0; j < expected.getNumberOfTilesInJ(); j++) {
+                Tile expectedTile = expected.getTile(i, j);
+                if (expectedTile.getStableState() != TileStableStateEnum.EVALUATING) {
+                    continue;
+                }
+                evaluatingTiles++;
+
+                Matrix expectedMatrix = expectedTile.getMatrix();
+                Matrix obtainedMatrix = obtained.getTile(i, j).getMatrix();
+                for (int y = 0; y < expectedMatrix.getHeight(); y++) {
+                    for (int x = 0; x < expectedMatrix.getWidth(); x++) {
+                        assertEquals(mode + " " + expected.getTilesOrder() + " tile [I: " + i + ", J: " + j + "] mismatch at [y: " + y + ", x: " + x + "]",
+                                expectedMatrix.getElement(y, x), obtainedMatrix.getElement(y, x), 0.0f);
+                    }
+                }
+            }
+        }
+        assertTrue("Re-iteration must have unstable tiles", evaluatingTiles > 0);
+    }
+
+    @Test
+    public void incrementalReIterationMatchesFullWarpingPass() {
+        for (BiLinearImageWarpingModeEnum mode : BiLinearImageWarpingModeEnum.values()) {
+            IterationStepTiles[] expected = warpAndReIterate(mode, false);
+            IterationStepTiles[] obtained = warpAndReIterate(mode, true);
+            assertSameTileMatrices(mode, expected[0], obtained[0]);
+            assertSameTileMatrices(mode, expected[1], obtained[1]);
+        }
+    }
+}
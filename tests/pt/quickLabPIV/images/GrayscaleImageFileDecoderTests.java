@@ -0,0 +1,248 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.images;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import pt.quickLabPIV.PIVContextTestsSingleton;
+import pt.quickLabPIV.PIVInputParameters;
+
+public class GrayscaleImageFileDecoderTests {
+    private static final int WIDTH = 157;
+    private static final int HEIGHT = 93;
+    private static final int ROWS_PER_STRIP = 10;
+
+    private PIVInputParameters parameters;
+
+    @Before
+    public void setup() {
+        PIVContextTestsSingleton.setSingleton();
+        parameters = PIVContextTestsSingleton.getSingleton().getPIVParameters();
+    }
+
+    private BufferedImage createImage(int type) {
+        Random rnd = new Random(2017L);
+        BufferedImage bi = new BufferedImage(WIDTH, HEIGHT, type);
+        final int maxValue = type == BufferedImage.TYPE_USHORT_GRAY ? 65536 : 256;
+        for (int i = 0; i < HEIGHT; i++) {
+            for (int j = 0; j < WIDTH; j++) {
+                //Smooth gradient with noise, to exercise all PNG row filters
+                bi.getRaster().setSample(j, i, 0, ((i * j * 37) + rnd.nextInt(maxValue / 16)) % maxValue);
+            }
+        }
+        return bi;
+    }
+
+    private File writeImage(BufferedImage bi, String format) throws IOException {
+        File file = File.createTempFile("decoder", "." + format);
+        ImageIO.write(bi, format, file);
+        return file;
+    }
+
+    /**
+     * Writes a little-endian, multiple strip, uncompressed 16-bit TIFF file, with out of order strips.
+     */
+    private File writeLittleEndianTiff(short[] pixels) throws IOException {
+        final int strips = (HEIGHT + ROWS_PER_STRIP - 1) / ROWS_PER_STRIP;
+        final int entries = 8;
+        final int ifdSize = 2 + entries * 12 + 4;
+        final int offsetsPosition = 8 + ifdSize;
+        final int dataPosition = offsetsPosition + 4 * strips;
+        ByteBuffer buffer = ByteBuffer.allocate(dataPosition + pixels.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put((byte)'I').put((byte)'I').putShort((short)42).putInt(8);
+        buffer.putShort((short)entries);
+        buffer.putShort((short)256).putShort((short)3).putInt(1).putInt(WIDTH);
+        buffer.putShort((short)257).putShort((short)4).putInt(1).putInt(HEIGHT);
+        buffer.putShort((short)258).putShort((short)3).putInt(1).putInt(16);
+        buffer.putShort((short)259).putShort((short)3).putInt(1).putInt(1);
+        buffer.putShort((short)262).putShort((short)3).putInt(1).putInt(1);
+        buffer.putShort((short)273).putShort((short)4).putInt(strips).putInt(offsetsPosition);
+        buffer.putShort((short)277).putShort((short)3).putInt(1).putInt(1);
+        buffer.putShort((short)278).putShort((short)3).putInt(1).putInt(ROWS_PER_STRIP);
+        buffer.putInt(0);
+        //Strips are stored last to first
+        int position = dataPosition;
+        int[] stripPositions = new int[strips];
+        for (int strip = strips - 1; strip >= 0; strip--) {
+            stripPositions[strip] = position;
+            position += Math.min(ROWS_PER_STRIP, HEIGHT - strip * ROWS_PER_STRIP) * WIDTH * 2;
+        }
+        for (int strip = 0; strip < strips; strip++) {
+            buffer.putInt(stripPositions[strip]);
+        }
+        for (int strip = 0; strip < strips; strip++) {
+            buffer.position(stripPositions[strip]);
+            for (int index = strip * ROWS_PER_STRIP * WIDTH; index < Math.min(HEIGHT, (strip + 1) * ROWS_PER_STRIP) * WIDTH; index++) {
+                buffer.putShort(pixels[index]);
+            }
+        }
+
+        File file = File.createTempFile("decoder", ".tif");
+        Files.write(file.toPath(), buffer.array());
+        return file;
+    }
+
+    @Test
+    public void png8BitMatchesImageIOPass() throws IOException {
+        parameters.setPixelDepth(ImageFactoryEnum.Image8Bit);
+        File file = writeImage(createImage(BufferedImage.TYPE_BYTE_GRAY), "png");
+        try {
+            IImage decoded = GrayscaleImageFileDecoder.decode(file, ImageFactoryEnum.Image8Bit);
+            assertTrue("Direct decoder must handle the image", decoded instanceof Image);
+            Image expected = (Image)ImageFactoryEnum.create(parameters, ImageIO.read(file), file.getAbsolutePath());
+            assertEquals("Image width doesn't match", WIDTH, decoded.getWidth());
+            assertEquals("Image height doesn't match", HEIGHT, decoded.getHeight());
+            assertArrayEquals("Pixels don't match", expected.getInternalBuffer(), ((Image)decoded).getInternalBuffer());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void png16BitMatchesImageIOPass() throws IOException {
+        parameters.setPixelDepth(ImageFactoryEnum.Image12Bit);
+        File file = writeImage(createImage(BufferedImage.TYPE_USHORT_GRAY), "png");
+        try {
+            IImage decoded = GrayscaleImageFileDecoder.decode(file, ImageFactoryEnum.Image12Bit);
+            assertTrue("Direct decoder must handle the image", decoded instanceof ImageInt16);
+            ImageInt16 expected = (ImageInt16)ImageFactoryEnum.create(parameters, ImageIO.read(file), file.getAbsolutePath());
+            assertArrayEquals("Pixels don't match", expected.getInternalBuffer(), ((ImageInt16)decoded).getInternalBuffer());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void littleEndianStripTiffPass() throws IOException {
+        BufferedImage bi = createImage(BufferedImage.TYPE_USHORT_GRAY);
+        short[] pixels = new short[WIDTH * HEIGHT];
+        bi.getRaster().getDataElements(0, 0, WIDTH, HEIGHT, pixels);
+        File file = writeLittleEndianTiff(pixels);
+        try {
+            IImage decoded = GrayscaleImageFileDecoder.decode(file, ImageFactoryEnum.Image16Bit);
+            assertTrue("Direct decoder must handle the image", decoded instanceof ImageInt16);
+            assertArrayEquals("Pixels don't match", pixels, ((ImageInt16)decoded).getInternalBuffer());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void tiffWithOversizedValueCountFallbackPass() throws IOException {
+        short[] pixels = new short[WIDTH * HEIGHT];
+        File file = writeLittleEndianTiff(pixels);
+        try {
+            //Strip offsets count that doesn't fit in the file, and whose size in bytes overflows to an inline value
+            ByteBuffer contents = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+            final int stripOffsetsEntry = 8 + 2 + 5 * 12;
+            assertEquals("Unexpected TIFF entry", 273, contents.getShort(stripOffsetsEntry));
+            contents.putInt(stripOffsetsEntry + 4, 0x40000001);
+            Files.write(file.toPath(), contents.array());
+
+            assertNull("Inconsistent TIFF files must be read through ImageIO", GrayscaleImageFileDecoder.decode(file, ImageFactoryEnum.Image16Bit));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void tiffWithOverflowingDimensionsFallbackPass() throws IOException {
+        short[] pixels = new short[WIDTH * HEIGHT];
+        File file = writeLittleEndianTiff(pixels);
+        try {
+            //Single strip image whose pixel count overflows an int
+            ByteBuffer contents = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+            contents.putInt(8 + 2 + 0 * 12 + 8, 50000);
+            contents.putInt(8 + 2 + 1 * 12 + 8, 50000);
+            contents.putInt(8 + 2 + 7 * 12 + 8, 50000);
+            Files.write(file.toPath(), contents.array());
+            assertNull("Images larger than the file must be read through ImageIO", GrayscaleImageFileDecoder.decode(file, ImageFactoryEnum.Image16Bit));
+
+            //Pixel count that fits in an int, but whose pixels cannot be stored in the file
+            contents.putInt(8 + 2 + 0 * 12 + 8, WIDTH * 2);
+            contents.putInt(8 + 2 + 1 * 12 + 8, HEIGHT);
+            contents.putInt(8 + 2 + 7 * 12 + 8, HEIGHT);
+            Files.write(file.toPath(), contents.array());
+            assertNull("Images larger than the file must be read through ImageIO", GrayscaleImageFileDecoder.decode(file, ImageFactoryEnum.Image16Bit));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void pngWithOverflowingDimensionsFallbackPass() throws IOException {
+        File file = writeImage(createImage(BufferedImage.TYPE_BYTE_GRAY), "png");
+        try {
+            //The decoder does not verify the IHDR CRC, so the dimensions can be patched in place
+            ByteBuffer contents = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+            contents.putInt(16, 50000);
+            contents.putInt(20, 50000);
+            Files.write(file.toPath(), contents.array());
+            assertNull("Images whose pixel count overflows must be read through ImageIO", GrayscaleImageFileDecoder.decode(file, ImageFactoryEnum.Image8Bit));
+
+            //Pixel count that fits in an int, but that cannot be inflated from the image data
+            contents.putInt(16, 40000);
+            contents.putInt(20, 40000);
+            Files.write(file.toPath(), contents.array());
+            assertNull("Images larger than the image data must be read through ImageIO", GrayscaleImageFileDecoder.decode(file, ImageFactoryEnum.Image8Bit));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void fileBufferReusedAcrossFilesPass() throws IOException {
+        BufferedImage bi = createImage(BufferedImage.TYPE_USHORT_GRAY);
+        short[] pixels = new short[WIDTH * HEIGHT];
+        bi.getRaster().getDataElements(0, 0, WIDTH, HEIGHT, pixels);
+        File tiffFile = writeLittleEndianTiff(pixels);
+        File pngFile = writeImage(createImage(BufferedImage.TYPE_BYTE_GRAY), "png");
+        try {
+            parameters.setPixelDepth(ImageFactoryEnum.Image8Bit);
+            Image expected = (Image)ImageFactoryEnum.create(parameters, ImageIO.read(pngFile), pngFile.getAbsolutePath());
+            //Smaller file read after a larger one, and vice-versa, through the same thread buffer
+            for (int pass = 0; pass < 2; pass++) {
+                IImage decodedTiff = GrayscaleImageFileDecoder.decode(tiffFile, ImageFactoryEnum.Image16Bit);
+                assertArrayEquals("TIFF pixels don't match", pixels, ((ImageInt16)decodedTiff).getInternalBuffer());
+                IImage decodedPng = GrayscaleImageFileDecoder.decode(pngFile, ImageFactoryEnum.Image8Bit);
+                assertArrayEquals("PNG pixels don't match", expected.getInternalBuffer(), ((Image)decodedPng).getInternalBuffer());
+            }
+        } finally {
+            tiffFile.delete();
+            pngFile.delete();
+        }
+    }
+
+    @Test
+    public void unsupportedImagesFallbackPass() throws IOException {
+        File rgbFile = writeImage(createImage(BufferedImage.TYPE_3BYTE_BGR), "png");
+        File grayFile = writeImage(createImage(BufferedImage.TYPE_USHORT_GRAY), "png");
+        try {
+            assertNull("Color images must be read through ImageIO", GrayscaleImageFileDecoder.decode(rgbFile, ImageFactoryEnum.Image8Bit));
+            assertNull("Pixel depth conversions must be done through ImageIO", GrayscaleImageFileDecoder.decode(grayFile, ImageFactoryEnum.Image8Bit));
+        } finally {
+            rgbFile.delete();
+            grayFile.delete();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.images;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import pt.quickLabPIV.PIVReusableObjects;
+
+public class ImageMaskCacheTests {
+    private static final int WIDTH = 133;
+    private static final int HEIGHT = 71;
+
+    private File createMaskFile() throws IOException {
+        Random rnd = new Random(2017L);
+        BufferedImage bi = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_BYTE_GRAY);
+        for (int i = 0; i < HEIGHT; i++) {
+            for (int j = 0; j < WIDTH; j++) {
+                //Masked pixels have zero intensity, with a fully masked block at the top left
+                int value = (i < 20 && j < 40) || rnd.nextInt(4) == 0 ? 0 : 255;
+                bi.getRaster().setSample(j, i, 0, value);
+            }
+        }
+        File file = File.createTempFile("mask", ".png");
+        ImageIO.write(bi, "png", file);
+        return file;
+    }
+
+    @Test
+    public void maskedPixelsMatchImagePass() throws IOException {
+        File file = createMaskFile();
+        try {
+            ImageMaskCache cache = new ImageMaskCache(file.getAbsolutePath());
+            Image mask = cache.getMask();
+            for (int i = 0; i < HEIGHT; i++) {
+                for (int j = 0; j < WIDTH; j++) {
+                    assertEquals("Masked state mismatch at [I: " + i + ", J: " + j + "]", mask.readPixel(i, j) == 0.0f, cache.isMasked(i, j));
+                }
+            }
+
+            Random rnd = new Random(3L);
+            for (int region = 0; region < 200; region++) {
+                int top = rnd.nextInt(HEIGHT);
+                int left = rnd.nextInt(WIDTH);
+                int height = rnd.nextInt(HEIGHT - top) + 1;
+                int width = rnd.nextInt(WIDTH - left) + 1;
+                assertEquals("Masked pixels count mismatch for region " + region, mask.getSpecificIntensityValueCountForRegion(top, left, height, width, 0),
+                        cache.countMaskedPixels(top, left, height, width));
+            }
+            assertEquals("Fully masked region count mismatch", 20 * 40, cache.countMaskedPixels(0, 0, 20, 40));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void maskIsSharedPass() throws IOException {
+        File file = createMaskFile();
+        try {
+            PIVReusableObjects reusableObjects = new PIVReusableObjects();
+            ImageMaskCache cache = reusableObjects.getOrCreateImageMask(file.getAbsolutePath());
+            assertSame("Mask must be decoded only once", cache, reusableObjects.getOrCreateImageMask(file.getAbsolutePath()));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = ImageNotFoundException.class)
+    public void missingMaskFileFail() {
+        new ImageMaskCache("missingMaskFile.png");
+    }
+}
@@ -0,0 +1,129 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.images.filters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import pt.quickLabPIV.MatrixByte;
+import pt.quickLabPIV.images.IImage;
+import pt.quickLabPIV.images.Image;
+import pt.quickLabPIV.images.ImageFloat;
+
+public class FilteredImagesCacheTest {
+    private static final int WIDTH = 67;
+    private static final int HEIGHT = 53;
+
+    private IImage createImage(long seed) {
+        Random rnd = new Random(seed);
+        byte[] buffer = new byte[HEIGHT * WIDTH];
+        rnd.nextBytes(buffer);
+        return new Image(new MatrixByte(buffer, HEIGHT, WIDTH, true), WIDTH, HEIGHT, "image" + seed);
+    }
+
+    private void assertSamePixels(IImage expected, IImage obtained) {
+        for (int i = 0; i < HEIGHT; i++) {
+            for (int j = 0; j < WIDTH; j++) {
+                assertEquals("Pixel mismatch at [I: " + i + ", J: " + j + "]", expected.readPixel(i, j), obtained.readPixel(i, j), 0.0f);
+            }
+        }
+    }
+
+    @Test
+    public void cachedImagesMatchFilteredImagesPass() {
+        IImage source = createImage(2017L);
+        IImage expectedFiltered = new GaussianFilter2D(2.0f, 5).applyFilter(source, null);
+        IImage expectedNormalized = new GaussianFilter2D(0.48f, 3).applyFilter(source, null).normalize(null);
+
+        FilteredImagesCache cache = new FilteredImagesCache();
+        IImage filtered = cache.getFilteredImage(source, 2.0f, 5, false);
+        IImage normalized = cache.getFilteredImage(source, 0.48f, 3, true);
+        assertSamePixels(expectedFiltered, filtered);
+        assertSamePixels(expectedNormalized, normalized);
+
+        //Same filter, or normalization, of the same image is not computed again
+        assertSame(filtered, cache.getFilteredImage(source, 2.0f, 5, false));
+        assertSame(normalized, cache.getFilteredImage(source, 0.48f, 3, true));
+        assertEquals("Wrong number of filter passes", 2, cache.getFilterPasses());
+
+        //Normalized version of an already filtered image doesn't filter it again, neither modifies the filtered image
+        IImage normalizedFiltered = cache.getFilteredImage(source, 2.0f, 5, true);
+        assertNotSame(filtered, normalizedFiltered);
+        assertSamePixels(expectedFiltered, filtered);
+        assertSamePixels(((ImageFloat)expectedFiltered).normalize(null), normalizedFiltered);
+        assertEquals("Wrong number of filter passes", 2, cache.getFilterPasses());
+
+        //No filtering at all with a null sigma
+        assertSame(source, cache.getFilteredImage(source, 0.0f, 3, false));
+        assertEquals("Wrong number of filter passes", 2, cache.getFilterPasses());
+    }
+
+    @Test
+    public void onlyMostRecentlyUsedImagesAreKeptPass() {
+        IImage imageA = createImage(1L);
+        IImage imageB = createImage(2L);
+        IImage imageC = createImage(3L);
+
+        IImage expectedA = new GaussianFilter2D(2.0f, 5).applyFilter(imageA, null);
+        IImage expectedC = new GaussianFilter2D(2.0f, 5).applyFilter(imageC, null);
+
+        FilteredImagesCache cache = new FilteredImagesCache();
+        IImage filteredA = cache.getFilteredImage(imageA, 2.0f, 5, false);
+        IImage filteredB = cache.getFilteredImage(imageB, 2.0f, 5, false);
+        //Next frame reuses image B as image A
+        assertSame(filteredB, cache.getFilteredImage(imageB, 2.0f, 5, false));
+        IImage filteredC = cache.getFilteredImage(imageC, 2.0f, 5, false);
+        assertEquals("Wrong number of filter passes", 3, cache.getFilterPasses());
+        //Image A was evicted by image C, and its filtered image was recycled for image C
+        assertSame(filteredA, filteredC);
+        assertSamePixels(expectedC, filteredC);
+
+        //Image B was kept, while image A must be filtered again
+        assertSame(filteredB, cache.getFilteredImage(imageB, 2.0f, 5, false));
+        IImage refilteredA = cache.getFilteredImage(imageA, 2.0f, 5, false);
+        assertSamePixels(expectedA, refilteredA);
+        assertEquals("Wrong number of filter passes", 4, cache.getFilterPasses());
+    }
+
+    @Test
+    public void filteredImagesReusedAcrossFramesPass() {
+        final int frames = 6;
+        IImage[] images = new IImage[frames + 1];
+        for (int i = 0; i <= frames; i++) {
+            images[i] = createImage(i);
+        }
+
+        FilteredImagesCache cache = new FilteredImagesCache();
+        Set<IImage> instances = Collections.newSetFromMap(new IdentityHashMap<IImage, Boolean>());
+        for (int frame = 0; frame < frames; frame++) {
+            if (frame == frames / 2) {
+                //Batch boundary, where nothing is carried to the next frame, except for the image buffers
+                cache.clear();
+                assertEquals("Cleared images must be kept for reuse", 4, cache.getFreeImages());
+            }
+            for (IImage source : new IImage[] { images[frame], images[frame + 1] }) {
+                instances.add(cache.getFilteredImage(source, 2.0f, 5, false));
+                instances.add(cache.getFilteredImage(source, 0.48f, 3, true));
+            }
+            assertEquals("No new images should be allocated after the first frame", 4, instances.size());
+        }
+
+        //Recycled images hold the filtered versions of the last frame
+        IImage expectedFiltered = new GaussianFilter2D(2.0f, 5).applyFilter(images[frames], null);
+        IImage expectedNormalized = new GaussianFilter2D(0.48f, 3).applyFilter(images[frames], null).normalize(null);
+        assertSamePixels(expectedFiltered, cache.getFilteredImage(images[frames], 2.0f, 5, false));
+        assertSamePixels(expectedNormalized, cache.getFilteredImage(images[frames], 0.48f, 3, true));
+    }
+}
@@ -0,0 +1,126 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.images.filters;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import pt.quickLabPIV.Matrix;
+import pt.quickLabPIV.MatrixByte;
+import pt.quickLabPIV.MatrixFloat;
+import pt.quickLabPIV.MatrixInt16;
+import pt.quickLabPIV.images.IImage;
+import pt.quickLabPIV.images.Image;
+import pt.quickLabPIV.images.ImageFloat;
+import pt.quickLabPIV.images.ImageInt16;
+
+public class GaussianFilter2DArraysTest {
+    private static final int WIDTH = 203;
+    private static final int HEIGHT = 211;
+
+    private float[][] createPixels(int maxValue) {
+        Random rnd = new Random(2017L);
+        float[][] pixels = new float[HEIGHT][WIDTH];
+        for (int i = 0; i < HEIGHT; i++) {
+            for (int j = 0; j < WIDTH; j++) {
+                pixels[i][j] = rnd.nextInt(maxValue + 1);
+            }
+        }
+        return pixels;
+    }
+
+    private void assertSameAsGenericFilter(float[][] pixels, IImage input, ForkJoinPool pool) {
+        float[][] expected = new GaussianFilter2D(2.0f, 5).applyFilter(pixels, null);
+
+        GaussianFilter2D filter = new GaussianFilter2D(2.0f, 5);
+        if (pool != null) {
+            filter.setParallelism(pool, pool.getParallelism());
+        }
+        IImage output = null;
+        //Run twice to validate the reuse of the buffers
+        for (int run = 0; run < 2; run++) {
+            output = filter.applyFilter(input, output);
+        }
+
+        for (int i = 0; i < HEIGHT; i++) {
+            for (int j = 0; j < WIDTH; j++) {
+                assertEquals("Pixel mismatch at [I: " + i + ", J: " + j + "]", expected[i][j], output.readPixel(i, j), 0.0f);
+            }
+        }
+    }
+
+    private float[] toFloatArray(float[][] pixels) {
+        float[] buffer = new float[HEIGHT * WIDTH];
+        for (int i = 0; i < HEIGHT; i++) {
+            System.arraycopy(pixels[i], 0, buffer, i * WIDTH, WIDTH);
+        }
+        return buffer;
+    }
+
+    @Test
+    public void floatImageMatchesGenericFilterPass() {
+        float[][] pixels = createPixels(4095);
+        IImage input = new ImageFloat(new MatrixFloat(toFloatArray(pixels), HEIGHT, WIDTH), WIDTH, HEIGHT, "float");
+        assertSameAsGenericFilter(pixels, input, null);
+    }
+
+    @Test
+    public void int16ImageMatchesGenericFilterPass() {
+        float[][] pixels = createPixels(65535);
+        short[] buffer = new short[HEIGHT * WIDTH];
+        for (int i = 0; i < HEIGHT; i++) {
+            for (int j = 0; j < WIDTH; j++) {
+                buffer[i * WIDTH + j] = (short)pixels[i][j];
+            }
+        }
+        IImage input = new ImageInt16(new MatrixInt16(buffer, HEIGHT, WIDTH, true), WIDTH, HEIGHT, "int16");
+        assertSameAsGenericFilter(pixels, input, null);
+    }
+
+    @Test
+    public void byteImageMatchesGenericFilterPass() {
+        float[][] pixels = createPixels(255);
+        byte[] buffer = new byte[HEIGHT * WIDTH];
+        for (int i = 0; i < HEIGHT; i++) {
+            for (int j = 0; j < WIDTH; j++) {
+                buffer[i * WIDTH + j] = (byte)pixels[i][j];
+            }
+        }
+        IImage input = new Image(new MatrixByte(buffer, HEIGHT, WIDTH, true), WIDTH, HEIGHT, "byte");
+        assertSameAsGenericFilter(pixels, input, null);
+    }
+
+    @Test
+    public void parallelFloatImageMatchesGenericFilterPass() {
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            float[][] pixels = createPixels(4095);
+            IImage input = new ImageFloat(new MatrixFloat(toFloatArray(pixels), HEIGHT, WIDTH), WIDTH, HEIGHT, "float");
+            assertSameAsGenericFilter(pixels, input, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void inPlaceMatrixMatchesGenericFilterPass() {
+        float[][] pixels = createPixels(4095);
+        float[][] expected = new GaussianFilter2D(2.0f, 5).applyFilter(pixels, null);
+
+        Matrix matrix = new MatrixFloat(toFloatArray(pixels), HEIGHT, WIDTH);
+        Matrix output = new GaussianFilter2D(2.0f, 5).applyFilter(matrix, matrix);
+        for (int i = 0; i < HEIGHT; i++) {
+            for (int j = 0; j < WIDTH; j++) {
+                assertEquals("Pixel mismatch at [I: " + i + ", J: " + j + "]", expected[i][j], output.getElement(i, j), 0.0f);
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.interpolators;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import pt.quickLabPIV.Matrix;
+import pt.quickLabPIV.MatrixFloat;
+import pt.quickLabPIV.PIVContextSingleton;
+import pt.quickLabPIV.PIVContextTestsSingleton;
+import pt.quickLabPIV.PIVInputParameters;
+import pt.quickLabPIV.maximum.MaxCrossResult;
+
+public class BasicInterpolatorAdapterTest {
+    private static final int RESULTS = 300;
+
+    @Before
+    public void setup() {
+        PIVContextTestsSingleton.setSingleton();
+    }
+
+    private List<MaxCrossResult> createResults(long seed) {
+        Random rnd = new Random(seed);
+        List<MaxCrossResult> results = new ArrayList<MaxCrossResult>(RESULTS);
+        for (int index = 0; index < RESULTS; index++) {
+            final int peakI = 8 + rnd.nextInt(16);
+            final int peakJ = 8 + rnd.nextInt(16);
+            final float deltaI = rnd.nextFloat() - 0.5f;
+            final float deltaJ = rnd.nextFloat() - 0.5f;
+            final float sigma = 0.8f + rnd.nextFloat();
+            Matrix m = new MatrixFloat(31, 31);
+            for (int i = 0; i < m.getHeight(); i++) {
+                for (int j = 0; j < m.getWidth(); j++) {
+                    float di = i - peakI - deltaI;
+                    float dj = j - peakJ - deltaJ;
+                    m.setElement((float)(1000.0 * Math.exp(-(di * di + dj * dj) / (2.0 * sigma * sigma))), i, j);
+                }
+            }
+
+            MaxCrossResult result = new MaxCrossResult();
+            result.setMainPeakI(peakI);
+            result.setMainPeakJ(peakJ);
+            result.setMainPeakValue(m.getElement(peakI, peakJ));
+            result.setCrossMatrix(m);
+            results.add(result);
+        }
+
+        return results;
+    }
+
+    @Test
+    public void parallelInterpolationMatchesSerialInterpolationPass() {
+        PIVContextSingleton context = PIVContextSingleton.getSingleton();
+        PIVInputParameters parameters = context.getPIVParameters();
+        Gaussian2DInterpolatorConfiguration config = new Gaussian2DInterpolatorConfiguration();
+        config.setProperties(5, 5, Gaussian2DSubTypeFactoryEnum.AssymmetricWithRotation);
+        parameters.setSpecificConfiguration(Gaussian2DInterpolatorConfiguration.IDENTIFIER, config);
+
+        List<MaxCrossResult> expected = createResults(2017L);
+        ICrossCorrelationInterpolator serialInterpolator = CrossCorrelationInterpolatorFactoryEnum.createInterpolator(CrossCorrelationInterpolatorFactoryEnum.Gaussian2D);
+        serialInterpolator.interpolate(expected);
+
+        List<MaxCrossResult> obtained = createResults(2017L);
+        ICrossCorrelationInterpolator parallelInterpolator = CrossCorrelationInterpolatorFactoryEnum.createInterpolator(CrossCorrelationInterpolatorFactoryEnum.Gaussian2D);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            parallelInterpolator.setParallelism(pool, 4);
+            parallelInterpolator.interpolate(obtained);
+        } finally {
+            pool.shutdown();
+        }
+
+        for (int index = 0; index < RESULTS; index++) {
+            assertEquals("Result " + index + " mismatch in I", expected.get(index).getMainPeakI(), obtained.get(index).getMainPeakI(), 0.0f);
+            assertEquals("Result " + index + " mismatch in J", expected.get(index).getMainPeakJ(), obtained.get(index).getMainPeakJ(), 0.0f);
+            assertEquals("Result " + index + " mismatch in value", expected.get(index).getMainPeakValue(), obtained.get(index).getMainPeakValue(), 0.0f);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.interpolators;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.apache.commons.math3.fitting.leastsquares.EvaluationRmsChecker;
+import org.apache.commons.math3.fitting.leastsquares.LeastSquaresBuilder;
+import org.apache.commons.math3.fitting.leastsquares.LeastSquaresOptimizer;
+import org.apache.commons.math3.fitting.leastsquares.LevenbergMarquardtOptimizer;
+import org.junit.Test;
+
+public class Gaussian2DLevenbergMarquardtSolverTest {
+    private static final int PEAKS = 200;
+
+    private double[] fitWithCommonsMath(IGaussian2DFitter fitter, double[] targetValues, double maxValue) {
+        LeastSquaresBuilder lsb = new LeastSquaresBuilder();
+        lsb.model(fitter.getOrCreateFunction(), fitter.getOrCreateJacobianMatrix());
+        lsb.parameterValidator(fitter);
+        lsb.target(targetValues);
+        lsb.start(fitter.getStartVector(targetValues, maxValue));
+        lsb.lazyEvaluation(false);
+        lsb.maxEvaluations(2000000);
+        lsb.maxIterations(200000);
+        lsb.checker(new EvaluationRmsChecker(1e-8f, 1e-12f));
+        LeastSquaresOptimizer lmo = new LevenbergMarquardtOptimizer().
+                withCostRelativeTolerance(1.0e-10).
+                withParameterRelativeTolerance(1.0e-10);
+        return lmo.optimize(lsb.build()).getPoint().toArray();
+    }
+
+    private void compareFits(Gaussian2DSubTypeFactoryEnum subType, int pixels) {
+        Gaussian2DInterpolatorConfiguration configuration = new Gaussian2DInterpolatorConfiguration();
+        configuration.setProperties(pixels, pixels, subType);
+        IGaussian2DFitter fitter = Gaussian2DSubTypeFactoryEnum.create(subType, configuration);
+        Gaussian2DLevenbergMarquardtSolver solver = new Gaussian2DLevenbergMarquardtSolver(fitter, pixels * pixels, 200000, 2000000,
+                1.0e-10, 1.0e-10, 1e-8f, 1e-12f);
+
+        Random rnd = new Random(2017L + subType.ordinal());
+        double[] targetValues = new double[pixels * pixels];
+        double[] batchParameters = new double[PEAKS * fitter.getNumberOfParameters()];
+        double[] batchStartParameters = new double[PEAKS * fitter.getNumberOfParameters()];
+        double[] batchTargetValues = new double[PEAKS * pixels * pixels];
+        int[] peakLocations = new int[PEAKS * Gaussian2DLevenbergMarquardtSolver.PEAK_LOCATION_VALUES];
+        float[] peakEstimates = new float[PEAKS * Gaussian2DLevenbergMarquardtSolver.PEAK_ESTIMATE_VALUES];
+        for (int peak = 0; peak < PEAKS; peak++) {
+            final int peakX = 10 + rnd.nextInt(10);
+            final int peakY = 10 + rnd.nextInt(10);
+            final double meanX = peakX + rnd.nextDouble() - 0.5;
+            final double meanY = peakY + rnd.nextDouble() - 0.5;
+            final double sigmaX = 0.7 + rnd.nextDouble();
+            final double sigmaY = 0.7 + rnd.nextDouble();
+            double maxValue = 0;
+            for (int y = 0; y < pixels; y++) {
+                for (int x = 0; x < pixels; x++) {
+                    double dx = peakX - pixels/2 + x - meanX;
+                    double dy = peakY - pixels/2 + y - meanY;
+                    double value = 1000.0 * Math.exp(-dx*dx/(2.0 * sigmaX * sigmaX) - dy*dy/(2.0 * sigmaY * sigmaY)) + rnd.nextDouble() * 20.0;
+                    targetValues[y * pixels + x] = value;
+                    maxValue = Math.max(maxValue, value);
+                }
+            }
+
+            fitter.setPeakPointXY(peakX, peakY, (float)maxValue, peakX, peakY);
+            double[] expected = fitWithCommonsMath(fitter, targetValues, maxValue);
+
+            final int offset = peak * fitter.getNumberOfParameters();
+            System.arraycopy(fitter.getStartVector(targetValues, maxValue), 0, batchParameters, offset, fitter.getNumberOfParameters());
+            System.arraycopy(batchParameters, offset, batchStartParameters, offset, fitter.getNumberOfParameters());
+            System.arraycopy(targetValues, 0, batchTargetValues, peak * targetValues.length, targetValues.length);
+            peakLocations[peak * Gaussian2DLevenbergMarquardtSolver.PEAK_LOCATION_VALUES] = peakX;
+            peakLocations[peak * Gaussian2DLevenbergMarquardtSolver.PEAK_LOCATION_VALUES + 1] = peakY;
+            peakEstimates[peak * Gaussian2DLevenbergMarquardtSolver.PEAK_ESTIMATE_VALUES] = (float)maxValue;
+            peakEstimates[peak * Gaussian2DLevenbergMarquardtSolver.PEAK_ESTIMATE_VALUES + 1] = peakX;
+            peakEstimates[peak * Gaussian2DLevenbergMarquardtSolver.PEAK_ESTIMATE_VALUES + 2] = peakY;
+            solver.fit(targetValues, 0, batchParameters, offset);
+
+            for (int param = 0; param < expected.length; param++) {
+                assertEquals(subType + " - peak " + peak + ", parameter " + param + " mismatch",
+                        expected[param], batchParameters[offset + param], 1e-6 * Math.max(1.0, Math.abs(expected[param])));
+            }
+        }
+
+        //All peaks fitted at once must match the single peak fits exactly
+        solver.fitPeaks(PEAKS, peakLocations, peakEstimates, batchTargetValues, batchStartParameters);
+        assertEquals("No peak must fail", -1, solver.getFailedPeak());
+        assertArrayEquals(subType + " - batch fit mismatch", batchParameters, batchStartParameters, 0.0);
+    }
+
+    @Test
+    public void symmetricMatchesCommonsMathPass() {
+        compareFits(Gaussian2DSubTypeFactoryEnum.Symmetric, 5);
+    }
+
+    @Test
+    public void assymmetricMatchesCommonsMathPass() {
+        compareFits(Gaussian2DSubTypeFactoryEnum.Assymmetric, 5);
+    }
+
+    @Test
+    public void assymmetricWithRotationMatchesCommonsMathPass() {
+        compareFits(Gaussian2DSubTypeFactoryEnum.AssymmetricWithRotation, 7);
+    }
+
+    @Test
+    public void ellipticalWithRotationMatchesCommonsMathPass() {
+        compareFits(Gaussian2DSubTypeFactoryEnum.EllipticalWithRotation, 3);
+    }
+}
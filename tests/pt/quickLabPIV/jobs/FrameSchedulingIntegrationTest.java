@@ -0,0 +1,150 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.jobs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import pt.quickLabPIV.ClippingModeEnum;
+import pt.quickLabPIV.ImageFilteringModeFactoryEnum;
+import pt.quickLabPIV.InputFiles;
+import pt.quickLabPIV.PIVContextSingleton;
+import pt.quickLabPIV.PIVContextTestsSingleton;
+import pt.quickLabPIV.PIVInputParameters;
+import pt.quickLabPIV.PIVMap;
+import pt.quickLabPIV.PIVResults;
+import pt.quickLabPIV.PIVRunParameters;
+import pt.quickLabPIV.Velocities;
+import pt.quickLabPIV.WarpingModeFactoryEnum;
+import pt.quickLabPIV.iareas.InterAreaDivisionStrategiesFactoryEnum;
+import pt.quickLabPIV.iareas.InterAreaStableStrategiesFactoryEnum;
+import pt.quickLabPIV.iareas.InterAreaUnstableLogEnum;
+import pt.quickLabPIV.iareas.InterAreaVelocityStrategiesFactoryEnum;
+import pt.quickLabPIV.iareas.validation.VectorValidatorFactoryEnum;
+import pt.quickLabPIV.images.ImageFactoryEnum;
+import pt.quickLabPIV.images.filters.GaussianFilter2DConfiguration;
+import pt.quickLabPIV.images.filters.ImageFilterFactoryEnum;
+import pt.quickLabPIV.interpolators.CrossCorrelationInterpolatorFactoryEnum;
+import pt.quickLabPIV.interpolators.Gaussian1DInterpolatorConfiguration;
+import pt.quickLabPIV.interpolators.OpticalFlowAfterPIVInterpolatorFactoryEnum;
+import pt.quickLabPIV.jobs.managers.OpenClGpuManager;
+import pt.quickLabPIV.maximum.MaximumFinderFactoryEnum;
+
+public class FrameSchedulingIntegrationTest {
+    private static final String[] imageNames = { "image_1.3or93zbi.000000", "image_2.3or7kfiw.000000",
+                                                 "image_3.3opnd7cw.000000", "image_4.3ofsom5r.000000" };
+    private static final int FRAMES = 5;
+    private static final int THREADS = 3;
+
+    @Before
+    public void setup() {
+        PIVContextTestsSingleton.setSingleton();
+    }
+
+    private void configure(boolean dynamicScheduling, int frameBatchSize) {
+        PIVContextSingleton singleton = PIVContextSingleton.getSingleton();
+        singleton.resetParametersInstances();
+
+        PIVInputParameters pivParameters = singleton.getPIVParameters();
+        pivParameters.setVelocityInheritanceStrategy(InterAreaVelocityStrategiesFactoryEnum.Area);
+        pivParameters.setWarpingMode(WarpingModeFactoryEnum.BothImagesBiLinearWarping);
+        pivParameters.setImageFilteringMode(ImageFilteringModeFactoryEnum.ImageFilteringBeforeWarping);
+        pivParameters.setImageFilterMode(ImageFilterFactoryEnum.GaussianFiltering);
+        pivParameters.setSpecificConfiguration(GaussianFilter2DConfiguration.IDENTIFER, new GaussianFilter2DConfiguration(0.48f, 3));
+        pivParameters.setInterpolatorStrategy(CrossCorrelationInterpolatorFactoryEnum.Gaussian1D);
+        pivParameters.setInterpolatorStartStep(0);
+        Gaussian1DInterpolatorConfiguration gaussianConfig = new Gaussian1DInterpolatorConfiguration();
+        gaussianConfig.setInterpolationPixels(3);
+        pivParameters.setSpecificConfiguration(Gaussian1DInterpolatorConfiguration.IDENTIFIER, gaussianConfig);
+        pivParameters.setAreaDivisionStrategy(InterAreaDivisionStrategiesFactoryEnum.MixedSuperPositionStrategy);
+        pivParameters.setSuperPositionIterationStepStart(1);
+        pivParameters.setAreaUnstableLoggingMode(InterAreaUnstableLogEnum.Ignore);
+        pivParameters.setAreaStableStrategy(InterAreaStableStrategiesFactoryEnum.SimpleStrategy);
+        pivParameters.setClippingMode(ClippingModeEnum.AllowedOutOfBoundClipping);
+        pivParameters.setImageHeightPixels(1200);
+        pivParameters.setImageWidthPixels(1600);
+        pivParameters.setOverlapFactor(0.5f);
+        pivParameters.setInterrogationAreaStartIPixels(64);
+        pivParameters.setInterrogationAreaEndIPixels(32);
+        pivParameters.setInterrogationAreaStartJPixels(64);
+        pivParameters.setInterrogationAreaEndJPixels(32);
+        pivParameters.setNumberOfVelocityFrames(FRAMES);
+        pivParameters.setPixelDepth(ImageFactoryEnum.Image8Bit);
+        pivParameters.setVectorValidationStrategy(VectorValidatorFactoryEnum.None);
+        pivParameters.setMaximumFinderStrategy(MaximumFinderFactoryEnum.MaximumFinderFromCenter);
+        pivParameters.setOpticalFlowAfterPIVStrategy(OpticalFlowAfterPIVInterpolatorFactoryEnum.None);
+
+        PIVRunParameters runParameters = singleton.getPIVRunParameters();
+        runParameters.setUseOpenCL(false);
+        runParameters.setTotalNumberOfThreads(THREADS);
+        runParameters.clearThreadMappings();
+        runParameters.setDynamicFrameScheduling(dynamicScheduling);
+        runParameters.setFrameBatchSize(frameBatchSize);
+    }
+
+    private PIVResults runPIV() {
+        //Time-resolved sequence, where image B of a frame is image A of the next frame, so that image A and
+        //filtered image A are reused from the previous frame by the thread processing it
+        List<File> filesA = new ArrayList<File>(FRAMES);
+        List<File> filesB = new ArrayList<File>(FRAMES);
+        for (int i = 0; i < FRAMES; i++) {
+            filesA.add(new File("testFiles" + File.separator + imageNames[i % imageNames.length] + "a.jpg"));
+            filesB.add(new File("testFiles" + File.separator + imageNames[(i + 1) % imageNames.length] + "a.jpg"));
+        }
+
+        OpenClGpuManager managerJob = new OpenClGpuManager(new InputFiles(0, 0, filesA, filesB));
+        managerJob.analyze();
+        managerJob.compute();
+
+        PIVResults results = managerJob.getJobResult(JobResultEnum.JOB_RESULT_PIV);
+        assertEquals("Filtered images caches must be released by the completed worker threads", 0,
+                PIVContextSingleton.getSingleton().getPIVReusableObjects().getNumberOfFilteredImagesCaches());
+
+        return results;
+    }
+
+    private void assertSameResults(PIVResults expected, PIVResults obtained) {
+        assertEquals("Number of PIV maps does not match", expected.getAllMaps().size(), obtained.getAllMaps().size());
+        for (int mapIndex = 0; mapIndex < expected.getAllMaps().size(); mapIndex++) {
+            PIVMap expectedMap = expected.getAllMaps().get(mapIndex);
+            PIVMap obtainedMap = obtained.getAllMaps().get(mapIndex);
+            assertEquals("Number of frames does not match", expectedMap.getNumberOfMaps(), obtainedMap.getNumberOfMaps());
+            Iterator<Velocities> obtainedIter = obtainedMap.iterator();
+            for (Velocities expectedVelocities : expectedMap) {
+                Velocities obtainedVelocities = obtainedIter.next();
+                int frame = expectedVelocities.getFrameNumber();
+                assertEquals("Frames are not in the same order", frame, obtainedVelocities.getFrameNumber());
+                for (int i = 0; i < expectedVelocities.getU().length; i++) {
+                    assertArrayEquals("U mismatch at frame: " + frame + ", row: " + i, expectedVelocities.getU()[i], obtainedVelocities.getU()[i], 0.0f);
+                    assertArrayEquals("V mismatch at frame: " + frame + ", row: " + i, expectedVelocities.getV()[i], obtainedVelocities.getV()[i], 0.0f);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void dynamicSchedulingMatchesStaticSchedulingPass() {
+        configure(false, 0);
+        PIVResults staticResults = runPIV();
+        assertEquals("Unexpected number of frames", FRAMES, staticResults.getAllMaps().get(0).getNumberOfMaps());
+
+        //Single frame batches maximize the number of batch boundaries where carried over state must be reset
+        configure(true, 1);
+        assertSameResults(staticResults, runPIV());
+
+        configure(true, 2);
+        assertSameResults(staticResults, runPIV());
+    }
+}
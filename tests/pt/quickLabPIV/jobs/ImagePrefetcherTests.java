@@ -0,0 +1,182 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.jobs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import pt.quickLabPIV.FrameBatchScheduler;
+import pt.quickLabPIV.InputFiles;
+import pt.quickLabPIV.PIVContextSingleton;
+import pt.quickLabPIV.PIVContextTestsSingleton;
+import pt.quickLabPIV.PIVRunParameters;
+import pt.quickLabPIV.images.IImage;
+import pt.quickLabPIV.images.ImageFactoryEnum;
+import pt.quickLabPIV.images.ImageNotFoundException;
+
+public class ImagePrefetcherTests {
+    private static final String[] imageNames = { "image_1.3or93zbi.000000", "image_2.3or7kfiw.000000",
+                                                 "image_3.3opnd7cw.000000", "image_4.3ofsom5r.000000" };
+    private PIVRunParameters runParameters;
+    private ExecutorService ioService;
+
+    @Before
+    public void setup() {
+        PIVContextTestsSingleton.setSingleton();
+        PIVContextSingleton singleton = PIVContextSingleton.getSingleton();
+        singleton.resetParametersInstances();
+        singleton.getPIVParameters().setPixelDepth(ImageFactoryEnum.Image8Bit);
+        runParameters = singleton.getPIVRunParameters();
+        runParameters.setUseOpenCL(false);
+        runParameters.setTotalNumberOfThreads(1);
+        runParameters.setDynamicFrameScheduling(true);
+        runParameters.setFrameBatchSize(3);
+        ioService = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        ioService.shutdownNow();
+    }
+
+    private InputFiles createInputFiles() {
+        List<File> filesA = new ArrayList<File>(imageNames.length);
+        List<File> filesB = new ArrayList<File>(imageNames.length);
+        for (String imageName : imageNames) {
+            filesA.add(new File("testFiles" + File.separator + imageName + "a.jpg"));
+            filesB.add(new File("testFiles" + File.separator + imageName + "b.jpg"));
+        }
+
+        return new InputFiles(0, 0, filesA, filesB);
+    }
+
+    private void checkFramesInOrder(ImagePrefetcher prefetcher) {
+        int expectedFrame = 0;
+        ImagePrefetcher.PrefetchedFrame frame;
+        while ((frame = prefetcher.next()) != null) {
+            assertEquals("Frames must be handed out in order", expectedFrame, frame.getRelativeFrame());
+            assertEquals("Batch start must match the configured batch size", expectedFrame % 3 == 0, frame.isFirstOfBatch());
+
+            List<IImage> images = frame.getImages();
+            assertEquals("Image pair must have two images", 2, images.size());
+            assertTrue("Image A doesn't match frame", images.get(0).getName().endsWith(imageNames[expectedFrame] + "a.jpg"));
+            assertTrue("Image B doesn't match frame", images.get(1).getName().endsWith(imageNames[expectedFrame] + "b.jpg"));
+            expectedFrame++;
+        }
+
+        assertEquals("All frames must be handed out", imageNames.length, expectedFrame);
+        assertNull("No more frames should be available", prefetcher.next());
+    }
+
+    @Test
+    public void readAheadFramesInOrderPass() {
+        FrameBatchScheduler scheduler = new FrameBatchScheduler(createInputFiles(), 1);
+        ImagePrefetcher prefetcher = new ImagePrefetcher(scheduler, 0, ioService, 2);
+        checkFramesInOrder(prefetcher);
+    }
+
+    @Test
+    public void synchronousFramesInOrderPass() {
+        FrameBatchScheduler scheduler = new FrameBatchScheduler(createInputFiles(), 1);
+        ImagePrefetcher prefetcher = new ImagePrefetcher(scheduler, 0, null, 0);
+        checkFramesInOrder(prefetcher);
+    }
+
+    @Test
+    public void timeResolvedImageReusePass() {
+        List<File> filesA = new ArrayList<File>(imageNames.length - 1);
+        List<File> filesB = new ArrayList<File>(imageNames.length - 1);
+        for (int i = 0; i < imageNames.length - 1; i++) {
+            filesA.add(new File("testFiles" + File.separator + imageNames[i] + "a.jpg"));
+            filesB.add(new File("testFiles" + File.separator + imageNames[i + 1] + "a.jpg"));
+        }
+        FrameBatchScheduler scheduler = new FrameBatchScheduler(new InputFiles(0, 0, filesA, filesB), 1);
+        ImagePrefetcher prefetcher = new ImagePrefetcher(scheduler, 0, ioService, 2, true);
+
+        ImagePrefetcher.PrefetchedFrame frame = prefetcher.next();
+        assertFalse("First frame image A cannot be reused", frame.isImageAReused());
+        IImage previousImageB = frame.getImages().get(1);
+        int frames = 1;
+        while ((frame = prefetcher.next()) != null) {
+            assertTrue("Image A should be reused from the previous frame", frame.isImageAReused());
+            List<IImage> images = frame.getImages();
+            assertSame("Image A must be the same instance as the previous image B", previousImageB, images.get(0));
+            previousImageB = images.get(1);
+            frames++;
+        }
+        assertEquals("All frames must be handed out", imageNames.length - 1, frames);
+    }
+
+    @Test
+    public void timeResolvedImageReuseStopsAtBatchBoundaryPass() {
+        List<File> filesA = new ArrayList<File>(imageNames.length - 1);
+        List<File> filesB = new ArrayList<File>(imageNames.length - 1);
+        for (int i = 0; i < imageNames.length - 1; i++) {
+            filesA.add(new File("testFiles" + File.separator + imageNames[i] + "a.jpg"));
+            filesB.add(new File("testFiles" + File.separator + imageNames[i + 1] + "a.jpg"));
+        }
+        runParameters.setFrameBatchSize(2);
+        FrameBatchScheduler scheduler = new FrameBatchScheduler(new InputFiles(0, 0, filesA, filesB), 1);
+        ImagePrefetcher prefetcher = new ImagePrefetcher(scheduler, 0, ioService, 2, true);
+
+        ImagePrefetcher.PrefetchedFrame frame = prefetcher.next();
+        IImage previousImageB = frame.getImages().get(1);
+        frame = prefetcher.next();
+        assertTrue("Image A should be reused within the batch", frame.isImageAReused());
+        assertSame("Image A must be the same instance as the previous image B", previousImageB, frame.getImages().get(0));
+        previousImageB = frame.getImages().get(1);
+
+        frame = prefetcher.next();
+        assertTrue("Third frame must start a new batch", frame.isFirstOfBatch());
+        assertFalse("Image A must not be reused across batches", frame.isImageAReused());
+        assertNotSame("Image A must be read again for a new batch", previousImageB, frame.getImages().get(0));
+        assertEquals("Image A must still match the previous image B", previousImageB.getName(), frame.getImages().get(0).getName());
+        assertNull("No more frames should be available", prefetcher.next());
+    }
+
+    @Test
+    public void readAheadClaimsOnlyTheNextBatchPass() {
+        runParameters.setFrameBatchSize(1);
+        FrameBatchScheduler scheduler = new FrameBatchScheduler(createInputFiles(), 2);
+        ImagePrefetcher prefetcher = new ImagePrefetcher(scheduler, 0, ioService, 4);
+
+        ImagePrefetcher.PrefetchedFrame frame = prefetcher.next();
+        assertEquals("Unexpected first frame", 0, frame.getRelativeFrame());
+        //Read ahead depth allows all frames, but only the batch following the current one may be claimed
+        InputFiles otherThreadBatch = scheduler.nextBatch(1);
+        assertEquals("Other thread must not be left without frames", 2, otherThreadBatch.getRelativeStartFrame());
+
+        assertEquals("Unexpected second frame", 1, prefetcher.next().getRelativeFrame());
+        assertEquals("Unexpected third frame", 3, prefetcher.next().getRelativeFrame());
+        assertNull("No more frames should be available", prefetcher.next());
+    }
+
+    @Test(expected = ImageNotFoundException.class)
+    public void readAheadMissingFileFail() {
+        List<File> filesA = new ArrayList<File>(1);
+        List<File> filesB = new ArrayList<File>(1);
+        filesA.add(new File("testFiles" + File.separator + "missing_a.jpg"));
+        filesB.add(new File("testFiles" + File.separator + "missing_b.jpg"));
+        FrameBatchScheduler scheduler = new FrameBatchScheduler(new InputFiles(0, 0, filesA, filesB), 1);
+        ImagePrefetcher prefetcher = new ImagePrefetcher(scheduler, 0, ioService, 2);
+        prefetcher.next().getImages();
+    }
+}
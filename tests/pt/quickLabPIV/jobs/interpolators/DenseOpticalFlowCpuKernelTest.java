@@ -0,0 +1,232 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.jobs.interpolators;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import pt.quickLabPIV.Matrix;
+import pt.quickLabPIV.exporter.SimpleFloatMatrixImporterExporter;
+import pt.quickLabPIV.images.IImage;
+import pt.quickLabPIV.images.ImageFloat;
+import pt.quickLabPIV.images.ImageTestHelper;
+import pt.quickLabPIV.images.filters.GaussianFilter2D;
+import pt.quickLabPIV.images.filters.IFilter;
+import pt.quickLabPIV.interpolators.SimpleLucasKanadeImpl;
+
+public class DenseOpticalFlowCpuKernelTest {
+    private final int imageHeight = 40;
+    private final int imageWidth = 48;
+    private final int windowSize = 9;
+    private final int iterationsLK = 5;
+    private final int iterationsLS = 10;
+    private final float lambdaLS = 1000.0f;
+    private IImage imgA;
+    private IImage imgB;
+    private float imageA[];
+    private float imageB[];
+    private float imageLSA[];
+    private float imageLSB[];
+
+    private IImage loadImage(String filename, IFilter filter, boolean normalize) {
+        IImage img = ImageTestHelper.getImage("testFiles" + File.separator + filename);
+        img = ImageFloat.convertFrom(img);
+        img = filter.applyFilter(img, img);
+        if (normalize) {
+            img = img.normalize(null);
+        }
+        Matrix region = img.clipImageMatrix(100, 100, imageHeight, imageWidth, false, null);
+        return new ImageFloat(region, imageWidth, imageHeight, filename);
+    }
+
+    @Before
+    public void setup() {
+        IFilter filterLK = new GaussianFilter2D(2.0f, 3);
+        IFilter filterLS = new GaussianFilter2D(0.48f, 5);
+        imgA = loadImage("rankine_vortex01_0.tif", filterLK, false);
+        imgB = loadImage("rankine_vortex01_1.tif", filterLK, false);
+        imageA = imgA.exportTo1DFloatArray(null);
+        imageB = imgB.exportTo1DFloatArray(null);
+        imageLSA = loadImage("rankine_vortex01_0.tif", filterLS, true).exportTo1DFloatArray(null);
+        imageLSB = loadImage("rankine_vortex01_1.tif", filterLS, true).exportTo1DFloatArray(null);
+    }
+
+    private void checkVectors(String title, float[] expected, float[] obtained, float tolerance) {
+        for (int i = 0; i < imageHeight; i++) {
+            for (int j = 0; j < imageWidth; j++) {
+                int idx = i * imageWidth + j;
+                assertEquals(title + " do not match at I: " + i + ", J: " + j, expected[idx], obtained[idx], tolerance);
+            }
+        }
+    }
+
+    private void lucasKanadeMatchesReference(boolean halfPixelOffset) {
+        //Double precision reference implementation, which follows the OpenCL kernel one pixel at a time
+        SimpleLucasKanadeImpl reference = new SimpleLucasKanadeImpl(0.0f, 3, false, windowSize, iterationsLK);
+        reference.updateImageA(imgA);
+        reference.updateImageB(imgB);
+        float expectedUs[] = new float[imageHeight * imageWidth];
+        float expectedVs[] = new float[imageHeight * imageWidth];
+        for (int i = 0; i < imageHeight; i++) {
+            for (int j = 0; j < imageWidth; j++) {
+                double velocities[] = reference.interpolate(i, j, 0.0, 0.0, halfPixelOffset);
+                expectedVs[i * imageWidth + j] = (float)velocities[0];
+                expectedUs[i * imageWidth + j] = (float)velocities[1];
+            }
+        }
+
+        float us[] = new float[imageHeight * imageWidth];
+        float vs[] = new float[imageHeight * imageWidth];
+        DenseLucasKanadeCpuKernel kernel = new DenseLucasKanadeCpuKernel(windowSize, iterationsLK, imageHeight, imageWidth);
+        kernel.setKernelArgs(imageA, imageB, us, vs, halfPixelOffset);
+        kernel.execute();
+
+        checkVectors("us", expectedUs, us, 1e-2f);
+        checkVectors("vs", expectedVs, vs, 1e-2f);
+    }
+
+    @Test
+    public void lucasKanadeMatchesReferencePass() {
+        lucasKanadeMatchesReference(false);
+    }
+
+    @Test
+    public void lucasKanadeHalfPixelOffsetMatchesReferencePass() {
+        lucasKanadeMatchesReference(true);
+    }
+
+    @Test
+    public void parallelLucasKanadeMatchesSerialLucasKanadePass() {
+        float expectedUs[] = new float[imageHeight * imageWidth];
+        float expectedVs[] = new float[imageHeight * imageWidth];
+        DenseLucasKanadeCpuKernel serialKernel = new DenseLucasKanadeCpuKernel(windowSize, iterationsLK, imageHeight, imageWidth);
+        serialKernel.setKernelArgs(imageA, imageB, expectedUs, expectedVs, false);
+        serialKernel.execute();
+
+        float us[] = new float[imageHeight * imageWidth];
+        float vs[] = new float[imageHeight * imageWidth];
+        DenseLucasKanadeCpuKernel parallelKernel = new DenseLucasKanadeCpuKernel(windowSize, iterationsLK, imageHeight, imageWidth);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            parallelKernel.setParallelism(pool, 4);
+            parallelKernel.setKernelArgs(imageA, imageB, us, vs, false);
+            parallelKernel.execute();
+        } finally {
+            pool.shutdown();
+        }
+
+        checkVectors("us", expectedUs, us, 0.0f);
+        checkVectors("vs", expectedVs, vs, 0.0f);
+    }
+
+    private float[][] readReferenceMatrix(String filename, String name) throws IOException {
+        int index = SimpleFloatMatrixImporterExporter.getMatrixIndexFromName(filename, name);
+        if (index < 0) {
+            throw new Error("Couldn't find " + name + " data in matFloat file: " + filename);
+        }
+        return SimpleFloatMatrixImporterExporter.readFromFormattedFile(filename, index);
+    }
+
+    private void liuShenMatchesReference(int parallelism) throws IOException {
+        //Python reference Liu-Shen iterations, computed over the Lucas-Kanade vectors of the Aparapi kernel in JTP mode
+        final String filename = "testFiles" + File.separator + "Python_with_JavaLK_denseLiuShen_lambda4_Rankine_vortex_64x64.matFloat";
+        final int referenceHeight = 64;
+        final int referenceWidth = 64;
+        final int referenceWindowSize = 27;
+        final int referenceIterations = 5;
+
+        final float[][] imgLKA = readReferenceMatrix(filename, "Im1LK_Filtered");
+        final float[][] imgLKB = readReferenceMatrix(filename, "Im2LK_Filtered");
+        final float[][] imgLSA = readReferenceMatrix(filename, "Im1LS_Filtered");
+        final float[][] imgLSB = readReferenceMatrix(filename, "Im2LS_Filtered");
+        final float[][] usLKBefore = readReferenceMatrix(filename, "beforeLK2nd5_u");
+        final float[][] vsLKBefore = readReferenceMatrix(filename, "beforeLK2nd5_v");
+        final float[][] unews = readReferenceMatrix(filename, "unews" + (referenceIterations - 1));
+        final float[][] vnews = readReferenceMatrix(filename, "vnews" + (referenceIterations - 1));
+
+        final int pixels = referenceHeight * referenceWidth;
+        float lkA[] = new float[pixels];
+        float lkB[] = new float[pixels];
+        float lsA[] = new float[pixels];
+        float lsB[] = new float[pixels];
+        float us[] = new float[pixels];
+        float vs[] = new float[pixels];
+        for (int i = 0; i < referenceHeight; i++) {
+            for (int j = 0; j < referenceWidth; j++) {
+                int idx = i * referenceWidth + j;
+                lkA[idx] = imgLKA[i][j];
+                lkB[idx] = imgLKB[i][j];
+                lsA[idx] = imgLSA[i][j];
+                lsB[idx] = imgLSB[i][j];
+                us[idx] = usLKBefore[i][j];
+                vs[idx] = vsLKBefore[i][j];
+            }
+        }
+
+        DenseLiuShenCpuKernel kernel = new DenseLiuShenCpuKernel(referenceWindowSize, referenceIterations, referenceHeight, referenceWidth,
+                                                                 referenceIterations, 4.0f);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            kernel.setParallelism(pool, parallelism);
+            kernel.setKernelArgs(lkA, lkB, lsA, lsB, us, vs, new float[pixels], new float[pixels], new float[1], false);
+            kernel.execute();
+        } finally {
+            pool.shutdown();
+        }
+
+        for (int i = 0; i < referenceHeight; i++) {
+            for (int j = 0; j < referenceWidth; j++) {
+                int idx = i * referenceWidth + j;
+                //Liu-Shen us are the vertical (I) displacements, while the Lucas-Kanade us are the horizontal (J) displacements
+                assertEquals("us do not match at I: " + i + ", J: " + j, vnews[i][j], us[idx], 1e-3f);
+                assertEquals("vs do not match at I: " + i + ", J: " + j, unews[i][j], vs[idx], 1e-3f);
+            }
+        }
+    }
+
+    @Test
+    public void liuShenMatchesReferencePass() throws IOException {
+        liuShenMatchesReference(1);
+    }
+
+    @Test
+    public void parallelLiuShenMatchesReferencePass() throws IOException {
+        liuShenMatchesReference(4);
+    }
+
+    @Test
+    public void parallelLiuShenMatchesSerialLiuShenPass() {
+        float expectedUs[] = new float[imageHeight * imageWidth];
+        float expectedVs[] = new float[imageHeight * imageWidth];
+        DenseLiuShenCpuKernel serialKernel = new DenseLiuShenCpuKernel(windowSize, iterationsLK, imageHeight, imageWidth, iterationsLS, lambdaLS);
+        serialKernel.setKernelArgs(imageA, imageB, imageLSA, imageLSB, expectedUs, expectedVs, new float[imageHeight * imageWidth],
+                                   new float[imageHeight * imageWidth], new float[1], true);
+        serialKernel.execute();
+
+        float us[] = new float[imageHeight * imageWidth];
+        float vs[] = new float[imageHeight * imageWidth];
+        DenseLiuShenCpuKernel parallelKernel = new DenseLiuShenCpuKernel(windowSize, iterationsLK, imageHeight, imageWidth, iterationsLS, lambdaLS);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            parallelKernel.setParallelism(pool, 4);
+            parallelKernel.setKernelArgs(imageA, imageB, imageLSA, imageLSB, us, vs, new float[imageHeight * imageWidth],
+                                         new float[imageHeight * imageWidth], new float[1], true);
+            parallelKernel.execute();
+        } finally {
+            pool.shutdown();
+        }
+
+        checkVectors("us", expectedUs, us, 0.0f);
+        checkVectors("vs", expectedVs, vs, 0.0f);
+    }
+}
@@ -0,0 +1,118 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.jobs.xcorr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import pt.quickLabPIV.Matrix;
+import pt.quickLabPIV.MatrixFloat;
+import pt.quickLabPIV.iareas.Tile;
+import pt.quickLabPIV.jobs.JobResultEnum;
+
+public class AggregatedCrossCorrelationJobTests {
+    private static final int TILE_SIZE = 16;
+
+    private List<Tile> createTiles(Random rnd, int count) {
+        List<Tile> tiles = new ArrayList<Tile>(count);
+        for (int index = 0; index < count; index++) {
+            Matrix m = new MatrixFloat(TILE_SIZE, TILE_SIZE, 255.0f);
+            for (int i = 0; i < TILE_SIZE; i++) {
+                for (int j = 0; j < TILE_SIZE; j++) {
+                    m.setElement((float)rnd.nextInt(256), i, j);
+                }
+            }
+            tiles.add(new Tile(null, m));
+        }
+        return tiles;
+    }
+
+    private void assertSameCrossMatrices(List<Matrix> expected, List<Matrix> obtained, String message) {
+        assertEquals(message + " - number of matrices mismatch", expected.size(), obtained.size());
+        for (int index = 0; index < expected.size(); index++) {
+            Matrix e = expected.get(index);
+            Matrix o = obtained.get(index);
+            for (int i = 0; i < e.getHeight(); i++) {
+                for (int j = 0; j < e.getWidth(); j++) {
+                    assertEquals(message + " - mismatch at matrix " + index + " [I: " + i + ", J: " + j + "]", e.getElement(i, j), o.getElement(i, j), 1e-3f);
+                }
+            }
+        }
+    }
+
+    /**
+     * Each thread computes a different number of batches, with a different number of tiles each, so that executions
+     * are done both with all threads and with only some of them, after a thread retires.
+     */
+    private void runThreads(final AggregatedCrossCorrelationJob aggregatedJob, int threads) throws Exception {
+        ExecutorService service = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>(threads);
+            for (int thread = 0; thread < threads; thread++) {
+                final int threadIndex = thread;
+                futures.add(service.submit(() -> {
+                    Random rnd = new Random(2017L + threadIndex);
+                    CrossCorrelationSoftRealFFTJob referenceJob = new CrossCorrelationSoftRealFFTJob();
+                    int batches = 3 + threadIndex * 2;
+                    try {
+                        for (int batch = 0; batch < batches; batch++) {
+                            List<Tile> tilesA = createTiles(rnd, 1 + rnd.nextInt(20));
+                            List<Tile> tilesB = createTiles(rnd, tilesA.size());
+                            aggregatedJob.setInputParameters(JobResultEnum.JOB_RESULT_CLIPPED_TILES_A, tilesA);
+                            aggregatedJob.setInputParameters(JobResultEnum.JOB_RESULT_CLIPPED_TILES_B, tilesB);
+                            aggregatedJob.analyze();
+                            aggregatedJob.compute();
+                            List<Matrix> obtained = aggregatedJob.getJobResult(JobResultEnum.JOB_RESULT_CROSS_MATRICES).getCrossMatrices();
+
+                            referenceJob.setInputParameters(JobResultEnum.JOB_RESULT_CLIPPED_TILES_A, tilesA);
+                            referenceJob.setInputParameters(JobResultEnum.JOB_RESULT_CLIPPED_TILES_B, tilesB);
+                            referenceJob.analyze();
+                            referenceJob.compute();
+                            List<Matrix> expected = referenceJob.getJobResult(JobResultEnum.JOB_RESULT_CROSS_MATRICES).getCrossMatrices();
+                            assertSameCrossMatrices(expected, obtained, "Thread " + threadIndex + ", batch " + batch);
+                        }
+                    } finally {
+                        aggregatedJob.retireThread();
+                    }
+                    return batches;
+                }));
+            }
+
+            for (Future<Integer> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            service.shutdownNow();
+        }
+    }
+
+    @Test
+    public void aggregatedResultsMatchPerThreadResultsPass() throws Exception {
+        AggregatedCrossCorrelationJob aggregatedJob = new AggregatedCrossCorrelationJob(new CrossCorrelationSoftRealFFTJob(), 4, 1000);
+        runThreads(aggregatedJob, 4);
+    }
+
+    @Test
+    public void missingThreadTimeoutPass() throws Exception {
+        //One of the participating threads never provides its tiles, so every execution must wait for the timeout
+        AggregatedCrossCorrelationJob aggregatedJob = new AggregatedCrossCorrelationJob(new CrossCorrelationSoftRealFFTJob(), 3, 50);
+        long start = System.nanoTime();
+        runThreads(aggregatedJob, 2);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("Threads must not wait forever for the missing thread", elapsedMillis < 30000);
+    }
+}
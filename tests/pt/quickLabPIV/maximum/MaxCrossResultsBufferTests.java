@@ -0,0 +1,113 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.maximum;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import pt.quickLabPIV.Matrix;
+import pt.quickLabPIV.MatrixFloat;
+import pt.quickLabPIV.PIVContextSingleton;
+import pt.quickLabPIV.PIVContextTestsSingleton;
+import pt.quickLabPIV.iareas.Tile;
+
+public class MaxCrossResultsBufferTests {
+    private static final int DIM = 31;
+
+    private List<Matrix> createCrossMatrices() {
+        Random rnd = new Random(2017L);
+        List<Matrix> matrices = new ArrayList<Matrix>();
+        //Random peak
+        Matrix m = new MatrixFloat(DIM, DIM);
+        for (int i = 0; i < DIM; i++) {
+            for (int j = 0; j < DIM; j++) {
+                m.setElement(rnd.nextFloat() - 0.2f, i, j);
+            }
+        }
+        matrices.add(m);
+        //Zero matrix, whose peak is selected by each finder default rules
+        matrices.add(new MatrixFloat(DIM, DIM));
+        //Negative matrix
+        m = new MatrixFloat(DIM, DIM);
+        for (int i = 0; i < DIM; i++) {
+            for (int j = 0; j < DIM; j++) {
+                m.setElement(-1.0f - rnd.nextFloat(), i, j);
+            }
+        }
+        matrices.add(m);
+        //Tied maximums, at same distance from center
+        m = new MatrixFloat(DIM, DIM);
+        m.setElement(5.0f, DIM / 2 - 2, DIM / 2 + 1);
+        m.setElement(5.0f, DIM / 2 + 4, DIM / 2 + 1);
+        m.setElement(5.0f, DIM / 2 + 1, DIM / 2 - 2);
+        m.setElement(-3.0f, 5, 7);
+        matrices.add(m);
+        //Maximum at the first row, which is not visited by the search from the center
+        m = new MatrixFloat(DIM, DIM);
+        m.setElement(9.0f, 0, 4);
+        m.setElement(2.0f, 20, 3);
+        matrices.add(m);
+
+        return matrices;
+    }
+
+    private void assertSameAsSingleFinder(IMaximumFinder finder) {
+        List<Matrix> matrices = createCrossMatrices();
+        List<Tile> tiles = new ArrayList<Tile>();
+        for (int index = 0; index < matrices.size(); index++) {
+            tiles.add(null);
+        }
+
+        MaxCrossResultsBuffer buffer = new MaxCrossResultsBuffer();
+        //Run twice to validate reuse of the pooled results
+        for (int run = 0; run < 2; run++) {
+            finder.findMaximums(matrices, buffer);
+            buffer.setAssociatedTiles(tiles, tiles);
+            List<MaxCrossResult> results = buffer.getResults();
+            assertEquals("Number of results mismatch", matrices.size(), results.size());
+            for (int index = 0; index < matrices.size(); index++) {
+                MaxCrossResult expected = finder.findMaximum(matrices.get(index));
+                MaxCrossResult result = results.get(index);
+                assertEquals("Number of peaks mismatch for matrix " + index, expected.getTotalPeaks(), result.getTotalPeaks());
+                for (int peak = 0; peak < expected.getTotalPeaks(); peak++) {
+                    assertEquals("Peak I mismatch for matrix " + index, expected.getNthPeakI(peak), result.getNthPeakI(peak), 0.0f);
+                    assertEquals("Peak J mismatch for matrix " + index, expected.getNthPeakJ(peak), result.getNthPeakJ(peak), 0.0f);
+                    assertEquals("Peak value mismatch for matrix " + index, expected.getNthPeakValue(peak), result.getNthPeakValue(peak), 0.0f);
+                }
+                assertEquals("Min floor mismatch for matrix " + index, expected.getMinFloor(), result.getMinFloor(), 0.0f);
+                assertEquals("Displacement U mismatch for matrix " + index, expected.getNthDisplacementU(0), result.getNthDisplacementU(0), 0.0f);
+                assertEquals("Displacement V mismatch for matrix " + index, expected.getNthDisplacementV(0), result.getNthDisplacementV(0), 0.0f);
+                assertSame("Cross matrix mismatch for matrix " + index, matrices.get(index), result.getCrossMatrix());
+            }
+        }
+    }
+
+    @Test
+    public void batchedFindMaximumSimplePass() {
+        assertSameAsSingleFinder(new FindMaximumSimple());
+    }
+
+    @Test
+    public void batchedFindMaximumFromCenterPass() {
+        assertSameAsSingleFinder(new FindMaximumFromCenter());
+    }
+
+    @Test
+    public void batchedFindMaximumMultiPeaksPass() {
+        PIVContextTestsSingleton.setSingleton();
+        PIVContextSingleton singleton = PIVContextSingleton.getSingleton();
+        singleton.getPIVParameters().setSpecificConfiguration(FindMaximumMultiPeaksConfiguration.IDENTIFIER,
+                new FindMaximumMultiPeaksConfiguration(3, 3));
+        assertSameAsSingleFinder(new FindMaximumMultiPeaks());
+    }
+}
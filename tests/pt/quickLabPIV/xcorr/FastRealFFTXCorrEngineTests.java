@@ -0,0 +1,79 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.xcorr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import pt.quickLabPIV.Matrix;
+import pt.quickLabPIV.MatrixFloat;
+import pt.quickLabPIV.jobs.JobComputeException;
+import pt.quickLabPIV.jobs.xcorr.FastRealFFTXCorr;
+import pt.quickLabPIV.jobs.xcorr.FastRealFFTXCorrEngine;
+
+public class FastRealFFTXCorrEngineTests {
+
+    private Matrix createRandomMatrix(Random rnd, int dimI, int dimJ) {
+        float[][] values = new float[dimI][dimJ];
+        for (int i = 0; i < dimI; i++) {
+            for (int j = 0; j < dimJ; j++) {
+                values[i][j] = rnd.nextInt(256);
+            }
+        }
+
+        Matrix m = new MatrixFloat(dimI, dimJ, 255.0f);
+        m.copyMatrixFrom2DArray(values, 0, 0);
+        return m;
+    }
+
+    private void checkEngineMatchesReference(int dimI, int dimJ) {
+        Random rnd = new Random(dimI * 1000 + dimJ);
+        FastRealFFTXCorrEngine engine = new FastRealFFTXCorrEngine(dimI, dimJ);
+        Matrix result = new MatrixFloat(2 * dimI - 1, 2 * dimJ - 1);
+
+        //Repeat to ensure that work buffers reuse doesn't affect results
+        for (int repeat = 0; repeat < 3; repeat++) {
+            Matrix f = createRandomMatrix(rnd, dimI, dimJ);
+            Matrix g = createRandomMatrix(rnd, dimI, dimJ);
+
+            Matrix expected = FastRealFFTXCorr.computeXCorr(f, g);
+            Matrix obtained = engine.computeXCorr(f, g, result);
+            assertSame("Engine must return the provided result matrix", result, obtained);
+
+            for (int i = 0; i < expected.getHeight(); i++) {
+                for (int j = 0; j < expected.getWidth(); j++) {
+                    assertEquals("Cross-correlation value doesn't match at (" + i + ", " + j + ")",
+                            expected.getElement(i, j), obtained.getElement(i, j), 0.0f);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void engineMatchesReferenceSquareTestPass() {
+        checkEngineMatchesReference(4, 4);
+        checkEngineMatchesReference(16, 16);
+        checkEngineMatchesReference(32, 32);
+    }
+
+    @Test
+    public void engineMatchesReferenceRectangularTestPass() {
+        checkEngineMatchesReference(16, 8);
+        checkEngineMatchesReference(8, 32);
+    }
+
+    @Test(expected = JobComputeException.class)
+    public void engineGeometryMismatchTestFail() {
+        FastRealFFTXCorrEngine engine = new FastRealFFTXCorrEngine(16, 16);
+        Random rnd = new Random(1);
+        engine.computeXCorr(createRandomMatrix(rnd, 8, 8), createRandomMatrix(rnd, 8, 8), new MatrixFloat(15, 15));
+    }
+}
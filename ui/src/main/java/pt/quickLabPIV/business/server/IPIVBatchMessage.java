@@ -0,0 +1,22 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.business.server;
+
+import java.io.IOException;
+
+import com.google.protobuf.CodedOutputStream;
+
+/**
+ * A PIV batch service message, encoded in the protocol buffers wire format, with fields set to their default values
+ * omitted from the encoding.
+ * @author lpnm
+ */
+interface IPIVBatchMessage {
+    int getSerializedSize();
+
+    void writeTo(CodedOutputStream output) throws IOException;
+}
@@ -0,0 +1,84 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.business.server;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import io.grpc.CallOptions;
+import io.grpc.ManagedChannel;
+import io.grpc.netty.NettyChannelBuilder;
+import io.grpc.stub.ClientCalls;
+
+/**
+ * Loopback client of the {@link PIVBatchServer} service.
+ * @author lpnm
+ */
+public class PIVBatchClient implements AutoCloseable {
+    private final ManagedChannel channel;
+
+    /**
+     * Connects to a PIV batch server running on this machine.
+     * @param port the server loopback TCP port
+     */
+    public PIVBatchClient(int port) {
+        channel = NettyChannelBuilder.forAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), port))
+                .usePlaintext()
+                .build();
+    }
+
+    /**
+     * Submits a project for PIV processing.
+     * @param projectFile the path to the project file, as seen by the server
+     * @param pixelDepth the forced bits per pixel of the PIV images, or 0 to use the default
+     * @return the queued job status
+     */
+    public PIVBatchJobStatus submitProject(String projectFile, int pixelDepth) {
+        return ClientCalls.blockingUnaryCall(channel, PIVBatchServiceDefinition.SUBMIT_PROJECT_METHOD, CallOptions.DEFAULT,
+                                             new PIVBatchSubmitRequest(projectFile, pixelDepth));
+    }
+
+    /**
+     * Watches a job, starting with its current status, until it finishes.
+     * @param jobId the job identifier
+     * @return the blocking iterator over the job status updates
+     */
+    public Iterator<PIVBatchJobStatus> watchJob(long jobId) {
+        return ClientCalls.blockingServerStreamingCall(channel, PIVBatchServiceDefinition.WATCH_JOB_METHOD, CallOptions.DEFAULT,
+                                                       new PIVBatchJobRequest(jobId));
+    }
+
+    /**
+     * Waits for a job to finish.
+     * @param jobId the job identifier
+     * @return the final job status
+     */
+    public PIVBatchJobStatus waitForJob(long jobId) {
+        PIVBatchJobStatus status = null;
+        for (Iterator<PIVBatchJobStatus> updates = watchJob(jobId); updates.hasNext(); ) {
+            status = updates.next();
+        }
+        return status;
+    }
+
+    public PIVBatchJobStatus cancelJob(long jobId) {
+        return ClientCalls.blockingUnaryCall(channel, PIVBatchServiceDefinition.CANCEL_JOB_METHOD, CallOptions.DEFAULT,
+                                             new PIVBatchJobRequest(jobId));
+    }
+
+    @Override
+    public void close() {
+        channel.shutdown();
+        try {
+            channel.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
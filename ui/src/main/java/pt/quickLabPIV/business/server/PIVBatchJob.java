@@ -0,0 +1,149 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.business.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.grpc.stub.StreamObserver;
+import pt.quickLabPIV.IProgressReportObserver;
+import pt.quickLabPIV.PIVContextSingleton;
+import pt.quickLabPIV.ProgressReport;
+
+/**
+ * A queued PIV project execution, which keeps its latest status and streams every status update to its watchers.
+ * @author lpnm
+ */
+final class PIVBatchJob implements IProgressReportObserver {
+    private static final Logger logger = LoggerFactory.getLogger(PIVBatchJob.class);
+
+    private final long jobId;
+    private final String projectFile;
+    private final int pixelDepth;
+    private final List<StreamObserver<PIVBatchJobStatus>> watchers = new ArrayList<>(2);
+    private PIVBatchJobStatus status;
+    private Future<?> future;
+    private boolean cancelRequested;
+
+    PIVBatchJob(long _jobId, String _projectFile, int _pixelDepth) {
+        jobId = _jobId;
+        projectFile = _projectFile;
+        pixelDepth = _pixelDepth;
+        status = new PIVBatchJobStatus(jobId, PIVBatchJobStateEnum.QUEUED, 0, 0, 0.0f, null, null);
+    }
+
+    long getJobId() {
+        return jobId;
+    }
+
+    String getProjectFile() {
+        return projectFile;
+    }
+
+    int getPixelDepth() {
+        return pixelDepth;
+    }
+
+    synchronized void setFuture(Future<?> _future) {
+        future = _future;
+    }
+
+    synchronized PIVBatchJobStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * Registers a watcher, which immediately receives the current status, and is completed once the job finishes.
+     * @param watcher the status stream observer
+     */
+    synchronized void addWatcher(StreamObserver<PIVBatchJobStatus> watcher) {
+        watcher.onNext(status);
+        if (status.getState().isTerminal()) {
+            watcher.onCompleted();
+        } else {
+            watchers.add(watcher);
+        }
+    }
+
+    synchronized void removeWatcher(StreamObserver<PIVBatchJobStatus> watcher) {
+        watchers.remove(watcher);
+    }
+
+    /**
+     * Marks the job as running, unless it was cancelled while queued.
+     * @return true if the job must be executed, false otherwise
+     */
+    synchronized boolean start() {
+        if (status.getState() != PIVBatchJobStateEnum.QUEUED) {
+            return false;
+        }
+        updateStatus(new PIVBatchJobStatus(jobId, PIVBatchJobStateEnum.RUNNING, 0, 0, 0.0f, null, null));
+        return true;
+    }
+
+    /**
+     * Requests the job cancellation. Queued jobs are cancelled immediately, while running jobs are cancelled by the
+     * PIV processing itself, at the next cancellation check.
+     * @return the job status after the request
+     */
+    synchronized PIVBatchJobStatus cancel() {
+        if (status.getState() == PIVBatchJobStateEnum.QUEUED) {
+            if (future != null) {
+                future.cancel(false);
+            }
+            finish(PIVBatchJobStateEnum.CANCELLED, null);
+        } else if (status.getState() == PIVBatchJobStateEnum.RUNNING) {
+            cancelRequested = true;
+            PIVContextSingleton.getSingleton().cancelExecution();
+        }
+        return status;
+    }
+
+    synchronized boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    synchronized void finish(PIVBatchJobStateEnum state, String message) {
+        updateStatus(new PIVBatchJobStatus(jobId, state, status.getProcessedImages(), status.getTotalImages(), status.getElapsedTime(),
+                                           message, status.getOutputFilename()));
+    }
+
+    @Override
+    public synchronized void receiveUpdatedProgressReport(ProgressReport report) {
+        if (cancelRequested) {
+            //The cancellation may have been requested before the run parameters were reset for this job
+            PIVContextSingleton.getSingleton().cancelExecution();
+        }
+        if (status.getState() != PIVBatchJobStateEnum.RUNNING) {
+            return;
+        }
+        updateStatus(new PIVBatchJobStatus(jobId, PIVBatchJobStateEnum.RUNNING, report.getProcessedImages(), report.getTotalImages(),
+                                           report.getElapsedTime(), null, report.getResultOutputPathAndFilename()));
+    }
+
+    private void updateStatus(PIVBatchJobStatus newStatus) {
+        status = newStatus;
+        final boolean terminal = status.getState().isTerminal();
+        for (StreamObserver<PIVBatchJobStatus> watcher : watchers) {
+            try {
+                watcher.onNext(status);
+                if (terminal) {
+                    watcher.onCompleted();
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Failed to send status update for job: {}", jobId, e);
+            }
+        }
+        if (terminal) {
+            watchers.clear();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.business.server;
+
+import java.io.IOException;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+
+/**
+ * Request targeting a previously submitted job, the <code>JobRequest</code> protocol message.
+ * @author lpnm
+ */
+public final class PIVBatchJobRequest implements IPIVBatchMessage {
+    private static final int JOB_ID_FIELD = 1;
+
+    private final long jobId;
+
+    public PIVBatchJobRequest(long _jobId) {
+        jobId = _jobId;
+    }
+
+    public long getJobId() {
+        return jobId;
+    }
+
+    @Override
+    public int getSerializedSize() {
+        return jobId != 0 ? CodedOutputStream.computeInt64Size(JOB_ID_FIELD, jobId) : 0;
+    }
+
+    @Override
+    public void writeTo(CodedOutputStream output) throws IOException {
+        if (jobId != 0) {
+            output.writeInt64(JOB_ID_FIELD, jobId);
+        }
+    }
+
+    static PIVBatchJobRequest parseFrom(CodedInputStream input) throws IOException {
+        long jobId = 0;
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            if (WireFormat.getTagFieldNumber(tag) == JOB_ID_FIELD) {
+                jobId = input.readInt64();
+            } else {
+                input.skipField(tag);
+            }
+        }
+        return new PIVBatchJobRequest(jobId);
+    }
+}
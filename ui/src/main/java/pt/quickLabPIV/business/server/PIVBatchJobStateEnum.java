@@ -0,0 +1,34 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.business.server;
+
+/**
+ * The states of a PIV batch job, whose ordinals are the wire values of the <code>JobState</code> protocol enumeration.
+ * @author lpnm
+ */
+public enum PIVBatchJobStateEnum {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    FAILED,
+    CANCELLED;
+
+    /**
+     * Checks if the job has finished, after which its state will no longer change.
+     * @return true if the job has finished, false otherwise
+     */
+    public boolean isTerminal() {
+        return this == COMPLETED || this == FAILED || this == CANCELLED;
+    }
+
+    static PIVBatchJobStateEnum fromWireValue(int value) {
+        if (value < 0 || value >= values().length) {
+            throw new PIVBatchServerException("Unknown job state: " + value);
+        }
+        return values()[value];
+    }
+}
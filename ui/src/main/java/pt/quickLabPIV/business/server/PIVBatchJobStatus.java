@@ -0,0 +1,194 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.business.server;
+
+import java.io.IOException;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+
+/**
+ * Immutable snapshot of a PIV batch job status, the <code>JobStatus</code> protocol message.
+ * @author lpnm
+ */
+public final class PIVBatchJobStatus implements IPIVBatchMessage {
+    private static final int JOB_ID_FIELD = 1;
+    private static final int STATE_FIELD = 2;
+    private static final int PROCESSED_IMAGES_FIELD = 3;
+    private static final int TOTAL_IMAGES_FIELD = 4;
+    private static final int ELAPSED_TIME_FIELD = 5;
+    private static final int MESSAGE_FIELD = 6;
+    private static final int OUTPUT_FILENAME_FIELD = 7;
+
+    private final long jobId;
+    private final PIVBatchJobStateEnum state;
+    private final int processedImages;
+    private final int totalImages;
+    private final float elapsedTime;
+    private final String message;
+    private final String outputFilename;
+
+    public PIVBatchJobStatus(long _jobId, PIVBatchJobStateEnum _state, int _processedImages, int _totalImages, float _elapsedTime,
+                             String _message, String _outputFilename) {
+        jobId = _jobId;
+        state = _state;
+        processedImages = _processedImages;
+        totalImages = _totalImages;
+        elapsedTime = _elapsedTime;
+        message = _message == null ? "" : _message;
+        outputFilename = _outputFilename == null ? "" : _outputFilename;
+    }
+
+    public long getJobId() {
+        return jobId;
+    }
+
+    public PIVBatchJobStateEnum getState() {
+        return state;
+    }
+
+    public int getProcessedImages() {
+        return processedImages;
+    }
+
+    public int getTotalImages() {
+        return totalImages;
+    }
+
+    /**
+     * Retrieves the elapsed processing time.
+     * @return the elapsed time in seconds
+     */
+    public float getElapsedTime() {
+        return elapsedTime;
+    }
+
+    /**
+     * Retrieves the failure description, if the job has failed.
+     * @return the failure message, or an empty string
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    public String getOutputFilename() {
+        return outputFilename;
+    }
+
+    @Override
+    public int getSerializedSize() {
+        int size = 0;
+        if (jobId != 0) {
+            size += CodedOutputStream.computeInt64Size(JOB_ID_FIELD, jobId);
+        }
+        if (state.ordinal() != 0) {
+            size += CodedOutputStream.computeEnumSize(STATE_FIELD, state.ordinal());
+        }
+        if (processedImages != 0) {
+            size += CodedOutputStream.computeInt32Size(PROCESSED_IMAGES_FIELD, processedImages);
+        }
+        if (totalImages != 0) {
+            size += CodedOutputStream.computeInt32Size(TOTAL_IMAGES_FIELD, totalImages);
+        }
+        if (elapsedTime != 0.0f) {
+            size += CodedOutputStream.computeFloatSize(ELAPSED_TIME_FIELD, elapsedTime);
+        }
+        if (!message.isEmpty()) {
+            size += CodedOutputStream.computeStringSize(MESSAGE_FIELD, message);
+        }
+        if (!outputFilename.isEmpty()) {
+            size += CodedOutputStream.computeStringSize(OUTPUT_FILENAME_FIELD, outputFilename);
+        }
+        return size;
+    }
+
+    @Override
+    public void writeTo(CodedOutputStream output) throws IOException {
+        if (jobId != 0) {
+            output.writeInt64(JOB_ID_FIELD, jobId);
+        }
+        if (state.ordinal() != 0) {
+            output.writeEnum(STATE_FIELD, state.ordinal());
+        }
+        if (processedImages != 0) {
+            output.writeInt32(PROCESSED_IMAGES_FIELD, processedImages);
+        }
+        if (totalImages != 0) {
+            output.writeInt32(TOTAL_IMAGES_FIELD, totalImages);
+        }
+        if (elapsedTime != 0.0f) {
+            output.writeFloat(ELAPSED_TIME_FIELD, elapsedTime);
+        }
+        if (!message.isEmpty()) {
+            output.writeString(MESSAGE_FIELD, message);
+        }
+        if (!outputFilename.isEmpty()) {
+            output.writeString(OUTPUT_FILENAME_FIELD, outputFilename);
+        }
+    }
+
+    static PIVBatchJobStatus parseFrom(CodedInputStream input) throws IOException {
+        long jobId = 0;
+        PIVBatchJobStateEnum state = PIVBatchJobStateEnum.QUEUED;
+        int processedImages = 0;
+        int totalImages = 0;
+        float elapsedTime = 0.0f;
+        String message = "";
+        String outputFilename = "";
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+            case JOB_ID_FIELD:
+                jobId = input.readInt64();
+                break;
+            case STATE_FIELD:
+                state = PIVBatchJobStateEnum.fromWireValue(input.readEnum());
+                break;
+            case PROCESSED_IMAGES_FIELD:
+                processedImages = input.readInt32();
+                break;
+            case TOTAL_IMAGES_FIELD:
+                totalImages = input.readInt32();
+                break;
+            case ELAPSED_TIME_FIELD:
+                elapsedTime = input.readFloat();
+                break;
+            case MESSAGE_FIELD:
+                message = input.readString();
+                break;
+            case OUTPUT_FILENAME_FIELD:
+                outputFilename = input.readString();
+                break;
+            default:
+                input.skipField(tag);
+            }
+        }
+        return new PIVBatchJobStatus(jobId, state, processedImages, totalImages, elapsedTime, message, outputFilename);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(100);
+        sb.append("Job ");
+        sb.append(jobId);
+        sb.append(": ");
+        sb.append(state);
+        sb.append(", processed images: ");
+        sb.append(processedImages);
+        sb.append(" of ");
+        sb.append(totalImages);
+        sb.append(", elapsed time: ");
+        sb.append(elapsedTime);
+        sb.append("s");
+        if (!message.isEmpty()) {
+            sb.append(", ");
+            sb.append(message);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,297 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.business.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.grpc.Server;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.Status;
+import io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.ServerCalls;
+import io.grpc.stub.StreamObserver;
+import pt.quickLabPIV.PIVContextSingleton;
+import pt.quickLabPIV.business.facade.PIVExecutionEnvironmentFacade;
+import pt.quickLabPIV.business.facade.ProjectFacade;
+import pt.quickLabPIV.business.transfer.CommandLineOptionsEnum;
+import pt.quickLabPIV.business.transfer.ExecuteLocalShellPIV;
+import pt.quickLabPIV.exceptions.InvalidExecutionEnvException;
+import pt.quickLabPIV.exceptions.InvalidProjectFileException;
+import pt.quickLabPIV.exceptions.UIException;
+import pt.quickLabPIV.ui.controllers.DataProcessingEnvFacade;
+import pt.quickLabPIV.ui.models.AppContextModel;
+import pt.quickLabPIV.ui.models.OpenCLDeviceModel;
+
+/**
+ * Long running headless PIV server, which executes submitted projects one at a time from a job queue, and streams
+ * their progress over a gRPC service bound to the loopback interface.
+ * <br/>
+ * Unlike the shell mode, the JVM stays warm across projects, the OpenCL devices are detected only once, and the
+ * {@link pt.quickLabPIV.PIVReusableObjects}, such as the decoded image masks, are kept between runs. Jobs are
+ * executed sequentially because the PIV context is process wide. Only the most recently finished jobs are kept, so
+ * that their final status can still be watched, while older finished jobs are forgotten.
+ * @author lpnm
+ */
+public class PIVBatchServer {
+    private static final Logger logger = LoggerFactory.getLogger(PIVBatchServer.class);
+
+    public static final int DEFAULT_PORT = 50051;
+    public static final int DEFAULT_MAX_FINISHED_JOBS = 100;
+
+    private final int requestedPort;
+    private final int maxFinishedJobs;
+    private final AtomicLong nextJobId = new AtomicLong(1);
+    private final ConcurrentHashMap<Long, PIVBatchJob> jobs = new ConcurrentHashMap<>();
+    //Finished job ids, from the oldest to the most recently finished
+    private final LinkedHashSet<Long> finishedJobIds = new LinkedHashSet<>();
+    private final ExecutorService jobQueue = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "PIV batch job runner");
+        thread.setDaemon(false);
+        return thread;
+    });
+    private List<OpenCLDeviceModel> detectedDevices;
+    private Server server;
+
+    /**
+     * Creates the PIV batch server.
+     * @param port the loopback TCP port to listen on, or 0 to use any free port
+     */
+    public PIVBatchServer(int port) {
+        this(port, DEFAULT_MAX_FINISHED_JOBS);
+    }
+
+    /**
+     * Creates the PIV batch server.
+     * @param port the loopback TCP port to listen on, or 0 to use any free port
+     * @param _maxFinishedJobs the number of finished jobs whose final status is kept
+     */
+    public PIVBatchServer(int port, int _maxFinishedJobs) {
+        if (_maxFinishedJobs < 1) {
+            throw new PIVBatchServerException("At least one finished job must be kept");
+        }
+        requestedPort = port;
+        maxFinishedJobs = _maxFinishedJobs;
+    }
+
+    public synchronized void start() throws IOException {
+        if (server != null) {
+            throw new PIVBatchServerException("PIV batch server was already started");
+        }
+
+        ServerServiceDefinition service = ServerServiceDefinition.builder(PIVBatchServiceDefinition.SERVICE_NAME)
+                .addMethod(PIVBatchServiceDefinition.SUBMIT_PROJECT_METHOD, ServerCalls.asyncUnaryCall(this::submitProject))
+                .addMethod(PIVBatchServiceDefinition.WATCH_JOB_METHOD, ServerCalls.asyncServerStreamingCall(this::watchJob))
+                .addMethod(PIVBatchServiceDefinition.CANCEL_JOB_METHOD, ServerCalls.asyncUnaryCall(this::cancelJob))
+                .build();
+
+        server = NettyServerBuilder.forAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), requestedPort))
+                .addService(service)
+                .build()
+                .start();
+        logger.info("PIV batch server listening on loopback port: {}", server.getPort());
+    }
+
+    /**
+     * Retrieves the port the server is listening on.
+     * @return the loopback TCP port
+     */
+    public int getPort() {
+        if (server == null) {
+            throw new PIVBatchServerException("PIV batch server is not started");
+        }
+        return server.getPort();
+    }
+
+    /**
+     * Stops accepting requests, cancels the queued and running jobs, and waits for the running job to finish.
+     */
+    public synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+
+        server.shutdown();
+        for (PIVBatchJob job : jobs.values()) {
+            job.cancel();
+        }
+        jobQueue.shutdown();
+        try {
+            jobQueue.awaitTermination(1, TimeUnit.MINUTES);
+            server.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        server.shutdownNow();
+    }
+
+    public void awaitTermination() throws InterruptedException {
+        if (server != null) {
+            server.awaitTermination();
+        }
+    }
+
+    private void submitProject(PIVBatchSubmitRequest request, StreamObserver<PIVBatchJobStatus> responseObserver) {
+        int pixelDepth = request.getPixelDepth();
+        if (pixelDepth != 0 && pixelDepth != 8 && pixelDepth != 10 && pixelDepth != 12 && pixelDepth != 16) {
+            responseObserver.onError(Status.INVALID_ARGUMENT.withDescription("Pixel depth must be either 8, 10, 12 or 16 bits").asRuntimeException());
+            return;
+        }
+        if (request.getProjectFile().isEmpty()) {
+            responseObserver.onError(Status.INVALID_ARGUMENT.withDescription("A project file must be specified").asRuntimeException());
+            return;
+        }
+
+        PIVBatchJob job = new PIVBatchJob(nextJobId.getAndIncrement(), request.getProjectFile(), pixelDepth);
+        jobs.put(job.getJobId(), job);
+        PIVBatchJobStatus status = job.getStatus();
+        try {
+            job.setFuture(jobQueue.submit(() -> runJob(job)));
+        } catch (RuntimeException e) {
+            finishJob(job, PIVBatchJobStateEnum.FAILED, "PIV batch server is shutting down");
+            status = job.getStatus();
+        }
+        logger.info("Queued job: {} for project file: {}", job.getJobId(), job.getProjectFile());
+
+        responseObserver.onNext(status);
+        responseObserver.onCompleted();
+    }
+
+    private void watchJob(PIVBatchJobRequest request, StreamObserver<PIVBatchJobStatus> responseObserver) {
+        PIVBatchJob job = jobs.get(request.getJobId());
+        if (job == null) {
+            responseObserver.onError(Status.NOT_FOUND.withDescription("Unknown job: " + request.getJobId()).asRuntimeException());
+            return;
+        }
+
+        ((ServerCallStreamObserver<PIVBatchJobStatus>)responseObserver).setOnCancelHandler(() -> job.removeWatcher(responseObserver));
+        job.addWatcher(responseObserver);
+    }
+
+    private void cancelJob(PIVBatchJobRequest request, StreamObserver<PIVBatchJobStatus> responseObserver) {
+        PIVBatchJob job = jobs.get(request.getJobId());
+        if (job == null) {
+            responseObserver.onError(Status.NOT_FOUND.withDescription("Unknown job: " + request.getJobId()).asRuntimeException());
+            return;
+        }
+
+        PIVBatchJobStatus status = job.cancel();
+        if (status.getState().isTerminal()) {
+            //Queued jobs are never run once cancelled
+            retireJob(job);
+        }
+        responseObserver.onNext(status);
+        responseObserver.onCompleted();
+    }
+
+    /**
+     * Keeps a finished job among the most recently finished jobs, forgetting the oldest finished jobs beyond the
+     * configured limit.
+     * @param job the finished, or finishing, job
+     */
+    private void retireJob(PIVBatchJob job) {
+        synchronized (finishedJobIds) {
+            if (!finishedJobIds.add(job.getJobId())) {
+                return;
+            }
+
+            Iterator<Long> oldestIds = finishedJobIds.iterator();
+            while (finishedJobIds.size() > maxFinishedJobs) {
+                jobs.remove(oldestIds.next());
+                oldestIds.remove();
+            }
+        }
+    }
+
+    /**
+     * Finishes a job, after retiring it, so that watchers notified of the final status already see the older
+     * finished jobs forgotten.
+     */
+    private void finishJob(PIVBatchJob job, PIVBatchJobStateEnum state, String message) {
+        retireJob(job);
+        job.finish(state, message);
+    }
+
+    private void runJob(PIVBatchJob job) {
+        if (!job.start()) {
+            retireJob(job);
+            return;
+        }
+
+        logger.info("Started job: {}", job.getJobId());
+        PIVContextSingleton singleton = PIVContextSingleton.getSingleton();
+        singleton.resetParametersInstancesForNextRun();
+        try {
+            File projectFile = new File(job.getProjectFile());
+            if (!projectFile.isFile()) {
+                throw new InvalidProjectFileException("Project file not found", projectFile.getAbsolutePath());
+            }
+
+            AppContextModel appContext = ProjectFacade.loadProject(projectFile);
+            checkExecutionEnvironment(appContext);
+
+            Properties options = new Properties();
+            if (job.getPixelDepth() != 0) {
+                options.put(CommandLineOptionsEnum.PIXEL_DEPTH.key(), job.getPixelDepth());
+            }
+            ExecuteLocalShellPIV executor = new ExecuteLocalShellPIV(appContext, options, job);
+            executor.execute();
+
+            if (job.isCancelRequested() || singleton.getPIVRunParameters().isCancelRequested()) {
+                finishJob(job, PIVBatchJobStateEnum.CANCELLED, null);
+            } else {
+                finishJob(job, PIVBatchJobStateEnum.COMPLETED, null);
+            }
+            logger.info("Finished job: {}", job.getJobId());
+        } catch (Exception e) {
+            logger.error("Failed job: {}", job.getJobId(), e);
+            finishJob(job, PIVBatchJobStateEnum.FAILED, describeFailure(e));
+        }
+    }
+
+    /**
+     * Fixes the project execution environment, if it is not valid for this machine, using the OpenCL devices detected
+     * on the first need, instead of detecting the devices again for every project.
+     * @param appContext the loaded project application context
+     */
+    private void checkExecutionEnvironment(AppContextModel appContext) {
+        try {
+            DataProcessingEnvFacade.validate(appContext);
+        } catch (InvalidExecutionEnvException ex) {
+            if (detectedDevices == null) {
+                detectedDevices = PIVExecutionEnvironmentFacade.getAvailableGpuDevicesAsModels();
+            }
+            //Device models are updated and kept by the execution environment, so each project gets its own copies
+            List<OpenCLDeviceModel> devices = detectedDevices.stream().map(OpenCLDeviceModel::copy).collect(Collectors.toList());
+            appContext.setExecutionEnvironment(DataProcessingEnvFacade.checkExecutionModelValidity(appContext.getExecutionEnvironment(), devices));
+        }
+    }
+
+    private static String describeFailure(Exception e) {
+        if (e instanceof UIException) {
+            UIException uiException = (UIException)e;
+            return e.getMessage() == null ? uiException.getTitleMessage() : uiException.getTitleMessage() + ": " + e.getMessage();
+        }
+        return e.toString();
+    }
+}
@@ -0,0 +1,36 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.business.server;
+
+public class PIVBatchServerException extends RuntimeException {
+
+    /**
+     * 
+     */
+    private static final long serialVersionUID = -2873391559010283346L;
+
+    public PIVBatchServerException() {
+    }
+
+    public PIVBatchServerException(String message) {
+        super(message);
+    }
+
+    public PIVBatchServerException(Throwable cause) {
+        super(cause);
+    }
+
+    public PIVBatchServerException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public PIVBatchServerException(String message, Throwable cause, boolean enableSuppression,
+            boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+
+}
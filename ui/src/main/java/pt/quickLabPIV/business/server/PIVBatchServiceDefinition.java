@@ -0,0 +1,113 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.business.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+
+import io.grpc.MethodDescriptor;
+import io.grpc.MethodDescriptor.Marshaller;
+import io.grpc.MethodDescriptor.MethodType;
+
+/**
+ * gRPC method descriptors of the PIV batch service, shared by the server and the loopback client.
+ * <br/>
+ * The messages are hand encoded in the protocol buffers wire format, so that no code generation is required, and are
+ * equivalent to the following protocol definition:
+ * <pre>
+ * syntax = "proto3";
+ * package quicklabpiv;
+ *
+ * message SubmitRequest { string project_file = 1; int32 pixel_depth = 2; }
+ * message JobRequest { int64 job_id = 1; }
+ * enum JobState { QUEUED = 0; RUNNING = 1; COMPLETED = 2; FAILED = 3; CANCELLED = 4; }
+ * message JobStatus { int64 job_id = 1; JobState state = 2; int32 processed_images = 3; int32 total_images = 4;
+ *                     float elapsed_time = 5; string message = 6; string output_filename = 7; }
+ *
+ * service PIVBatchService {
+ *     rpc SubmitProject(SubmitRequest) returns (JobStatus);
+ *     rpc WatchJob(JobRequest) returns (stream JobStatus);
+ *     rpc CancelJob(JobRequest) returns (JobStatus);
+ * }
+ * </pre>
+ * @author lpnm
+ */
+public final class PIVBatchServiceDefinition {
+    public static final String SERVICE_NAME = "quicklabpiv.PIVBatchService";
+
+    private interface IMessageParser<T> {
+        T parseFrom(CodedInputStream input) throws IOException;
+    }
+
+    private static final class MessageMarshaller<T extends IPIVBatchMessage> implements Marshaller<T> {
+        private final IMessageParser<T> parser;
+
+        private MessageMarshaller(IMessageParser<T> _parser) {
+            parser = _parser;
+        }
+
+        @Override
+        public InputStream stream(T value) {
+            byte[] buffer = new byte[value.getSerializedSize()];
+            CodedOutputStream output = CodedOutputStream.newInstance(buffer);
+            try {
+                value.writeTo(output);
+                output.checkNoSpaceLeft();
+            } catch (IOException e) {
+                throw new PIVBatchServerException("Failed to encode message", e);
+            }
+            return new ByteArrayInputStream(buffer);
+        }
+
+        @Override
+        public T parse(InputStream stream) {
+            try {
+                return parser.parseFrom(CodedInputStream.newInstance(stream));
+            } catch (IOException e) {
+                throw new PIVBatchServerException("Failed to decode message", e);
+            }
+        }
+    }
+
+    private static final Marshaller<PIVBatchSubmitRequest> SUBMIT_REQUEST_MARSHALLER =
+            new MessageMarshaller<PIVBatchSubmitRequest>(PIVBatchSubmitRequest::parseFrom);
+    private static final Marshaller<PIVBatchJobRequest> JOB_REQUEST_MARSHALLER =
+            new MessageMarshaller<PIVBatchJobRequest>(PIVBatchJobRequest::parseFrom);
+    private static final Marshaller<PIVBatchJobStatus> JOB_STATUS_MARSHALLER =
+            new MessageMarshaller<PIVBatchJobStatus>(PIVBatchJobStatus::parseFrom);
+
+    public static final MethodDescriptor<PIVBatchSubmitRequest, PIVBatchJobStatus> SUBMIT_PROJECT_METHOD =
+            MethodDescriptor.<PIVBatchSubmitRequest, PIVBatchJobStatus>newBuilder()
+                .setType(MethodType.UNARY)
+                .setFullMethodName(MethodDescriptor.generateFullMethodName(SERVICE_NAME, "SubmitProject"))
+                .setRequestMarshaller(SUBMIT_REQUEST_MARSHALLER)
+                .setResponseMarshaller(JOB_STATUS_MARSHALLER)
+                .build();
+
+    public static final MethodDescriptor<PIVBatchJobRequest, PIVBatchJobStatus> WATCH_JOB_METHOD =
+            MethodDescriptor.<PIVBatchJobRequest, PIVBatchJobStatus>newBuilder()
+                .setType(MethodType.SERVER_STREAMING)
+                .setFullMethodName(MethodDescriptor.generateFullMethodName(SERVICE_NAME, "WatchJob"))
+                .setRequestMarshaller(JOB_REQUEST_MARSHALLER)
+                .setResponseMarshaller(JOB_STATUS_MARSHALLER)
+                .build();
+
+    public static final MethodDescriptor<PIVBatchJobRequest, PIVBatchJobStatus> CANCEL_JOB_METHOD =
+            MethodDescriptor.<PIVBatchJobRequest, PIVBatchJobStatus>newBuilder()
+                .setType(MethodType.UNARY)
+                .setFullMethodName(MethodDescriptor.generateFullMethodName(SERVICE_NAME, "CancelJob"))
+                .setRequestMarshaller(JOB_REQUEST_MARSHALLER)
+                .setResponseMarshaller(JOB_STATUS_MARSHALLER)
+                .build();
+
+    private PIVBatchServiceDefinition() {
+    }
+}
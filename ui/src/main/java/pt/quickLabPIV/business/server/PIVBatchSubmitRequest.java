@@ -0,0 +1,84 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.business.server;
+
+import java.io.IOException;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+
+/**
+ * Project submission request, the <code>SubmitRequest</code> protocol message.
+ * @author lpnm
+ */
+public final class PIVBatchSubmitRequest implements IPIVBatchMessage {
+    private static final int PROJECT_FILE_FIELD = 1;
+    private static final int PIXEL_DEPTH_FIELD = 2;
+
+    private final String projectFile;
+    private final int pixelDepth;
+
+    /**
+     * Creates a project submission request.
+     * @param _projectFile the path to the project file, as seen by the server
+     * @param _pixelDepth the forced bits per pixel of the PIV images, either 8, 10, 12 or 16, or 0 to use the default
+     */
+    public PIVBatchSubmitRequest(String _projectFile, int _pixelDepth) {
+        projectFile = _projectFile == null ? "" : _projectFile;
+        pixelDepth = _pixelDepth;
+    }
+
+    public String getProjectFile() {
+        return projectFile;
+    }
+
+    public int getPixelDepth() {
+        return pixelDepth;
+    }
+
+    @Override
+    public int getSerializedSize() {
+        int size = 0;
+        if (!projectFile.isEmpty()) {
+            size += CodedOutputStream.computeStringSize(PROJECT_FILE_FIELD, projectFile);
+        }
+        if (pixelDepth != 0) {
+            size += CodedOutputStream.computeInt32Size(PIXEL_DEPTH_FIELD, pixelDepth);
+        }
+        return size;
+    }
+
+    @Override
+    public void writeTo(CodedOutputStream output) throws IOException {
+        if (!projectFile.isEmpty()) {
+            output.writeString(PROJECT_FILE_FIELD, projectFile);
+        }
+        if (pixelDepth != 0) {
+            output.writeInt32(PIXEL_DEPTH_FIELD, pixelDepth);
+        }
+    }
+
+    static PIVBatchSubmitRequest parseFrom(CodedInputStream input) throws IOException {
+        String projectFile = "";
+        int pixelDepth = 0;
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+            case PROJECT_FILE_FIELD:
+                projectFile = input.readString();
+                break;
+            case PIXEL_DEPTH_FIELD:
+                pixelDepth = input.readInt32();
+                break;
+            default:
+                input.skipField(tag);
+            }
+        }
+        return new PIVBatchSubmitRequest(projectFile, pixelDepth);
+    }
+}
@@ -9,10 +9,22 @@ package pt.quickLabPIV.business.transfer;
 import java.util.Properties;
 
 import pt.quickLabPIV.exceptions.InvalidOptionException;
+import pt.quickLabPIV.ui.models.VelocityExportFormatEnum;
 
 public enum CommandLineOptionsEnum {
     PROJECT_FILE("projectFile", " <project file to load.xml>"),
-    PIXEL_DEPTH("pixelDepth", " <xx> xx bits per pixel, either 8 or 16");
+    PIXEL_DEPTH("pixelDepth", " <xx> xx bits per pixel, either 8 or 16"),
+    SERVER_PORT("serverPort", " <port> loopback TCP port of the --serverMode PIV batch service"),
+    SEED_FROM_PREVIOUS_FRAME("seedFromPreviousFrame", " start each frame from the displacements of the previous frame"),
+    EXPORT_FORMAT("exportFormat", " <format> velocity maps export format, either matlab or indexed"),
+    VELOCITY_STATISTICS("velocityStatistics", " export the per-vector velocity statistics of all frames"),
+    NO_VELOCITY_MAPS("noVelocityMaps", " do not export the velocity maps, only their statistics"),
+    AGGREGATED_CROSS_CORRELATION("aggregatedCrossCorrelation", " cross-correlate the tiles of the threads sharing a compute device together"),
+    STATIC_FRAME_SCHEDULING("staticFrameScheduling", " assign a single contiguous slice of frames to each thread, instead of frame batches"),
+    FRAME_BATCH_SIZE("frameBatchSize", " <frames> number of frames per batch handed to each thread, or 0 for automatic selection"),
+    TILES_PARALLELISM("tilesParallelism", " <tasks> concurrent tile groups per thread for the Java cross-correlation, 1 to disable, or 0 for automatic selection"),
+    INTERPOLATION_PARALLELISM("interpolationParallelism", " <tasks> concurrent interpolation tasks per thread, 1 to disable, or 0 for automatic selection"),
+    STAGE_TIMINGS("stageTimings", " write the per-stage pipeline timings of each thread to a CSV file next to the exported velocities");
     
     
     private String optionKey;
@@ -47,7 +59,81 @@ public enum CommandLineOptionsEnum {
                index++;
             }
             
-            if (args[index].equals(PROJECT_FILE.commandLineOptionKey())) {
+            if (index < args.length && args[index].equals(SERVER_PORT.commandLineOptionKey())) {
+                if (args.length <= index + 1) {
+                    throw new InvalidOptionException("--serverPort requires an argument");
+                }
+
+                int port;
+                try {
+                    port = Integer.parseInt(args[index+1]);
+                } catch (NumberFormatException e) {
+                    throw new InvalidOptionException("--serverPort must be a TCP port number");
+                }
+
+                if (port < 0 || port > 65535) {
+                    throw new InvalidOptionException("--serverPort must be a TCP port number");
+                }
+
+                options.put(SERVER_PORT.key(), port);
+                index++;
+            }
+
+            if (index < args.length && args[index].equals(EXPORT_FORMAT.commandLineOptionKey())) {
+                if (args.length <= index + 1) {
+                    throw new InvalidOptionException("--exportFormat requires an argument");
+                }
+
+                VelocityExportFormatEnum format = VelocityExportFormatEnum.fromOptionValue(args[index+1]);
+                if (format == null) {
+                    throw new InvalidOptionException("--exportFormat must be either matlab or indexed");
+                }
+
+                options.put(EXPORT_FORMAT.key(), format);
+                index++;
+            }
+
+            if (index < args.length && args[index].equals(FRAME_BATCH_SIZE.commandLineOptionKey())) {
+                options.put(FRAME_BATCH_SIZE.key(), FRAME_BATCH_SIZE.parseNonNegativeArgument(args, index, "frames"));
+                index++;
+            }
+
+            if (index < args.length && args[index].equals(TILES_PARALLELISM.commandLineOptionKey())) {
+                options.put(TILES_PARALLELISM.key(), TILES_PARALLELISM.parseNonNegativeArgument(args, index, "tasks"));
+                index++;
+            }
+
+            if (index < args.length && args[index].equals(INTERPOLATION_PARALLELISM.commandLineOptionKey())) {
+                options.put(INTERPOLATION_PARALLELISM.key(), INTERPOLATION_PARALLELISM.parseNonNegativeArgument(args, index, "tasks"));
+                index++;
+            }
+
+            //Flags have no argument, so the index is not advanced
+            if (index < args.length && args[index].equals(SEED_FROM_PREVIOUS_FRAME.commandLineOptionKey())) {
+                options.put(SEED_FROM_PREVIOUS_FRAME.key(), Boolean.TRUE);
+            }
+
+            if (index < args.length && args[index].equals(VELOCITY_STATISTICS.commandLineOptionKey())) {
+                options.put(VELOCITY_STATISTICS.key(), Boolean.TRUE);
+            }
+
+            if (index < args.length && args[index].equals(NO_VELOCITY_MAPS.commandLineOptionKey())) {
+                options.put(NO_VELOCITY_MAPS.key(), Boolean.TRUE);
+            }
+
+            if (index < args.length && args[index].equals(AGGREGATED_CROSS_CORRELATION.commandLineOptionKey())) {
+                options.put(AGGREGATED_CROSS_CORRELATION.key(), Boolean.TRUE);
+            }
+
+            if (index < args.length && args[index].equals(STATIC_FRAME_SCHEDULING.commandLineOptionKey())) {
+                options.put(STATIC_FRAME_SCHEDULING.key(), Boolean.TRUE);
+            }
+
+            if (index < args.length && args[index].equals(STAGE_TIMINGS.commandLineOptionKey())) {
+                options.put(STAGE_TIMINGS.key(), Boolean.TRUE);
+            }
+
+            if (index < args.length && args[index].equals(PROJECT_FILE.commandLineOptionKey())) {
                 if (args.length <= index + 1) {
                     throw new InvalidOptionException("--projectFile requires an argument");  
                 }
@@ -78,6 +164,25 @@ public enum CommandLineOptionsEnum {
         return options;   
     }
     
+    private int parseNonNegativeArgument(String[] args, int index, String unit) {
+        if (args.length <= index + 1) {
+            throw new InvalidOptionException(commandLineOptionKey() + " requires an argument");
+        }
+
+        int value;
+        try {
+            value = Integer.parseInt(args[index+1]);
+        } catch (NumberFormatException e) {
+            throw new InvalidOptionException(commandLineOptionKey() + " must be a non-negative number of " + unit);
+        }
+
+        if (value < 0) {
+            throw new InvalidOptionException(commandLineOptionKey() + " must be a non-negative number of " + unit);
+        }
+
+        return value;
+    }
+    
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder(50);
@@ -25,12 +25,17 @@ import pt.quickLabPIV.PIVInputParameters;
 import pt.quickLabPIV.PIVResults;
 import pt.quickLabPIV.PIVRunParameters;
 import pt.quickLabPIV.ProgressReport;
+import pt.quickLabPIV.VelocityStatistics;
 import pt.quickLabPIV.business.facade.DataExportEnvFacade;
 import pt.quickLabPIV.business.facade.PIVConfigurationFacade;
 import pt.quickLabPIV.business.facade.ProjectFacade;
 import pt.quickLabPIV.exceptions.InvalidExecutionEnvException;
 import pt.quickLabPIV.exceptions.UIException;
+import pt.quickLabPIV.exporter.IStreamingVelocityExporter;
+import pt.quickLabPIV.exporter.IndexedVelocityStoreExporter;
+import pt.quickLabPIV.exporter.StreamingStructMultiFrameFloatVelocityExporter;
 import pt.quickLabPIV.exporter.StructMultiFrameFloatVelocityExporter;
+import pt.quickLabPIV.exporter.VelocityStatisticsMatlabExporter;
 import pt.quickLabPIV.iareas.validation.CombinedValidatorAndReplacementConfiguration;
 import pt.quickLabPIV.iareas.validation.VectorValidatorFactoryEnum;
 import pt.quickLabPIV.images.ImageFactoryEnum;
@@ -42,6 +47,7 @@ import pt.quickLabPIV.ui.controllers.Utils;
 import pt.quickLabPIV.ui.models.AppContextModel;
 import pt.quickLabPIV.ui.models.DataExportConfigurationModel;
 import pt.quickLabPIV.ui.models.ExecutionEnvModel;
+import pt.quickLabPIV.ui.models.VelocityExportFormatEnum;
 import pt.quickLabPIV.ui.views.ExecutionProgressDialog;
 
 public class ExecuteLocalPIVWorker extends SwingWorker<Void, ProgressReport> implements IProgressReportObserver {
@@ -104,6 +110,7 @@ public class ExecuteLocalPIVWorker extends SwingWorker<Void, ProgressReport> imp
         converter.setTargetForConversion(pivParameters);
         appContext.getExecutionEnvironment().accept(execEnvConverter);
         appContext.getProject().getPIVConfiguration().accept(converter);
+        applyRunOptions(runParameters, options);
         String outputPathAndFilename = ProjectFacade.computeProjectOutputPathAndFilename(pivParameters, appContext);        
         
         if (pivParameters.getVectorValidatorStrategy() == null || pivParameters.getVectorValidatorStrategy() == VectorValidatorFactoryEnum.None) {
@@ -172,12 +179,14 @@ public class ExecuteLocalPIVWorker extends SwingWorker<Void, ProgressReport> imp
         int remainingFilesSize = filesToProcess.get(0).size();
         
         DataExportConfigurationModel dataExportModel = appContext.getProject().getExportConfiguration();
+        applyExportOptions(runParameters, dataExportModel, options);
         int mapsPerFile = remainingFilesSize;
         if (dataExportModel.isSplitExports() && dataExportModel.getNumberOfPIVMapsPerExportedFile() < remainingFilesSize) {
             mapsPerFile = dataExportModel.getNumberOfPIVMapsPerExportedFile();
         }
         
         execStatus.setInitialConfiguration(filesToProcess.get(0).size(), outputPathAndFilename);
+        applyStageTimingsOption(runParameters, outputPathAndFilename, options);
 
         List<Integer> offsets = new ArrayList<>(10);
         List<List<File>> filesA = new ArrayList<>(mapsPerFile);
@@ -200,12 +209,19 @@ public class ExecuteLocalPIVWorker extends SwingWorker<Void, ProgressReport> imp
 
         String currentOutputPathAndFilename = outputPathAndFilename;
         StructMultiFrameFloatVelocityExporter exporter = null;
+        IStreamingVelocityExporter streamingExporter = null;
+        //Cross-correlation dumps are kept in memory by the exporter until the file is closed, so velocities can only be
+        //streamed to file when no dumps are requested.
+        final boolean streamVelocities = pivParameters.getCrossCorrelationDumpMatcher() == null;
+        if (!streamVelocities && !runParameters.isVelocityMapsExport()) {
+            logger.warn("Velocity maps are always exported when cross-correlations are dumped");
+            runParameters.setVelocityMapsExport(true);
+        }
+        //Statistics of all volumes
+        VelocityStatistics statistics = null;
         for (int index = 0; index < filesA.size(); index++) {
             InputFiles inputFiles = new InputFiles(offsets.get(index), 0, filesA.get(index), filesB.get(index));
             
-            //Moved here because Windows can fail opening the export file after opening large amount of image files
-            //for PIV processing (around 4500).
-            exporter = new StructMultiFrameFloatVelocityExporter();
             String nextFilename = null;
             if (filesA.size() > 1) {
                 String volumeFileEndingName = "_MV" + index + ".mat";
@@ -218,18 +234,38 @@ public class ExecuteLocalPIVWorker extends SwingWorker<Void, ProgressReport> imp
             }
             pivParameters.setNextFilename(nextFilename);
             
-            exporter.openFile(currentOutputPathAndFilename);
-            singleton.getPIVRunParameters().setExporter(exporter);
-            
-            System.out.println("Started");
-            OpenClGpuManager managerJob = new OpenClGpuManager(inputFiles);
-            managerJob.analyze();
-            System.out.println("Started computing");
-            managerJob.compute();
+            //Moved here because Windows can fail opening the export file after opening large amount of image files
+            //for PIV processing (around 4500).
+            if (!runParameters.isVelocityMapsExport()) {
+                logger.info("Velocity maps are not exported, only their statistics.");
+            } else if (streamVelocities && runParameters.isIndexedVelocityStoreExport()) {
+                streamingExporter = new IndexedVelocityStoreExporter(filesA.get(index).size());
+                streamingExporter.openFile(currentOutputPathAndFilename.replaceFirst("\\.mat$", IndexedVelocityStoreExporter.FILE_EXTENSION));
+                runParameters.setStreamingExporter(streamingExporter);
+            } else if (streamVelocities) {
+                streamingExporter = new StreamingStructMultiFrameFloatVelocityExporter();
+                streamingExporter.openFile(currentOutputPathAndFilename);
+                runParameters.setStreamingExporter(streamingExporter);
+            } else {
+                exporter = new StructMultiFrameFloatVelocityExporter();
+                exporter.openFile(currentOutputPathAndFilename);
+                runParameters.setExporter(exporter);
+            }
             
-            PIVResults results = managerJob.getJobResult(JobResultEnum.JOB_RESULT_PIV);
+            PIVResults results = null;
             try {
+                System.out.println("Started");
+                OpenClGpuManager managerJob = new OpenClGpuManager(inputFiles);
+                managerJob.analyze();
+                System.out.println("Started computing");
+                managerJob.compute();
+                
+                results = managerJob.getJobResult(JobResultEnum.JOB_RESULT_PIV);
                 if (runParameters.isCancelRequested()) {
+                    if (!(observer instanceof ExecuteLocalPIVWorker)) {
+                        //Only the UI worker reports the cancellation with a dialog
+                        break;
+                    }
                     SwingUtilities.invokeLater(new Runnable() {
                         @Override
                         public void run() {
@@ -237,16 +273,120 @@ public class ExecuteLocalPIVWorker extends SwingWorker<Void, ProgressReport> imp
                                     "PIV processing was successfully cancelled.");
                         }                    
                     });
-                } else {
+                } else if (exporter != null) {
                     exporter.exportDataToFile(results);
                 }
+                
+                if (results != null && results.getStatistics() != null) {
+                    if (statistics == null) {
+                        statistics = results.getStatistics();
+                    } else {
+                        statistics.merge(results.getStatistics());
+                    }
+                }
             } finally {
-                exporter.closeFile();
-                singleton.getPIVRunParameters().setExporter(null);
+                if (streamingExporter != null) {
+                    streamingExporter.closeFile();
+                    runParameters.setStreamingExporter(null);
+                    streamingExporter = null;
+                } else if (exporter != null) {
+                    exporter.closeFile();
+                    runParameters.setExporter(null);
+                    exporter = null;
+                }
             }
 
-            results.clear();
-        }        
+            if (results != null) {
+                results.clear();
+            }
+        }
+        
+        if (statistics != null && !runParameters.isCancelRequested()) {
+            VelocityStatisticsMatlabExporter.exportToFile(VelocityStatisticsMatlabExporter.computeStatisticsFilename(outputPathAndFilename), statistics);
+        }
+    }
+    
+    /**
+     * Applies the run options given in the command line, which override the ones from the project.
+     * @param runParameters the run parameters already converted from the project
+     * @param options the command line options
+     */
+    static void applyRunOptions(PIVRunParameters runParameters, final Properties options) {
+        //Run parameters are reused across runs, so scheduling options are always set
+        boolean staticScheduling = options.containsKey(CommandLineOptionsEnum.STATIC_FRAME_SCHEDULING.key());
+        if (staticScheduling) {
+            logger.info("Using static frame scheduling.");
+        }
+        runParameters.setDynamicFrameScheduling(!staticScheduling);
+        int frameBatchSize = 0;
+        if (options.containsKey(CommandLineOptionsEnum.FRAME_BATCH_SIZE.key())) {
+            frameBatchSize = (Integer)options.get(CommandLineOptionsEnum.FRAME_BATCH_SIZE.key());
+        }
+        runParameters.setFrameBatchSize(frameBatchSize);
+        int tilesParallelism = 0;
+        if (options.containsKey(CommandLineOptionsEnum.TILES_PARALLELISM.key())) {
+            tilesParallelism = (Integer)options.get(CommandLineOptionsEnum.TILES_PARALLELISM.key());
+        }
+        runParameters.setTilesParallelism(tilesParallelism);
+        int interpolationParallelism = 0;
+        if (options.containsKey(CommandLineOptionsEnum.INTERPOLATION_PARALLELISM.key())) {
+            interpolationParallelism = (Integer)options.get(CommandLineOptionsEnum.INTERPOLATION_PARALLELISM.key());
+        }
+        runParameters.setInterpolationParallelism(interpolationParallelism);
+        
+        if (options.containsKey(CommandLineOptionsEnum.SEED_FROM_PREVIOUS_FRAME.key())) {
+            logger.info("Seeding each frame from the previous frame.");
+            runParameters.setSeedFromPreviousFrame(true);
+        }
+        
+        if (options.containsKey(CommandLineOptionsEnum.AGGREGATED_CROSS_CORRELATION.key())) {
+            logger.info("Aggregating the cross-correlations of the threads sharing a compute device.");
+            runParameters.setAggregatedCrossCorrelation(true);
+        }
+    }
+    
+    /**
+     * Applies the stage timings option given in the command line. The per-stage timings of the whole run are always
+     * logged as a summary at the end of the run, but are only written to a file, next to the exported velocities,
+     * when requested.
+     * @param runParameters the run parameters to configure
+     * @param outputPathAndFilename the exported velocities path and filename
+     * @param options the command line options
+     */
+    static void applyStageTimingsOption(PIVRunParameters runParameters, String outputPathAndFilename, final Properties options) {
+        //Run parameters are reused across runs, so the timings file is always set
+        String stageTimingsFilename = null;
+        if (options.containsKey(CommandLineOptionsEnum.STAGE_TIMINGS.key())) {
+            stageTimingsFilename = outputPathAndFilename.replaceFirst("(_MV0)?\\.mat$", "") + "_timings.csv";
+            logger.info("Writing the pipeline stage timings to: {}", stageTimingsFilename);
+        }
+        runParameters.setStageTimingsFilename(stageTimingsFilename);
+    }
+    
+    /**
+     * Applies the velocity export options from the project data export configuration, which can be overridden by the
+     * ones given in the command line.
+     * @param runParameters the run parameters to configure
+     * @param dataExportModel the project data export configuration
+     * @param options the command line options
+     */
+    static void applyExportOptions(PIVRunParameters runParameters, DataExportConfigurationModel dataExportModel, final Properties options) {
+        VelocityExportFormatEnum exportFormat = dataExportModel.getExportFormat();
+        if (options.containsKey(CommandLineOptionsEnum.EXPORT_FORMAT.key())) {
+            exportFormat = (VelocityExportFormatEnum)options.get(CommandLineOptionsEnum.EXPORT_FORMAT.key());
+        }
+        runParameters.setIndexedVelocityStoreExport(exportFormat == VelocityExportFormatEnum.IndexedVelocityStore);
+        
+        boolean velocityStatistics = dataExportModel.isVelocityStatistics() || 
+                                     options.containsKey(CommandLineOptionsEnum.VELOCITY_STATISTICS.key());
+        boolean velocityMapsExport = dataExportModel.isVelocityMapsExport() && 
+                                     !options.containsKey(CommandLineOptionsEnum.NO_VELOCITY_MAPS.key());
+        if (!velocityMapsExport && !velocityStatistics) {
+            logger.warn("Velocity statistics are always exported when velocity maps are not exported");
+            velocityStatistics = true;
+        }
+        runParameters.setVelocityStatistics(velocityStatistics);
+        runParameters.setVelocityMapsExport(velocityMapsExport);
     }
     
     @Override
@@ -16,14 +16,28 @@ import pt.quickLabPIV.ui.models.AppContextModel;
 public class ExecuteLocalShellPIV implements IProgressReportObserver {
     private AppContextModel appContext;
     private Properties options;
+    private IProgressReportObserver observer;
 
     public ExecuteLocalShellPIV(AppContextModel _appContext, Properties _options) {
         appContext = _appContext;
         options = _options;
+        observer = this;
+    }
+
+    /**
+     * Creates a shell PIV execution that reports progress to the specified observer, instead of the standard output.
+     * @param _appContext the loaded project application context
+     * @param _options the command line options
+     * @param _observer the progress report observer
+     */
+    public ExecuteLocalShellPIV(AppContextModel _appContext, Properties _options, IProgressReportObserver _observer) {
+        appContext = _appContext;
+        options = _options;
+        observer = _observer;
     }
     
     public void execute() {        
-        ExecuteLocalPIVWorker.executePIV(appContext, PIVContextSingleton.getSingleton(), this, options);
+        ExecuteLocalPIVWorker.executePIV(appContext, PIVContextSingleton.getSingleton(), observer, options);
     }
 
     @Override
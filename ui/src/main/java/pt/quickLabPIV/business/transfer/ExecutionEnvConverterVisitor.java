@@ -59,6 +59,8 @@ public class ExecutionEnvConverterVisitor implements IExecutionEnvVisitor {
         runtimeConfig.setUseOpenCL(execEnv.isEnableOpenCL());;
         runtimeConfig.setTotalNumberOfThreads(execEnv.getCpuThreads());
         runtimeConfig.setDeviceRuntimeConfigurationMap(map);
+        runtimeConfig.setSeedFromPreviousFrame(execEnv.isSeedFromPreviousFrame());
+        runtimeConfig.setAggregatedCrossCorrelation(execEnv.isAggregatedCrossCorrelation());
     }
 
 }
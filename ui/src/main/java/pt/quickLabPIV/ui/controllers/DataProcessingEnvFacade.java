@@ -25,6 +25,16 @@ public class DataProcessingEnvFacade {
 
     public static ExecutionEnvModel getDeviceListAndCheckExecutionModelValidity(ExecutionEnvModel execModel) {
         List<OpenCLDeviceModel> devices = PIVExecutionEnvironmentFacade.getAvailableGpuDevicesAsModels();
+        return checkExecutionModelValidity(execModel, devices);
+    }
+
+    /**
+     * Checks the execution model validity against a previously detected device list, avoiding a new device detection.
+     * @param execModel the execution model to check
+     * @param devices the detected OpenCL devices
+     * @return the valid execution model
+     */
+    public static ExecutionEnvModel checkExecutionModelValidity(ExecutionEnvModel execModel, List<OpenCLDeviceModel> devices) {
         int totalRealCores = getTotalNumberOfRealCores();
         execModel = checkExecutionModelValidityOnLoad(execModel, devices, totalRealCores);
         
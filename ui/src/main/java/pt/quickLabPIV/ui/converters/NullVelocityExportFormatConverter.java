@@ -0,0 +1,23 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.ui.converters;
+
+import pt.quickLabPIV.ui.models.VelocityExportFormatEnum;
+
+public class NullVelocityExportFormatConverter extends ConverterWithForwardValidator<VelocityExportFormatEnum, Object> {
+
+    @Override
+    public Object convertForwardAfterValidation(VelocityExportFormatEnum value) {
+        return value;
+    }
+
+    @Override
+    public VelocityExportFormatEnum convertReverse(Object value) {
+        return (VelocityExportFormatEnum)value;
+    }
+
+}
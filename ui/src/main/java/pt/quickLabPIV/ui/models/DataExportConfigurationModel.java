@@ -16,6 +16,9 @@ public class DataExportConfigurationModel {
     private boolean swapUVOrder = false;
     private boolean splitExports = false;
     private int numberOfPIVMapsPerExportedFile = 0;
+    private VelocityExportFormatEnum exportFormat = VelocityExportFormatEnum.Matlab;
+    private boolean velocityMapsExport = true;
+    private boolean velocityStatistics = false;
     
     public void setSwapUVOrder(boolean swap) {
         swapUVOrder = swap;
@@ -40,6 +43,30 @@ public class DataExportConfigurationModel {
     public int getNumberOfPIVMapsPerExportedFile() {
         return numberOfPIVMapsPerExportedFile;
     }
+    
+    public void setExportFormat(VelocityExportFormatEnum format) {
+        exportFormat = format;
+    }
+    
+    public VelocityExportFormatEnum getExportFormat() {
+        return exportFormat;
+    }
+    
+    public void setVelocityMapsExport(boolean export) {
+        velocityMapsExport = export;
+    }
+    
+    public boolean isVelocityMapsExport() {
+        return velocityMapsExport;
+    }
+    
+    public void setVelocityStatistics(boolean statistics) {
+        velocityStatistics = statistics;
+    }
+    
+    public boolean isVelocityStatistics() {
+        return velocityStatistics;
+    }
 
     public boolean isChanged(DataExportConfigurationModel another) {
         if (another == null) {
@@ -58,6 +85,18 @@ public class DataExportConfigurationModel {
             return true;
         }
         
+        if (exportFormat != another.exportFormat) {
+            return true;
+        }
+        
+        if (velocityMapsExport != another.velocityMapsExport) {
+            return true;
+        }
+        
+        if (velocityStatistics != another.velocityStatistics) {
+            return true;
+        }
+        
         return false;
     }
 
@@ -67,6 +106,9 @@ public class DataExportConfigurationModel {
         copy.swapUVOrder = swapUVOrder;
         copy.splitExports = splitExports;
         copy.numberOfPIVMapsPerExportedFile = numberOfPIVMapsPerExportedFile;
+        copy.exportFormat = exportFormat;
+        copy.velocityMapsExport = velocityMapsExport;
+        copy.velocityStatistics = velocityStatistics;
         
         return copy;
     }
@@ -30,6 +30,8 @@ public class ExecutionEnvModel {
 
     private int cpuThreads = 1;
     private boolean enableOpenCL = true;
+    private boolean seedFromPreviousFrame = false;
+    private boolean aggregatedCrossCorrelation = false;
     
     @XmlElementWrapper(name = "OpenCL-Devices")
     @XmlElements (
@@ -70,6 +72,26 @@ public class ExecutionEnvModel {
         return enableOpenCL;
     }
     
+    public void setSeedFromPreviousFrame(boolean _seedFromPreviousFrame) {
+        boolean oldValue = seedFromPreviousFrame;
+        seedFromPreviousFrame = _seedFromPreviousFrame;
+        pcs.firePropertyChange("seedFromPreviousFrame", oldValue, seedFromPreviousFrame);
+    }
+    
+    public boolean isSeedFromPreviousFrame() {
+        return seedFromPreviousFrame;
+    }
+    
+    public void setAggregatedCrossCorrelation(boolean _aggregatedCrossCorrelation) {
+        boolean oldValue = aggregatedCrossCorrelation;
+        aggregatedCrossCorrelation = _aggregatedCrossCorrelation;
+        pcs.firePropertyChange("aggregatedCrossCorrelation", oldValue, aggregatedCrossCorrelation);
+    }
+    
+    public boolean isAggregatedCrossCorrelation() {
+        return aggregatedCrossCorrelation;
+    }
+    
     public void setOpenClDevices(List<OpenCLDeviceModel> devices) {
         List<OpenCLDeviceModel> oldDevices = openClDevices;
         openClDevices = devices;
@@ -104,6 +126,8 @@ public class ExecutionEnvModel {
         model.context = context;
         model.cpuThreads = cpuThreads;
         model.enableOpenCL = enableOpenCL;
+        model.seedFromPreviousFrame = seedFromPreviousFrame;
+        model.aggregatedCrossCorrelation = aggregatedCrossCorrelation;
         model.openClDevices = copyOpenClDevices(openClDevices);
         model.openClAssignments = copyOpenClAssignments(openClAssignments);
         model.validAssignments = copyValidAssignments(validAssignments);
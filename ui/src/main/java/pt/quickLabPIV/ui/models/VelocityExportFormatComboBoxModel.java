@@ -0,0 +1,42 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.ui.models;
+
+import java.beans.PropertyChangeSupport;
+
+import javax.swing.DefaultComboBoxModel;
+
+public class VelocityExportFormatComboBoxModel extends DefaultComboBoxModel<VelocityExportFormatEnum> {
+
+
+    /**
+     * 
+     */
+    private static final long serialVersionUID = 3188429405762241952L;
+    private PropertyChangeSupport pcs = new PropertyChangeSupport(this);
+    
+    @Override
+    public void setSelectedItem(Object object) {
+        VelocityExportFormatEnum oldValue = getSelectedItem();
+        super.setSelectedItem(object);
+        pcs.firePropertyChange("selectedItem", oldValue, object);
+    }
+    
+    public VelocityExportFormatComboBoxModel() {
+        super(VelocityExportFormatEnum.values());
+    }
+
+    @Override
+    public VelocityExportFormatEnum getElementAt(int index) {
+        return super.getElementAt(index);
+    }
+    
+    @Override
+    public VelocityExportFormatEnum getSelectedItem() {
+        return (VelocityExportFormatEnum)super.getSelectedItem();
+    }
+}
@@ -0,0 +1,43 @@
+// SPDX-License-Identifier: GPL-3.0-only
+/*
+ * QuickLabPIV-ng - A hybrid PIV and PIV software laboratory (new generation)
+ *
+ * Copyright (C) 2017 to present: Luís Mendes <luis.mendes@tecnico.ulisboa.pt>
+ */
+package pt.quickLabPIV.ui.models;
+
+public enum VelocityExportFormatEnum {
+    Matlab("matlab", "Matlab MAT file with all the velocity maps"),
+    IndexedVelocityStore("indexed", "Indexed velocity store with direct access to each velocity map");
+    
+    private String optionValue;
+    private String description;
+    
+    private VelocityExportFormatEnum(String _optionValue, String desc) {
+        optionValue = _optionValue;
+        description = desc;
+    }
+    
+    public String getOptionValue() {
+        return optionValue;
+    }
+    
+    public String getDescription() {
+        return description;
+    }
+    
+    public static VelocityExportFormatEnum fromOptionValue(String value) {
+        for (VelocityExportFormatEnum format : values()) {
+            if (format.optionValue.equals(value)) {
+                return format;
+            }
+        }
+        
+        return null;
+    }
+    
+    @Override
+    public String toString() {
+        return description;
+    }
+}
@@ -21,6 +21,7 @@ import java.util.List;
 
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JDialog;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
@@ -37,14 +38,20 @@ import org.jdesktop.beansbinding.Bindings;
 
 import pt.quickLabPIV.business.facade.DataExportEnvFacade;
 import pt.quickLabPIV.ui.models.AppContextModel;
+import pt.quickLabPIV.ui.models.VelocityExportFormatComboBoxModel;
+import pt.quickLabPIV.ui.models.VelocityExportFormatEnum;
 import javax.swing.JFormattedTextField;
 import pt.quickLabPIV.ui.converters.NullGenericIntegerConverter;
+import pt.quickLabPIV.ui.converters.NullVelocityExportFormatConverter;
 import pt.quickLabPIV.ui.validators.IntegerRangeValidator;
 
 public class DataExportEnvironmentConfigurationDialog extends JDialog {
     private AutoBinding<AppContextModel, Integer, JFormattedTextField, Object> numberOfMapsBinding;
     private AutoBinding<AppContextModel, Boolean, JCheckBox, Boolean> splitExportsEnableBinding;
     private AutoBinding<AppContextModel, Boolean, JCheckBox, Boolean> swapUVOrderBinding;
+    private AutoBinding<AppContextModel, VelocityExportFormatEnum, JComboBox<VelocityExportFormatEnum>, Object> exportFormatBinding;
+    private AutoBinding<AppContextModel, Boolean, JCheckBox, Boolean> velocityMapsExportBinding;
+    private AutoBinding<AppContextModel, Boolean, JCheckBox, Boolean> velocityStatisticsBinding;
 
     /**
      * 
@@ -58,6 +65,9 @@ public class DataExportEnvironmentConfigurationDialog extends JDialog {
     private boolean cancelled = false;
     private JCheckBox chckbxSplitExports;
     private JFormattedTextField formattedTextFieldNumberOfMapsPerFile;
+    private JComboBox<VelocityExportFormatEnum> comboBoxExportFormat;
+    private JCheckBox chckbxVelocityMapsExport;
+    private JCheckBox chckbxVelocityStatistics;
     
     
     private List<ErrorBorderForComponent> borders = new LinkedList<>();
@@ -81,15 +91,15 @@ public class DataExportEnvironmentConfigurationDialog extends JDialog {
     public DataExportEnvironmentConfigurationDialog() {
         setResizable(false);
         setModalityType(ModalityType.APPLICATION_MODAL);
-        setBounds(100, 100, 737, 300);
+        setBounds(100, 100, 737, 340);
         getContentPane().setLayout(new BorderLayout());
         contentPanel.setBorder(new TitledBorder(new TitledBorder(new LineBorder(new Color(128, 128, 128), 1, true), "Data export environment configuration", TitledBorder.LEADING, TitledBorder.TOP, null, new Color(0, 0, 0)), "", TitledBorder.LEADING, TitledBorder.TOP, null, null));
         getContentPane().add(contentPanel, BorderLayout.CENTER);
         GridBagLayout gbl_contentPanel = new GridBagLayout();
         gbl_contentPanel.columnWidths = new int[]{0, 0, 73, 204, 0, 0};
-        gbl_contentPanel.rowHeights = new int[]{0, 0, 0, 0, 0};
+        gbl_contentPanel.rowHeights = new int[]{0, 0, 0, 0, 0, 0, 0, 0};
         gbl_contentPanel.columnWeights = new double[]{1.0, 0.0, 0.0, 0.0, 1.0, Double.MIN_VALUE};
-        gbl_contentPanel.rowWeights = new double[]{1.0, 0.0, 0.0, 1.0, Double.MIN_VALUE};
+        gbl_contentPanel.rowWeights = new double[]{1.0, 0.0, 0.0, 0.0, 0.0, 0.0, 1.0, Double.MIN_VALUE};
         contentPanel.setLayout(gbl_contentPanel);
         {
             chckbxSwap = new JCheckBox("Swap <U,V> vector coordinates");
@@ -131,6 +141,44 @@ public class DataExportEnvironmentConfigurationDialog extends JDialog {
             gbc_lblImagesVectorMaps.gridy = 2;
             contentPanel.add(lblImagesVectorMaps, gbc_lblImagesVectorMaps);
         }
+        {
+            JLabel lblExportFormat = new JLabel("Velocity maps export format");
+            GridBagConstraints gbc_lblExportFormat = new GridBagConstraints();
+            gbc_lblExportFormat.anchor = GridBagConstraints.WEST;
+            gbc_lblExportFormat.insets = new Insets(0, 0, 5, 5);
+            gbc_lblExportFormat.gridx = 1;
+            gbc_lblExportFormat.gridy = 3;
+            contentPanel.add(lblExportFormat, gbc_lblExportFormat);
+        }
+        {
+            comboBoxExportFormat = new JComboBox<>();
+            comboBoxExportFormat.setModel(new VelocityExportFormatComboBoxModel());
+            GridBagConstraints gbc_comboBoxExportFormat = new GridBagConstraints();
+            gbc_comboBoxExportFormat.gridwidth = 2;
+            gbc_comboBoxExportFormat.insets = new Insets(0, 0, 5, 5);
+            gbc_comboBoxExportFormat.fill = GridBagConstraints.HORIZONTAL;
+            gbc_comboBoxExportFormat.gridx = 2;
+            gbc_comboBoxExportFormat.gridy = 3;
+            contentPanel.add(comboBoxExportFormat, gbc_comboBoxExportFormat);
+        }
+        {
+            chckbxVelocityMapsExport = new JCheckBox("Export velocity maps");
+            GridBagConstraints gbc_chckbxVelocityMapsExport = new GridBagConstraints();
+            gbc_chckbxVelocityMapsExport.anchor = GridBagConstraints.WEST;
+            gbc_chckbxVelocityMapsExport.insets = new Insets(0, 0, 5, 5);
+            gbc_chckbxVelocityMapsExport.gridx = 1;
+            gbc_chckbxVelocityMapsExport.gridy = 4;
+            contentPanel.add(chckbxVelocityMapsExport, gbc_chckbxVelocityMapsExport);
+        }
+        {
+            chckbxVelocityStatistics = new JCheckBox("Export per-vector velocity statistics of all frames");
+            GridBagConstraints gbc_chckbxVelocityStatistics = new GridBagConstraints();
+            gbc_chckbxVelocityStatistics.anchor = GridBagConstraints.WEST;
+            gbc_chckbxVelocityStatistics.insets = new Insets(0, 0, 5, 5);
+            gbc_chckbxVelocityStatistics.gridx = 1;
+            gbc_chckbxVelocityStatistics.gridy = 5;
+            contentPanel.add(chckbxVelocityStatistics, gbc_chckbxVelocityStatistics);
+        }
         {
             JPanel buttonPane = new JPanel();
             buttonPane.setLayout(new FlowLayout(FlowLayout.RIGHT));
@@ -203,6 +251,18 @@ public class DataExportEnvironmentConfigurationDialog extends JDialog {
         numberOfMapsBinding.setSourceObject(model);
         numberOfMapsBinding.bind();
         
+        exportFormatBinding.unbind();
+        exportFormatBinding.setSourceObject(model);
+        exportFormatBinding.bind();
+        
+        velocityMapsExportBinding.unbind();
+        velocityMapsExportBinding.setSourceObject(model);
+        velocityMapsExportBinding.bind();
+        
+        velocityStatisticsBinding.unbind();
+        velocityStatisticsBinding.setSourceObject(model);
+        velocityStatisticsBinding.bind();
+        
         updateTextFieldEnabledState();
     }
     
@@ -244,6 +304,20 @@ public class DataExportEnvironmentConfigurationDialog extends JDialog {
         numberOfMapsBinding.setConverter(new NullGenericIntegerConverter());
         numberOfMapsBinding.setValidator(new IntegerRangeValidator());
         numberOfMapsBinding.bind();
+        //
+        BeanProperty<AppContextModel, VelocityExportFormatEnum> appContextModelBeanProperty_3 = BeanProperty.create("project.exportConfiguration.exportFormat");
+        BeanProperty<JComboBox<VelocityExportFormatEnum>, Object> jComboBoxBeanProperty = BeanProperty.create("selectedItem");
+        exportFormatBinding = Bindings.createAutoBinding(UpdateStrategy.READ_WRITE, appContext, appContextModelBeanProperty_3, comboBoxExportFormat, jComboBoxBeanProperty, "exportFormatBinding");
+        exportFormatBinding.setConverter(new NullVelocityExportFormatConverter());
+        exportFormatBinding.bind();
+        //
+        BeanProperty<AppContextModel, Boolean> appContextModelBeanProperty_4 = BeanProperty.create("project.exportConfiguration.velocityMapsExport");
+        velocityMapsExportBinding = Bindings.createAutoBinding(UpdateStrategy.READ_WRITE, appContext, appContextModelBeanProperty_4, chckbxVelocityMapsExport, jCheckBoxBeanProperty, "velocityMapsExportBinding");
+        velocityMapsExportBinding.bind();
+        //
+        BeanProperty<AppContextModel, Boolean> appContextModelBeanProperty_5 = BeanProperty.create("project.exportConfiguration.velocityStatistics");
+        velocityStatisticsBinding = Bindings.createAutoBinding(UpdateStrategy.READ_WRITE, appContext, appContextModelBeanProperty_5, chckbxVelocityStatistics, jCheckBoxBeanProperty, "velocityStatisticsBinding");
+        velocityStatisticsBinding.bind();
     }
     
     protected void postInitDataBindings() {
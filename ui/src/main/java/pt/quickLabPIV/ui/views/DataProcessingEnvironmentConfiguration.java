@@ -29,6 +29,7 @@ import javax.swing.Action;
 import javax.swing.ButtonGroup;
 import javax.swing.DefaultCellEditor;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
 import javax.swing.JDialog;
 import javax.swing.JLabel;
@@ -70,6 +71,8 @@ public class DataProcessingEnvironmentConfiguration extends JDialog {
     private static final Logger logger = LoggerFactory.getLogger(DataProcessingEnvironmentConfiguration.class);
     private AutoBinding<AppContextModel, Boolean, JRadioButton, Boolean> openCLEnabledBinding;
     private AutoBinding<AppContextModel, Integer, JComboBox<Integer>, Object> cpuThreadsBinding;
+    private AutoBinding<AppContextModel, Boolean, JCheckBox, Boolean> seedFromPreviousFrameBinding;
+    private AutoBinding<AppContextModel, Boolean, JCheckBox, Boolean> aggregatedCrossCorrelationBinding;
 
     /**
      * 
@@ -102,6 +105,8 @@ public class DataProcessingEnvironmentConfiguration extends JDialog {
     private JComboBox<Integer> comboBox;
     private JRadioButton rdbtnEnable;
     private JRadioButton rdbtnDisabled;
+    private JCheckBox chckbxSeedFromPreviousFrame;
+    private JCheckBox chckbxAggregatedCrossCorrelation;
     private ButtonColumn buttonColumn;
     private JPanel panelDeviceSelection;
     private boolean cancelled = false;
@@ -177,9 +182,9 @@ public class DataProcessingEnvironmentConfiguration extends JDialog {
                     panelGenericConfigs.setBorder(new TitledBorder(new LineBorder(new Color(128, 128, 128), 1, true), "Generic configuration", TitledBorder.LEADING, TitledBorder.TOP, null, new Color(0, 0, 0)));
                     GridBagLayout gbl_panelGenericConfigs = new GridBagLayout();
                     gbl_panelGenericConfigs.columnWidths = new int[]{0, 0, 0, 0, 0, 0};
-                    gbl_panelGenericConfigs.rowHeights = new int[]{0, 0, 0};
+                    gbl_panelGenericConfigs.rowHeights = new int[]{0, 0, 0, 0, 0};
                     gbl_panelGenericConfigs.columnWeights = new double[]{0.0, 0.0, 1.0, 0.0, 1.0, Double.MIN_VALUE};
-                    gbl_panelGenericConfigs.rowWeights = new double[]{0.0, 0.0, Double.MIN_VALUE};
+                    gbl_panelGenericConfigs.rowWeights = new double[]{0.0, 0.0, 0.0, 0.0, Double.MIN_VALUE};
                     panelGenericConfigs.setLayout(gbl_panelGenericConfigs);
                     {
                         comboBox = new JComboBox<>(DataProcessingEnvFacade.getCpuCoresComboBoxModel());
@@ -236,6 +241,44 @@ public class DataProcessingEnvironmentConfiguration extends JDialog {
                         gbc_lblNumberOfCpu.gridy = 0;
                         panelGenericConfigs.add(lblNumberOfCpu, gbc_lblNumberOfCpu);
                     }
+                    {
+                        JLabel lblSeedFromPreviousFrame = new JLabel("Seed from previous frame");
+                        GridBagConstraints gbc_lblSeedFromPreviousFrame = new GridBagConstraints();
+                        gbc_lblSeedFromPreviousFrame.anchor = GridBagConstraints.WEST;
+                        gbc_lblSeedFromPreviousFrame.insets = new Insets(0, 0, 0, 5);
+                        gbc_lblSeedFromPreviousFrame.gridx = 0;
+                        gbc_lblSeedFromPreviousFrame.gridy = 2;
+                        panelGenericConfigs.add(lblSeedFromPreviousFrame, gbc_lblSeedFromPreviousFrame);
+                    }
+                    {
+                        chckbxSeedFromPreviousFrame = new JCheckBox("Enabled");
+                        chckbxSeedFromPreviousFrame.setToolTipText("Starts each frame from the displacements of the previous frame, instead of a zero displacement");
+                        GridBagConstraints gbc_chckbxSeedFromPreviousFrame = new GridBagConstraints();
+                        gbc_chckbxSeedFromPreviousFrame.anchor = GridBagConstraints.WEST;
+                        gbc_chckbxSeedFromPreviousFrame.insets = new Insets(0, 0, 0, 5);
+                        gbc_chckbxSeedFromPreviousFrame.gridx = 2;
+                        gbc_chckbxSeedFromPreviousFrame.gridy = 2;
+                        panelGenericConfigs.add(chckbxSeedFromPreviousFrame, gbc_chckbxSeedFromPreviousFrame);
+                    }
+                    {
+                        JLabel lblAggregatedCrossCorrelation = new JLabel("Aggregated cross-correlation");
+                        GridBagConstraints gbc_lblAggregatedCrossCorrelation = new GridBagConstraints();
+                        gbc_lblAggregatedCrossCorrelation.anchor = GridBagConstraints.WEST;
+                        gbc_lblAggregatedCrossCorrelation.insets = new Insets(0, 0, 0, 5);
+                        gbc_lblAggregatedCrossCorrelation.gridx = 0;
+                        gbc_lblAggregatedCrossCorrelation.gridy = 3;
+                        panelGenericConfigs.add(lblAggregatedCrossCorrelation, gbc_lblAggregatedCrossCorrelation);
+                    }
+                    {
+                        chckbxAggregatedCrossCorrelation = new JCheckBox("Enabled");
+                        chckbxAggregatedCrossCorrelation.setToolTipText("Cross-correlates the tiles of all the threads sharing the same compute device together");
+                        GridBagConstraints gbc_chckbxAggregatedCrossCorrelation = new GridBagConstraints();
+                        gbc_chckbxAggregatedCrossCorrelation.anchor = GridBagConstraints.WEST;
+                        gbc_chckbxAggregatedCrossCorrelation.insets = new Insets(0, 0, 0, 5);
+                        gbc_chckbxAggregatedCrossCorrelation.gridx = 2;
+                        gbc_chckbxAggregatedCrossCorrelation.gridy = 3;
+                        panelGenericConfigs.add(chckbxAggregatedCrossCorrelation, gbc_chckbxAggregatedCrossCorrelation);
+                    }
                 }
                 {
                     panelDeviceSelection = new JPanel();
@@ -537,6 +580,14 @@ public class DataProcessingEnvironmentConfiguration extends JDialog {
         openCLEnabledBinding.unbind();
         openCLEnabledBinding.setSourceObject(appContextModel);
         openCLEnabledBinding.bind();
+        //
+        seedFromPreviousFrameBinding.unbind();
+        seedFromPreviousFrameBinding.setSourceObject(appContextModel);
+        seedFromPreviousFrameBinding.bind();
+        //
+        aggregatedCrossCorrelationBinding.unbind();
+        aggregatedCrossCorrelationBinding.setSourceObject(appContextModel);
+        aggregatedCrossCorrelationBinding.bind();
 
         //Ensure that at least one radio button is always selected. 
         updateOpenCLEnabledPanelState();
@@ -612,6 +663,15 @@ public class DataProcessingEnvironmentConfiguration extends JDialog {
         BeanProperty<JRadioButton, Boolean> jRadioButtonBeanProperty = BeanProperty.create("selected");
         openCLEnabledBinding = Bindings.createAutoBinding(UpdateStrategy.READ_WRITE, appContextModel, appContextModelBeanProperty_1, rdbtnEnable, jRadioButtonBeanProperty, "openCLEnabledBinding");
         openCLEnabledBinding.bind();
+        //
+        BeanProperty<AppContextModel, Boolean> appContextModelBeanProperty_2 = BeanProperty.create("executionEnvironment.seedFromPreviousFrame");
+        BeanProperty<JCheckBox, Boolean> jCheckBoxBeanProperty = BeanProperty.create("selected");
+        seedFromPreviousFrameBinding = Bindings.createAutoBinding(UpdateStrategy.READ_WRITE, appContextModel, appContextModelBeanProperty_2, chckbxSeedFromPreviousFrame, jCheckBoxBeanProperty, "seedFromPreviousFrameBinding");
+        seedFromPreviousFrameBinding.bind();
+        //
+        BeanProperty<AppContextModel, Boolean> appContextModelBeanProperty_3 = BeanProperty.create("executionEnvironment.aggregatedCrossCorrelation");
+        aggregatedCrossCorrelationBinding = Bindings.createAutoBinding(UpdateStrategy.READ_WRITE, appContextModel, appContextModelBeanProperty_3, chckbxAggregatedCrossCorrelation, jCheckBoxBeanProperty, "aggregatedCrossCorrelationBinding");
+        aggregatedCrossCorrelationBinding.bind();
     }
     
     protected JPanel getPanelDeviceSelection() {
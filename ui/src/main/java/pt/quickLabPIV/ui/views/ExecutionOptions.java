@@ -8,5 +8,6 @@ package pt.quickLabPIV.ui.views;
 
 public enum ExecutionOptions {
     UIMode,
-    ShellRunMode
+    ShellRunMode,
+    ServerMode
 }
@@ -20,6 +20,7 @@ import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
 import java.util.Properties;
 
 import javax.swing.JComponent;
@@ -43,6 +44,7 @@ import pt.quickLabPIV.business.facade.PIVConfigurationFacade;
 import pt.quickLabPIV.business.facade.PIVExecutionEnvironmentFacade;
 import pt.quickLabPIV.business.facade.ProjectFacade;
 import pt.quickLabPIV.business.facade.ProjectOpenException;
+import pt.quickLabPIV.business.server.PIVBatchServer;
 import pt.quickLabPIV.business.transfer.CommandLineOptionsEnum;
 import pt.quickLabPIV.business.transfer.ExecuteLocalShellPIV;
 import pt.quickLabPIV.exceptions.InvalidExecutionEnvException;
@@ -78,12 +80,15 @@ public class QuickLabPIVng {
         case ShellRunMode:
             executeShellRunMode(options);
             break;
+        case ServerMode:
+            executeServerMode(options);
+            break;
         case UIMode:            
             executeUiMode(options);
             break;
         default:
             System.err.println("Unknown command line option");
-            System.out.println("Usage: QuickLabPIVng <--shellMode>");
+            System.out.println("Usage: QuickLabPIVng <--shellMode|--serverMode>");
             System.exit(1);
         }
     }
@@ -93,9 +98,11 @@ public class QuickLabPIVng {
         if (args.length > 0) {
             if (args[0].equalsIgnoreCase("--shellMode")) {
                 option = ExecutionOptions.ShellRunMode;
+            } else if (args[0].equalsIgnoreCase("--serverMode")) {
+                option = ExecutionOptions.ServerMode;
             } else {
                 System.err.println("Unknown command line option");
-                System.out.println("Usage: QuickLabPIVng <--shellMode>");
+                System.out.println("Usage: QuickLabPIVng <--shellMode|--serverMode>");
                 System.exit(1);
             }
         }
@@ -569,4 +576,27 @@ public class QuickLabPIVng {
             CommandLineOptionsEnum.showShellModeOptionsHelper();           
         }
     }
+    
+    private static void executeServerMode(Properties options) {
+        int port = PIVBatchServer.DEFAULT_PORT;
+        if (options.containsKey(CommandLineOptionsEnum.SERVER_PORT.key())) {
+            port = (Integer)options.get(CommandLineOptionsEnum.SERVER_PORT.key());
+        }
+
+        final PIVBatchServer server = new PIVBatchServer(port);
+        try {
+            server.start();
+        } catch (IOException e) {
+            System.err.println("Failed to start PIV batch server on loopback port: " + port + " - " + e.getMessage());
+            System.exit(1);
+        }
+        System.out.println("PIV batch server listening on loopback port: " + server.getPort());
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop()));
+
+        try {
+            server.awaitTermination();
+        } catch (InterruptedException e) {
+            server.stop();
+        }
+    }
 }